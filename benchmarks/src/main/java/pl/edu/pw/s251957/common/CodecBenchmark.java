@@ -0,0 +1,105 @@
+package pl.edu.pw.s251957.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Pomiar kodowania i dekodowania komunikatów {@link Command} oraz {@link Response} przez koder binarny, koder
+ * binarny z kompresją każdej treści ({@link CompressingCodec}) i serializację Javy. Każda operacja koduje komunikat i
+ * dekoduje go z powrotem tym samym koderem - strumień kodujący i dekodujący serializacji są niezależne, więc koder
+ * działa jak połączenie samo ze sobą. Komunikaty tworzone są w każdej operacji od nowa, tak jak na serwerze, aby
+ * serializacja nie zastępowała ich odwołaniem do obiektu zapisanego wcześniej w strumieniu.
+ *
+ * @see BinaryCodec
+ * @see SerializationCodec
+ * @see CompressingCodec
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    /** Liczba nicków w liście użytkowników */
+    private static final int USERS_COUNT = 100;
+    /** Treść wiadomości */
+    private static final String MESSAGE = "Cześć, czy widzimy się jutro o dziewiątej na wykładzie z programowania?";
+
+    /** Rodzaj kodera: {@code binary}, {@code deflate} albo {@code serialization} */
+    @Param({"binary", "deflate", "serialization"})
+    public String codecType;
+
+    /** Koder komunikatów */
+    private MessageCodec codec;
+    /** Nicki użytkowników */
+    private List<String> users;
+
+    /**
+     * Tworzy koder i listę nicków użytkowników.
+     */
+    @Setup
+    public void setUp() {
+        if("binary".equals(codecType)) {
+            codec = new BinaryCodec();
+        } else if("deflate".equals(codecType)) {
+            codec = new CompressingCodec(new BinaryCodec(), 1, null);
+        } else {
+            codec = new SerializationCodec();
+        }
+        users = new ArrayList<>();
+
+        for (int i = 0; i < USERS_COUNT; i++) {
+            users.add("uzytkownik" + i);
+        }
+    }
+
+    /**
+     * Koduje i dekoduje żądanie wysłania wiadomości.
+     *
+     * @return odczytane żądanie
+     * @throws IOException błąd kodowania
+     */
+    @Benchmark
+    public Command commandRoundTrip() throws IOException {
+        return codec.decodeCommand(codec.encodeCommand(
+                new Command(Command.CommandType.SEND_MESSAGE, "nadawca", "adresat", new String(MESSAGE))));
+    }
+
+    /**
+     * Koduje i dekoduje odpowiedź z wiadomością.
+     *
+     * @return odczytana odpowiedź
+     * @throws IOException błąd kodowania
+     */
+    @Benchmark
+    public Response messageResponseRoundTrip() throws IOException {
+        return codec.decodeResponse(codec.encodeResponse(
+                new Response(Response.ResponseType.MESSAGE, "adresat", new String(MESSAGE), "nadawca")));
+    }
+
+    /**
+     * Koduje i dekoduje odpowiedź z listą użytkowników.
+     *
+     * @return odczytana odpowiedź
+     * @throws IOException błąd kodowania
+     */
+    @Benchmark
+    public Response usersResponseRoundTrip() throws IOException {
+        return codec.decodeResponse(codec.encodeResponse(
+                new Response(Response.ResponseType.USERS, null, "Doszedł użytkownik", new ArrayList<>(users))));
+    }
+}
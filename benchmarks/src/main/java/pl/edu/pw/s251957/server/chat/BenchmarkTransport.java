@@ -0,0 +1,46 @@
+package pl.edu.pw.s251957.server.chat;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Warstwa transportowa używana w pomiarach zamiast gniazda. Nie wysyła ramek, a jedynie zlicza je we wspólnym
+ * liczniku, dzięki czemu pomiar może poczekać na dostarczenie wszystkich zleconych odpowiedzi. Implementuje interfejs
+ * {@link ConnectionTransport}.
+ *
+ * @see ConnectedClients
+ */
+class BenchmarkTransport implements ConnectionTransport {
+    /** Licznik ramek wszystkich połączeń */
+    private final LongAdder frames;
+
+    /**
+     * Tworzy warstwę transportową zliczającą ramki we wspólnym liczniku.
+     *
+     * @param frames licznik ramek wszystkich połączeń
+     */
+    BenchmarkTransport(LongAdder frames) {
+        this.frames = frames;
+    }
+
+    @Override
+    public void send(byte[] payload) {
+        frames.increment();
+    }
+
+    @Override
+    public void sendBatch(List<byte[]> payloads, Runnable onWritten) {
+        frames.add(payloads.size());
+
+        if(onWritten != null) {
+            onWritten.run();
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void abort() {
+    }
+}
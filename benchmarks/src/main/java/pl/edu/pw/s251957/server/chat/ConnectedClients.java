@@ -0,0 +1,134 @@
+package pl.edu.pw.s251957.server.chat;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import pl.edu.pw.s251957.common.BinaryCodec;
+import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.CompressingCodec;
+import pl.edu.pw.s251957.common.MessageCodec;
+import pl.edu.pw.s251957.common.ProtocolHandshake;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Stan pomiarów serwera - uruchomiony {@link ChatServer} z podaną liczbą zarejestrowanych połączeń. Połączenia
+ * przechodzą zwykłą ścieżkę klienta protokołu binarnego: powitanie, a następnie żądanie połączenia. Zamiast gniazd
+ * używają {@link BenchmarkTransport}, więc pomiar obejmuje kierowanie, kolejki wychodzące i kodowanie odpowiedzi, ale
+ * nie sieć. Magazyny wiadomości i historii są wyłączone.
+ *
+ * @see SendMessageBenchmark
+ * @see NotifyAllClientsBenchmark
+ * @see RoomMulticastBenchmark
+ */
+@State(Scope.Benchmark)
+public class ConnectedClients {
+    /** Maksymalny czas oczekiwania na dostarczenie zleconych odpowiedzi w sekundach */
+    private static final int DELIVERY_TIMEOUT = 60;
+
+    /** Liczba zarejestrowanych połączeń */
+    @Param({"10000"})
+    public int connections;
+
+    /** Serwer z zarejestrowanymi połączeniami */
+    ChatServer chatServer;
+    /** Nicki zarejestrowanych użytkowników */
+    String[] nicks;
+    /** Połączenia zarejestrowanych użytkowników */
+    ClientConnection[] clientConnections;
+    /** Koder żądań klientów najnowszej wersji protokołu, bez kompresji */
+    final MessageCodec codec = new CompressingCodec(new BinaryCodec(), CompressingCodec.NO_COMPRESSION, null);
+
+    /** Licznik ramek dostarczonych do wszystkich połączeń */
+    private final LongAdder frames = new LongAdder();
+    /** Liczba ramek, które powinny zostać dostarczone */
+    private long expectedFrames;
+
+    /**
+     * Uruchamia serwer na wolnym porcie i rejestruje połączenia, czekając na dostarczenie wszystkich informacji o
+     * dołączeniu użytkowników. Dołączenia wykonywane są przez wątki rejestru, więc przed kolejnym pomiar czeka na
+     * rozesłanie poprzedniego - dzięki temu każdy użytkownik otrzymuje dokładnie jedną informację o każdym
+     * późniejszym użytkowniku.
+     *
+     * @throws IOException błąd kodowania żądania połączenia
+     */
+    @Setup(Level.Trial)
+    public void connect() throws IOException {
+        ServerSettings settings = new ServerSettings();
+        settings.setOfflineStoreDirectory(null);
+        settings.setHistoryDirectory(null);
+        settings.setHeartbeatInterval(0);
+        settings.setOutboundQueueCapacity(connections + 1024);
+
+        // pomiar wysyła żądania szybciej, niż pozwalają domyślne limity
+        for (Command.CommandType commandType : Command.CommandType.values()) {
+            settings.setRateLimit(commandType, null);
+        }
+
+        chatServer = new ChatServer(settings);
+        chatServer.startServer(0);
+
+        byte[] hello = ProtocolHandshake.hello(ProtocolHandshake.CURRENT_VERSION);
+        nicks = new String[connections];
+        clientConnections = new ClientConnection[connections];
+
+        for (int i = 0; i < connections; i++) {
+            nicks[i] = "uzytkownik" + i;
+
+            ClientConnection connection = new ClientConnection(chatServer, new BenchmarkTransport(frames));
+            connection.handleFrame(hello);
+            connection.handleFrame(codec.encodeCommand(new Command(Command.CommandType.CONNECT, nicks[i], "", "")));
+            clientConnections[i] = connection;
+            chatServer.getRegistry().flush();
+
+            // powitanie, lista użytkowników i informacja o dołączeniu dla każdego wcześniejszego użytkownika
+            expectFrames(2 + i);
+        }
+
+        awaitDelivery();
+    }
+
+    /**
+     * Zatrzymuje serwer.
+     */
+    @TearDown(Level.Trial)
+    public void disconnect() {
+        chatServer.stopServer();
+    }
+
+    /**
+     * Zwiększa liczbę ramek, które powinny zostać dostarczone.
+     *
+     * @param count liczba nowych ramek
+     */
+    synchronized void expectFrames(long count) {
+        expectedFrames += count;
+    }
+
+    /**
+     * Czeka, aż wszystkie zlecone odpowiedzi zostaną dostarczone do warstw transportowych połączeń.
+     *
+     * @throws IllegalStateException odpowiedzi nie zostały dostarczone w wyznaczonym czasie
+     */
+    void awaitDelivery() {
+        long expected;
+
+        synchronized (this) {
+            expected = expectedFrames;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DELIVERY_TIMEOUT);
+
+        while (frames.sum() < expected) {
+            if(System.nanoTime() > deadline) {
+                throw new IllegalStateException("Dostarczono " + frames.sum() + " z " + expected + " ramek");
+            }
+
+            Thread.yield();
+        }
+    }
+}
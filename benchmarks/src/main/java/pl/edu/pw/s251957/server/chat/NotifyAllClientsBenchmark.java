@@ -0,0 +1,67 @@
+package pl.edu.pw.s251957.server.chat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.edu.pw.s251957.common.Response;
+
+import java.util.concurrent.TimeUnit;
+
+/** Pomiar rozsyłania odpowiedzi do wszystkich użytkowników przez {@code ChatServer.notifyAllClients}. Pomiar
+ * {@link #notifyAllClients(ConnectedClients)} obejmuje tylko czas wątku rozsyłającego, a
+ * {@link #notifyAllClientsDelivered(ConnectedClients)} trwa aż odpowiedź trafi do wszystkich połączeń, więc obejmuje
+ * też jej kodowanie i opróżnianie kolejek wychodzących.
+ *
+ * @see ConnectedClients
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NotifyAllClientsBenchmark {
+    /** Treść rozsyłanej odpowiedzi */
+    private static final String MESSAGE = "Komunikat serwera do wszystkich użytkowników";
+
+    /**
+     * Zleca rozesłanie odpowiedzi do wszystkich użytkowników.
+     *
+     * @param clients zarejestrowane połączenia
+     */
+    @Benchmark
+    public void notifyAllClients(ConnectedClients clients) {
+        clients.expectFrames(clients.connections);
+        clients.chatServer.notifyAllClients(Response.ResponseType.MESSAGE, MESSAGE, null);
+    }
+
+    /**
+     * Rozsyła odpowiedź do wszystkich użytkowników i czeka na jej dostarczenie.
+     *
+     * @param clients zarejestrowane połączenia
+     */
+    @Benchmark
+    public void notifyAllClientsDelivered(ConnectedClients clients) {
+        notifyAllClients(clients);
+        clients.awaitDelivery();
+    }
+
+    /**
+     * Czeka na dostarczenie rozesłanej odpowiedzi poza mierzonym czasem, aby kolejne wywołanie zaczynało od
+     * pustych kolejek.
+     *
+     * @param clients zarejestrowane połączenia
+     */
+    @TearDown(Level.Invocation)
+    public void awaitDelivery(ConnectedClients clients) {
+        clients.awaitDelivery();
+    }
+}
@@ -0,0 +1,103 @@
+package pl.edu.pw.s251957.server.chat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.MessageCodec;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** Pomiar rozsyłania wiadomości do pokoju. Pierwsi użytkownicy {@link ConnectedClients} dołączają do jednego pokoju,
+ * a pierwszy z nich wysyła do niego wiadomości zwykłą ścieżką żądania klienta. Pomiar
+ * {@link #sendRoomMessage(ConnectedClients)} obejmuje tylko czas wątku nadawcy, a
+ * {@link #sendRoomMessageDelivered(ConnectedClients)} trwa aż wiadomość trafi do wszystkich członków, więc obejmuje
+ * też jej jednokrotne kodowanie i opróżnianie kolejek wychodzących.
+ *
+ * @see ConnectedClients
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoomMulticastBenchmark {
+    /** Nazwa pokoju */
+    private static final String ROOM = "pokoj";
+
+    /** Liczba członków pokoju, nie większa niż liczba połączeń */
+    @Param({"5000"})
+    public int roomSize;
+
+    /** Zakodowane żądanie wysłania wiadomości do pokoju */
+    private byte[] roomMessage;
+
+    /**
+     * Dołącza pierwszych użytkowników do pokoju i czeka na dostarczenie informacji o zmianach jego składu.
+     *
+     * @param clients zarejestrowane połączenia
+     * @throws IOException błąd kodowania żądania
+     */
+    @Setup(Level.Trial)
+    public void joinRoom(ConnectedClients clients) throws IOException {
+        MessageCodec codec = clients.codec;
+
+        for (int i = 0; i < roomSize; i++) {
+            Command.CommandType commandType = i == 0 ? Command.CommandType.CREATE_ROOM : Command.CommandType.JOIN_ROOM;
+            clients.clientConnections[i].handleFrame(codec.encodeCommand(new Command(commandType, clients.nicks[i],
+                    ROOM, "")));
+
+            // lista członków dla dołączającego i informacja o dołączeniu dla każdego wcześniejszego członka
+            clients.expectFrames(1 + i);
+        }
+
+        clients.awaitDelivery();
+        roomMessage = codec.encodeCommand(new Command(Command.CommandType.SEND_ROOM_MESSAGE, clients.nicks[0], ROOM,
+                "Wiadomość do wszystkich członków pokoju"));
+    }
+
+    /**
+     * Wysyła wiadomość do pokoju.
+     *
+     * @param clients zarejestrowane połączenia
+     */
+    @Benchmark
+    public void sendRoomMessage(ConnectedClients clients) {
+        clients.expectFrames(roomSize - 1);
+        clients.clientConnections[0].handleFrame(roomMessage);
+    }
+
+    /**
+     * Wysyła wiadomość do pokoju i czeka na jej dostarczenie wszystkim członkom.
+     *
+     * @param clients zarejestrowane połączenia
+     */
+    @Benchmark
+    public void sendRoomMessageDelivered(ConnectedClients clients) {
+        sendRoomMessage(clients);
+        clients.awaitDelivery();
+    }
+
+    /**
+     * Czeka na dostarczenie wysłanej wiadomości poza mierzonym czasem, aby kolejne wywołanie zaczynało od pustych
+     * kolejek.
+     *
+     * @param clients zarejestrowane połączenia
+     */
+    @TearDown(Level.Invocation)
+    public void awaitDelivery(ConnectedClients clients) {
+        clients.awaitDelivery();
+    }
+}
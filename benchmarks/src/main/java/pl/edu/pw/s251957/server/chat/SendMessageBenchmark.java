@@ -0,0 +1,83 @@
+package pl.edu.pw.s251957.server.chat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.edu.pw.s251957.common.Command;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Pomiar przekazywania wiadomości przez {@link ChatServer#sendMessage(Command)} pomiędzy losowymi parami
+ * zarejestrowanych użytkowników. Mierzony jest czas wątku nadawcy - wyznaczenie części rejestru adresata i przekazanie
+ * żądania jej wątkowi, który wyszukuje adresata i dodaje odpowiedź do jego kolejki wychodzącej. Po każdej iteracji
+ * pomiar czeka na dostarczenie wszystkich wiadomości, aby zaległości nie przechodziły do kolejnej iteracji.
+ *
+ * @see ConnectedClients
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendMessageBenchmark {
+    /** Liczba przygotowanych żądań, potęga dwójki */
+    private static final int COMMANDS = 4096;
+
+    /** Przygotowane żądania wysłania wiadomości */
+    private Command[] commands;
+    /** Numer kolejnego żądania */
+    private int next;
+    /** Liczba wiadomości wysłanych w bieżącej iteracji */
+    private long sent;
+
+    /**
+     * Przygotowuje żądania wysłania wiadomości pomiędzy losowymi parami użytkowników.
+     *
+     * @param clients zarejestrowane połączenia
+     */
+    @Setup(Level.Trial)
+    public void prepareCommands(ConnectedClients clients) {
+        Random random = new Random(251957);
+        commands = new Command[COMMANDS];
+
+        for (int i = 0; i < COMMANDS; i++) {
+            String clientNick = clients.nicks[random.nextInt(clients.connections)];
+            String addresseeNick = clients.nicks[random.nextInt(clients.connections)];
+            commands[i] = new Command(Command.CommandType.SEND_MESSAGE, clientNick, addresseeNick, "Wiadomość " + i);
+        }
+    }
+
+    /**
+     * Przekazuje kolejną wiadomość.
+     *
+     * @param clients zarejestrowane połączenia
+     */
+    @Benchmark
+    public void sendMessage(ConnectedClients clients) {
+        clients.chatServer.sendMessage(commands[next++ & (COMMANDS - 1)]);
+        sent++;
+    }
+
+    /**
+     * Czeka na dostarczenie wiadomości wysłanych w iteracji.
+     *
+     * @param clients zarejestrowane połączenia
+     */
+    @TearDown(Level.Iteration)
+    public void awaitDelivery(ConnectedClients clients) {
+        clients.expectFrames(sent);
+        sent = 0;
+        clients.awaitDelivery();
+    }
+}
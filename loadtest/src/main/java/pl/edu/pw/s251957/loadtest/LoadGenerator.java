@@ -0,0 +1,228 @@
+package pl.edu.pw.s251957.loadtest;
+
+import pl.edu.pw.s251957.client.util.model.ServerConnectionConfig;
+
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/** Generator obciążenia serwera komunikatora. Symulowani użytkownicy {@link SimulatedUser} dołączają ze stałą
+ * częstotliwością, po przyjęciu przez serwer co pewien czas wysyłają serie wiadomości do losowych połączonych
+ * użytkowników, a wybrani losowo użytkownicy rozłączają się i po chwili łączą ponownie. W trakcie testu wypisywane są
+ * raporty częściowe, a na końcu podsumowanie {@link LoadStatistics}.
+ *
+ * @see SimulatedUser
+ * @see LoadTestSettings
+ * @see LoadStatistics
+ */
+public class LoadGenerator {
+    /** Liczba prób znalezienia połączonego adresata serii wiadomości */
+    private static final int ADDRESSEE_ATTEMPTS = 8;
+    /** Czas oczekiwania na dostarczenie wysłanych wiadomości po zakończeniu testu w milisekundach */
+    private static final long DRAIN_TIME = 2000;
+
+    /** Ustawienia testu */
+    private final LoadTestSettings settings;
+    /** Konfiguracja połączenia z serwerem */
+    private final ServerConnectionConfig config;
+    /** Statystyki testu */
+    private final LoadStatistics statistics;
+    /** Symulowani użytkownicy według numerów */
+    private final SimulatedUser[] users;
+    /** Dopełnienie treści wiadomości do długości podanej w ustawieniach */
+    private final String padding;
+    /** Wykonawca dołączania, serii wiadomości i rozłączania użytkowników */
+    private final ScheduledExecutorService scheduler;
+
+    /** Liczba użytkowników, którzy już dołączyli */
+    private volatile int arrivedUsers;
+
+    /**
+     * Tworzy generator obciążenia dla serwera o podanej konfiguracji.
+     *
+     * @param settings ustawienia testu
+     * @param config konfiguracja połączenia z serwerem
+     */
+    public LoadGenerator(LoadTestSettings settings, ServerConnectionConfig config) {
+        this.settings = settings;
+        this.config = config;
+        this.statistics = new LoadStatistics();
+        this.users = new SimulatedUser[settings.getUsers()];
+        this.padding = createPadding();
+        this.scheduler = Executors.newScheduledThreadPool(settings.getSenderThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "load-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Przeprowadza test przez czas podany w ustawieniach, wypisując raporty do podanego strumienia.
+     *
+     * @param out strumień raportów
+     * @throws InterruptedException przerwanie oczekiwania na kolejny raport
+     */
+    public void run(PrintStream out) throws InterruptedException {
+        long start = System.nanoTime();
+        long arrivalPeriod = (long) (TimeUnit.SECONDS.toNanos(1) / settings.getArrivalRate());
+        scheduler.scheduleAtFixedRate(this::arrive, 0, arrivalPeriod, TimeUnit.NANOSECONDS);
+
+        if(settings.getChurnRate() > 0) {
+            long churnPeriod = (long) (TimeUnit.SECONDS.toNanos(1) / settings.getChurnRate());
+            scheduler.scheduleAtFixedRate(this::churn, churnPeriod, churnPeriod, TimeUnit.NANOSECONDS);
+        }
+
+        long reportPeriod = TimeUnit.SECONDS.toNanos(settings.getReportInterval());
+        long end = start + TimeUnit.SECONDS.toNanos(settings.getDuration());
+        long nextReport = start + reportPeriod;
+        long lastReport = start;
+
+        while (nextReport <= end) {
+            TimeUnit.NANOSECONDS.sleep(nextReport - System.nanoTime());
+
+            long now = System.nanoTime();
+            statistics.printInterval(out, (now - start) / 1e9, (now - lastReport) / 1e9);
+            lastReport = now;
+            nextReport += reportPeriod;
+        }
+
+        double duration = (System.nanoTime() - start) / 1e9;
+        stop();
+        statistics.printSummary(out, duration);
+    }
+
+    /**
+     * Zatrzymuje wysyłanie wiadomości, czeka chwilę na dostarczenie wysłanych i rozłącza wszystkich użytkowników.
+     *
+     * @throws InterruptedException przerwanie oczekiwania
+     */
+    private void stop() throws InterruptedException {
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(DRAIN_TIME, TimeUnit.MILLISECONDS);
+        Thread.sleep(DRAIN_TIME);
+
+        for (int i = 0; i < arrivedUsers; i++) {
+            users[i].disconnect();
+        }
+    }
+
+    /**
+     * Dołącza kolejnego użytkownika, dopóki nie dołączyli wszyscy.
+     */
+    private void arrive() {
+        int id = arrivedUsers;
+
+        if(id == users.length) {
+            return;
+        }
+
+        SimulatedUser user = new SimulatedUser(id, this, statistics, config, padding);
+        users[id] = user;
+        arrivedUsers = id + 1;
+        execute(user::connect);
+    }
+
+    /**
+     * Rozłącza losowego połączonego użytkownika i planuje jego ponowne połączenie.
+     */
+    private void churn() {
+        SimulatedUser user = randomOnlineUser(null);
+
+        if(user != null) {
+            user.disconnect();
+            schedule(user::connect, settings.getReconnectDelay());
+        }
+    }
+
+    /**
+     * Planuje serie wiadomości użytkownika przyjętego przez serwer. Pierwsza seria następuje po losowym czasie, aby
+     * serie różnych użytkowników nie wypadały jednocześnie.
+     *
+     * @param user użytkownik przyjęty przez serwer
+     * @return zaplanowane serie lub {@code null}, jeśli test się zakończył
+     */
+    ScheduledFuture<?> scheduleBursts(SimulatedUser user) {
+        long interval = settings.getBurstInterval();
+        long initialDelay = ThreadLocalRandom.current().nextLong(interval + 1);
+
+        try {
+            return scheduler.scheduleWithFixedDelay(() -> sendBurst(user), initialDelay, interval,
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Wysyła serię wiadomości od użytkownika do losowego połączonego użytkownika.
+     *
+     * @param user nadawca wiadomości
+     */
+    private void sendBurst(SimulatedUser user) {
+        SimulatedUser addressee = randomOnlineUser(user);
+
+        if(addressee != null) {
+            user.sendBurst(addressee, settings.getBurstSize());
+        }
+    }
+
+    /**
+     * Wybiera losowego połączonego użytkownika.
+     *
+     * @param excluded użytkownik, który nie może zostać wybrany, lub {@code null}
+     * @return połączony użytkownik lub {@code null}, jeśli nie udało się go znaleźć
+     */
+    private SimulatedUser randomOnlineUser(SimulatedUser excluded) {
+        int arrived = arrivedUsers;
+
+        for (int attempt = 0; attempt < ADDRESSEE_ATTEMPTS && arrived > 0; attempt++) {
+            SimulatedUser user = users[ThreadLocalRandom.current().nextInt(arrived)];
+
+            if(user != excluded && user.isOnline()) {
+                return user;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Tworzy dopełnienie treści wiadomości do długości podanej w ustawieniach.
+     *
+     * @return dopełnienie treści
+     */
+    private String createPadding() {
+        StringBuilder padding = new StringBuilder(settings.getMessageSize());
+
+        for (int i = 0; i < settings.getMessageSize(); i++) {
+            padding.append((char) ('a' + i % 26));
+        }
+
+        return padding.toString();
+    }
+
+    /**
+     * Zleca zadanie, o ile test się nie zakończył.
+     *
+     * @param task zadanie
+     */
+    private void execute(Runnable task) {
+        schedule(task, 0);
+    }
+
+    /**
+     * Planuje zadanie z podanym opóźnieniem, o ile test się nie zakończył.
+     *
+     * @param task zadanie
+     * @param delay opóźnienie w milisekundach
+     */
+    private void schedule(Runnable task, long delay) {
+        try {
+            scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {}
+    }
+}
@@ -0,0 +1,156 @@
+package pl.edu.pw.s251957.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Statystyki testu obciążeniowego. Opóźnienia dostarczenia wiadomości od wysłania przez nadawcę do odebrania przez
+ * adresata zapisywane są w mikrosekundach do histogramu HdrHistogram, a liczniki wiadomości pozwalają wyznaczyć
+ * przepustowość serwera. Zapisywanie jest bezpieczne dla wielu wątków, a raporty częściowe obejmują tylko okres od
+ * poprzedniego raportu.
+ *
+ * @see Recorder
+ * @see LoadGenerator
+ */
+public class LoadStatistics {
+    /** Największe zapisywane opóźnienie w mikrosekundach */
+    private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toMicros(1);
+    /** Liczba cyfr znaczących histogramu */
+    private static final int SIGNIFICANT_DIGITS = 3;
+    /** Skala wartości histogramu przy wypisywaniu - z mikrosekund na milisekundy */
+    private static final double OUTPUT_SCALE = 1000.0;
+
+    /** Rejestrator opóźnień dostarczenia wiadomości */
+    private final Recorder latencyRecorder;
+    /** Histogram opóźnień z całego testu */
+    private final Histogram totalLatency;
+    /** Histogram opóźnień z ostatniego okresu, używany ponownie przez rejestrator */
+    private Histogram intervalLatency;
+
+    /** Liczba wysłanych wiadomości */
+    private final LongAdder sentMessages;
+    /** Liczba dostarczonych wiadomości */
+    private final LongAdder deliveredMessages;
+    /** Liczba połączeń użytkowników z serwerem */
+    private final LongAdder connections;
+    /** Liczba błędów zgłoszonych przez klientów */
+    private final LongAdder errors;
+    /** Liczba użytkowników połączonych z serwerem */
+    private final AtomicInteger onlineUsers;
+
+    /** Liczba wysłanych wiadomości w chwili poprzedniego raportu */
+    private long lastSentMessages;
+    /** Liczba dostarczonych wiadomości w chwili poprzedniego raportu */
+    private long lastDeliveredMessages;
+
+    /**
+     * Tworzy puste statystyki testu.
+     */
+    public LoadStatistics() {
+        this.latencyRecorder = new Recorder(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+        this.totalLatency = new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+        this.sentMessages = new LongAdder();
+        this.deliveredMessages = new LongAdder();
+        this.connections = new LongAdder();
+        this.errors = new LongAdder();
+        this.onlineUsers = new AtomicInteger();
+    }
+
+    /**
+     * Zapisuje wysłanie wiadomości.
+     */
+    void recordSent() {
+        sentMessages.increment();
+    }
+
+    /**
+     * Zapisuje dostarczenie wiadomości wysłanej w podanej chwili.
+     *
+     * @param sentNanos chwila wysłania wiadomości według {@link System#nanoTime()}
+     */
+    void recordDelivered(long sentNanos) {
+        long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sentNanos);
+        latencyRecorder.recordValue(Math.min(Math.max(latency, 0), HIGHEST_LATENCY));
+        deliveredMessages.increment();
+    }
+
+    /**
+     * Zapisuje połączenie użytkownika z serwerem.
+     */
+    void userOnline() {
+        connections.increment();
+        onlineUsers.incrementAndGet();
+    }
+
+    /**
+     * Zapisuje rozłączenie użytkownika z serwerem.
+     */
+    void userOffline() {
+        onlineUsers.decrementAndGet();
+    }
+
+    /**
+     * Zapisuje błąd zgłoszony przez klienta.
+     */
+    void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * Wypisuje raport z okresu od poprzedniego raportu i dołącza jego opóźnienia do histogramu całego testu.
+     *
+     * @param out strumień raportu
+     * @param elapsedSeconds czas od rozpoczęcia testu w sekundach
+     * @param intervalSeconds długość okresu w sekundach
+     */
+    synchronized void printInterval(PrintStream out, double elapsedSeconds, double intervalSeconds) {
+        intervalLatency = latencyRecorder.getIntervalHistogram(intervalLatency);
+        totalLatency.add(intervalLatency);
+
+        long sent = sentMessages.sum();
+        long delivered = deliveredMessages.sum();
+
+        out.printf("[%6.1f s] online: %d, wysłane: %.0f/s, dostarczone: %.0f/s, opóźnienie p50: %.2f ms, "
+                        + "p99: %.2f ms, max: %.2f ms%n",
+                elapsedSeconds, onlineUsers.get(),
+                (sent - lastSentMessages) / intervalSeconds, (delivered - lastDeliveredMessages) / intervalSeconds,
+                intervalLatency.getValueAtPercentile(50) / OUTPUT_SCALE,
+                intervalLatency.getValueAtPercentile(99) / OUTPUT_SCALE,
+                intervalLatency.getMaxValue() / OUTPUT_SCALE);
+
+        lastSentMessages = sent;
+        lastDeliveredMessages = delivered;
+    }
+
+    /**
+     * Wypisuje podsumowanie całego testu wraz z rozkładem opóźnień dostarczenia wiadomości w milisekundach.
+     *
+     * @param out strumień raportu
+     * @param durationSeconds czas trwania testu w sekundach
+     */
+    synchronized void printSummary(PrintStream out, double durationSeconds) {
+        intervalLatency = latencyRecorder.getIntervalHistogram(intervalLatency);
+        totalLatency.add(intervalLatency);
+
+        long sent = sentMessages.sum();
+        long delivered = deliveredMessages.sum();
+
+        out.println();
+        out.printf("Czas testu: %.1f s%n", durationSeconds);
+        out.printf("Połączenia użytkowników: %d, błędy klientów: %d%n", connections.sum(), errors.sum());
+        out.printf("Wiadomości wysłane: %d, dostarczone: %d, niedostarczone: %d%n", sent, delivered, sent - delivered);
+        out.printf("Przepustowość serwera: %.0f dostarczonych wiadomości/s%n", delivered / durationSeconds);
+        out.printf("Opóźnienie dostarczenia [ms]: p50: %.2f, p90: %.2f, p99: %.2f, p99.9: %.2f, max: %.2f%n",
+                totalLatency.getValueAtPercentile(50) / OUTPUT_SCALE,
+                totalLatency.getValueAtPercentile(90) / OUTPUT_SCALE,
+                totalLatency.getValueAtPercentile(99) / OUTPUT_SCALE,
+                totalLatency.getValueAtPercentile(99.9) / OUTPUT_SCALE,
+                totalLatency.getMaxValue() / OUTPUT_SCALE);
+        out.println();
+        totalLatency.outputPercentileDistribution(out, OUTPUT_SCALE);
+    }
+}
@@ -0,0 +1,84 @@
+package pl.edu.pw.s251957.loadtest;
+
+import pl.edu.pw.s251957.client.util.model.ServerConnectionConfig;
+import pl.edu.pw.s251957.server.chat.ChatServer;
+import pl.edu.pw.s251957.server.chat.ServerSettings;
+
+/** Klasa uruchamiająca test obciążeniowy {@link LoadGenerator} z ustawieniami podanymi w argumentach programu. Jeśli
+ * nie podano adresu serwera, test uruchamia lokalny {@link ChatServer} z wyłączonymi magazynami wiadomości i historii,
+ * więc mierzy tylko przekazywanie wiadomości.
+ *
+ * @see LoadGenerator
+ * @see LoadTestSettings
+ */
+public class LoadTestRunner {
+    /** Adres lokalnego serwera */
+    private static final String LOCAL_HOST = "localhost";
+
+    /**
+     * Uruchamia lokalny serwer na porcie podanym w ustawieniach.
+     *
+     * @param settings ustawienia testu
+     * @return uruchomiony serwer lub {@code null}, jeśli nie udało się go uruchomić
+     */
+    private static ChatServer startLocalServer(LoadTestSettings settings) {
+        ServerSettings serverSettings = new ServerSettings();
+        serverSettings.setServerMode(settings.getServerMode());
+        serverSettings.setOfflineStoreDirectory(null);
+        serverSettings.setHistoryDirectory(null);
+
+        ChatServer chatServer = new ChatServer(serverSettings);
+        chatServer.startServer(settings.getPort());
+
+        return chatServer.isRunning() ? chatServer : null;
+    }
+
+    /**
+     * Pokazuje dostępne ustawienia testu.
+     */
+    private static void showUsage() {
+        System.out.println("Użycie: java -jar loadtest.jar [--ustawienie=wartość ...]");
+        System.out.println("  --host, --port - serwer, domyślnie lokalny serwer na wolnym porcie");
+        System.out.println("  --server-mode - tryb lokalnego serwera (threads/virtual_threads/nio)");
+        System.out.println("  --users - liczba symulowanych użytkowników");
+        System.out.println("  --arrival-rate - liczba użytkowników dołączających na sekundę");
+        System.out.println("  --burst-size, --burst-interval - wiadomości w serii i odstęp serii w ms");
+        System.out.println("  --message-size - długość treści wiadomości");
+        System.out.println("  --churn-rate, --reconnect-delay - rozłączenia na sekundę i czas do ponownego połączenia w ms");
+        System.out.println("  --duration, --report-interval - czas testu i odstęp raportów w sekundach");
+        System.out.println("  --sender-threads - liczba wątków wysyłających wiadomości");
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadTestSettings settings;
+
+        try {
+            settings = LoadTestSettings.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            showUsage();
+            return;
+        }
+
+        ChatServer chatServer = null;
+        ServerConnectionConfig config = new ServerConnectionConfig(settings.getHost(), settings.getPort());
+
+        if(settings.getHost() == null) {
+            chatServer = startLocalServer(settings);
+
+            if(chatServer == null) {
+                return;
+            }
+
+            config = new ServerConnectionConfig(LOCAL_HOST, chatServer.getPort());
+        }
+
+        try {
+            new LoadGenerator(settings, config).run(System.out);
+        } finally {
+            if(chatServer != null) {
+                chatServer.stopServer();
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package pl.edu.pw.s251957.loadtest;
+
+import pl.edu.pw.s251957.server.chat.ServerMode;
+
+/** Klasa przedstawiająca ustawienia testu obciążeniowego {@link LoadGenerator}. Każde ustawienie ma wartość domyślną,
+ * więc wystarczy zmienić tylko wybrane z nich. Ustawienia odczytywane są z argumentów programu w postaci
+ * {@code --nazwa=wartość}.
+ *
+ * @see LoadGenerator
+ * @see LoadTestRunner
+ */
+public class LoadTestSettings {
+    /** Adres serwera lub {@code null}, jeśli test ma uruchomić lokalny serwer */
+    private String host;
+    /** Port serwera, dla lokalnego serwera {@code 0} oznacza wolny port */
+    private int port;
+    /** Tryb obsługi połączeń lokalnego serwera */
+    private ServerMode serverMode;
+    /** Liczba symulowanych użytkowników */
+    private int users;
+    /** Liczba użytkowników dołączających na sekundę */
+    private double arrivalRate;
+    /** Liczba wiadomości w jednej serii */
+    private int burstSize;
+    /** Odstęp pomiędzy seriami wiadomości jednego użytkownika w milisekundach */
+    private long burstInterval;
+    /** Długość treści wiadomości w znakach */
+    private int messageSize;
+    /** Liczba użytkowników rozłączających się na sekundę */
+    private double churnRate;
+    /** Czas od rozłączenia do ponownego połączenia użytkownika w milisekundach */
+    private long reconnectDelay;
+    /** Czas trwania testu w sekundach */
+    private int duration;
+    /** Odstęp pomiędzy raportami częściowymi w sekundach */
+    private int reportInterval;
+    /** Liczba wątków wysyłających wiadomości */
+    private int senderThreads;
+
+    /**
+     * Tworzy ustawienia z wartościami domyślnymi.
+     */
+    public LoadTestSettings() {
+        this.host = null;
+        this.port = 0;
+        this.serverMode = ServerMode.THREADS;
+        this.users = 1000;
+        this.arrivalRate = 200;
+        this.burstSize = 5;
+        this.burstInterval = 1000;
+        this.messageSize = 64;
+        this.churnRate = 5;
+        this.reconnectDelay = 1000;
+        this.duration = 30;
+        this.reportInterval = 1;
+        this.senderThreads = Runtime.getRuntime().availableProcessors() * 2;
+    }
+
+    /**
+     * Odczytuje ustawienia z argumentów programu w postaci {@code --nazwa=wartość}. Pominięte ustawienia mają wartości
+     * domyślne.
+     *
+     * @param args argumenty programu
+     * @return ustawienia testu
+     * @throws IllegalArgumentException nieznane ustawienie lub niepoprawna wartość
+     */
+    public static LoadTestSettings parse(String[] args) {
+        LoadTestSettings settings = new LoadTestSettings();
+
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+
+            if(!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Niepoprawny argument: " + arg);
+            }
+
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+
+            try {
+                settings.set(name, value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Niepoprawna wartość ustawienia " + name + ": " + value);
+            }
+        }
+
+        return settings;
+    }
+
+    /**
+     * Ustawia wartość ustawienia o podanej nazwie.
+     *
+     * @param name nazwa ustawienia
+     * @param value wartość ustawienia
+     * @throws IllegalArgumentException nieznane ustawienie lub niepoprawna wartość
+     */
+    private void set(String name, String value) {
+        switch (name) {
+            case "host":
+                host = value;
+                break;
+            case "port":
+                port = Integer.parseInt(value);
+                break;
+            case "server-mode":
+                serverMode = ServerMode.valueOf(value.toUpperCase());
+                break;
+            case "users":
+                users = Integer.parseInt(value);
+                break;
+            case "arrival-rate":
+                arrivalRate = Double.parseDouble(value);
+                break;
+            case "burst-size":
+                burstSize = Integer.parseInt(value);
+                break;
+            case "burst-interval":
+                burstInterval = Long.parseLong(value);
+                break;
+            case "message-size":
+                messageSize = Integer.parseInt(value);
+                break;
+            case "churn-rate":
+                churnRate = Double.parseDouble(value);
+                break;
+            case "reconnect-delay":
+                reconnectDelay = Long.parseLong(value);
+                break;
+            case "duration":
+                duration = Integer.parseInt(value);
+                break;
+            case "report-interval":
+                reportInterval = Integer.parseInt(value);
+                break;
+            case "sender-threads":
+                senderThreads = Integer.parseInt(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Nieznane ustawienie: " + name);
+        }
+    }
+
+    /**
+     * Zwraca adres serwera.
+     *
+     * @return adres serwera lub {@code null}, jeśli test ma uruchomić lokalny serwer
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Zwraca port serwera.
+     *
+     * @return port serwera
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Zwraca tryb obsługi połączeń lokalnego serwera.
+     *
+     * @return tryb obsługi połączeń
+     */
+    public ServerMode getServerMode() {
+        return serverMode;
+    }
+
+    /**
+     * Zwraca liczbę symulowanych użytkowników.
+     *
+     * @return liczba użytkowników
+     */
+    public int getUsers() {
+        return users;
+    }
+
+    /**
+     * Zwraca liczbę użytkowników dołączających na sekundę.
+     *
+     * @return liczba użytkowników na sekundę
+     */
+    public double getArrivalRate() {
+        return arrivalRate;
+    }
+
+    /**
+     * Zwraca liczbę wiadomości w jednej serii.
+     *
+     * @return liczba wiadomości w serii
+     */
+    public int getBurstSize() {
+        return burstSize;
+    }
+
+    /**
+     * Zwraca odstęp pomiędzy seriami wiadomości jednego użytkownika.
+     *
+     * @return odstęp w milisekundach
+     */
+    public long getBurstInterval() {
+        return burstInterval;
+    }
+
+    /**
+     * Zwraca długość treści wiadomości.
+     *
+     * @return długość treści w znakach
+     */
+    public int getMessageSize() {
+        return messageSize;
+    }
+
+    /**
+     * Zwraca liczbę użytkowników rozłączających się na sekundę.
+     *
+     * @return liczba użytkowników na sekundę
+     */
+    public double getChurnRate() {
+        return churnRate;
+    }
+
+    /**
+     * Zwraca czas od rozłączenia do ponownego połączenia użytkownika.
+     *
+     * @return czas w milisekundach
+     */
+    public long getReconnectDelay() {
+        return reconnectDelay;
+    }
+
+    /**
+     * Zwraca czas trwania testu.
+     *
+     * @return czas w sekundach
+     */
+    public int getDuration() {
+        return duration;
+    }
+
+    /**
+     * Zwraca odstęp pomiędzy raportami częściowymi.
+     *
+     * @return odstęp w sekundach
+     */
+    public int getReportInterval() {
+        return reportInterval;
+    }
+
+    /**
+     * Zwraca liczbę wątków wysyłających wiadomości.
+     *
+     * @return liczba wątków
+     */
+    public int getSenderThreads() {
+        return senderThreads;
+    }
+}
@@ -0,0 +1,230 @@
+package pl.edu.pw.s251957.loadtest;
+
+import pl.edu.pw.s251957.client.chat.ClientHandler;
+import pl.edu.pw.s251957.client.chat.ClientSenderSocket;
+import pl.edu.pw.s251957.client.chat.ClientUI;
+import pl.edu.pw.s251957.client.util.model.ServerConnectionConfig;
+import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.HistoryPage;
+import pl.edu.pw.s251957.common.Response;
+
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+/** Symulowany użytkownik komunikatora. Łączy się z serwerem przez zwykłego klienta {@link ClientHandler} i zastępuje
+ * jego interfejs użytkownika - nie wyświetla niczego, a jedynie zapisuje statystyki. Każda wysyłana wiadomość zawiera
+ * chwilę wysłania, więc adresat wyznacza opóźnienie jej dostarczenia. Po każdym połączeniu użytkownik otrzymuje nowy
+ * nick, aby ponowne połączenie nie czekało na zwolnienie poprzedniego. Implementuje interfejs {@link ClientUI}.
+ *
+ * @see ClientHandler
+ * @see LoadGenerator
+ */
+public class SimulatedUser implements ClientUI {
+    /** Początek treści wiadomości testowej, po którym następuje chwila wysłania */
+    private static final String MESSAGE_PREFIX = "#lt:";
+    /** Znak kończący chwilę wysłania w treści wiadomości */
+    private static final char TIMESTAMP_END = ';';
+
+    /** Numer użytkownika */
+    private final int id;
+    /** Generator obciążenia zarządzający użytkownikiem */
+    private final LoadGenerator generator;
+    /** Statystyki testu */
+    private final LoadStatistics statistics;
+    /** Konfiguracja połączenia z serwerem */
+    private final ServerConnectionConfig config;
+    /** Dopełnienie treści wiadomości do zadanej długości */
+    private final String padding;
+
+    /** Klient bieżącego połączenia */
+    private ClientHandler clientHandler;
+    /** Nick bieżącego połączenia */
+    private volatile String nick;
+    /** Numer kolejnego połączenia użytkownika */
+    private int session;
+
+    /** Blokada stanu połączenia, niezależna od wysyłania wiadomości */
+    private final Object stateLock = new Object();
+    /** Flaga czy użytkownik został przyjęty przez serwer */
+    private volatile boolean online;
+    /** Zaplanowane serie wiadomości lub {@code null}, jeśli użytkownik nie jest połączony */
+    private ScheduledFuture<?> bursts;
+
+    /**
+     * Tworzy symulowanego użytkownika.
+     *
+     * @param id numer użytkownika
+     * @param generator generator obciążenia zarządzający użytkownikiem
+     * @param statistics statystyki testu
+     * @param config konfiguracja połączenia z serwerem
+     * @param padding dopełnienie treści wiadomości
+     */
+    SimulatedUser(int id, LoadGenerator generator, LoadStatistics statistics, ServerConnectionConfig config,
+                  String padding) {
+        this.id = id;
+        this.generator = generator;
+        this.statistics = statistics;
+        this.config = config;
+        this.padding = padding;
+    }
+
+    /**
+     * Łączy użytkownika z serwerem pod nowym nickiem. Użytkownik staje się dostępny dla innych po otrzymaniu listy
+     * użytkowników od serwera.
+     */
+    synchronized void connect() {
+        if(clientHandler != null && clientHandler.isConnected()) {
+            return;
+        }
+
+        nick = "uzytkownik" + id + "-" + session++;
+        clientHandler = new ClientHandler(new ClientSenderSocket());
+        clientHandler.setClientUI(this);
+        clientHandler.connect(nick, config);
+    }
+
+    /**
+     * Rozłącza użytkownika z serwerem.
+     */
+    synchronized void disconnect() {
+        if(clientHandler != null) {
+            clientHandler.closeClientConnection();
+        }
+    }
+
+    /**
+     * Wysyła serię wiadomości do podanego użytkownika, rozpoczynając z nim wcześniej konwersację, jeśli jeszcze nie
+     * była prowadzona.
+     *
+     * @param addressee adresat wiadomości
+     * @param burstSize liczba wiadomości w serii
+     */
+    synchronized void sendBurst(SimulatedUser addressee, int burstSize) {
+        String addresseeNick = addressee.getNick();
+
+        if(!online || addresseeNick == null) {
+            return;
+        }
+
+        if(!clientHandler.isConversationSet(addresseeNick)) {
+            clientHandler.startConversation(addresseeNick);
+        }
+
+        for (int i = 0; i < burstSize; i++) {
+            String message = MESSAGE_PREFIX + System.nanoTime() + TIMESTAMP_END + padding;
+            clientHandler.send(new Command(Command.CommandType.SEND_MESSAGE, nick, addresseeNick, message));
+            statistics.recordSent();
+        }
+    }
+
+    /**
+     * Zwraca nick bieżącego połączenia.
+     *
+     * @return nick użytkownika
+     */
+    String getNick() {
+        return nick;
+    }
+
+    /**
+     * Informuje czy użytkownik został przyjęty przez serwer.
+     *
+     * @return flaga czy użytkownik jest połączony
+     */
+    boolean isOnline() {
+        return online;
+    }
+
+    @Override
+    public void showDialog(String title, String message, boolean error) {
+        if(error) {
+            statistics.recordError();
+        }
+    }
+
+    @Override
+    public void showUsers(List<String> users) {
+    }
+
+    @Override
+    public void addUser(String user) {
+    }
+
+    @Override
+    public void removeUser(String user) {
+    }
+
+    /**
+     * Rozpoczyna serie wiadomości po przyjęciu przez serwer i przerywa je po rozłączeniu.
+     *
+     * @param isConnected flaga czy istnieje połączenie
+     */
+    @Override
+    public void changeConnectionStatus(boolean isConnected) {
+        synchronized (stateLock) {
+            if(isConnected == online) {
+                return;
+            }
+
+            online = isConnected;
+
+            if(isConnected) {
+                statistics.userOnline();
+                bursts = generator.scheduleBursts(this);
+            } else {
+                statistics.userOffline();
+
+                if(bursts != null) {
+                    bursts.cancel(false);
+                    bursts = null;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void closeClientChat() {
+        disconnect();
+    }
+
+    /**
+     * Zapisuje opóźnienie dostarczenia wiadomości testowej.
+     *
+     * @param response odpowiedź z serwera
+     */
+    @Override
+    public void receiveMessage(Response response) {
+        String message = response.getMessage();
+
+        if(message == null || !message.startsWith(MESSAGE_PREFIX)) {
+            return;
+        }
+
+        int end = message.indexOf(TIMESTAMP_END, MESSAGE_PREFIX.length());
+        statistics.recordDelivered(Long.parseLong(message.substring(MESSAGE_PREFIX.length(), end)));
+    }
+
+    @Override
+    public void receiveEndingMessage(Response response) {
+    }
+
+    @Override
+    public void showHistory(HistoryPage page) {
+    }
+
+    @Override
+    public void showRoom(String roomName, List<String> members) {
+    }
+
+    @Override
+    public void addRoomMember(String roomName, String member) {
+    }
+
+    @Override
+    public void removeRoomMember(String roomName, String member) {
+    }
+
+    @Override
+    public void receiveRoomMessage(Response response) {
+    }
+}
@@ -2,9 +2,9 @@ package pl.edu.pw.s251957.client;
 
 import pl.edu.pw.s251957.client.chat.ClientHandler;
 import pl.edu.pw.s251957.client.chat.ClientSenderSocket;
-import pl.edu.pw.s251957.client.chat.ClientUI;
 import pl.edu.pw.s251957.client.gui.Client;
 import pl.edu.pw.s251957.client.gui.ClientSwing;
+import pl.edu.pw.s251957.client.gui.SwingUpdateDispatcher;
 
 /** Klasa uruchomieniowa klienta.
  *
@@ -14,13 +14,15 @@ import pl.edu.pw.s251957.client.gui.ClientSwing;
  */
 public class ClientMain {
 	/**
-	 * Inicjalizuje klienta i uruchamia go.
+	 * Inicjalizuje klienta i uruchamia go. Zmiany interfejsu użytkownika przekazywane są do wątku obsługi zdarzeń
+	 * przez {@link SwingUpdateDispatcher}.
 	 * 
 	 * @param args parametry wejściowe
 	 */
     public static void main(String[] args) {
         Client client = new ClientHandler(new ClientSenderSocket());
-        ClientUI clientUI = new ClientSwing(client);
-        client.setClientUI(clientUI);
+        SwingUpdateDispatcher dispatcher = new SwingUpdateDispatcher(new ClientSwing(client));
+        dispatcher.start();
+        client.setClientUI(dispatcher);
     }
 }
@@ -3,21 +3,39 @@ package pl.edu.pw.s251957.client.chat;
 import pl.edu.pw.s251957.client.gui.Client;
 import pl.edu.pw.s251957.client.util.ServerConfigurator;
 import pl.edu.pw.s251957.client.util.model.ServerConnectionConfig;
+import pl.edu.pw.s251957.common.BinaryCodec;
 import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.CompressingCodec;
+import pl.edu.pw.s251957.common.HistoryPage;
+import pl.edu.pw.s251957.common.ProtocolHandshake;
 import pl.edu.pw.s251957.common.Response;
+import pl.edu.pw.s251957.common.TlsContexts;
 import pl.edu.pw.s251957.client.util.UnacceptableClientConfigException;
 
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /** Główna klasa klienta odpowiadająca za nawiązanie połączenia z serwerem, wysyłanie i odbieranie kumunikatów z
- *  i do interfejsu użytkownika oraz zarządzanie operacjami wejścia i wyjścia z serwera. Implementuje interfejs
- *  {@link Client}.
+ *  i do interfejsu użytkownika oraz zarządzanie operacjami wejścia i wyjścia z serwera. Po zerwaniu połączenia
+ *  próbuje połączyć się ponownie z rosnącymi odstępami, ponownie wysyłając żądanie połączenia z tym samym nickiem
+ *  i zachowując prowadzone konwersacje. Połączenia szyfrowane TLS korzystają z jednej fabryki gniazd dla danej
+ *  konfiguracji, więc ponowne połączenie wznawia sesję TLS bez pełnego uzgodnienia. Klient zapamiętuje numery sesji
+ *  użytkowników nadane przez serwer i adresuje nimi wiadomości konwersacji zamiast nicków. Wiadomości konwersacji
+ *  wysyłane są przez okno niepotwierdzonych wiadomości {@link ClientSenderSocket}, więc wiadomości wysłane przed
+ *  zerwaniem połączenia i niepotwierdzone przez serwer zostają wysłane ponownie po ponownym połączeniu. Implementuje
+ *  interfejs {@link Client}.
  *
  * @author Cezary Sanecki
  * @version 1.0
@@ -25,24 +43,55 @@ import java.util.Set;
  * @see ClientUI
  * @see ClientSenderSocket
  * @see ClientReceiverSocket
+ * @see ConnectionState
  * @since 01.11.2019r.
  */
 public class ClientHandler implements Client {
+    /** Początkowy odstęp między próbami ponownego połączenia w milisekundach */
+    private static final long INITIAL_RECONNECT_DELAY = 500;
+    /** Maksymalny odstęp między próbami ponownego połączenia w milisekundach */
+    private static final long MAX_RECONNECT_DELAY = 30000;
+    /** Liczba prób ponownego połączenia, po której klient uznaje połączenie za utracone */
+    private static final int MAX_RECONNECT_ATTEMPTS = 10;
+    /** Wątek planujący próby ponownego połączenia, wspólny dla wszystkich klientów */
+    private static final ScheduledExecutorService RECONNECT_SCHEDULER = createReconnectScheduler();
+
     /** Interfejs uzytkownika */
     private ClientUI clientUI;
 
     /** Zmienna odpowiedzialna za wysyłanie komunikatów do serwera */
     private ClientSenderSocket clientSender;
     /** Zmienna odpowiedzialna za odbieranie komunikatów z serwera */
-    private ClientReceiverSocket clientReceiver;
+    private volatile ClientReceiverSocket clientReceiver;
 
     /** Nick reprezentujący klienta */
     private String nick;
     /** Gniazdo połączenia z serwerem */
     private Socket socket;
-
-    /** Zbiór użytkowników, z którymi prowadzona jest obecnie komunikacja w komunikatorze */
+    /** Wersja protokołu binarnego uzgodniona z serwerem */
+    private int protocolVersion;
+    /** Koder ramek połączenia z kompresją lub {@code null}, zamykany razem z połączeniem */
+    private CompressingCodec codec;
+    /** Stan połączenia z serwerem */
+    private final AtomicReference<ConnectionState> state;
+    /** Konfiguracja połączenia z serwerem, używana przy ponownym łączeniu */
+    private volatile ServerConnectionConfig config;
+    /** Liczba prób ponownego połączenia od zerwania połączenia */
+    private volatile int reconnectAttempts;
+    /** Fabryka gniazd TLS z pamięcią podręczną sesji, tworzona dla konfiguracji {@link #socketFactoryConfig} */
+    private SSLSocketFactory socketFactory;
+    /** Konfiguracja, dla której utworzono fabrykę gniazd TLS */
+    private ServerConnectionConfig socketFactoryConfig;
+    /** Flaga czy klient proponuje serwerowi kompresję komunikatów */
+    private volatile boolean compression = true;
+
+    /** Zbiór użytkowników, z którymi prowadzona jest obecnie komunikacja w komunikatorze, zmieniany także przez wątek
+     * odbierający komunikaty */
     private Set<String> nickConversations;
+    /** Numery sesji użytkowników według nicków, zmieniane przez wątek odbierający komunikaty */
+    private final Map<String, Integer> sessionIds;
+    /** Nicki użytkowników według numerów sesji, zmieniane przez wątek odbierający komunikaty */
+    private final Map<Integer, String> sessionNicks;
 
     /**
      * Inicjalizuje nowy obiekt klasy {@code ClientHandler}. Przyjmuje jako argument obiekt odpowiedzialny za wysyłanie
@@ -52,8 +101,25 @@ public class ClientHandler implements Client {
      * @param clientSender zmienna odpowiedzialna za wysyłanie komuniaktów do serwera
      */
     public ClientHandler(ClientSenderSocket clientSender) {
-        this.nickConversations = new HashSet<>();
+        this.nickConversations = ConcurrentHashMap.newKeySet();
+        this.sessionIds = new ConcurrentHashMap<>();
+        this.sessionNicks = new ConcurrentHashMap<>();
         this.clientSender = clientSender;
+        this.clientSender.setAddressing(this::addressMessage);
+        this.state = new AtomicReference<>(ConnectionState.DISCONNECTED);
+    }
+
+    /**
+     * Tworzy wątek planujący próby ponownego połączenia. Wątek nie wstrzymuje zakończenia aplikacji.
+     *
+     * @return wykonawca planujący próby ponownego połączenia
+     */
+    private static ScheduledExecutorService createReconnectScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "client-reconnect");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
@@ -65,32 +131,114 @@ public class ClientHandler implements Client {
     @Override
     public void connect(String nick) {
         try {
-            makeConnection(ServerConfigurator.readConfigFile());
-            runClientReceiver();
-            setUserInfo(nick);
+            connect(nick, ServerConfigurator.readConfigFile());
         } catch (UnacceptableClientConfigException e) {
             clientUI.showDialog("Błąd", e.getMessage(), true);
         }
     }
 
     /**
-     * Przy pomocy pliku konfiguracyjnego ustanawia nowe połączenie z serwerem. Następnie pobiera strumienie i
-     * deleguje je do opowiednich klas - {@link ClientSenderSocket} i {@link ClientReceiverSocket}
+     * Ustanawia nowe połączenie z serwerem o podanej konfiguracji przyjmując jako parametr nick użytkownika
+     * {@code nick}. Pozwala połączyć się z serwerem bez pliku konfiguracyjnego, np. symulowanym użytkownikom.
+     * Przerywa trwające próby ponownego połączenia.
+     *
+     * @param nick podany nick przez klienta
+     * @param config konfiguracja połączenia z serwerem
+     */
+    public void connect(String nick, ServerConnectionConfig config) {
+        ConnectionState previous = state.get();
+
+        if(previous == ConnectionState.CONNECTING || previous == ConnectionState.CONNECTED
+                || !state.compareAndSet(previous, ConnectionState.CONNECTING)) {
+            return;
+        }
+
+        this.config = config;
+
+        try {
+            synchronized (this) {
+                closeStreams();
+                openConnection(nick);
+            }
+        } catch (UnacceptableClientConfigException e) {
+            state.set(ConnectionState.DISCONNECTED);
+            clientUI.showDialog("Błąd", e.getMessage(), true);
+        }
+    }
+
+    /**
+     * Nawiązuje połączenie z serwerem, uruchamia odbieranie komunikatów i wysyła żądanie połączenia z nickiem.
+     *
+     * @param nick nick użytkownika
+     * @throws UnacceptableClientConfigException błąd połączenia z serwerem
+     */
+    private void openConnection(String nick) throws UnacceptableClientConfigException {
+        makeConnection(config);
+        runClientReceiver();
+        setUserInfo(nick);
+    }
+
+    /**
+     * Przy pomocy pliku konfiguracyjnego ustanawia nowe połączenie z serwerem. Następnie pobiera strumienie,
+     * deleguje je do opowiednich klas - {@link ClientSenderSocket} i {@link ClientReceiverSocket} - i uzgadnia z
+     * serwerem wersję protokołu binarnego. Od wersji z kompresją ramki kodowane są koderem {@link CompressingCodec}.
+     * Numery sesji poprzedniego połączenia są zapominane, ponieważ serwer nadaje je od nowa. Wiadomości otrzymują
+     * numery do potwierdzenia, jeśli serwer potwierdza wiadomości.
      *
      * @param config konfiguracja połączenia z serwerem
      * @throws UnacceptableClientConfigException wyjątek informujący o tym czy danego połączenie jest akceptowalne
      */
     private void makeConnection(ServerConnectionConfig config) throws UnacceptableClientConfigException {
+        clearSessions();
+
         try {
-            socket = new Socket(config.getHost(), config.getPort());
+            socket = createSocket(config);
             clientReceiver = new ClientReceiverSocket(this);
-            clientReceiver.setObjectInputStream(new ObjectInputStream(socket.getInputStream()));
-            clientSender.setObjectOutputStream(new ObjectOutputStream(socket.getOutputStream()));
+            clientReceiver.setInputStream(socket.getInputStream());
+            clientSender.setOutputStream(socket.getOutputStream());
+            clientSender.sendHandshake();
+            protocolVersion = clientReceiver.receiveHandshake();
+
+            if(protocolVersion >= ProtocolHandshake.COMPRESSION_VERSION) {
+                codec = new CompressingCodec(new BinaryCodec(),
+                        compression ? CompressingCodec.DEFAULT_THRESHOLD : CompressingCodec.NO_COMPRESSION, null);
+                clientReceiver.setCodec(codec);
+                clientSender.setCodec(codec);
+            }
+
+            clientSender.setAcknowledgments(protocolVersion >= ProtocolHandshake.ACKNOWLEDGMENTS_VERSION);
         } catch (IOException e) {
+            closeSocket();
             throw new UnacceptableClientConfigException("Błąd połączenia z serwerem");
         }
     }
 
+    /**
+     * Tworzy gniazdo połączenia z serwerem. Gniazdo TLS sprawdza, czy certyfikat serwera wystawiono dla adresu hosta.
+     *
+     * @param config konfiguracja połączenia z serwerem
+     * @return gniazdo połączenia z serwerem
+     * @throws IOException błąd połączenia lub odczytu magazynu zaufanych certyfikatów
+     */
+    private Socket createSocket(ServerConnectionConfig config) throws IOException {
+        if(!config.isTls()) {
+            return new Socket(config.getHost(), config.getPort());
+        }
+
+        if(socketFactory == null || socketFactoryConfig != config) {
+            socketFactory = TlsContexts.clientContext(config.getTrustStore(), config.getTrustStorePassword())
+                    .getSocketFactory();
+            socketFactoryConfig = config;
+        }
+
+        SSLSocket sslSocket = (SSLSocket) socketFactory.createSocket(config.getHost(), config.getPort());
+        SSLParameters parameters = sslSocket.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        sslSocket.setSSLParameters(parameters);
+
+        return sslSocket;
+    }
+
     /**
      * Uruchamia obiekt klasy {@link ClientReceiverSocket} opowiedzialny za odbieranie komunikatów z serwera.
      */
@@ -100,13 +248,16 @@ public class ClientHandler implements Client {
 
     /**
      * Ustawia podstawowe informacje o kliencie. Wysyła informację do serwera z żądaniem  {@link Command}
-     * o podłącznie do komunikatora.
+     * o podłącznie do komunikatora. Jeśli serwer obsługuje kompresję, a klient jej nie wyłączył, żądanie
+     * zawiera propozycję kompresji odpowiedzi.
      *
      * @param nick nick użytkownika
      */
     private void setUserInfo(String nick) {
         try {
-            clientSender.send(new Command(Command.CommandType.CONNECT, nick, "", ""));
+            String offer = compression && protocolVersion >= ProtocolHandshake.COMPRESSION_VERSION
+                    ? CompressingCodec.DEFLATE : "";
+            clientSender.send(new Command(Command.CommandType.CONNECT, nick, "", offer));
             nickConversations.add(nick);
             this.nick = nick;
         } catch (IOException e) {
@@ -115,26 +266,87 @@ public class ClientHandler implements Client {
     }
 
     /**
-     * Wysyła kommunikat {@link Command} do serwera. Metoda pochodząca z interfejsu {@link Client}.
+     * Wysyła kommunikat {@link Command} do serwera. Wiadomości konwersacji przechodzą przez okno niepotwierdzonych
+     * wiadomości. Metoda pochodząca z interfejsu {@link Client}.
      *
      * @param command żądanie do serwera
      */
     @Override
     public void send(Command command) {
         try {
-            clientSender.send(command);
+            if(command.getCommandType() == Command.CommandType.SEND_MESSAGE) {
+                clientSender.sendMessage(command);
+            } else {
+                clientSender.send(command);
+            }
         } catch(IOException e) {
             clientUI.showDialog("Błąd", "Błąd wysłania komunikatu", true);
         }
     }
 
+    /**
+     * Adresuje wiadomość przed wysłaniem. Wiadomość do użytkownika, którego numer sesji jest znany, wysyłana jest jako
+     * {@link Command.CommandType#SESSION_MESSAGE} bez nicków, z zachowaniem numeru wiadomości.
+     *
+     * @param message wiadomość adresowana nickiem
+     * @return wiadomość do wysłania
+     */
+    private Command addressMessage(Command message) {
+        Integer addresseeId = protocolVersion >= ProtocolHandshake.SESSION_IDS_VERSION
+                && message.getAddresseeNick() != null ? sessionIds.get(message.getAddresseeNick()) : null;
+
+        return addresseeId == null ? message
+                : new Command(addresseeId, message.getMessage()).withMessageId(message.getMessageId());
+    }
+
+    /**
+     * Usuwa z okna niepotwierdzonych wiadomości wiadomość potwierdzoną przez serwer.
+     *
+     * @param response potwierdzenie z numerem wiadomości
+     */
+    public void acknowledgeMessage(Response response) {
+        clientSender.acknowledge(response.getMessageId());
+    }
+
+    /**
+     * Usuwa z okna niepotwierdzonych wiadomości wiadomość odrzuconą przez serwer i informuje o tym użytkownika.
+     * Wiadomość, którą serwer pozwala ponowić, np. po przekroczeniu limitu wiadomości, wraca do kolejki i zostanie
+     * wysłana ponownie bez informowania użytkownika.
+     *
+     * @param response odrzucenie z numerem wiadomości i powodem
+     */
+    public void rejectMessage(Response response) {
+        if(response.getRetryAfter() > 0 && clientSender.retry(response.getMessageId(), response.getRetryAfter())) {
+            return;
+        }
+
+        Command message = clientSender.reject(response.getMessageId());
+
+        if(message == null) {
+            showError(response.getMessage());
+        } else {
+            showError("Wiadomość do " + message.getAddresseeNick() + " nie została dostarczona: "
+                    + response.getMessage());
+        }
+    }
+
     /**
      * W przypadku odrzucenia połączenia do komunikatora przez serwer klient zostaje o tym poinformowany i kończy
-     * połączenie informując użytkownika przez interfejsu użytkownika.
+     * połączenie informując użytkownika przez interfejsu użytkownika. Podczas ponownego łączenia nick może być
+     * jeszcze zajęty przez zerwane połączenie, którego serwer nie zdążył zamknąć, więc klient próbuje ponownie
+     * później.
      *
      * @param message informacja, dlaczego połączenie zostało odrzucone
      */
     public void rejectConnection(String message) {
+        if(state.get() == ConnectionState.RECONNECTING) {
+            closeStreams();
+            scheduleReconnect();
+            return;
+        }
+
+        state.set(ConnectionState.DISCONNECTED);
+        clientSender.discardMessages();
         clientUI.showDialog("Błąd", message, true);
         nickConversations.remove(nick);
         nick = null;
@@ -142,14 +354,81 @@ public class ClientHandler implements Client {
     }
 
     /**
-     * Wysyła polecenie do interfejsu użytkownika, aby pokazał uzyskanych, aktywnych użytkowników.
+     * Wysyła polecenie do interfejsu użytkownika, aby pokazał uzyskanych, aktywnych użytkowników, i zapamiętuje ich
+     * numery sesji.
      *
      * @param users aktywni użytkownicy
+     * @param ids numery sesji w kolejności użytkowników lub {@code null}, jeśli serwer ich nie nadaje
      */
-    public void showActiveUsers(List<String> users) {
+    public void showActiveUsers(List<String> users, int[] ids) {
+        clearSessions();
+
+        for (int i = 0; ids != null && i < ids.length && i < users.size(); i++) {
+            putSession(users.get(i), ids[i]);
+        }
+
         clientUI.showUsers(users);
     }
 
+    /**
+     * Wysyła polecenie do interfejsu użytkownika, aby dodał użytkownika, który dołączył do komunikatora, i zapamiętuje
+     * jego numer sesji.
+     *
+     * @param user nick użytkownika
+     * @param ids numer sesji użytkownika w jednoelementowej tablicy lub {@code null}
+     */
+    public void addActiveUser(String user, int[] ids) {
+        if(ids != null && ids.length > 0) {
+            putSession(user, ids[0]);
+        }
+
+        clientUI.addUser(user);
+    }
+
+    /**
+     * Wysyła polecenie do interfejsu użytkownika, aby usunął użytkownika, który opuścił komunikator, i zapomina jego
+     * numer sesji.
+     *
+     * @param user nick użytkownika
+     */
+    public void removeActiveUser(String user) {
+        Integer id = sessionIds.remove(user);
+
+        if(id != null) {
+            sessionNicks.remove(id, user);
+        }
+
+        clientUI.removeUser(user);
+    }
+
+    /**
+     * Zapamiętuje numer sesji użytkownika. Numer 0 oznacza użytkownika bez numeru, np. z innego węzła klastra.
+     *
+     * @param user nick użytkownika
+     * @param id numer sesji
+     */
+    private void putSession(String user, int id) {
+        if(id == 0) {
+            return;
+        }
+
+        Integer previous = sessionIds.put(user, id);
+
+        if(previous != null) {
+            sessionNicks.remove(previous, user);
+        }
+
+        sessionNicks.put(id, user);
+    }
+
+    /**
+     * Zapomina numery sesji wszystkich użytkowników.
+     */
+    private void clearSessions() {
+        sessionIds.clear();
+        sessionNicks.clear();
+    }
+
     /**
      * Wysyła informację do interfejsu użytkownika.
      *
@@ -170,10 +449,14 @@ public class ClientHandler implements Client {
 
     /**
      * Zamyka połączenie z serwerem. W przypadku klient jest połączony z serwerem wysyła do serwera stosowny
-     * komunikat {@link Command}. Metoda pochodząca z interfejsu {@link Client}.
+     * komunikat {@link Command}. Niepotwierdzone wiadomości zostają porzucone. Metoda pochodząca z interfejsu
+     * {@link Client}.
      */
     @Override
     public void closeClientConnection() {
+        state.set(ConnectionState.DISCONNECTED);
+        clientSender.discardMessages();
+
         if(isConnected()) {
             send(new Command(Command.CommandType.DISCONNECT, nick, "", "Koniec połączenia"));
         }
@@ -205,6 +488,15 @@ public class ClientHandler implements Client {
      * Zamyka połączenie z serwerem oraz wszystkie strumienie. Informuje o zakończeniu połączenia interfejs użytkownika.
      */
     private void closeConnection() {
+        closeStreams();
+        clientUI.changeConnectionStatus(false);
+    }
+
+    /**
+     * Zamyka połączenie z serwerem oraz wszystkie strumienie bez informowania interfejsu użytkownika. Zamyka także
+     * koder ramek połączenia.
+     */
+    private synchronized void closeStreams() {
         if(isConnected()) {
             try {
                 clientReceiver.closeReceiver();
@@ -215,7 +507,10 @@ public class ClientHandler implements Client {
             }
         }
 
-        clientUI.changeConnectionStatus(false);
+        if(codec != null) {
+            codec.close();
+            codec = null;
+        }
     }
 
     /**
@@ -232,22 +527,122 @@ public class ClientHandler implements Client {
     }
 
     /**
-     * Informuje interfejs użytkownika o zmianie statusu połączenia z serwerem.
+     * Informuje interfejs użytkownika o zmianie statusu połączenia z serwerem i wznawia wysyłanie wiadomości, w tym
+     * niepotwierdzonych wiadomości z zerwanego połączenia.
      */
     public void informUserConnected() {
-        clientUI.changeConnectionStatus(true);
+        if(state.compareAndSet(ConnectionState.CONNECTING, ConnectionState.CONNECTED)
+                || state.compareAndSet(ConnectionState.RECONNECTING, ConnectionState.CONNECTED)) {
+            reconnectAttempts = 0;
+            clientSender.resumeMessages();
+            clientUI.changeConnectionStatus(true);
+        }
     }
 
     /**
-     * W przypadku, gdy serwer zostaje zamknięty informuje on o tym klientów.
+     * W przypadku, gdy serwer zostaje zamknięty informuje on o tym klientów. Niepotwierdzone wiadomości zostają
+     * porzucone.
      *
      * @param message treść błędu dla użytkownika
      */
     public void closeServer(String message) {
+        state.set(ConnectionState.DISCONNECTED);
+        clientSender.discardMessages();
         showError(message);
         clientUI.closeClientChat();
     }
 
+    /**
+     * Odpowiada serwerowi na sprawdzenie połączenia.
+     */
+    public void answerPing() {
+        send(new Command(Command.CommandType.PONG, nick, "", ""));
+    }
+
+    /**
+     * Obsługuje zerwanie połączenia, którego klient sam nie zamknął. Połączenie przyjęte wcześniej przez serwer jest
+     * nawiązywane ponownie, a zerwanie podczas pierwszego łączenia kończy połączenie z informacją dla użytkownika.
+     * Informacje od odbiorców zamkniętych wcześniej połączeń są pomijane.
+     *
+     * @param receiver odbiorca komunikatów zerwanego połączenia
+     */
+    public void connectionLost(ClientReceiverSocket receiver) {
+        if(receiver != clientReceiver || !isConnected()) {
+            return;
+        }
+
+        if(state.compareAndSet(ConnectionState.CONNECTED, ConnectionState.RECONNECTING)) {
+            closeConnection();
+            reconnectAttempts = 0;
+            scheduleReconnect();
+        } else if(state.get() == ConnectionState.RECONNECTING) {
+            closeStreams();
+            scheduleReconnect();
+        } else if(state.compareAndSet(ConnectionState.CONNECTING, ConnectionState.DISCONNECTED)) {
+            closeConnection();
+            closeServer("Utracono połączenie z serwerem");
+        }
+    }
+
+    /**
+     * Planuje kolejną próbę ponownego połączenia. Odstęp podwaja się z każdą próbą aż do maksymalnego, a losowa
+     * część odstępu rozprasza próby wielu klientów po awarii serwera. Po wyczerpaniu prób połączenie zostaje uznane za
+     * utracone.
+     */
+    private void scheduleReconnect() {
+        int attempt = ++reconnectAttempts;
+
+        if(attempt > MAX_RECONNECT_ATTEMPTS) {
+            if(state.get() == ConnectionState.RECONNECTING) {
+                closeConnection();
+                closeServer("Utracono połączenie z serwerem");
+            }
+
+            return;
+        }
+
+        long delay = Math.min(MAX_RECONNECT_DELAY, INITIAL_RECONNECT_DELAY << Math.min(attempt - 1, 16));
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        RECONNECT_SCHEDULER.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Próbuje ponownie połączyć się z serwerem z dotychczasowym nickiem, o ile klient nadal się łączy. Wynik próby
+     * przychodzi jako lista użytkowników, odrzucenie połączenia lub jego zerwanie.
+     */
+    private void reconnect() {
+        synchronized (this) {
+            if(state.get() != ConnectionState.RECONNECTING) {
+                return;
+            }
+
+            try {
+                openConnection(nick);
+                return;
+            } catch (UnacceptableClientConfigException ignored) {}
+        }
+
+        scheduleReconnect();
+    }
+
+    /**
+     * Włącza lub wyłącza propozycję kompresji komunikatów. Zmiana obowiązuje od następnego połączenia z serwerem.
+     *
+     * @param compression flaga czy klient proponuje kompresję
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Zwraca stan połączenia z serwerem.
+     *
+     * @return stan połączenia
+     */
+    public ConnectionState getConnectionState() {
+        return state.get();
+    }
+
     /**
      * Podaje nick użytkownika.
      *
@@ -321,6 +716,131 @@ public class ClientHandler implements Client {
     	nickConversations.remove(addresseeNick);
     }
 
+    /**
+     * Wysyła do serwera żądanie strony historii konwersacji z danym użytkownikiem {@code addresseeNick}. Metoda
+     * pochodząca z interfejsu {@link Client}.
+     *
+     * @param addresseeNick nick adresata
+     * @param cursor kursor strony lub {@link HistoryPage#NO_CURSOR} dla najnowszych wiadomości
+     */
+    @Override
+    public void requestHistory(String addresseeNick, long cursor) {
+        String message = cursor == HistoryPage.NO_CURSOR ? "" : Long.toString(cursor);
+
+        try {
+            clientSender.send(new Command(Command.CommandType.HISTORY, nick, addresseeNick, message));
+        } catch (IOException e) {
+            clientUI.showDialog("Błąd", "Błąd pobierania historii konwersacji", true);
+        }
+    }
+
+    /**
+     * Wysyła do serwera żądanie utworzenia pokoju {@code roomName}. Metoda pochodząca z interfejsu {@link Client}.
+     *
+     * @param roomName nazwa pokoju
+     */
+    @Override
+    public void createRoom(String roomName) {
+        sendRoomCommand(Command.CommandType.CREATE_ROOM, roomName, "");
+    }
+
+    /**
+     * Wysyła do serwera żądanie dołączenia do pokoju {@code roomName}. Metoda pochodząca z interfejsu {@link Client}.
+     *
+     * @param roomName nazwa pokoju
+     */
+    @Override
+    public void joinRoom(String roomName) {
+        sendRoomCommand(Command.CommandType.JOIN_ROOM, roomName, "");
+    }
+
+    /**
+     * Wysyła do serwera żądanie opuszczenia pokoju {@code roomName}. Metoda pochodząca z interfejsu {@link Client}.
+     *
+     * @param roomName nazwa pokoju
+     */
+    @Override
+    public void leaveRoom(String roomName) {
+        if(isConnected()) {
+            sendRoomCommand(Command.CommandType.LEAVE_ROOM, roomName, "");
+        }
+    }
+
+    /**
+     * Wysyła wiadomość do członków pokoju {@code roomName}. Metoda pochodząca z interfejsu {@link Client}.
+     *
+     * @param roomName nazwa pokoju
+     * @param message treść wiadomości
+     */
+    @Override
+    public void sendRoomMessage(String roomName, String message) {
+        sendRoomCommand(Command.CommandType.SEND_ROOM_MESSAGE, roomName, message);
+    }
+
+    /**
+     * Wysyła do serwera żądanie dotyczące pokoju, o ile serwer obsługuje pokoje.
+     *
+     * @param commandType typ żądania
+     * @param roomName nazwa pokoju
+     * @param message treść żądania
+     */
+    private void sendRoomCommand(Command.CommandType commandType, String roomName, String message) {
+        if(protocolVersion < ProtocolHandshake.ROOMS_VERSION) {
+            clientUI.showDialog("Błąd", "Serwer nie obsługuje pokojów", true);
+            return;
+        }
+
+        send(new Command(commandType, nick, roomName, message));
+    }
+
+    /**
+     * Przekazanie do interfejsu użytkownika pokoju, do którego dołączył użytkownik.
+     *
+     * @param roomName nazwa pokoju
+     * @param members nicki członków pokoju
+     */
+    public void showRoom(String roomName, List<String> members) {
+        clientUI.showRoom(roomName, members);
+    }
+
+    /**
+     * Przekazanie do interfejsu użytkownika nowego członka pokoju.
+     *
+     * @param roomName nazwa pokoju
+     * @param member nick członka
+     */
+    public void addRoomMember(String roomName, String member) {
+        clientUI.addRoomMember(roomName, member);
+    }
+
+    /**
+     * Przekazanie do interfejsu użytkownika członka, który opuścił pokój.
+     *
+     * @param roomName nazwa pokoju
+     * @param member nick członka
+     */
+    public void removeRoomMember(String roomName, String member) {
+        clientUI.removeRoomMember(roomName, member);
+    }
+
+    /**
+     * Przekazanie otrzymanej wiadomości do pokoju do interfejsu użytkownika.
+     *
+     * @param response odpowiedź z serwera
+     */
+    public void receiveRoomMessage(Response response) {
+        clientUI.receiveRoomMessage(response);
+    }
+
+    /**
+     * Przekazanie otrzymanej strony historii konwersacji do interfejsu użytkownika.
+     *
+     * @param page strona historii konwersacji
+     */
+    public void receiveHistory(HistoryPage page) {
+        clientUI.showHistory(page);
+    }
+
     /**
      * Przekazywanie otrzymanej wiadomości konwersacji z serwera do interfejsu użytkownika.
      *
@@ -336,6 +856,23 @@ public class ClientHandler implements Client {
         clientUI.receiveMessage(response);
     }
 
+    /**
+     * Przekazywanie otrzymanej wiadomości od użytkownika wskazanego numerem sesji. Numer zamieniany jest na nick
+     * nadawcy, a wiadomość obsługiwana jak wiadomość adresowana nickami.
+     *
+     * @param response odpowiedź z serwera z numerem sesji nadawcy
+     */
+    public void receiveSessionMessage(Response response) {
+        String hostClient = sessionNicks.get(response.getSessionIds()[0]);
+
+        if(hostClient == null) {
+            showError("Wiadomość od nieznanego użytkownika");
+            return;
+        }
+
+        receiveMessage(new Response(Response.ResponseType.MESSAGE, nick, response.getMessage(), hostClient));
+    }
+
     /**
      * Otrzymanie informacji informującej interfejs użytkownia o zakończeniu konwersacji.
      *
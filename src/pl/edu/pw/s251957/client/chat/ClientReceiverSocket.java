@@ -1,9 +1,16 @@
 package pl.edu.pw.s251957.client.chat;
 
+import pl.edu.pw.s251957.common.BinaryCodec;
+import pl.edu.pw.s251957.common.HistoryPage;
+import pl.edu.pw.s251957.common.MessageCodec;
+import pl.edu.pw.s251957.common.MessageFrames;
+import pl.edu.pw.s251957.common.ProtocolHandshake;
 import pl.edu.pw.s251957.common.Response;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.io.InputStream;
 import java.util.List;
 
 /** Klasa klienta odpowiadająca za odbieranie komunikatów z serwera i informowanie o tym zarządcę
@@ -13,7 +20,8 @@ import java.util.List;
  * @version 1.0
  * @see Thread
  * @see ClientHandler
- * @see ObjectInputStream
+ * @see BinaryCodec
+ * @see MessageFrames
  * @since 01.11.2019r.
  */
 public class ClientReceiverSocket extends Thread {
@@ -21,7 +29,9 @@ public class ClientReceiverSocket extends Thread {
     private ClientHandler clientHandler;
 
     /** Strumień wejściowy połaczenia */
-    private ObjectInputStream objectInputStream;
+    private DataInputStream inputStream;
+    /** Dekoder odbieranych odpowiedzi */
+    private MessageCodec codec;
 
     /**
      * Inicjalizuje nowy obiekt klasy {@code ClientReceiverSocket}. Przyjmuje jako argument obiekt odpowiedzialny za
@@ -36,25 +46,53 @@ public class ClientReceiverSocket extends Thread {
     /**
      * Ustawia strumień wejściowy połączenia z serwerem.
      *
-     * @param objectInputStream strumień wejściowy
+     * @param inputStream strumień wejściowy
      */
-    public void setObjectInputStream(ObjectInputStream objectInputStream) {
-        this.objectInputStream = objectInputStream;
+    public void setInputStream(InputStream inputStream) {
+        this.inputStream = new DataInputStream(new BufferedInputStream(inputStream));
+        this.codec = new BinaryCodec();
     }
 
     /**
-     * Odpowiada za obieranie komunikatów z serwera dopóki wystepuje połączenie z serwerem. Metoda pochodząca z
-     * rozszerzanej klasy {@link Thread}
+     * Zmienia dekoder odbieranych odpowiedzi. Wywoływana przed rozpoczęciem odbierania komunikatów.
+     *
+     * @param codec dekoder odpowiedzi
+     */
+    public void setCodec(MessageCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Odczytuje odpowiedź serwera na powitanie, pomijając nagłówek strumienia obiektowego wysyłany przez serwer dla
+     * starszych klientów. Wywoływana przed rozpoczęciem odbierania komunikatów.
+     *
+     * @return uzgodniona wersja protokołu binarnego
+     * @throws IOException błąd odczytu lub serwer nie obsługuje protokołu binarnego
+     */
+    public int receiveHandshake() throws IOException {
+        int version = ProtocolHandshake.readHello(ProtocolHandshake.readServerHello(inputStream));
+
+        if(version == ProtocolHandshake.LEGACY_VERSION) {
+            throw new IOException("Serwer nie obsługuje protokołu binarnego");
+        }
+
+        return version;
+    }
+
+    /**
+     * Odpowiada za obieranie komunikatów z serwera dopóki wystepuje połączenie z serwerem. Błąd odczytu oznacza
+     * zerwane połączenie, więc kończy odbieranie i informuje o tym zarządcę. Metoda pochodząca z rozszerzanej klasy
+     * {@link Thread}
      */
     @Override
     public void run() {
-        while (clientHandler.isConnected()) {
-            try {
-                Response response = (Response) objectInputStream.readObject();
+        try {
+            while (clientHandler.isConnected()) {
+                Response response = codec.decodeResponse(MessageFrames.readFrame(inputStream));
                 handleResponse(response);
-            } catch (ClassNotFoundException e) {
-                clientHandler.showError("Niepoprawny komunikat");
-            } catch (IOException ignore) {}
+            }
+        } catch (IOException e) {
+            clientHandler.connectionLost(this);
         }
     }
 
@@ -67,18 +105,48 @@ public class ClientReceiverSocket extends Thread {
 	private void handleResponse(Response response) {
         switch (response.getResponseType()) {
             case USERS:
-                clientHandler.showActiveUsers((List<String>) response.getData());
+                clientHandler.showActiveUsers((List<String>) response.getData(), response.getSessionIds());
                 clientHandler.informUserConnected();
                 break;
+            case USER_JOINED:
+                clientHandler.addActiveUser((String) response.getData(), response.getSessionIds());
+                break;
+            case USER_LEFT:
+                clientHandler.removeActiveUser((String) response.getData());
+                break;
             case REJECT_CONNECTION:
                 clientHandler.rejectConnection(response.getMessage());
                 break;
             case MESSAGE:
                 clientHandler.receiveMessage(response);
                 break;
+            case SESSION_MESSAGE:
+                clientHandler.receiveSessionMessage(response);
+                break;
+            case ACK:
+                clientHandler.acknowledgeMessage(response);
+                break;
+            case NACK:
+                clientHandler.rejectMessage(response);
+                break;
             case END_CONVERSATION:
                 clientHandler.receiveEndingMessage(response);
                 break;
+            case HISTORY:
+                clientHandler.receiveHistory((HistoryPage) response.getData());
+                break;
+            case ROOM_JOINED:
+                clientHandler.showRoom(response.getAddresseeNick(), (List<String>) response.getData());
+                break;
+            case ROOM_MEMBER_JOINED:
+                clientHandler.addRoomMember(response.getAddresseeNick(), (String) response.getData());
+                break;
+            case ROOM_MEMBER_LEFT:
+                clientHandler.removeRoomMember(response.getAddresseeNick(), (String) response.getData());
+                break;
+            case ROOM_MESSAGE:
+                clientHandler.receiveRoomMessage(response);
+                break;
             case INFO:
                 clientHandler.showInfo(response.getMessage());
                 break;
@@ -88,6 +156,11 @@ public class ClientReceiverSocket extends Thread {
             case ERROR:
                 clientHandler.showError(response.getMessage());
                 break;
+            case PING:
+                clientHandler.answerPing();
+                break;
+            case PONG:
+                break;
             default:
                 clientHandler.showError("Nie znana odpowiedź z serwera!");
         }
@@ -105,8 +178,8 @@ public class ClientReceiverSocket extends Thread {
      */
     public void closeReceiver() {
         try {
-            if(objectInputStream != null) {
-                objectInputStream.close();
+            if(inputStream != null) {
+                inputStream.close();
             }
         } catch (IOException e) {
             clientHandler.showError("Błąd przy zamykaniu połączenia");
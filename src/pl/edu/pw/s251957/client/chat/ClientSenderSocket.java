@@ -1,28 +1,157 @@
 package pl.edu.pw.s251957.client.chat;
 
+import pl.edu.pw.s251957.common.BinaryCodec;
 import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.MessageCodec;
+import pl.edu.pw.s251957.common.MessageFrames;
+import pl.edu.pw.s251957.common.ProtocolHandshake;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
 
-/** Klasa klienta odpowiadająca za wysyłanie kumunikatów do serwera.
+/** Klasa klienta odpowiadająca za wysyłanie kumunikatów do serwera. Jeśli serwer potwierdza wiadomości, każda
+ * wiadomość otrzymuje kolejny numer i pozostaje w oknie wysłanych, niepotwierdzonych wiadomości do czasu
+ * potwierdzenia albo odrzucenia przez serwer. W oknie może być naraz wiele wiadomości, więc wysyłanie nie czeka na
+ * potwierdzenie każdej z nich, a wiadomości, które nie mieszczą się w oknie, czekają w kolejce i wysyłane są razem,
+ * gdy potwierdzenia zwolnią miejsce. Po zerwaniu połączenia wiadomości czekają na ponowne połączenie, a
+ * niepotwierdzone wiadomości z okna wysyłane są ponownie przed pozostałymi, w kolejności numerów.
+ *
+ * Domyślne okno jest mniejsze od domyślnej serii wiadomości serwera, więc ponowne wysłanie całego okna nie przekracza
+ * limitu. Wiadomość odrzuconą z powodu limitu serwer pozwala ponowić po podanym czasie - wraca ona wtedy do kolejki
+ * w kolejności numerów, a do końca połączenia kolejne wiadomości wysyłane są nie częściej niż co podany czas.
  *
  * @author Cezary Sanecki
  * @version 1.0
- * @see ObjectOutputStream
+ * @see BinaryCodec
+ * @see MessageFrames
  * @since 01.11.2019r.
  */
 public class ClientSenderSocket {
+    /** Domyślna liczba wiadomości wysłanych i oczekujących na potwierdzenie, mniejsza od domyślnej serii serwera */
+    public static final int DEFAULT_WINDOW_SIZE = 16;
+    /** Wykonawca wysyłający wiadomości wstrzymane do czasu ponowienia */
+    private static final ScheduledExecutorService RETRY_SCHEDULER = createRetryScheduler();
+
     /** Strumień wyjściowy połączenia */
-    private ObjectOutputStream objectOutputStream;
+    private DataOutputStream outputStream;
+    /** Koder wysyłanych żądań */
+    private MessageCodec codec;
+    /** Maksymalna liczba wiadomości wysłanych i oczekujących na potwierdzenie */
+    private final int windowSize;
+    /** Wysłane, niepotwierdzone wiadomości według numeru, w kolejności numerów */
+    private final Map<Long, Command> unacknowledged;
+    /** Wiadomości oczekujące na miejsce w oknie lub na połączenie z serwerem */
+    private final Deque<Command> waiting;
+    /** Numer kolejnej wiadomości */
+    private long nextMessageId;
+    /** Flaga czy serwer obecnego połączenia potwierdza wiadomości */
+    private boolean acknowledgments;
+    /** Flaga czy serwer przyjął połączenie i można wysyłać wiadomości z okna */
+    private boolean accepted;
+    /** Sposób adresowania wiadomości przy każdym wysłaniu, np. numerem sesji adresata */
+    private UnaryOperator<Command> addressing;
+    /** Najmniejszy odstęp między wiadomościami w nanosekundach wyznaczony przez serwer lub 0 */
+    private long sendInterval;
+    /** Najwcześniejsza chwila wysłania kolejnej wiadomości według {@link System#nanoTime()} */
+    private long nextSendTime;
+    /** Flaga czy zlecono już wysłanie wstrzymanych wiadomości */
+    private boolean retryScheduled;
+
+    /**
+     * Tworzy obiekt wysyłający z domyślnym rozmiarem okna wiadomości.
+     */
+    public ClientSenderSocket() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Tworzy obiekt wysyłający z podanym rozmiarem okna wiadomości.
+     *
+     * @param windowSize maksymalna liczba wiadomości wysłanych i oczekujących na potwierdzenie, co najmniej 1
+     */
+    public ClientSenderSocket(int windowSize) {
+        this.windowSize = Math.max(1, windowSize);
+        this.unacknowledged = new LinkedHashMap<>();
+        this.waiting = new ArrayDeque<>();
+        this.nextMessageId = 1;
+        this.addressing = UnaryOperator.identity();
+    }
+
+    /**
+     * Tworzy wykonawcę z jednym wątkiem w tle, wspólnego dla wszystkich obiektów wysyłających.
+     *
+     * @return wykonawca wysyłający wstrzymane wiadomości
+     */
+    private static ScheduledExecutorService createRetryScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "client-message-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Ustawia strumień wychodzący połączenia do serwera. Wiadomości z okna czekają, aż serwer przyjmie nowe
+     * połączenie.
+     *
+     * @param outputStream strumień wyjściowy
+     */
+    public synchronized void setOutputStream(OutputStream outputStream) {
+        this.outputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+        this.codec = new BinaryCodec();
+        this.acknowledgments = false;
+        this.accepted = false;
+        this.sendInterval = 0;
+    }
 
     /**
-     * Ustawia strumień wychodzący połączenia do serwera.
+     * Zmienia koder wysyłanych żądań, np. po uzgodnieniu z serwerem wersji protokołu.
      *
-     * @param objectOutputStream strumień wyjściowy
+     * @param codec koder żądań
      */
-    public void setObjectOutputStream(ObjectOutputStream objectOutputStream) {
-        this.objectOutputStream = objectOutputStream;
+    public synchronized void setCodec(MessageCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Ustawia sposób adresowania wiadomości. Wiadomości w oknie przechowywane są w postaci przekazanej do
+     * {@link #sendMessage(Command)}, a adresowane przy każdym wysłaniu, więc ponownie wysłana wiadomość korzysta z
+     * numerów sesji nowego połączenia.
+     *
+     * @param addressing funkcja zwracająca żądanie do wysłania
+     */
+    public synchronized void setAddressing(UnaryOperator<Command> addressing) {
+        this.addressing = addressing;
+    }
+
+    /**
+     * Ustawia, czy serwer obecnego połączenia potwierdza wiadomości.
+     *
+     * @param acknowledgments flaga czy serwer potwierdza wiadomości
+     */
+    public synchronized void setAcknowledgments(boolean acknowledgments) {
+        this.acknowledgments = acknowledgments;
+    }
+
+    /**
+     * Wysyła do serwera powitanie z najnowszą obsługiwaną wersją protokołu binarnego.
+     *
+     * @throws IOException błąd wysyłania powitania
+     */
+    public synchronized void sendHandshake() throws IOException {
+        MessageFrames.writeFrame(outputStream, ProtocolHandshake.hello(ProtocolHandshake.CURRENT_VERSION));
     }
 
     /**
@@ -31,18 +160,215 @@ public class ClientSenderSocket {
      * @param cmd żądanie do serwera
      * @throws IOException błąd wysyłania żądania
      */
-    public void send(Command cmd) throws IOException {
-        objectOutputStream.writeObject(cmd);
+    public synchronized void send(Command cmd) throws IOException {
+        MessageFrames.writeFrame(outputStream, codec.encodeCommand(cmd));
+    }
+
+    /**
+     * Wysyła wiadomość do serwera. Jeśli serwer nie potwierdza wiadomości, jest ona wysyłana od razu. W przeciwnym
+     * razie otrzymuje numer i trafia do okna, o ile jest w nim miejsce, a serwer przyjął połączenie - inaczej czeka w
+     * kolejce. Błąd zapisu wiadomości z numerem nie jest zgłaszany, ponieważ wiadomość zostanie wysłana ponownie po
+     * ponownym połączeniu.
+     *
+     * @param message wiadomość do serwera
+     * @throws IOException błąd wysyłania wiadomości bez potwierdzenia
+     */
+    public synchronized void sendMessage(Command message) throws IOException {
+        if(!acknowledgments) {
+            send(addressing.apply(message));
+            return;
+        }
+
+        waiting.addLast(message.withMessageId(nextMessageId++));
+        fillWindow();
+    }
+
+    /**
+     * Usuwa z okna wiadomość potwierdzoną przez serwer i wysyła kolejne oczekujące wiadomości.
+     *
+     * @param messageId numer wiadomości
+     */
+    public synchronized void acknowledge(long messageId) {
+        if(unacknowledged.remove(messageId) != null) {
+            fillWindow();
+        }
+    }
+
+    /**
+     * Usuwa z okna wiadomość odrzuconą przez serwer i wysyła kolejne oczekujące wiadomości.
+     *
+     * @param messageId numer wiadomości
+     * @return odrzucona wiadomość lub {@code null}, jeśli nie było jej w oknie
+     */
+    public synchronized Command reject(long messageId) {
+        Command message = unacknowledged.remove(messageId);
+
+        if(message != null) {
+            fillWindow();
+        }
+
+        return message;
+    }
+
+    /**
+     * Przenosi z okna do kolejki wiadomość, którą serwer odrzucił z powodu limitu, aby wysłać ją ponownie. Wiadomość
+     * trafia przed oczekujące wiadomości o wyższych numerach, a wysyłanie zostaje wstrzymane na podany czas. Do końca
+     * połączenia kolejne wiadomości wysyłane są nie częściej niż co podany czas.
+     *
+     * @param messageId numer wiadomości
+     * @param retryAfter czas w milisekundach, po którym wiadomość można wysłać ponownie
+     * @return flaga czy wiadomość była w oknie i zostanie wysłana ponownie
+     */
+    public synchronized boolean retry(long messageId, long retryAfter) {
+        Command message = unacknowledged.remove(messageId);
+
+        if(message == null) {
+            return false;
+        }
+
+        Deque<Command> earlier = new ArrayDeque<>();
+
+        while (!waiting.isEmpty() && waiting.peekFirst().getMessageId() < messageId) {
+            earlier.addFirst(waiting.removeFirst());
+        }
+
+        waiting.addFirst(message);
+
+        for (Command command : earlier) {
+            waiting.addFirst(command);
+        }
+
+        long interval = TimeUnit.MILLISECONDS.toNanos(retryAfter);
+        sendInterval = Math.max(sendInterval, interval);
+        nextSendTime = System.nanoTime() + interval;
+        fillWindow();
+
+        return true;
+    }
+
+    /**
+     * Wznawia wysyłanie wiadomości po przyjęciu połączenia przez serwer. Niepotwierdzone wiadomości z poprzedniego
+     * połączenia wysyłane są ponownie przed oczekującymi, w kolejności numerów. Jeśli nowy serwer nie potwierdza
+     * wiadomości, wszystkie wysyłane są bez numerów.
+     */
+    public synchronized void resumeMessages() {
+        List<Command> resent = new ArrayList<>(unacknowledged.values());
+        unacknowledged.clear();
+
+        for (int i = resent.size() - 1; i >= 0; i--) {
+            waiting.addFirst(resent.get(i));
+        }
+
+        accepted = true;
+
+        if(!acknowledgments) {
+            try {
+                while (!waiting.isEmpty()) {
+                    send(addressing.apply(waiting.peekFirst().withMessageId(0)));
+                    waiting.removeFirst();
+                }
+            } catch (IOException ignored) {}
+
+            return;
+        }
+
+        fillWindow();
+    }
+
+    /**
+     * Porzuca wszystkie niepotwierdzone i oczekujące wiadomości, np. po zakończeniu połączenia przez użytkownika.
+     *
+     * @return liczba porzuconych wiadomości
+     */
+    public synchronized int discardMessages() {
+        int count = unacknowledged.size() + waiting.size();
+        unacknowledged.clear();
+        waiting.clear();
+
+        return count;
+    }
+
+    /**
+     * Zwraca liczbę wiadomości wysłanych i oczekujących na potwierdzenie.
+     *
+     * @return liczba niepotwierdzonych wiadomości
+     */
+    public synchronized int getUnacknowledgedCount() {
+        return unacknowledged.size();
+    }
+
+    /**
+     * Przenosi do okna oczekujące wiadomości, dla których jest miejsce, i zapisuje je jedną serią ramek. Wiadomość
+     * trafia do okna przed zapisem, więc po błędzie zapisu zostanie wysłana ponownie po ponownym połączeniu. Jeśli
+     * serwer wyznaczył odstęp między wiadomościami, wysyłana jest najwyżej jedna wiadomość, a kolejne zlecane są
+     * wykonawcy na chwilę, w której będzie to dozwolone.
+     */
+    private void fillWindow() {
+        if(!accepted || outputStream == null) {
+            return;
+        }
+
+        List<Command> messages = new ArrayList<>();
+
+        while (unacknowledged.size() < windowSize && !waiting.isEmpty()) {
+            if(sendInterval > 0) {
+                long now = System.nanoTime();
+
+                if(now - nextSendTime < 0) {
+                    scheduleRetry(nextSendTime - now);
+                    break;
+                }
+
+                nextSendTime = now + sendInterval;
+            }
+
+            Command message = waiting.removeFirst();
+            unacknowledged.put(message.getMessageId(), message);
+            messages.add(message);
+        }
+
+        if(messages.isEmpty()) {
+            return;
+        }
+
+        try {
+            List<byte[]> payloads = new ArrayList<>(messages.size());
+
+            for (Command message : messages) {
+                payloads.add(codec.encodeCommand(addressing.apply(message)));
+            }
+
+            MessageFrames.writeFrames(outputStream, payloads);
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Zleca wysłanie oczekujących wiadomości po podanym czasie, o ile nie zostało już zlecone.
+     *
+     * @param delay czas w nanosekundach
+     */
+    private void scheduleRetry(long delay) {
+        if(retryScheduled) {
+            return;
+        }
+
+        retryScheduled = true;
+        RETRY_SCHEDULER.schedule(() -> {
+            synchronized (this) {
+                retryScheduled = false;
+                fillWindow();
+            }
+        }, delay, TimeUnit.NANOSECONDS);
     }
 
     /**
-     * Zamyka strumień wychodzący połaczenia z serwerem.
+     * Zamyka strumień wychodzący połaczenia z serwerem. Wiadomości z okna czekają na kolejne połączenie.
      *
      * @throws IOException błąd zamykania strumienia wyjściowego
      */
     public void closeSender() throws IOException {
-        if(objectOutputStream != null) {
-            objectOutputStream.close();
+        if(outputStream != null) {
+            outputStream.close();
         }
     }
 }
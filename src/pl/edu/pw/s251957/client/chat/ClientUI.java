@@ -1,5 +1,6 @@
 package pl.edu.pw.s251957.client.chat;
 
+import pl.edu.pw.s251957.common.HistoryPage;
 import pl.edu.pw.s251957.common.Response;
 
 import java.util.List;
@@ -27,6 +28,20 @@ public interface ClientUI {
      */
     void showUsers(List<String> users);
 
+    /**
+     * Dodaje użytkownika do wyświetlanej listy użytkowników, o ile jeszcze się na niej nie znajduje.
+     *
+     * @param user nick użytkownika, który dołączył
+     */
+    void addUser(String user);
+
+    /**
+     * Usuwa użytkownika z wyświetlanej listy użytkowników.
+     *
+     * @param user nick użytkownika, który odszedł
+     */
+    void removeUser(String user);
+
     /**
      * Informuje interfejs użytkownika o zmianie statusu połączenia.
      *
@@ -52,4 +67,42 @@ public interface ClientUI {
      * @param response odpowiedź z serwera
      */
     void receiveEndingMessage(Response response);
+
+    /**
+     * Wyświetla otrzymaną stronę historii konwersacji {@link HistoryPage}.
+     *
+     * @param page strona historii konwersacji
+     */
+    void showHistory(HistoryPage page);
+
+    /**
+     * Wyświetla pokój, do którego dołączył użytkownik, wraz z listą jego członków.
+     *
+     * @param roomName nazwa pokoju
+     * @param members nicki członków pokoju
+     */
+    void showRoom(String roomName, List<String> members);
+
+    /**
+     * Dodaje członka do wyświetlanego pokoju.
+     *
+     * @param roomName nazwa pokoju
+     * @param member nick użytkownika, który dołączył do pokoju
+     */
+    void addRoomMember(String roomName, String member);
+
+    /**
+     * Usuwa członka z wyświetlanego pokoju.
+     *
+     * @param roomName nazwa pokoju
+     * @param member nick użytkownika, który opuścił pokój
+     */
+    void removeRoomMember(String roomName, String member);
+
+    /**
+     * Zarządza otrzymaną wiadomością do pokoju {@link Response}
+     *
+     * @param response odpowiedź z serwera
+     */
+    void receiveRoomMessage(Response response);
 }
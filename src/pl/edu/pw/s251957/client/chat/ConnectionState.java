@@ -0,0 +1,16 @@
+package pl.edu.pw.s251957.client.chat;
+
+/** Stan połączenia klienta z serwerem zarządzanego przez {@link ClientHandler}.
+ *
+ * @see ClientHandler
+ */
+public enum ConnectionState {
+    /** Klient nie jest połączony i nie próbuje się połączyć */
+    DISCONNECTED,
+    /** Klient wysłał żądanie połączenia i czeka na listę użytkowników */
+    CONNECTING,
+    /** Serwer przyjął klienta do komunikatora */
+    CONNECTED,
+    /** Połączenie zostało zerwane, a klient co pewien czas próbuje połączyć się ponownie */
+    RECONNECTING
+}
@@ -2,6 +2,7 @@ package pl.edu.pw.s251957.client.gui;
 
 import pl.edu.pw.s251957.client.chat.ClientUI;
 import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.HistoryPage;
 
 /** Interfejs przedstawiający podstawowe metody odpowiedzialne za informowanie klienta użytkownika.
  *
@@ -80,4 +81,41 @@ public interface Client {
      * @param addresseeNick nick adresata
      */
     void removeEndedConversation(String addresseeNick);
+
+    /**
+     * Pobiera z serwera stronę historii konwersacji z danym użytkownikiem {@code addresseeNick}.
+     *
+     * @param addresseeNick nick adresata
+     * @param cursor kursor strony lub {@link HistoryPage#NO_CURSOR} dla najnowszych wiadomości
+     */
+    void requestHistory(String addresseeNick, long cursor);
+
+    /**
+     * Tworzy na serwerze pokój {@code roomName} i dołącza do niego.
+     *
+     * @param roomName nazwa pokoju
+     */
+    void createRoom(String roomName);
+
+    /**
+     * Dołącza do istniejącego pokoju {@code roomName}.
+     *
+     * @param roomName nazwa pokoju
+     */
+    void joinRoom(String roomName);
+
+    /**
+     * Opuszcza pokój {@code roomName}.
+     *
+     * @param roomName nazwa pokoju
+     */
+    void leaveRoom(String roomName);
+
+    /**
+     * Wysyła wiadomość do wszystkich członków pokoju {@code roomName}.
+     *
+     * @param roomName nazwa pokoju
+     * @param message treść wiadomości
+     */
+    void sendRoomMessage(String roomName, String message);
 }
@@ -2,12 +2,15 @@ package pl.edu.pw.s251957.client.gui;
 
 import pl.edu.pw.s251957.client.chat.ClientUI;
 import pl.edu.pw.s251957.client.gui.conversation.ClientConversationGUI;
+import pl.edu.pw.s251957.client.gui.conversation.ClientRoomGUI;
 import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.HistoryPage;
 import pl.edu.pw.s251957.common.Response;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,7 +30,7 @@ public class ClientSwing extends JFrame implements ClientUI {
     private Client client;
 
     /** Model listy użytkowników */
-    private DefaultListModel<String> nicksListModel;
+    private UserListModel nicksListModel;
     /** Lista użytkowników */
     private JList<String> nicksList;
     /** Guzik odpowiedzialny za inicjalizację połączenia z serwerem */
@@ -35,6 +38,8 @@ public class ClientSwing extends JFrame implements ClientUI {
 
     /** Mapa nicków obcych użytkowników z danymi konwersacjami */
     private Map<String, ClientConversationGUI> nickToConversations;
+    /** Mapa nazw pokojów z oknami rozmów w pokojach */
+    private Map<String, ClientRoomGUI> roomToConversations;
 
     /** Flaga czy użytkownik jest połączony z serwerem */
     private boolean userConnected;
@@ -50,6 +55,7 @@ public class ClientSwing extends JFrame implements ClientUI {
         this.client = client;
         this.userConnected = false;
         this.nickToConversations = new HashMap<>();
+        this.roomToConversations = new HashMap<>();
 
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         addWindowListener(new WindowAdapter() {
@@ -64,17 +70,45 @@ public class ClientSwing extends JFrame implements ClientUI {
     }
 
     /**
-     * Wyświetla przekazanych użytkowników. Metoda pochodząca z interfejsu {@link ClientUI}.
+     * Wyświetla przekazanych użytkowników, zmieniając na liście tylko nicki, które się różnią. Metoda pochodząca
+     * z interfejsu {@link ClientUI}.
      *
      * @param users lista użytkowników do wyświetlenia
      */
     @Override
     public void showUsers(List<String> users) {
-        nicksListModel.clear();
+        nicksListModel.replaceAll(users);
+    }
 
-        for (String user : users) {
-            nicksListModel.addElement(user);
-        }
+    /**
+     * Wprowadza połączone zmiany listy użytkowników jedną aktualizacją modelu listy.
+     *
+     * @param added nicki użytkowników, którzy dołączyli
+     * @param removed nicki użytkowników, którzy odeszli
+     */
+    public void updateUsers(Collection<String> added, Collection<String> removed) {
+        nicksListModel.applyChanges(added, removed);
+    }
+
+    /**
+     * Dodaje użytkownika do listy, o ile jeszcze się na niej nie znajduje. Metoda pochodząca z interfejsu
+     * {@link ClientUI}.
+     *
+     * @param user nick użytkownika, który dołączył
+     */
+    @Override
+    public void addUser(String user) {
+        nicksListModel.add(user);
+    }
+
+    /**
+     * Usuwa użytkownika z listy. Metoda pochodząca z interfejsu {@link ClientUI}.
+     *
+     * @param user nick użytkownika, który odszedł
+     */
+    @Override
+    public void removeUser(String user) {
+        nicksListModel.remove(user);
     }
 
     /**
@@ -132,7 +166,7 @@ public class ClientSwing extends JFrame implements ClientUI {
         setResizable(false);
         setLayout(null);
 
-        nicksListModel = new DefaultListModel<>();
+        nicksListModel = new UserListModel();
         nicksList = new JList<>(nicksListModel);
         JScrollPane panelRight = new JScrollPane(nicksList);
         panelRight.setBounds(10, 10 ,275 ,500);
@@ -147,6 +181,16 @@ public class ClientSwing extends JFrame implements ClientUI {
         connectBtn.addActionListener(connectButtonListener());
         buttonPanel.add(connectBtn);
 
+        JButton createRoomBtn = new JButton("Utwórz");
+        createRoomBtn.setToolTipText("Utwórz pokój");
+        createRoomBtn.addActionListener(roomButtonListener(true));
+        buttonPanel.add(createRoomBtn);
+
+        JButton joinRoomBtn = new JButton("Dołącz");
+        joinRoomBtn.setToolTipText("Dołącz do pokoju");
+        joinRoomBtn.addActionListener(roomButtonListener(false));
+        buttonPanel.add(joinRoomBtn);
+
         nicksList.addMouseListener(nicksListMouseListener(this));
     }
 
@@ -169,6 +213,33 @@ public class ClientSwing extends JFrame implements ClientUI {
         };
     }
 
+    /**
+     * Ustawia listener guzika tworzenia pokoju lub dołączania do niego.
+     *
+     * @param create flaga czy pokój ma zostać utworzony
+     * @return listener guzika pokoju
+     */
+    private ActionListener roomButtonListener(boolean create) {
+        return (e) -> {
+            if(!userConnected) {
+                showDialog("Błąd", "Brak połączenia z serwerem", true);
+                return;
+            }
+
+            String roomName = JOptionPane.showInputDialog(this, "Podaj nazwę pokoju");
+
+            if(roomName == null || roomName.trim().isEmpty() || roomToConversations.containsKey(roomName.trim())) {
+                return;
+            }
+
+            if(create) {
+                client.createRoom(roomName.trim());
+            } else {
+                client.joinRoom(roomName.trim());
+            }
+        };
+    }
+
     /**
      * Ustawia listener listy użytkowników dla myszki
      *
@@ -190,8 +261,7 @@ public class ClientSwing extends JFrame implements ClientUI {
 
                         if(!client.isConversationSet(clickedElement)) {
                             String systemMessage = client.startConversation(clickedElement);
-                            nickToConversations.put(clickedElement, new ClientConversationGUI("Konsersacja z " + clickedElement,
-                                    systemMessage, clickedElement, clientSwing));
+                            openConversation(clickedElement, systemMessage);
                         }
                     }
                 }
@@ -199,6 +269,44 @@ public class ClientSwing extends JFrame implements ClientUI {
         };
     }
 
+    /**
+     * Otwiera okno konwersacji z danym użytkownikiem i pobiera najnowszą stronę jej historii. Żądanie historii
+     * wysyłane jest dopiero po zapamiętaniu okna, aby odpowiedź serwera zawsze je znalazła.
+     *
+     * @param addresseeNick nick adresata
+     * @param systemMessage początkowa wiadomość konwersacji
+     */
+    private void openConversation(String addresseeNick, String systemMessage) {
+        nickToConversations.put(addresseeNick, new ClientConversationGUI("Konsersacja z " + addresseeNick,
+                systemMessage, addresseeNick, this));
+        requestHistory(addresseeNick, HistoryPage.NO_CURSOR);
+    }
+
+    /**
+     * Pobiera z serwera stronę historii konwersacji z danym użytkownikiem.
+     *
+     * @param addresseeNick nick adresata
+     * @param cursor kursor strony lub {@link HistoryPage#NO_CURSOR} dla najnowszych wiadomości
+     */
+    public void requestHistory(String addresseeNick, long cursor) {
+        client.requestHistory(addresseeNick, cursor);
+    }
+
+    /**
+     * Przekazuje stronę historii do okna konwersacji, jeśli jest nadal otwarte. Metoda pochodząca z interfejsu
+     * {@link ClientUI}.
+     *
+     * @param page strona historii konwersacji
+     */
+    @Override
+    public void showHistory(HistoryPage page) {
+        ClientConversationGUI conversation = nickToConversations.get(page.getConversationNick());
+
+        if(conversation != null) {
+            conversation.showHistory(page);
+        }
+    }
+
     /**
      * Usuwa konwersację z klienta i interfejsu użytkownika
      *
@@ -228,8 +336,7 @@ public class ClientSwing extends JFrame implements ClientUI {
         String hostNick = (String) response.getData();
 
         if(!nickToConversations.containsKey(hostNick)) {
-            nickToConversations.put(hostNick, new ClientConversationGUI("Konsersacja z " + hostNick,
-                    "[SYSTEM] Rozpoczęto konwersację z " + hostNick + '\n', hostNick, this));
+            openConversation(hostNick, "[SYSTEM] Rozpoczęto konwersację z " + hostNick + '\n');
         } else {
             nickToConversations.get(hostNick).showReceivedMessage(hostNick, response.getMessage());
         }
@@ -249,6 +356,87 @@ public class ClientSwing extends JFrame implements ClientUI {
         }
     }
 
+    /**
+     * Otwiera okno pokoju, do którego dołączył użytkownik. Metoda pochodząca z interfejsu {@link ClientUI}.
+     *
+     * @param roomName nazwa pokoju
+     * @param members nicki członków pokoju
+     */
+    @Override
+    public void showRoom(String roomName, List<String> members) {
+        ClientRoomGUI room = roomToConversations.get(roomName);
+
+        if(room == null) {
+            roomToConversations.put(roomName, new ClientRoomGUI(roomName, members, this));
+        } else {
+            room.showMembers(members);
+        }
+    }
+
+    /**
+     * Dodaje członka do otwartego okna pokoju. Metoda pochodząca z interfejsu {@link ClientUI}.
+     *
+     * @param roomName nazwa pokoju
+     * @param member nick użytkownika, który dołączył do pokoju
+     */
+    @Override
+    public void addRoomMember(String roomName, String member) {
+        ClientRoomGUI room = roomToConversations.get(roomName);
+
+        if(room != null) {
+            room.addMember(member);
+        }
+    }
+
+    /**
+     * Usuwa członka z otwartego okna pokoju. Metoda pochodząca z interfejsu {@link ClientUI}.
+     *
+     * @param roomName nazwa pokoju
+     * @param member nick użytkownika, który opuścił pokój
+     */
+    @Override
+    public void removeRoomMember(String roomName, String member) {
+        ClientRoomGUI room = roomToConversations.get(roomName);
+
+        if(room != null) {
+            room.removeMember(member);
+        }
+    }
+
+    /**
+     * Zarządza wyświetleniem otrzymanej wiadomości do pokoju.
+     *
+     * @param response odpowiedź z serwera
+     */
+    @Override
+    public void receiveRoomMessage(Response response) {
+        ClientRoomGUI room = roomToConversations.get(response.getAddresseeNick());
+
+        if(room != null) {
+            room.showReceivedMessage((String) response.getData(), response.getMessage());
+        }
+    }
+
+    /**
+     * Opuszcza pokój i zapomina jego okno.
+     *
+     * @param roomName nazwa pokoju
+     */
+    public void leaveRoom(String roomName) {
+        roomToConversations.remove(roomName);
+        client.leaveRoom(roomName);
+    }
+
+    /**
+     * Wysyła wiadomość do członków pokoju.
+     *
+     * @param roomName nazwa pokoju
+     * @param message treść wiadomości
+     */
+    public void sendRoomMessage(String roomName, String message) {
+        client.sendRoomMessage(roomName, message);
+    }
+
     /**
      * Wysyła wiadomośc do klienta.
      *
@@ -0,0 +1,45 @@
+package pl.edu.pw.s251957.client.gui;
+
+/** Interfejs zarządzania interfejsem użytkownika klienta przez JMX. Udostępnia opóźnienie wątku obsługi zdarzeń
+ * Swing'a, mierzone próbkami wysyłanymi do niego w stałych odstępach, oraz liczby zmian interfejsu oczekujących
+ * i wprowadzonych przez {@link SwingUpdateDispatcher}.
+ *
+ * @see SwingUpdateDispatcher
+ */
+public interface ClientUiMXBean {
+    /**
+     * Zwraca bieżące opóźnienie wątku obsługi zdarzeń - czas oczekiwania ostatniej próbki lub, jeśli próbka nadal
+     * czeka, czas od jej wysłania.
+     *
+     * @return opóźnienie w milisekundach
+     */
+    long getEdtLatencyMillis();
+
+    /**
+     * Zwraca największe zmierzone opóźnienie wątku obsługi zdarzeń.
+     *
+     * @return opóźnienie w milisekundach
+     */
+    long getMaxEdtLatencyMillis();
+
+    /**
+     * Zwraca liczbę zmian interfejsu oczekujących na wprowadzenie.
+     *
+     * @return liczba zmian
+     */
+    int getPendingUpdates();
+
+    /**
+     * Zwraca liczbę wprowadzonych zmian interfejsu.
+     *
+     * @return liczba zmian
+     */
+    long getAppliedUpdates();
+
+    /**
+     * Zwraca liczbę porcji, w których wprowadzono zmiany interfejsu.
+     *
+     * @return liczba porcji
+     */
+    long getAppliedBatches();
+}
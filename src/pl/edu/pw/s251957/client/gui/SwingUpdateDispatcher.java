@@ -0,0 +1,514 @@
+package pl.edu.pw.s251957.client.gui;
+
+import pl.edu.pw.s251957.client.chat.ClientUI;
+import pl.edu.pw.s251957.common.HistoryPage;
+import pl.edu.pw.s251957.common.Response;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.swing.SwingUtilities;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Pośrednik przekazujący zmiany interfejsu użytkownika z wątku odbierającego komunikaty do wątku obsługi zdarzeń
+ * Swing'a. Zmiany trafiają do kolejki, a wątek obsługi zdarzeń wprowadza je porcjami - jedno wywołanie
+ * {@link SwingUtilities#invokeLater(Runnable)} na porcję, ograniczoną czasem, aby między porcjami interfejs mógł się
+ * przerysować. Kolejne zmiany listy użytkowników w porcji są łączone i wprowadzane do {@link UserListModel} jako
+ * jedna różnica. Opóźnienie wątku obsługi zdarzeń mierzone jest próbkami wysyłanymi w stałych odstępach, a dłuższe
+ * zablokowanie jest zgłaszane na konsoli. Implementuje interfejsy {@link ClientUI} i {@link ClientUiMXBean}.
+ *
+ * @see ClientSwing
+ * @see UserListModel
+ */
+public class SwingUpdateDispatcher implements ClientUI, ClientUiMXBean {
+    /** Maksymalny czas wprowadzania jednej porcji zmian w nanosekundach */
+    private static final long BATCH_BUDGET = TimeUnit.MILLISECONDS.toNanos(8);
+    /** Odstęp między próbkami opóźnienia wątku obsługi zdarzeń w milisekundach */
+    private static final long PROBE_INTERVAL = 100;
+    /** Opóźnienie wątku obsługi zdarzeń zgłaszane jako zablokowanie interfejsu w milisekundach */
+    private static final long STALL_THRESHOLD = 250;
+    /** Nazwa obiektu JMX interfejsu użytkownika */
+    private static final String JMX_NAME = "pl.edu.pw.s251957:type=ClientUi";
+
+    /** Interfejs użytkownika, do którego przekazywane są zmiany */
+    private final ClientSwing clientSwing;
+    /** Zmiany oczekujące na wprowadzenie */
+    private final Queue<Update> updates;
+    /** Liczba zmian oczekujących na wprowadzenie */
+    private final AtomicInteger pendingUpdates;
+    /** Flaga czy wprowadzenie porcji zmian zostało zlecone wątkowi obsługi zdarzeń */
+    private final AtomicBoolean drainScheduled;
+    /** Liczba wprowadzonych zmian */
+    private final AtomicLong appliedUpdates;
+    /** Liczba wprowadzonych porcji */
+    private final AtomicLong appliedBatches;
+
+    /** Chwila wysłania oczekującej próbki według {@link System#nanoTime()} lub 0, jeśli żadna nie czeka */
+    private final AtomicLong probeSentNanos;
+    /** Opóźnienie ostatniej próbki w nanosekundach */
+    private volatile long lastEdtLatency;
+    /** Największe opóźnienie próbki w nanosekundach */
+    private volatile long maxEdtLatency;
+    /** Wątek wysyłający próbki lub {@code null}, jeśli pomiar nie jest uruchomiony */
+    private ScheduledExecutorService probeScheduler;
+
+    /**
+     * Tworzy pośrednika przekazującego zmiany do podanego interfejsu użytkownika.
+     *
+     * @param clientSwing interfejs użytkownika
+     */
+    public SwingUpdateDispatcher(ClientSwing clientSwing) {
+        this.clientSwing = clientSwing;
+        this.updates = new ConcurrentLinkedQueue<>();
+        this.pendingUpdates = new AtomicInteger();
+        this.drainScheduled = new AtomicBoolean();
+        this.appliedUpdates = new AtomicLong();
+        this.appliedBatches = new AtomicLong();
+        this.probeSentNanos = new AtomicLong();
+    }
+
+    /**
+     * Uruchamia pomiar opóźnienia wątku obsługi zdarzeń i rejestruje pośrednika w serwerze JMX platformy. Błąd
+     * rejestracji nie wstrzymuje pracy klienta.
+     */
+    public synchronized void start() {
+        if(probeScheduler != null) {
+            return;
+        }
+
+        probeScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "edt-latency-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        probeScheduler.scheduleWithFixedDelay(this::sendProbe, PROBE_INTERVAL, PROBE_INTERVAL, TimeUnit.MILLISECONDS);
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(JMX_NAME));
+        } catch (JMException e) {
+            System.out.println("Nie można zarejestrować metryk interfejsu w JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Wysyła próbkę do wątku obsługi zdarzeń, jeśli poprzednia już do niego dotarła.
+     */
+    private void sendProbe() {
+        long sent = System.nanoTime();
+
+        if(probeSentNanos.compareAndSet(0, sent)) {
+            SwingUtilities.invokeLater(() -> recordProbe(sent));
+        }
+    }
+
+    /**
+     * Zapisuje opóźnienie próbki, która dotarła do wątku obsługi zdarzeń, i zgłasza zablokowanie interfejsu.
+     *
+     * @param sent chwila wysłania próbki według {@link System#nanoTime()}
+     */
+    private void recordProbe(long sent) {
+        long latency = System.nanoTime() - sent;
+        lastEdtLatency = latency;
+        maxEdtLatency = Math.max(maxEdtLatency, latency);
+        probeSentNanos.set(0);
+
+        if(TimeUnit.NANOSECONDS.toMillis(latency) >= STALL_THRESHOLD) {
+            System.out.println("Interfejs użytkownika nie odpowiadał przez " + TimeUnit.NANOSECONDS.toMillis(latency)
+                    + " ms");
+        }
+    }
+
+    /**
+     * Dodaje zmianę do kolejki i zleca wątkowi obsługi zdarzeń wprowadzenie porcji, jeśli nie zostało już zlecone.
+     *
+     * @param update zmiana interfejsu
+     */
+    private void enqueue(Update update) {
+        updates.add(update);
+        pendingUpdates.incrementAndGet();
+
+        if(drainScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drain);
+        }
+    }
+
+    /**
+     * Wprowadza porcję zmian na wątku obsługi zdarzeń, dopóki nie minie czas porcji. Zmiany listy użytkowników są
+     * łączone i wprowadzane przed pierwszą inną zmianą oraz na końcu porcji. Jeśli w kolejce zostały zmiany,
+     * zlecana jest kolejna porcja.
+     */
+    private void drain() {
+        long start = System.nanoTime();
+        UserChanges userChanges = new UserChanges();
+        int applied = 0;
+        Update update;
+
+        while ((update = updates.poll()) != null) {
+            pendingUpdates.decrementAndGet();
+            applied++;
+
+            if(!update.mergeInto(userChanges)) {
+                userChanges.applyTo(clientSwing);
+                update.apply(clientSwing);
+            }
+
+            if(System.nanoTime() - start >= BATCH_BUDGET) {
+                break;
+            }
+        }
+
+        userChanges.applyTo(clientSwing);
+        appliedUpdates.addAndGet(applied);
+        appliedBatches.incrementAndGet();
+        drainScheduled.set(false);
+
+        if(!updates.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drain);
+        }
+    }
+
+    /**
+     * Pokazuje dialog osobnym wywołaniem na wątku obsługi zdarzeń, aby okno modalne nie wstrzymywało wprowadzania
+     * porcji zmian. Metoda pochodząca z interfejsu {@link ClientUI}.
+     *
+     * @param title tytuł informacji
+     * @param message treść informacji
+     * @param error flaga czy jest to błąd czy informacja
+     */
+    @Override
+    public void showDialog(String title, String message, boolean error) {
+        SwingUtilities.invokeLater(() -> clientSwing.showDialog(title, message, error));
+    }
+
+    /**
+     * Dodaje do kolejki pełną listę użytkowników, łączoną z późniejszymi zmianami listy w tej samej porcji.
+     * Metoda pochodząca z interfejsu {@link ClientUI}.
+     *
+     * @param users lista użytkowników do wyświetlenia
+     */
+    @Override
+    public void showUsers(List<String> users) {
+        enqueue(new UserUpdate(null, false, users));
+    }
+
+    /**
+     * Dodaje do kolejki dołączenie użytkownika, łączone z innymi zmianami listy użytkowników w tej samej
+     * porcji. Metoda pochodząca z interfejsu {@link ClientUI}.
+     *
+     * @param user nick użytkownika, który dołączył
+     */
+    @Override
+    public void addUser(String user) {
+        enqueue(new UserUpdate(user, true, null));
+    }
+
+    /**
+     * Dodaje do kolejki odejście użytkownika, łączone z innymi zmianami listy użytkowników w tej samej porcji.
+     * Metoda pochodząca z interfejsu {@link ClientUI}.
+     *
+     * @param user nick użytkownika, który odszedł
+     */
+    @Override
+    public void removeUser(String user) {
+        enqueue(new UserUpdate(user, false, null));
+    }
+
+    /**
+     * Dodaje do kolejki zmianę statusu połączenia. Metoda pochodząca z interfejsu {@link ClientUI}.
+     *
+     * @param isConnected flaga czy istnieje połączenie
+     */
+    @Override
+    public void changeConnectionStatus(boolean isConnected) {
+        enqueue(ui -> ui.changeConnectionStatus(isConnected));
+    }
+
+    /**
+     * Dodaje do kolejki zamknięcie komunikatora, wprowadzane po wcześniejszych zmianach. Metoda pochodząca z
+     * interfejsu {@link ClientUI}.
+     */
+    @Override
+    public void closeClientChat() {
+        enqueue(ClientSwing::closeClientChat);
+    }
+
+    /**
+     * Dodaje do kolejki wyświetlenie otrzymanej wiadomości. Metoda pochodząca z interfejsu {@link ClientUI}.
+     *
+     * @param response odpowiedź z serwera
+     */
+    @Override
+    public void receiveMessage(Response response) {
+        enqueue(ui -> ui.receiveMessage(response));
+    }
+
+    /**
+     * Dodaje do kolejki wyświetlenie otrzymanej kończącej wiadomości. Metoda pochodząca z interfejsu
+     * {@link ClientUI}.
+     *
+     * @param response odpowiedź z serwera
+     */
+    @Override
+    public void receiveEndingMessage(Response response) {
+        enqueue(ui -> ui.receiveEndingMessage(response));
+    }
+
+    /**
+     * Dodaje do kolejki wyświetlenie strony historii konwersacji. Metoda pochodząca z interfejsu
+     * {@link ClientUI}.
+     *
+     * @param page strona historii konwersacji
+     */
+    @Override
+    public void showHistory(HistoryPage page) {
+        enqueue(ui -> ui.showHistory(page));
+    }
+
+    /**
+     * Dodaje do kolejki wyświetlenie pokoju wraz z listą jego członków. Metoda pochodząca z interfejsu
+     * {@link ClientUI}.
+     *
+     * @param roomName nazwa pokoju
+     * @param members nicki członków pokoju
+     */
+    @Override
+    public void showRoom(String roomName, List<String> members) {
+        enqueue(ui -> ui.showRoom(roomName, members));
+    }
+
+    /**
+     * Dodaje do kolejki dołączenie członka pokoju. Metoda pochodząca z interfejsu {@link ClientUI}.
+     *
+     * @param roomName nazwa pokoju
+     * @param member nick użytkownika, który dołączył do pokoju
+     */
+    @Override
+    public void addRoomMember(String roomName, String member) {
+        enqueue(ui -> ui.addRoomMember(roomName, member));
+    }
+
+    /**
+     * Dodaje do kolejki odejście członka pokoju. Metoda pochodząca z interfejsu {@link ClientUI}.
+     *
+     * @param roomName nazwa pokoju
+     * @param member nick użytkownika, który opuścił pokój
+     */
+    @Override
+    public void removeRoomMember(String roomName, String member) {
+        enqueue(ui -> ui.removeRoomMember(roomName, member));
+    }
+
+    /**
+     * Dodaje do kolejki wyświetlenie otrzymanej wiadomości do pokoju. Metoda pochodząca z interfejsu
+     * {@link ClientUI}.
+     *
+     * @param response odpowiedź z serwera
+     */
+    @Override
+    public void receiveRoomMessage(Response response) {
+        enqueue(ui -> ui.receiveRoomMessage(response));
+    }
+
+    /**
+     * Zwraca bieżące opóźnienie wątku obsługi zdarzeń - większe z opóźnienia ostatniej próbki i czasu
+     * oczekiwania próbki, która jeszcze nie dotarła. Metoda pochodząca z interfejsu {@link ClientUiMXBean}.
+     *
+     * @return opóźnienie w milisekundach
+     */
+    @Override
+    public long getEdtLatencyMillis() {
+        long sent = probeSentNanos.get();
+        long waiting = sent == 0 ? 0 : System.nanoTime() - sent;
+
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(lastEdtLatency, waiting));
+    }
+
+    /**
+     * Zwraca największe zmierzone opóźnienie wątku obsługi zdarzeń. Metoda pochodząca z interfejsu
+     * {@link ClientUiMXBean}.
+     *
+     * @return opóźnienie w milisekundach
+     */
+    @Override
+    public long getMaxEdtLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxEdtLatency);
+    }
+
+    /**
+     * Zwraca liczbę zmian oczekujących w kolejce. Metoda pochodząca z interfejsu {@link ClientUiMXBean}.
+     *
+     * @return liczba zmian
+     */
+    @Override
+    public int getPendingUpdates() {
+        return pendingUpdates.get();
+    }
+
+    /**
+     * Zwraca liczbę wprowadzonych zmian interfejsu. Metoda pochodząca z interfejsu {@link ClientUiMXBean}.
+     *
+     * @return liczba zmian
+     */
+    @Override
+    public long getAppliedUpdates() {
+        return appliedUpdates.get();
+    }
+
+    /**
+     * Zwraca liczbę porcji, w których wprowadzono zmiany interfejsu. Metoda pochodząca z interfejsu
+     * {@link ClientUiMXBean}.
+     *
+     * @return liczba porcji
+     */
+    @Override
+    public long getAppliedBatches() {
+        return appliedBatches.get();
+    }
+
+    /** Zmiana interfejsu użytkownika oczekująca w kolejce
+     */
+    private interface Update {
+        /**
+         * Wprowadza zmianę na wątku obsługi zdarzeń.
+         *
+         * @param ui interfejs użytkownika
+         */
+        void apply(ClientSwing ui);
+
+        /**
+         * Dołącza zmianę do połączonych zmian listy użytkowników, jeśli jest zmianą tej listy.
+         *
+         * @param changes połączone zmiany listy użytkowników
+         * @return flaga czy zmiana została dołączona
+         */
+        default boolean mergeInto(UserChanges changes) {
+            return false;
+        }
+    }
+
+    /** Zmiana listy użytkowników - dołączenie, odejście albo nowa lista
+     */
+    private static final class UserUpdate implements Update {
+        /** Nick użytkownika lub {@code null} dla nowej listy */
+        private final String user;
+        /** Flaga czy użytkownik dołączył */
+        private final boolean added;
+        /** Nowa lista użytkowników lub {@code null} */
+        private final List<String> users;
+
+        /**
+         * Tworzy zmianę listy użytkowników.
+         *
+         * @param user nick użytkownika lub {@code null} dla nowej listy
+         * @param added flaga czy użytkownik dołączył
+         * @param users nowa lista użytkowników lub {@code null}
+         */
+        private UserUpdate(String user, boolean added, List<String> users) {
+            this.user = user;
+            this.added = added;
+            this.users = users;
+        }
+
+        /**
+         * Wprowadza pojedynczą zmianę listy użytkowników jako różnicę. Metoda pochodząca z interfejsu {@link Update}.
+         *
+         * @param ui interfejs użytkownika
+         */
+        @Override
+        public void apply(ClientSwing ui) {
+            UserChanges changes = new UserChanges();
+            mergeInto(changes);
+            changes.applyTo(ui);
+        }
+
+        /**
+         * Dołącza zmianę do połączonych zmian listy użytkowników. Metoda pochodząca z interfejsu {@link Update}.
+         *
+         * @param changes połączone zmiany listy użytkowników
+         * @return zawsze {@code true}
+         */
+        @Override
+        public boolean mergeInto(UserChanges changes) {
+            if(users != null) {
+                changes.replace(users);
+            } else if(added) {
+                changes.add(user);
+            } else {
+                changes.remove(user);
+            }
+
+            return true;
+        }
+    }
+
+    /** Połączone zmiany listy użytkowników wprowadzane jako jedna różnica
+     */
+    private static final class UserChanges {
+        /** Nowa lista użytkowników lub {@code null}, jeśli lista nie jest zastępowana */
+        private List<String> replacement;
+        /** Użytkownicy do dopisania */
+        private final Set<String> added = new LinkedHashSet<>();
+        /** Użytkownicy do usunięcia */
+        private final Set<String> removed = new LinkedHashSet<>();
+
+        /**
+         * Zastępuje listę, porzucając wcześniejsze zmiany.
+         *
+         * @param users nowa lista użytkowników
+         */
+        private void replace(List<String> users) {
+            replacement = new ArrayList<>(users);
+            added.clear();
+            removed.clear();
+        }
+
+        /**
+         * Zapisuje dołączenie użytkownika.
+         *
+         * @param user nick użytkownika
+         */
+        private void add(String user) {
+            removed.remove(user);
+            added.add(user);
+        }
+
+        /**
+         * Zapisuje odejście użytkownika.
+         *
+         * @param user nick użytkownika
+         */
+        private void remove(String user) {
+            added.remove(user);
+            removed.add(user);
+        }
+
+        /**
+         * Wprowadza zmiany do listy użytkowników interfejsu i czyści je.
+         *
+         * @param ui interfejs użytkownika
+         */
+        private void applyTo(ClientSwing ui) {
+            if(replacement != null) {
+                ui.showUsers(replacement);
+                replacement = null;
+            }
+
+            if(!added.isEmpty() || !removed.isEmpty()) {
+                ui.updateUsers(added, removed);
+                added.clear();
+                removed.clear();
+            }
+        }
+    }
+}
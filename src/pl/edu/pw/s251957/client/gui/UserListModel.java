@@ -0,0 +1,167 @@
+package pl.edu.pw.s251957.client.gui;
+
+import javax.swing.AbstractListModel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Model listy nicków użytkowników, który wprowadza zmiany najmniejszą liczbą zdarzeń. Obecność nicku sprawdzana jest
+ * w zbiorze, a usunięcie wielu nicków zgłaszane jest jednym zdarzeniem dla każdego ciągłego przedziału, więc zmiana
+ * listy setek użytkowników nie przerysowuje jej wielokrotnie. Model może być zmieniany tylko przez wątek obsługi
+ * zdarzeń Swing'a. Rozszerza klasę {@link AbstractListModel}.
+ *
+ * @see ClientSwing
+ * @see SwingUpdateDispatcher
+ */
+public class UserListModel extends AbstractListModel<String> {
+    /** Wersjonowanie serializacji */
+    private static final long serialVersionUID = 456789123L;
+
+    /** Nicki w kolejności wyświetlania */
+    private final List<String> users;
+    /** Zbiór wyświetlanych nicków */
+    private final Set<String> index;
+
+    /**
+     * Tworzy pusty model listy.
+     */
+    public UserListModel() {
+        this.users = new ArrayList<>();
+        this.index = new HashSet<>();
+    }
+
+    @Override
+    public int getSize() {
+        return users.size();
+    }
+
+    @Override
+    public String getElementAt(int i) {
+        return users.get(i);
+    }
+
+    /**
+     * Sprawdza czy nick jest na liście.
+     *
+     * @param user nick użytkownika
+     * @return flaga czy nick jest wyświetlany
+     */
+    public boolean contains(String user) {
+        return index.contains(user);
+    }
+
+    /**
+     * Zastępuje listę podanymi nickami, usuwając tylko nicki, których nie ma na nowej liście, i dopisując brakujące.
+     *
+     * @param newUsers nowa lista nicków
+     */
+    public void replaceAll(Collection<String> newUsers) {
+        Set<String> retained = new HashSet<>(newUsers);
+        List<String> removed = new ArrayList<>();
+
+        for (String user : users) {
+            if(!retained.contains(user)) {
+                removed.add(user);
+            }
+        }
+
+        applyChanges(newUsers, removed);
+    }
+
+    /**
+     * Wprowadza zmiany listy: usuwa nicki obecne na liście i dopisuje na końcu nicki, których na niej nie ma.
+     * Usunięcie zgłaszane jest jednym zdarzeniem dla każdego ciągłego przedziału, a dopisanie jednym zdarzeniem.
+     *
+     * @param added nicki do dopisania
+     * @param removed nicki do usunięcia
+     */
+    public void applyChanges(Collection<String> added, Collection<String> removed) {
+        removeUsers(removed);
+        int firstAdded = users.size();
+
+        for (String user : added) {
+            if(index.add(user)) {
+                users.add(user);
+            }
+        }
+
+        if(users.size() > firstAdded) {
+            fireIntervalAdded(this, firstAdded, users.size() - 1);
+        }
+    }
+
+    /**
+     * Dopisuje nick na końcu listy, o ile jeszcze się na niej nie znajduje.
+     *
+     * @param user nick użytkownika
+     */
+    public void add(String user) {
+        if(index.add(user)) {
+            users.add(user);
+            fireIntervalAdded(this, users.size() - 1, users.size() - 1);
+        }
+    }
+
+    /**
+     * Usuwa nick z listy.
+     *
+     * @param user nick użytkownika
+     */
+    public void remove(String user) {
+        if(index.remove(user)) {
+            int i = users.indexOf(user);
+            users.remove(i);
+            fireIntervalRemoved(this, i, i);
+        }
+    }
+
+    /**
+     * Usuwa wszystkie nicki z listy.
+     */
+    public void clear() {
+        if(users.isEmpty()) {
+            return;
+        }
+
+        int last = users.size() - 1;
+        users.clear();
+        index.clear();
+        fireIntervalRemoved(this, 0, last);
+    }
+
+    /**
+     * Usuwa nicki obecne na liście, przeglądając ją od końca i zgłaszając jedno zdarzenie dla każdego ciągłego
+     * przedziału usuniętych nicków.
+     *
+     * @param removed nicki do usunięcia
+     */
+    private void removeUsers(Collection<String> removed) {
+        Set<String> toRemove = new HashSet<>();
+
+        for (String user : removed) {
+            if(index.remove(user)) {
+                toRemove.add(user);
+            }
+        }
+
+        int i = users.size() - 1;
+
+        while (!toRemove.isEmpty() && i >= 0) {
+            if(!toRemove.contains(users.get(i))) {
+                i--;
+                continue;
+            }
+
+            int last = i;
+
+            while (i >= 0 && toRemove.remove(users.get(i))) {
+                i--;
+            }
+
+            users.subList(i + 1, last + 1).clear();
+            fireIntervalRemoved(this, i + 1, last);
+        }
+    }
+}
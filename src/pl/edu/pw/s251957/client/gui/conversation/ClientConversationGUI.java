@@ -2,15 +2,24 @@ package pl.edu.pw.s251957.client.gui.conversation;
 
 import pl.edu.pw.s251957.client.gui.ClientSwing;
 import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.HistoryEntry;
+import pl.edu.pw.s251957.common.HistoryPage;
 
 import javax.swing.*;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
 
-/** Interfejs użytkownika wykorzystujący Swing'a do wyświetlania konwersacji pomiędzy dwoma klientami. Rozszerza klasę
- * {@link JFrame}.
+/** Interfejs użytkownika wykorzystujący Swing'a do wyświetlania konwersacji pomiędzy dwoma klientami. Historia
+ * konwersacji pobierana jest z serwera stronami - najnowsza po otwarciu okna, a wcześniejsze na żądanie użytkownika
+ * lub po przewinięciu na początek listy. Lista wiadomości obejmuje ograniczone okno wierszy
+ * {@link ConversationListModel}, które przy przewijaniu przesuwa się po lokalnej pamięci podręcznej, a dopiero po jej
+ * wyczerpaniu pobiera z serwera wcześniejszą stronę. Rozszerza klasę {@link JFrame}.
  *
  * @author Cezary Sanecki
  * @version 1.0
@@ -20,10 +29,16 @@ import java.awt.event.WindowEvent;
 public class ClientConversationGUI extends JFrame {
     /** Wersjonowanie serializacji */
 	private static final long serialVersionUID = 456789123L;
-    /** Pole tekstowe czatu */
-    private JTextArea chatTextArea;
+    /** Model listy wiadomości konwersacji */
+    private ConversationListModel chatListModel;
+    /** Lista wiadomości konwersacji */
+    private JList<String> chatList;
+    /** Panel przewijania listy wiadomości */
+    private JScrollPane chatScrollPane;
     /** Pole tekstowe wiadomości */
     private JTextArea messageTextArea;
+    /** Guzik pobierający wcześniejsze wiadomości z historii */
+    private JButton historyBtn;
 
     /** Informacja czy konwersacja jest w toku */
     private boolean conversationRunning;
@@ -32,6 +47,15 @@ public class ClientConversationGUI extends JFrame {
     /** Nick użytkownika, z którym prowadzona jest konwersacja */
     private String addresseeNick;
 
+    /** Początkowa wiadomość konwersacji */
+    private String initialMessage;
+    /** Wiadomości wysłane przed otrzymaniem najnowszej strony historii lub {@code null} po jej otrzymaniu */
+    private List<String> messagesSentBeforeHistory;
+    /** Flaga czy oczekiwana jest wcześniejsza strona historii */
+    private boolean previousPageRequested;
+    /** Ostatnia pozycja paska przewijania listy wiadomości */
+    private int lastScrollValue;
+
     /**
      * Tworzy instancję interfejsu użytkownika opowiedzialnego za konwersację pomiędzy dwoma klientami. Przypisuje
      * akcje odpowiednim elementom interfejsu.
@@ -47,6 +71,8 @@ public class ClientConversationGUI extends JFrame {
         this.addresseeNick = addresseeNick;
         this.clientSwing = clientSwing;
         this.conversationRunning = true;
+        this.initialMessage = message;
+        this.messagesSentBeforeHistory = new ArrayList<>();
 
         addWindowListener(new WindowAdapter() {
             @Override
@@ -82,12 +108,22 @@ public class ClientConversationGUI extends JFrame {
         setResizable(false);
         setLayout(null);
 
-        chatTextArea = new JTextArea();
-        chatTextArea.setLineWrap(true);
-        chatTextArea.setEditable(false);
-        JScrollPane centerPanel = new JScrollPane(chatTextArea);
-        centerPanel.setBounds(10, 10 ,475 ,350);
-        add(centerPanel);
+        historyBtn = new JButton("Wcześniejsze wiadomości");
+        historyBtn.setBounds(10, 10, 475, 25);
+        historyBtn.setEnabled(false);
+        historyBtn.addActionListener(e -> showOlderMessages());
+        add(historyBtn);
+
+        chatListModel = new ConversationListModel();
+        chatList = new JList<>(chatListModel);
+        chatScrollPane = new JScrollPane(chatList, ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS,
+                ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+        chatScrollPane.setBounds(10, 40 ,475 ,320);
+        int rowWidth = chatScrollPane.getWidth() - chatScrollPane.getInsets().left - chatScrollPane.getInsets().right
+                - chatScrollPane.getVerticalScrollBar().getPreferredSize().width;
+        chatList.setCellRenderer(new ConversationCellRenderer(rowWidth));
+        chatScrollPane.getVerticalScrollBar().addAdjustmentListener(e -> scrolled());
+        add(chatScrollPane);
 
         messageTextArea = new JTextArea();
         messageTextArea.setLineWrap(true);
@@ -100,7 +136,12 @@ public class ClientConversationGUI extends JFrame {
             public void keyPressed(KeyEvent e) {
                 if(e.getKeyCode() == KeyEvent.VK_ENTER && !messageTextArea.getText().equals("")) {
                     String message = messageTextArea.getText() + '\n';
-                    chatTextArea.append("Ty >> " + message);
+                    appendRow("Ty >> " + message, conversationRunning);
+
+                    if(messagesSentBeforeHistory != null) {
+                        messagesSentBeforeHistory.add("Ty >> " + message);
+                    }
+
                     sendMessage(message);
                 }
             }
@@ -113,7 +154,7 @@ public class ClientConversationGUI extends JFrame {
             }
         });
 
-        chatTextArea.setText(message);
+        appendRow(message, false);
     }
 
     /**
@@ -125,7 +166,7 @@ public class ClientConversationGUI extends JFrame {
         if(conversationRunning) {
             clientSwing.sendMessage(new Command(Command.CommandType.SEND_MESSAGE, clientSwing.getClientNick(), addresseeNick, message));
         } else {
-        	chatTextArea.append("[SYSTEM] >> Koniec rozmowy\n");
+        	appendRow("[SYSTEM] >> Koniec rozmowy\n", false);
         }
     }
 
@@ -140,7 +181,154 @@ public class ClientConversationGUI extends JFrame {
     		conversationRunning = true;
     	}
     	
-        chatTextArea.append(nick + " >> " + message);
+        appendRow(nick + " >> " + message, true);
+    }
+
+    /**
+     * Wyświetla stronę historii konwersacji. Najnowsza strona zastępuje dotychczasową treść okna - serwer zapisuje
+     * wiadomości w historii razem z ich dostarczeniem, więc zawiera ona wszystkie wiadomości odebrane przed nią.
+     * Zachowywane są tylko wiadomości wysłane po żądaniu strony. Wcześniejsze strony dodawane są przed najstarszą
+     * wiadomością, a lista pozostaje przewinięta do dotychczas widocznej wiadomości.
+     *
+     * @param page strona historii konwersacji
+     */
+    public void showHistory(HistoryPage page) {
+        List<String> entries = new ArrayList<>(page.getEntries().size());
+
+        for (HistoryEntry entry : page.getEntries()) {
+            String nick = entry.getSenderNick().equals(clientSwing.getClientNick()) ? "Ty" : entry.getSenderNick();
+            String message = entry.getMessage() == null ? "" : entry.getMessage();
+            entries.add(withoutNewline(nick + " >> " + message));
+        }
+
+        if(messagesSentBeforeHistory != null) {
+            chatListModel.showNewestPage(entries, page.getPreviousCursor());
+            chatListModel.append(withoutNewline(initialMessage), false);
+
+            for (String sentMessage : messagesSentBeforeHistory) {
+                chatListModel.append(withoutNewline(sentMessage), true);
+            }
+
+            messagesSentBeforeHistory = null;
+            scrollToNewest();
+        } else {
+            previousPageRequested = false;
+            chatListModel.addOlderPage(entries, page.getPreviousCursor());
+            pageKeepingPosition(true);
+        }
+
+        updateHistoryButton();
+    }
+
+    /**
+     * Przesuwa okno listy do wcześniejszych wiadomości z pamięci podręcznej, a jeśli jest pusta, pobiera z serwera
+     * wcześniejszą stronę historii.
+     */
+    private void showOlderMessages() {
+        if(chatListModel.hasOlderCached()) {
+            pageKeepingPosition(true);
+        } else if(chatListModel.hasOlder() && !previousPageRequested) {
+            previousPageRequested = true;
+            clientSwing.requestHistory(addresseeNick, chatListModel.getPreviousCursor());
+        }
+
+        updateHistoryButton();
+    }
+
+    /**
+     * Reaguje na przewinięcie listy przez użytkownika - na początku listy pokazuje wcześniejsze wiadomości, a na
+     * końcu późniejsze, jeśli okno zostało wcześniej przesunięte. Zmiany listy, które nie przesuwają paska, są
+     * pomijane.
+     */
+    private void scrolled() {
+        JScrollBar scrollBar = chatScrollPane.getVerticalScrollBar();
+        int value = scrollBar.getValue();
+
+        if(value == lastScrollValue) {
+            return;
+        }
+
+        lastScrollValue = value;
+
+        if(value == scrollBar.getMinimum() && chatListModel.hasOlder()) {
+            showOlderMessages();
+        } else if(value + scrollBar.getVisibleAmount() >= scrollBar.getMaximum() && chatListModel.hasNewer()) {
+            pageKeepingPosition(false);
+        }
+    }
+
+    /**
+     * Przesuwa okno listy o stronę wierszy, zachowując na ekranie wiersz widoczny na górze listy.
+     *
+     * @param older flaga czy okno przesuwane jest do wcześniejszych wiadomości
+     */
+    private void pageKeepingPosition(boolean older) {
+        JViewport viewport = chatScrollPane.getViewport();
+        Point position = viewport.getViewPosition();
+        int anchor = chatList.locationToIndex(position);
+        int offset = anchor < 0 ? 0 : position.y - chatList.getCellBounds(anchor, anchor).y;
+
+        int shift = older ? chatListModel.pageOlder() : -chatListModel.pageNewer();
+
+        if(anchor >= 0 && chatListModel.getSize() > 0) {
+            int index = Math.max(0, Math.min(anchor + shift, chatListModel.getSize() - 1));
+            chatScrollPane.validate();
+            Rectangle bounds = chatList.getCellBounds(index, index);
+            viewport.setViewPosition(new Point(0, Math.max(0, bounds.y + offset)));
+            lastScrollValue = chatScrollPane.getVerticalScrollBar().getValue();
+        }
+
+        updateHistoryButton();
+    }
+
+    /**
+     * Dodaje wiersz na końcu konwersacji. Jeśli lista była przewinięta do końca, pozostaje przewinięta do końca.
+     *
+     * @param text treść wiersza
+     * @param logged flaga czy serwer zapisuje wiadomość w historii
+     */
+    private void appendRow(String text, boolean logged) {
+        JScrollBar scrollBar = chatScrollPane.getVerticalScrollBar();
+        boolean atEnd = !chatListModel.hasNewer()
+                && scrollBar.getValue() + scrollBar.getVisibleAmount() >= scrollBar.getMaximum();
+
+        chatListModel.append(withoutNewline(text), logged);
+
+        if(atEnd) {
+            scrollToNewest();
+        }
+
+        updateHistoryButton();
+    }
+
+    /**
+     * Przewija listę do najnowszej wiadomości.
+     */
+    private void scrollToNewest() {
+        chatListModel.showNewest();
+
+        if(chatListModel.getSize() > 0) {
+            chatScrollPane.validate();
+            chatList.ensureIndexIsVisible(chatListModel.getSize() - 1);
+            lastScrollValue = chatScrollPane.getVerticalScrollBar().getValue();
+        }
+    }
+
+    /**
+     * Udostępnia guzik wcześniejszych wiadomości, jeśli istnieją i nie oczekuje się już na stronę historii.
+     */
+    private void updateHistoryButton() {
+        historyBtn.setEnabled(chatListModel.hasOlder() && !previousPageRequested);
+    }
+
+    /**
+     * Usuwa znak końca linii kończący wiadomość, ponieważ każdy wiersz listy jest osobną wiadomością.
+     *
+     * @param text treść wiadomości
+     * @return treść bez końcowego znaku nowej linii
+     */
+    private static String withoutNewline(String text) {
+        return text.endsWith("\n") ? text.substring(0, text.length() - 1) : text;
     }
 
     /**
@@ -150,7 +338,7 @@ public class ClientConversationGUI extends JFrame {
      * @param message wiadomość klienta nadawcy
      */
     public void showEndingMessage(String nick, String message) {
-        chatTextArea.append(nick + " >> " + message);
+        appendRow(nick + " >> " + message, false);
         conversationRunning = false;
     }
 }
@@ -0,0 +1,152 @@
+package pl.edu.pw.s251957.client.gui.conversation;
+
+import pl.edu.pw.s251957.client.gui.ClientSwing;
+import pl.edu.pw.s251957.client.gui.UserListModel;
+
+import javax.swing.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
+
+/** Interfejs użytkownika wykorzystujący Swing'a do wyświetlania rozmowy w pokoju. Obok rozmowy wyświetla listę
+ * członków pokoju, aktualizowaną przy dołączaniu i odchodzeniu użytkowników. Zamknięcie okna opuszcza pokój.
+ * Rozszerza klasę {@link JFrame}.
+ *
+ * @see ClientSwing
+ */
+public class ClientRoomGUI extends JFrame {
+    /** Wersjonowanie serializacji */
+    private static final long serialVersionUID = 789123456L;
+    /** Pole tekstowe czatu */
+    private JTextArea chatTextArea;
+    /** Pole tekstowe wiadomości */
+    private JTextArea messageTextArea;
+    /** Model listy członków pokoju */
+    private UserListModel membersListModel;
+
+    /** Główny interfejs użytkownika */
+    private ClientSwing clientSwing;
+    /** Nazwa pokoju */
+    private String roomName;
+
+    /**
+     * Tworzy instancję interfejsu użytkownika odpowiedzialnego za rozmowę w pokoju. Przypisuje akcje odpowiednim
+     * elementom interfejsu.
+     *
+     * @param roomName nazwa pokoju
+     * @param members nicki członków pokoju
+     * @param clientSwing główny interfejs użytkownika klienta
+     */
+    public ClientRoomGUI(String roomName, List<String> members, ClientSwing clientSwing) {
+        super("Pokój " + roomName);
+
+        this.roomName = roomName;
+        this.clientSwing = clientSwing;
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                clientSwing.leaveRoom(roomName);
+                dispose();
+            }
+        });
+
+        initLayout();
+        showMembers(members);
+        setVisible(true);
+
+        addWindowFocusListener(new WindowAdapter() {
+            @Override
+            public void windowGainedFocus(WindowEvent e) {
+                messageTextArea.requestFocusInWindow();
+            }
+        });
+    }
+
+    /**
+     * Rozmieszcza interfejs pokoju. Ustawia opowiednie akcje polu tekstowemu wiadomości.
+     */
+    private void initLayout() {
+        setSize(650, 465);
+        setResizable(false);
+        setLayout(null);
+
+        chatTextArea = new JTextArea();
+        chatTextArea.setLineWrap(true);
+        chatTextArea.setEditable(false);
+        JScrollPane centerPanel = new JScrollPane(chatTextArea);
+        centerPanel.setBounds(10, 10, 475, 350);
+        add(centerPanel);
+
+        membersListModel = new UserListModel();
+        JScrollPane rightPanel = new JScrollPane(new JList<>(membersListModel));
+        rightPanel.setBounds(495, 10, 140, 350);
+        add(rightPanel);
+
+        messageTextArea = new JTextArea();
+        messageTextArea.setLineWrap(true);
+        JScrollPane bottomPanel = new JScrollPane(messageTextArea);
+        bottomPanel.setBounds(10, 375, 625, 50);
+        add(bottomPanel);
+
+        messageTextArea.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if(e.getKeyCode() == KeyEvent.VK_ENTER && !messageTextArea.getText().equals("")) {
+                    String message = messageTextArea.getText() + '\n';
+                    chatTextArea.append("Ty >> " + message);
+                    clientSwing.sendRoomMessage(roomName, message);
+                }
+            }
+
+            @Override
+            public void keyReleased(KeyEvent e) {
+                if(e.getKeyCode() == KeyEvent.VK_ENTER && !messageTextArea.getText().equals("")) {
+                    messageTextArea.setText("");
+                }
+            }
+        });
+    }
+
+    /**
+     * Wyświetla listę członków pokoju.
+     *
+     * @param members nicki członków pokoju
+     */
+    public void showMembers(List<String> members) {
+        membersListModel.replaceAll(members);
+    }
+
+    /**
+     * Dodaje członka do listy i informuje o jego dołączeniu.
+     *
+     * @param member nick członka
+     */
+    public void addMember(String member) {
+        membersListModel.add(member);
+
+        chatTextArea.append("[SYSTEM] Do pokoju dołączył " + member + '\n');
+    }
+
+    /**
+     * Usuwa członka z listy i informuje o jego odejściu.
+     *
+     * @param member nick członka
+     */
+    public void removeMember(String member) {
+        membersListModel.remove(member);
+        chatTextArea.append("[SYSTEM] Pokój opuścił " + member + '\n');
+    }
+
+    /**
+     * Wyświetla otrzymaną wiadomość {@code message} od użytkownika {@code nick}.
+     *
+     * @param nick nick nadawcy
+     * @param message treść wiadomości
+     */
+    public void showReceivedMessage(String nick, String message) {
+        chatTextArea.append(nick + " >> " + message);
+    }
+}
@@ -0,0 +1,49 @@
+package pl.edu.pw.s251957.client.gui.conversation;
+
+import javax.swing.BorderFactory;
+import javax.swing.JList;
+import javax.swing.JTextArea;
+import javax.swing.ListCellRenderer;
+import java.awt.Component;
+import java.awt.Dimension;
+
+/** Wyświetlanie wiersza konwersacji na liście jako tekstu zawijanego do stałej szerokości. Lista rysuje tylko
+ * widoczne wiersze, a wysokość wiersza wynika z liczby linii po zawinięciu. Implementuje interfejs
+ * {@link ListCellRenderer}.
+ *
+ * @see ClientConversationGUI
+ */
+class ConversationCellRenderer implements ListCellRenderer<String> {
+    /** Pole tekstowe rysujące wiersz */
+    private final JTextArea textArea;
+    /** Szerokość wiersza w pikselach */
+    private final int width;
+
+    /**
+     * Tworzy wyświetlanie wierszy o podanej szerokości.
+     *
+     * @param width szerokość wiersza w pikselach
+     */
+    ConversationCellRenderer(int width) {
+        this.width = width;
+        this.textArea = new JTextArea();
+        this.textArea.setLineWrap(true);
+        this.textArea.setWrapStyleWord(true);
+        this.textArea.setBorder(BorderFactory.createEmptyBorder(1, 3, 1, 3));
+    }
+
+    @Override
+    public Component getListCellRendererComponent(JList<? extends String> list, String value, int index,
+                                                  boolean isSelected, boolean cellHasFocus) {
+        textArea.setFont(list.getFont());
+        textArea.setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
+        textArea.setForeground(isSelected ? list.getSelectionForeground() : list.getForeground());
+        textArea.setText(value);
+
+        textArea.setPreferredSize(null);
+        textArea.setSize(width, Short.MAX_VALUE);
+        textArea.setPreferredSize(new Dimension(width, textArea.getPreferredSize().height));
+
+        return textArea;
+    }
+}
@@ -0,0 +1,302 @@
+package pl.edu.pw.s251957.client.gui.conversation;
+
+import pl.edu.pw.s251957.common.HistoryPage;
+
+import javax.swing.AbstractListModel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/** Model listy wiadomości konwersacji ograniczony do okna stałej liczby wierszy, przechowywanych w buforze
+ * cyklicznym. Lista wyświetla tylko wiersze okna, więc jej układ nie rośnie razem z konwersacją. Wiersze wyparte
+ * z okna trafiają do lokalnej pamięci podręcznej - starsze do ograniczonej pamięci wcześniejszych wiadomości,
+ * a nowsze, wyparte podczas przewijania w górę, do pamięci późniejszych wiadomości, z której wracają przy
+ * przewijaniu w dół. Najstarsze wiersze usuwane z pamięci podręcznej można ponownie pobrać z historii na serwerze,
+ * dlatego wiadomości zapisywane w historii otrzymują numery kolejne w historii serwera, a model pamięta kursor
+ * strony poprzedzającej najstarszy przechowywany wiersz. Model może być zmieniany tylko przez wątek obsługi zdarzeń
+ * Swing'a. Rozszerza klasę {@link AbstractListModel}.
+ *
+ * @see ClientConversationGUI
+ * @see RingBuffer
+ */
+class ConversationListModel extends AbstractListModel<String> {
+    /** Wersjonowanie serializacji */
+    private static final long serialVersionUID = 147258369L;
+    /** Liczba wierszy okna listy */
+    static final int VIEW_ROWS = 200;
+    /** Maksymalna liczba wierszy w pamięci wcześniejszych i w pamięci późniejszych wiadomości */
+    static final int CACHE_ROWS = 2000;
+    /** Liczba wierszy przenoszonych do okna przy przewinięciu do jego krawędzi */
+    static final int PAGE_ROWS = 50;
+    /** Numer wiersza, który nie jest zapisany w historii serwera lub którego numer nie jest znany */
+    private static final long NO_SEQUENCE = -1;
+
+    /** Wiersze okna listy */
+    private final RingBuffer<Row> rows;
+    /** Wiersze wcześniejsze od okna, od najstarszego */
+    private final Deque<Row> older;
+    /** Wiersze późniejsze od okna, od najstarszego */
+    private final Deque<Row> newer;
+    /** Kursor strony historii poprzedzającej najstarszy przechowywany wiersz */
+    private long previousCursor;
+    /** Numer kolejnej wiadomości zapisanej w historii lub {@link #NO_SEQUENCE} przed otrzymaniem najnowszej strony */
+    private long nextSequence;
+
+    /**
+     * Tworzy pusty model listy.
+     */
+    ConversationListModel() {
+        this.rows = new RingBuffer<>(VIEW_ROWS);
+        this.older = new ArrayDeque<>();
+        this.newer = new ArrayDeque<>();
+        this.previousCursor = HistoryPage.NO_CURSOR;
+        this.nextSequence = NO_SEQUENCE;
+    }
+
+    @Override
+    public int getSize() {
+        return rows.size();
+    }
+
+    @Override
+    public String getElementAt(int i) {
+        return rows.get(i).text;
+    }
+
+    /**
+     * Dodaje wiadomość na końcu konwersacji. Jeśli okno zostało przewinięte do wcześniejszych wiadomości, wiadomość
+     * trafia do pamięci późniejszych wiadomości, a gdy ta się przepełni, okno wraca do najnowszych wiadomości.
+     *
+     * @param text treść wiersza
+     * @param logged flaga czy serwer zapisuje wiadomość w historii
+     */
+    void append(String text, boolean logged) {
+        long sequence = logged && nextSequence != NO_SEQUENCE ? nextSequence++ : NO_SEQUENCE;
+        Row row = new Row(text, sequence);
+
+        if(newer.isEmpty()) {
+            if(rows.isFull()) {
+                cacheOlder(rows.removeFirst());
+                fireIntervalRemoved(this, 0, 0);
+            }
+
+            rows.addLast(row);
+            fireIntervalAdded(this, rows.size() - 1, rows.size() - 1);
+        } else {
+            newer.addLast(row);
+
+            if(newer.size() > CACHE_ROWS) {
+                showNewest();
+            }
+        }
+    }
+
+    /**
+     * Zastępuje konwersację najnowszą stroną historii. Kolejne wiadomości zapisywane w historii numerowane są od
+     * końca strony.
+     *
+     * @param entries wiersze strony od najstarszego
+     * @param pagePreviousCursor kursor strony poprzedzającej
+     */
+    void showNewestPage(List<String> entries, long pagePreviousCursor) {
+        clear();
+        previousCursor = pagePreviousCursor;
+        long sequence = pagePreviousCursor == HistoryPage.NO_CURSOR ? 0 : pagePreviousCursor;
+
+        for (String entry : entries) {
+            if(rows.isFull()) {
+                cacheOlder(rows.removeFirst());
+            }
+
+            rows.addLast(new Row(entry, sequence++));
+        }
+
+        nextSequence = sequence;
+
+        if(rows.size() > 0) {
+            fireIntervalAdded(this, 0, rows.size() - 1);
+        }
+    }
+
+    /**
+     * Dodaje wcześniejszą stronę historii przed najstarszym przechowywanym wierszem. Strona trafia do pamięci
+     * wcześniejszych wiadomości, skąd przenoszona jest do okna przez {@link #pageOlder()}.
+     *
+     * @param entries wiersze strony od najstarszego
+     * @param pagePreviousCursor kursor strony poprzedzającej
+     */
+    void addOlderPage(List<String> entries, long pagePreviousCursor) {
+        long sequence = (pagePreviousCursor == HistoryPage.NO_CURSOR ? 0 : pagePreviousCursor) + entries.size();
+        previousCursor = pagePreviousCursor;
+
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            older.addFirst(new Row(entries.get(i), --sequence));
+        }
+
+        trimOlder();
+    }
+
+    /**
+     * Przenosi do początku okna stronę wierszy z pamięci wcześniejszych wiadomości. Wiersze wyparte z końca okna
+     * trafiają do pamięci późniejszych wiadomości.
+     *
+     * @return liczba wierszy dodanych na początku okna
+     */
+    int pageOlder() {
+        int count = Math.min(PAGE_ROWS, older.size());
+        int evicted = Math.max(0, rows.size() + count - rows.capacity());
+
+        if(evicted > 0) {
+            for (int i = 0; i < evicted; i++) {
+                newer.addFirst(rows.removeLast());
+            }
+
+            fireIntervalRemoved(this, rows.size(), rows.size() + evicted - 1);
+        }
+
+        for (int i = 0; i < count; i++) {
+            rows.addFirst(older.removeLast());
+        }
+
+        if(count > 0) {
+            fireIntervalAdded(this, 0, count - 1);
+        }
+
+        return count;
+    }
+
+    /**
+     * Przenosi na koniec okna stronę wierszy z pamięci późniejszych wiadomości. Wiersze wyparte z początku okna
+     * trafiają do pamięci wcześniejszych wiadomości.
+     *
+     * @return liczba wierszy usuniętych z początku okna
+     */
+    int pageNewer() {
+        int count = Math.min(PAGE_ROWS, newer.size());
+        int evicted = Math.max(0, rows.size() + count - rows.capacity());
+
+        if(evicted > 0) {
+            for (int i = 0; i < evicted; i++) {
+                older.addLast(rows.removeFirst());
+            }
+
+            trimOlder();
+            fireIntervalRemoved(this, 0, evicted - 1);
+        }
+
+        int first = rows.size();
+
+        for (int i = 0; i < count; i++) {
+            rows.addLast(newer.removeFirst());
+        }
+
+        if(count > 0) {
+            fireIntervalAdded(this, first, rows.size() - 1);
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Przenosi do okna wszystkie późniejsze wiadomości, aż okno pokaże najnowsze.
+     */
+    void showNewest() {
+        while (!newer.isEmpty()) {
+            pageNewer();
+        }
+    }
+
+    /**
+     * Informuje czy w pamięci wcześniejszych wiadomości są wiersze do przeniesienia do okna.
+     *
+     * @return flaga czy są zapamiętane wcześniejsze wiersze
+     */
+    boolean hasOlderCached() {
+        return !older.isEmpty();
+    }
+
+    /**
+     * Informuje czy istnieją wiadomości wcześniejsze od okna - zapamiętane lokalnie albo w historii serwera.
+     *
+     * @return flaga czy są wcześniejsze wiadomości
+     */
+    boolean hasOlder() {
+        return !older.isEmpty() || previousCursor != HistoryPage.NO_CURSOR;
+    }
+
+    /**
+     * Informuje czy okno zostało przewinięte do wcześniejszych wiadomości i istnieją późniejsze.
+     *
+     * @return flaga czy są późniejsze wiadomości
+     */
+    boolean hasNewer() {
+        return !newer.isEmpty();
+    }
+
+    /**
+     * Zwraca kursor strony historii poprzedzającej najstarszy przechowywany wiersz.
+     *
+     * @return kursor strony lub {@link HistoryPage#NO_CURSOR}, jeśli serwer nie ma wcześniejszych wiadomości
+     */
+    long getPreviousCursor() {
+        return previousCursor;
+    }
+
+    /**
+     * Usuwa wszystkie wiersze z okna i pamięci podręcznej.
+     */
+    void clear() {
+        int size = rows.size();
+        rows.clear();
+        older.clear();
+        newer.clear();
+
+        if(size > 0) {
+            fireIntervalRemoved(this, 0, size - 1);
+        }
+    }
+
+    /**
+     * Dodaje wiersz wyparty z początku okna do pamięci wcześniejszych wiadomości.
+     *
+     * @param row wyparty wiersz
+     */
+    private void cacheOlder(Row row) {
+        older.addLast(row);
+        trimOlder();
+    }
+
+    /**
+     * Usuwa najstarsze wiersze z przepełnionej pamięci wcześniejszych wiadomości. Kursor historii przesuwany jest za
+     * ostatni usunięty wiersz zapisany w historii serwera, aby można go było ponownie pobrać.
+     */
+    private void trimOlder() {
+        while (older.size() > CACHE_ROWS) {
+            Row dropped = older.removeFirst();
+
+            if(dropped.sequence != NO_SEQUENCE) {
+                previousCursor = dropped.sequence + 1;
+            }
+        }
+    }
+
+    /** Wiersz konwersacji
+     */
+    private static final class Row {
+        /** Treść wiersza */
+        private final String text;
+        /** Numer wiadomości w historii serwera lub {@link #NO_SEQUENCE} */
+        private final long sequence;
+
+        /**
+         * Tworzy wiersz konwersacji.
+         *
+         * @param text treść wiersza
+         * @param sequence numer wiadomości w historii serwera lub {@link #NO_SEQUENCE}
+         */
+        private Row(String text, long sequence) {
+            this.text = text;
+            this.sequence = sequence;
+        }
+    }
+}
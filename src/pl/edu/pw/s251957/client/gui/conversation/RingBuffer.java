@@ -0,0 +1,134 @@
+package pl.edu.pw.s251957.client.gui.conversation;
+
+/** Bufor cykliczny o stałej pojemności. Elementy można dodawać i usuwać z obu końców w czasie stałym, a dodanie do
+ * pełnego bufora wypiera element z przeciwnego końca.
+ *
+ * @param <E> typ elementów bufora
+ * @see ConversationListModel
+ */
+class RingBuffer<E> {
+    /** Elementy bufora */
+    private final Object[] elements;
+    /** Indeks pierwszego elementu w tablicy */
+    private int head;
+    /** Liczba elementów */
+    private int size;
+
+    /**
+     * Tworzy pusty bufor o podanej pojemności.
+     *
+     * @param capacity maksymalna liczba elementów
+     */
+    RingBuffer(int capacity) {
+        this.elements = new Object[capacity];
+    }
+
+    /**
+     * Zwraca element o podanym indeksie, licząc od początku bufora.
+     *
+     * @param i indeks elementu
+     * @return element bufora
+     */
+    @SuppressWarnings("unchecked")
+    E get(int i) {
+        if(i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Indeks " + i + ", rozmiar " + size);
+        }
+
+        return (E) elements[(head + i) % elements.length];
+    }
+
+    /**
+     * Dodaje element na końcu bufora.
+     *
+     * @param element dodawany element
+     * @return element wyparty z początku pełnego bufora lub {@code null}
+     */
+    E addLast(E element) {
+        E evicted = isFull() ? removeFirst() : null;
+        elements[(head + size) % elements.length] = element;
+        size++;
+
+        return evicted;
+    }
+
+    /**
+     * Dodaje element na początku bufora.
+     *
+     * @param element dodawany element
+     * @return element wyparty z końca pełnego bufora lub {@code null}
+     */
+    E addFirst(E element) {
+        E evicted = isFull() ? removeLast() : null;
+        head = (head - 1 + elements.length) % elements.length;
+        elements[head] = element;
+        size++;
+
+        return evicted;
+    }
+
+    /**
+     * Usuwa pierwszy element bufora.
+     *
+     * @return usunięty element
+     */
+    E removeFirst() {
+        E element = get(0);
+        elements[head] = null;
+        head = (head + 1) % elements.length;
+        size--;
+
+        return element;
+    }
+
+    /**
+     * Usuwa ostatni element bufora.
+     *
+     * @return usunięty element
+     */
+    E removeLast() {
+        E element = get(size - 1);
+        elements[(head + size - 1) % elements.length] = null;
+        size--;
+
+        return element;
+    }
+
+    /**
+     * Usuwa wszystkie elementy bufora.
+     */
+    void clear() {
+        while (size > 0) {
+            removeLast();
+        }
+
+        head = 0;
+    }
+
+    /**
+     * Zwraca liczbę elementów bufora.
+     *
+     * @return liczba elementów
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Zwraca pojemność bufora.
+     *
+     * @return maksymalna liczba elementów
+     */
+    int capacity() {
+        return elements.length;
+    }
+
+    /**
+     * Informuje czy bufor osiągnął pojemność.
+     *
+     * @return flaga czy bufor jest pełny
+     */
+    boolean isFull() {
+        return size == elements.length;
+    }
+}
@@ -19,7 +19,9 @@ import java.io.File;
  */
 public class ServerConfigurator {
     /**
-     * Odczytuje dane konfiguracyjne XML z danego katalogu dla pliku config.xml
+     * Odczytuje dane konfiguracyjne XML z danego katalogu dla pliku config.xml. Opcjonalny element {@code tls}
+     * o wartości {@code true} włącza szyfrowanie, a elementy {@code trustStore} i {@code trustStorePassword} wskazują
+     * magazyn zaufanych certyfikatów.
      *
      * @return dane połączenia z serwerem
      * @throws UnacceptableClientConfigException wyjątek informujący, dlaczego nie można było odczytać danych połączenia
@@ -33,6 +35,9 @@ public class ServerConfigurator {
 
             String hostElement = null;
             String portElement = null;
+            String tlsElement = null;
+            String trustStoreElement = null;
+            String trustStorePasswordElement = null;
 
             for (int i = 0; i < nList.getLength(); i++) {
                 Node nNode = nList.item(i);
@@ -41,11 +46,18 @@ public class ServerConfigurator {
                     Element element = (Element) nNode;
                     hostElement = element.getElementsByTagName("host").item(0).getTextContent();
                     portElement = element.getElementsByTagName("port").item(0).getTextContent();
+                    tlsElement = getOptionalElement(element, "tls");
+                    trustStoreElement = getOptionalElement(element, "trustStore");
+                    trustStorePasswordElement = getOptionalElement(element, "trustStorePassword");
                 }
             }
 
             int port = Integer.parseInt(portElement);
 
+            if(Boolean.parseBoolean(tlsElement)) {
+                return new ServerConnectionConfig(hostElement, port, trustStoreElement, trustStorePasswordElement);
+            }
+
             return new ServerConnectionConfig(hostElement, port);
         } catch (ParserConfigurationException e) {
             throw new UnacceptableClientConfigException(e.getMessage());
@@ -54,6 +66,18 @@ public class ServerConfigurator {
         }
     }
 
+    /**
+     * Odczytuje wartość opcjonalnego elementu konfiguracji.
+     *
+     * @param element element konfiguracji
+     * @param tagName nazwa elementu
+     * @return wartość elementu lub {@code null}, jeśli go nie podano
+     */
+    private static String getOptionalElement(Element element, String tagName) {
+        Node node = element.getElementsByTagName(tagName).item(0);
+        return node == null ? null : node.getTextContent().trim();
+    }
+
     /**
      * Parsuje dane z danego pliku XML
      *
@@ -1,6 +1,7 @@
 package pl.edu.pw.s251957.client.util.model;
 
-/** Klasa przedstawiające dane połączenia z serwerem.
+/** Klasa przedstawiające dane połączenia z serwerem. Połączenie może być szyfrowane TLS, a serwerowi z certyfikatem
+ * samopodpisanym klient ufa na podstawie magazynu zaufanych certyfikatów.
  *
  * @author Cezary Sanecki
  * @version 1.0
@@ -11,6 +12,12 @@ public class ServerConnectionConfig {
     private String host;
     /** Port hosta */
     private int port;
+    /** Flaga czy połączenie jest szyfrowane TLS */
+    private boolean tls;
+    /** Ścieżka magazynu zaufanych certyfikatów PKCS12 lub {@code null} dla domyślnych urzędów certyfikacji */
+    private String trustStore;
+    /** Hasło magazynu zaufanych certyfikatów */
+    private String trustStorePassword;
 
     /**
      * Inicjalizuje nowy obiekt danych połączenia z serwerem.
@@ -23,6 +30,21 @@ public class ServerConnectionConfig {
         this.port = port;
     }
 
+    /**
+     * Inicjalizuje nowy obiekt danych połączenia szyfrowanego TLS.
+     *
+     * @param host adres hosta
+     * @param port port hosta
+     * @param trustStore ścieżka magazynu zaufanych certyfikatów lub {@code null} dla domyślnych urzędów certyfikacji
+     * @param trustStorePassword hasło magazynu zaufanych certyfikatów
+     */
+    public ServerConnectionConfig(String host, int port, String trustStore, String trustStorePassword) {
+        this(host, port);
+        this.tls = true;
+        this.trustStore = trustStore;
+        this.trustStorePassword = trustStorePassword;
+    }
+
     /**
      * Zwraca adres hosta.
      *
@@ -40,4 +62,31 @@ public class ServerConnectionConfig {
     public int getPort() {
         return port;
     }
+
+    /**
+     * Informuje czy połączenie jest szyfrowane TLS.
+     *
+     * @return flaga czy połączenie używa TLS
+     */
+    public boolean isTls() {
+        return tls;
+    }
+
+    /**
+     * Zwraca ścieżkę magazynu zaufanych certyfikatów.
+     *
+     * @return ścieżka magazynu lub {@code null} dla domyślnych urzędów certyfikacji
+     */
+    public String getTrustStore() {
+        return trustStore;
+    }
+
+    /**
+     * Zwraca hasło magazynu zaufanych certyfikatów.
+     *
+     * @return hasło magazynu
+     */
+    public String getTrustStorePassword() {
+        return trustStorePassword;
+    }
 }
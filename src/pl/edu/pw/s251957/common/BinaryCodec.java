@@ -0,0 +1,339 @@
+package pl.edu.pw.s251957.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Koder komunikatów w zwartym formacie binarnym. Każdy komunikat zaczyna się bajtem kodu operacji z
+ * {@link Command.CommandType} lub {@link Response.ResponseType}, po którym następują pola zapisane przez
+ * {@link WireWriter}. Wiadomości adresowane numerem sesji zawierają tylko numer i treść, a potwierdzenia wiadomości -
+ * tylko numer wiadomości i ewentualny powód odrzucenia. Numery sesji pozostałych odpowiedzi i numery wiadomości w
+ * żądaniach zapisywane są na końcu komunikatu, więc starsze wersje protokołu je pomijają. Koder nie
+ * przechowuje stanu, dlatego jedna instancja może być używana przez wiele wątków i połączeń. Implementuje interfejs
+ * {@link MessageCodec}.
+ *
+ * @see MessageCodec
+ * @see ProtocolHandshake
+ */
+public class BinaryCodec implements MessageCodec {
+    /** Znacznik braku danych odpowiedzi */
+    private static final int NO_DATA = 0;
+    /** Znacznik danych odpowiedzi w postaci ciągu znaków */
+    private static final int STRING_DATA = 1;
+    /** Znacznik danych odpowiedzi w postaci listy ciągów znaków */
+    private static final int STRING_LIST_DATA = 2;
+    /** Znacznik danych odpowiedzi w postaci strony historii konwersacji */
+    private static final int HISTORY_PAGE_DATA = 3;
+
+    /**
+     * Koduje żądanie do treści ramki. Metoda pochodząca z interfejsu {@link MessageCodec}.
+     *
+     * @param command żądanie do serwera
+     * @return treść ramki
+     */
+    @Override
+    public byte[] encodeCommand(Command command) {
+        if(command.getCommandType() == Command.CommandType.SESSION_MESSAGE) {
+            WireWriter writer = new WireWriter(estimateLength(command.getMessage(), null, null));
+            writer.writeByte(command.getCommandType().getOpcode());
+            writer.writeVarInt(command.getAddresseeId());
+            writer.writeString(command.getMessage());
+            writeMessageId(writer, command.getMessageId());
+
+            return writer.toByteArray();
+        }
+
+        WireWriter writer = new WireWriter(estimateLength(command.getClientNick(), command.getAddresseeNick(),
+                command.getMessage()));
+        writer.writeByte(command.getCommandType().getOpcode());
+        writer.writeString(command.getClientNick());
+        writer.writeString(command.getAddresseeNick());
+        writer.writeString(command.getMessage());
+        writeMessageId(writer, command.getMessageId());
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Dekoduje żądanie z treści ramki. Metoda pochodząca z interfejsu {@link MessageCodec}.
+     *
+     * @param payload treść ramki
+     * @return żądanie do serwera
+     * @throws IOException niepoprawna treść ramki
+     */
+    @Override
+    public Command decodeCommand(byte[] payload) throws IOException {
+        WireReader reader = new WireReader(payload);
+        int opcode = reader.readByte();
+        Command.CommandType commandType = Command.CommandType.fromOpcode(opcode);
+
+        if(commandType == null) {
+            throw new IOException("Nieznany typ żądania: " + opcode);
+        }
+
+        Command command = commandType == Command.CommandType.SESSION_MESSAGE
+                ? new Command(reader.readVarInt(), reader.readString())
+                : new Command(commandType, reader.readString(), reader.readString(), reader.readString());
+
+        return reader.remaining() == 0 ? command : command.withMessageId(reader.readVarLong());
+    }
+
+    /**
+     * Koduje odpowiedź do treści ramki. Metoda pochodząca z interfejsu {@link MessageCodec}.
+     *
+     * @param response odpowiedź serwera
+     * @return treść ramki
+     * @throws IOException nieobsługiwany typ danych odpowiedzi
+     */
+    @Override
+    public byte[] encodeResponse(Response response) throws IOException {
+        WireWriter writer = new WireWriter(estimateLength(response.getAddresseeNick(), response.getMessage(), null));
+        writer.writeByte(response.getResponseType().getOpcode());
+
+        if(response.getResponseType() == Response.ResponseType.SESSION_MESSAGE) {
+            writer.writeVarInt(response.getSessionIds()[0]);
+            writer.writeString(response.getMessage());
+
+            return writer.toByteArray();
+        }
+
+        if(response.getResponseType() == Response.ResponseType.ACK
+                || response.getResponseType() == Response.ResponseType.NACK) {
+            writer.writeVarLong(response.getMessageId());
+            writer.writeString(response.getMessage());
+
+            if(response.getRetryAfter() > 0) {
+                writer.writeVarLong(response.getRetryAfter());
+            }
+
+            return writer.toByteArray();
+        }
+
+        writer.writeString(response.getAddresseeNick());
+        writer.writeString(response.getMessage());
+        writeData(writer, response.getData());
+        writeSessionIds(writer, response.getSessionIds());
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Dekoduje odpowiedź z treści ramki. Metoda pochodząca z interfejsu {@link MessageCodec}.
+     *
+     * @param payload treść ramki
+     * @return odpowiedź serwera
+     * @throws IOException niepoprawna treść ramki
+     */
+    @Override
+    public Response decodeResponse(byte[] payload) throws IOException {
+        WireReader reader = new WireReader(payload);
+        int opcode = reader.readByte();
+        Response.ResponseType responseType = Response.ResponseType.fromOpcode(opcode);
+
+        if(responseType == null) {
+            throw new IOException("Nieznany typ odpowiedzi: " + opcode);
+        }
+
+        if(responseType == Response.ResponseType.SESSION_MESSAGE) {
+            int senderId = reader.readVarInt();
+            return new Response(responseType, null, reader.readString(), null, new int[] {senderId});
+        }
+
+        if(responseType == Response.ResponseType.ACK || responseType == Response.ResponseType.NACK) {
+            long messageId = reader.readVarLong();
+            String reason = reader.readString();
+            long retryAfter = reader.remaining() > 0 ? reader.readVarLong() : 0;
+
+            return new Response(responseType, messageId, reason, retryAfter);
+        }
+
+        String addresseeNick = reader.readString();
+        String message = reader.readString();
+        Object data = readData(reader);
+
+        return new Response(responseType, addresseeNick, message, data, readSessionIds(reader));
+    }
+
+    /**
+     * Koder nie przechowuje stanu, więc zakodowana treść może być współdzielona. Metoda pochodząca z interfejsu
+     * {@link MessageCodec}.
+     *
+     * @return zawsze {@code true}
+     */
+    @Override
+    public boolean isShareable() {
+        return true;
+    }
+
+    /**
+     * Zapisuje dane odpowiedzi poprzedzone znacznikiem ich typu.
+     *
+     * @param writer obiekt zapisujący
+     * @param data dane odpowiedzi
+     * @throws IOException nieobsługiwany typ danych odpowiedzi
+     */
+    private void writeData(WireWriter writer, Object data) throws IOException {
+        if(data == null) {
+            writer.writeByte(NO_DATA);
+        } else if(data instanceof String) {
+            writer.writeByte(STRING_DATA);
+            writer.writeString((String) data);
+        } else if(data instanceof List) {
+            List<?> list = (List<?>) data;
+            writer.writeByte(STRING_LIST_DATA);
+            writer.writeVarInt(list.size());
+
+            for (Object element : list) {
+                writer.writeString((String) element);
+            }
+        } else if(data instanceof HistoryPage) {
+            writer.writeByte(HISTORY_PAGE_DATA);
+            writeHistoryPage(writer, (HistoryPage) data);
+        } else {
+            throw new IOException("Nieobsługiwane dane odpowiedzi: " + data.getClass().getName());
+        }
+    }
+
+    /**
+     * Odczytuje dane odpowiedzi na podstawie znacznika ich typu.
+     *
+     * @param reader obiekt odczytujący
+     * @return dane odpowiedzi
+     * @throws IOException niepoprawna treść ramki
+     */
+    private Object readData(WireReader reader) throws IOException {
+        int dataType = reader.readByte();
+
+        switch (dataType) {
+            case NO_DATA:
+                return null;
+            case STRING_DATA:
+                return reader.readString();
+            case STRING_LIST_DATA:
+                int size = reader.readVarInt();
+                List<String> list = new ArrayList<>(Math.min(size, reader.remaining()));
+
+                for (int i = 0; i < size; i++) {
+                    list.add(reader.readString());
+                }
+
+                return list;
+            case HISTORY_PAGE_DATA:
+                return readHistoryPage(reader);
+            default:
+                throw new IOException("Nieznany typ danych odpowiedzi: " + dataType);
+        }
+    }
+
+    /**
+     * Zapisuje numery sesji na końcu odpowiedzi, o ile odpowiedź je zawiera.
+     *
+     * @param writer obiekt zapisujący
+     * @param sessionIds numery sesji lub {@code null}
+     */
+    private void writeSessionIds(WireWriter writer, int[] sessionIds) {
+        if(sessionIds == null) {
+            return;
+        }
+
+        writer.writeVarInt(sessionIds.length);
+
+        for (int sessionId : sessionIds) {
+            writer.writeVarInt(sessionId);
+        }
+    }
+
+    /**
+     * Zapisuje numer wiadomości na końcu żądania, o ile wiadomość ma być potwierdzona.
+     *
+     * @param writer obiekt zapisujący
+     * @param messageId numer wiadomości lub 0
+     */
+    private void writeMessageId(WireWriter writer, long messageId) {
+        if(messageId != 0) {
+            writer.writeVarLong(messageId);
+        }
+    }
+
+    /**
+     * Odczytuje numery sesji z końca odpowiedzi.
+     *
+     * @param reader obiekt odczytujący
+     * @return numery sesji lub {@code null}, jeśli odpowiedź ich nie zawiera
+     * @throws IOException niepoprawna treść ramki
+     */
+    private int[] readSessionIds(WireReader reader) throws IOException {
+        if(reader.remaining() == 0) {
+            return null;
+        }
+
+        int count = reader.readVarInt();
+
+        if(count < 0 || count > reader.remaining()) {
+            throw new IOException("Niepoprawna liczba numerów sesji: " + count);
+        }
+
+        int[] sessionIds = new int[count];
+
+        for (int i = 0; i < sessionIds.length; i++) {
+            sessionIds[i] = reader.readVarInt();
+        }
+
+        return sessionIds;
+    }
+
+    /**
+     * Zapisuje stronę historii konwersacji. Kursor zapisywany jest powiększony o jeden, aby brak kursora był
+     * liczbą nieujemną.
+     *
+     * @param writer obiekt zapisujący
+     * @param page strona historii konwersacji
+     */
+    private void writeHistoryPage(WireWriter writer, HistoryPage page) {
+        writer.writeString(page.getConversationNick());
+        writer.writeVarLong(page.getPreviousCursor() + 1);
+        writer.writeVarInt(page.getEntries().size());
+
+        for (HistoryEntry entry : page.getEntries()) {
+            writer.writeString(entry.getSenderNick());
+            writer.writeString(entry.getMessage());
+        }
+    }
+
+    /**
+     * Odczytuje stronę historii konwersacji.
+     *
+     * @param reader obiekt odczytujący
+     * @return strona historii konwersacji
+     * @throws IOException niepoprawna treść ramki
+     */
+    private HistoryPage readHistoryPage(WireReader reader) throws IOException {
+        String conversationNick = reader.readString();
+        long previousCursor = reader.readVarLong() - 1;
+        int size = reader.readVarInt();
+        List<HistoryEntry> entries = new ArrayList<>(Math.min(size, reader.remaining()));
+
+        for (int i = 0; i < size; i++) {
+            entries.add(new HistoryEntry(reader.readString(), reader.readString()));
+        }
+
+        return new HistoryPage(conversationNick, entries, previousCursor);
+    }
+
+    /**
+     * Szacuje rozmiar komunikatu, aby uniknąć powiększania bufora przy zapisie.
+     *
+     * @param first pierwsze pole tekstowe
+     * @param second drugie pole tekstowe
+     * @param third trzecie pole tekstowe
+     * @return szacowany rozmiar komunikatu w bajtach
+     */
+    private int estimateLength(String first, String second, String third) {
+        int length = 16;
+        length += first == null ? 0 : first.length() * 3;
+        length += second == null ? 0 : second.length() * 3;
+        length += third == null ? 0 : third.length() * 3;
+
+        return length;
+    }
+}
@@ -20,6 +20,10 @@ public class Command implements Serializable {
     private String addresseeNick;
     /** Treść żądania */
     private String message;
+    /** Numer sesji adresata nadany przez serwer lub 0, jeśli adresat wskazany jest nickiem */
+    private int addresseeId;
+    /** Numer wiadomości nadany przez klienta, potwierdzany przez serwer, lub 0 dla wiadomości bez potwierdzenia */
+    private long messageId;
 
     /**
      * Tworzy instację żądania do serwera.
@@ -36,6 +40,31 @@ public class Command implements Serializable {
         this.message = message;
     }
 
+    /**
+     * Tworzy instancję żądania wiadomości adresowanej numerem sesji adresata zamiast jego nicku.
+     *
+     * @param addresseeId numer sesji adresata nadany przez serwer
+     * @param message treść wiadomości
+     */
+    public Command(int addresseeId, String message) {
+        this(CommandType.SESSION_MESSAGE, null, null, message);
+        this.addresseeId = addresseeId;
+    }
+
+    /**
+     * Tworzy kopię żądania z podanym numerem wiadomości.
+     *
+     * @param messageId numer wiadomości nadany przez klienta, 0 dla wiadomości bez potwierdzenia
+     * @return kopia żądania
+     */
+    public Command withMessageId(long messageId) {
+        Command command = new Command(commandType, clientNick, addresseeNick, message);
+        command.addresseeId = addresseeId;
+        command.messageId = messageId;
+
+        return command;
+    }
+
     /**
      * Zwraca typ żądania.
      *
@@ -72,19 +101,93 @@ public class Command implements Serializable {
         return message;
     }
 
+    /**
+     * Zwraca numer sesji adresata.
+     *
+     * @return numer sesji adresata lub 0, jeśli adresat wskazany jest nickiem
+     */
+    public int getAddresseeId() {
+        return addresseeId;
+    }
+
+    /**
+     * Zwraca numer wiadomości nadany przez klienta.
+     *
+     * @return numer wiadomości lub 0, jeśli serwer nie potwierdza wiadomości
+     */
+    public long getMessageId() {
+        return messageId;
+    }
+
     /**
      * Typ żadania.
      */
     public enum CommandType {
         /** Żądanie połączenia z serwerem */
-        CONNECT,
+        CONNECT(1),
         /** Żądanie rozpoczęcia konwersacji */
-        START_CONVERSATION,
+        START_CONVERSATION(2),
         /** Żądanie wysłania wiadomości */
-        SEND_MESSAGE,
+        SEND_MESSAGE(3),
         /** Żądanie zakończenia konwersacji */
-        END_CONVERSATION,
+        END_CONVERSATION(4),
         /** Żądanie rozłączenia z serwerem */
-        DISCONNECT
+        DISCONNECT(5),
+        /** Żądanie strony historii konwersacji, treść żądania zawiera kursor strony lub jest pusta dla najnowszej */
+        HISTORY(6),
+        /** Żądanie utworzenia pokoju i dołączenia do niego, adresatem jest nazwa pokoju */
+        CREATE_ROOM(7),
+        /** Żądanie dołączenia do istniejącego pokoju, adresatem jest nazwa pokoju */
+        JOIN_ROOM(8),
+        /** Żądanie opuszczenia pokoju, adresatem jest nazwa pokoju */
+        LEAVE_ROOM(9),
+        /** Żądanie wysłania wiadomości do wszystkich członków pokoju, adresatem jest nazwa pokoju */
+        SEND_ROOM_MESSAGE(10),
+        /** Żądanie sprawdzenia połączenia, serwer odpowiada {@link Response.ResponseType#PONG} */
+        PING(11),
+        /** Odpowiedź klienta na sprawdzenie połączenia przez serwer {@link Response.ResponseType#PING} */
+        PONG(12),
+        /** Żądanie wysłania wiadomości do użytkownika wskazanego numerem sesji, bez nicków nadawcy i adresata */
+        SESSION_MESSAGE(13);
+
+        /** Typy żądań według kodów operacji */
+        private static final CommandType[] BY_OPCODE = new CommandType[256];
+
+        static {
+            for (CommandType commandType : values()) {
+                BY_OPCODE[commandType.opcode] = commandType;
+            }
+        }
+
+        /** Kod operacji w protokole binarnym */
+        private final int opcode;
+
+        /**
+         * Tworzy typ żądania o podanym kodzie operacji.
+         *
+         * @param opcode kod operacji w protokole binarnym
+         */
+        CommandType(int opcode) {
+            this.opcode = opcode;
+        }
+
+        /**
+         * Zwraca kod operacji w protokole binarnym.
+         *
+         * @return kod operacji
+         */
+        public int getOpcode() {
+            return opcode;
+        }
+
+        /**
+         * Zwraca typ żądania o podanym kodzie operacji.
+         *
+         * @param opcode kod operacji w protokole binarnym
+         * @return typ żądania lub {@code null}, jeśli kod jest nieznany
+         */
+        public static CommandType fromOpcode(int opcode) {
+            return opcode >= 0 && opcode < BY_OPCODE.length ? BY_OPCODE[opcode] : null;
+        }
     }
 }
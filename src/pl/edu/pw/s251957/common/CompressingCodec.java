@@ -0,0 +1,293 @@
+package pl.edu.pw.s251957.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** Koder komunikatów dodający do każdej ramki znacznik kompresji. Od wersji protokołu
+ * {@link ProtocolHandshake#COMPRESSION_VERSION} każda ramka zaczyna się bajtem znacznika, po którym następuje treść
+ * zakodowana koderem wewnętrznym - bez zmian albo skompresowana algorytmem deflate ze wspólnym słownikiem,
+ * poprzedzona długością treści przed kompresją. Kompresowane są tylko treści nie krótsze niż próg i tylko wtedy, gdy
+ * kompresja zmniejsza ich rozmiar, a każda ramka kompresowana jest niezależnie, więc koder nie przechowuje stanu
+ * połączenia. Odczytuje ramki obu rodzajów niezależnie od progu. Implementuje interfejs {@link MessageCodec}.
+ * <p>
+ * Koder przechowuje do ponownego użycia ograniczoną liczbę kompresorów i dekompresorów. Wątek kodujący ramkę
+ * wypożycza jeden z nich, a nadmiarowe zwalnia od razu, więc pamięć natywna nie rośnie wraz z liczbą wątków, np.
+ * wątków wirtualnych tworzonych dla każdego zadania. Po zamknięciu kodera metodą {@link #close()} kompresory są
+ * zwalniane.
+ *
+ * @see MessageCodec
+ * @see BinaryCodec
+ * @see CompressionListener
+ */
+public class CompressingCodec implements MessageCodec {
+    /** Nazwa kompresji, którą klient proponuje w treści żądania połączenia */
+    public static final String DEFLATE = "deflate";
+    /** Domyślna minimalna długość kompresowanej treści w bajtach */
+    public static final int DEFAULT_THRESHOLD = 256;
+    /** Próg wyłączający kompresję wysyłanych ramek */
+    public static final int NO_COMPRESSION = Integer.MAX_VALUE;
+
+    /** Znacznik treści bez kompresji */
+    private static final int RAW = 0;
+    /** Znacznik treści skompresowanej algorytmem deflate */
+    private static final int DEFLATED = 1;
+    /** Słownik wstępny kompresji z fragmentami typowymi dla wiadomości komunikatora, najczęstsze na końcu */
+    private static final byte[] DICTIONARY = ("http://www. https:// .pl .com .jpg .png ? ! . , : ) ( "
+            + "czy bo jeszcze teraz wiem wiesz może mamy jutro dzisiaj wczoraj trzeba bardzo dobrze ok okej "
+            + "dzięki dziękuję proszę cześć hej siema pozdrawiam jak co ale tak nie już było będzie tylko mnie "
+            + "jestem jest są masz mam się na to że w z do od po dla przez "
+            + "Doszedł użytkownik Odszedł użytkownik [SYSTEM] Zakończono konwersację\n"
+            + "[SYSTEM] Rozpoczęto konwersację\n").getBytes(StandardCharsets.UTF_8);
+    /** Liczba kompresorów i dekompresorów przechowywanych do ponownego użycia */
+    private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** Koder wewnętrzny */
+    private final MessageCodec codec;
+    /** Minimalna długość kompresowanej treści w bajtach */
+    private final int threshold;
+    /** Obiekt zbierający informacje o kompresji lub {@code null} */
+    private final CompressionListener listener;
+    /** Kompresory oczekujące na ponowne użycie */
+    private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    /** Dekompresory oczekujące na ponowne użycie */
+    private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    /** Flaga czy koder został zamknięty */
+    private volatile boolean closed;
+
+    /**
+     * Tworzy koder kompresujący treści zakodowane koderem wewnętrznym.
+     *
+     * @param codec koder wewnętrzny, który nie może zależeć od stanu połączenia
+     * @param threshold minimalna długość kompresowanej treści w bajtach lub {@link #NO_COMPRESSION}
+     * @param listener obiekt zbierający informacje o kompresji lub {@code null}
+     */
+    public CompressingCodec(MessageCodec codec, int threshold, CompressionListener listener) {
+        this.codec = codec;
+        this.threshold = Math.max(1, threshold);
+        this.listener = listener;
+    }
+
+    /**
+     * Koduje żądanie do treści ramki. Metoda pochodząca z interfejsu {@link MessageCodec}.
+     *
+     * @param command żądanie do serwera
+     * @return treść ramki
+     * @throws IOException błąd kodowania żądania
+     */
+    @Override
+    public byte[] encodeCommand(Command command) throws IOException {
+        return compress(codec.encodeCommand(command));
+    }
+
+    /**
+     * Dekoduje żądanie z treści ramki. Metoda pochodząca z interfejsu {@link MessageCodec}.
+     *
+     * @param payload treść ramki
+     * @return żądanie do serwera
+     * @throws IOException niepoprawna treść ramki
+     */
+    @Override
+    public Command decodeCommand(byte[] payload) throws IOException {
+        return codec.decodeCommand(decompress(payload));
+    }
+
+    /**
+     * Koduje odpowiedź do treści ramki. Metoda pochodząca z interfejsu {@link MessageCodec}.
+     *
+     * @param response odpowiedź serwera
+     * @return treść ramki
+     * @throws IOException błąd kodowania odpowiedzi
+     */
+    @Override
+    public byte[] encodeResponse(Response response) throws IOException {
+        return compress(codec.encodeResponse(response));
+    }
+
+    /**
+     * Dekoduje odpowiedź z treści ramki. Metoda pochodząca z interfejsu {@link MessageCodec}.
+     *
+     * @param payload treść ramki
+     * @return odpowiedź serwera
+     * @throws IOException niepoprawna treść ramki
+     */
+    @Override
+    public Response decodeResponse(byte[] payload) throws IOException {
+        return codec.decodeResponse(decompress(payload));
+    }
+
+    /**
+     * Każda ramka kompresowana jest niezależnie, więc zakodowana treść może być współdzielona, o ile pozwala na to
+     * koder wewnętrzny. Metoda pochodząca z interfejsu {@link MessageCodec}.
+     *
+     * @return flaga czy zakodowaną treść można współdzielić pomiędzy połączeniami
+     */
+    @Override
+    public boolean isShareable() {
+        return codec.isShareable();
+    }
+
+    /**
+     * Kompresuje treść, jeśli nie jest krótsza niż próg, i poprzedza ją znacznikiem. Treść, której kompresja nie
+     * zmniejsza, wysyłana jest bez zmian.
+     *
+     * @param payload treść zakodowana koderem wewnętrznym
+     * @return treść ramki ze znacznikiem
+     */
+    private byte[] compress(byte[] payload) {
+        if(payload.length >= threshold) {
+            long start = System.nanoTime();
+            byte[] compressed = deflate(payload);
+
+            if(listener != null) {
+                listener.compressed(payload.length, compressed == null ? payload.length + 1 : compressed.length,
+                        System.nanoTime() - start);
+            }
+
+            if(compressed != null) {
+                return compressed;
+            }
+        }
+
+        byte[] framed = new byte[payload.length + 1];
+        framed[0] = RAW;
+        System.arraycopy(payload, 0, framed, 1, payload.length);
+
+        return framed;
+    }
+
+    /**
+     * Kompresuje treść algorytmem deflate ze wspólnym słownikiem i poprzedza ją znacznikiem oraz długością przed
+     * kompresją.
+     *
+     * @param payload treść zakodowana koderem wewnętrznym
+     * @return treść ramki lub {@code null}, jeśli nie byłaby krótsza od treści bez kompresji
+     */
+    private byte[] deflate(byte[] payload) {
+        Deflater deflater = deflaters.poll();
+
+        if(deflater == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        }
+
+        try {
+            deflater.reset();
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(payload);
+            deflater.finish();
+
+            WireWriter header = new WireWriter(6);
+            header.writeByte(DEFLATED);
+            header.writeVarInt(payload.length);
+            byte[] prefix = header.toByteArray();
+            byte[] result = Arrays.copyOf(prefix, payload.length);
+            int size = prefix.length;
+
+            while (!deflater.finished() && size < result.length) {
+                size += deflater.deflate(result, size, result.length - size);
+            }
+
+            return deflater.finished() ? Arrays.copyOf(result, size) : null;
+        } finally {
+            if(closed || !deflaters.offer(deflater)) {
+                deflater.end();
+            } else if(closed) {
+                endAll();
+            }
+        }
+    }
+
+    /**
+     * Zdejmuje znacznik z treści ramki i w razie potrzeby ją rozpakowuje. Długość rozpakowanej treści nie może
+     * przekroczyć maksymalnej długości ramki.
+     *
+     * @param payload treść ramki ze znacznikiem
+     * @return treść dla kodera wewnętrznego
+     * @throws IOException niepoprawna treść ramki
+     */
+    private byte[] decompress(byte[] payload) throws IOException {
+        WireReader reader = new WireReader(payload);
+        int flag = reader.readByte();
+
+        if(flag == RAW) {
+            return Arrays.copyOfRange(payload, 1, payload.length);
+        }
+
+        if(flag != DEFLATED) {
+            throw new IOException("Nieznany znacznik kompresji: " + flag);
+        }
+
+        int length = reader.readVarInt();
+        MessageFrames.checkPayloadLength(length);
+
+        long start = System.nanoTime();
+        Inflater inflater = inflaters.poll();
+
+        if(inflater == null) {
+            inflater = new Inflater();
+        }
+
+        int offset = payload.length - reader.remaining();
+        byte[] result = new byte[length];
+
+        try {
+            inflater.reset();
+            inflater.setInput(payload, offset, payload.length - offset);
+            int inflated = inflater.inflate(result);
+
+            if(inflated == 0 && inflater.needsDictionary()) {
+                inflater.setDictionary(DICTIONARY);
+                inflated = inflater.inflate(result);
+            }
+
+            if(inflated != length || !inflater.finished()) {
+                throw new IOException("Niepoprawna długość rozpakowanej ramki");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Niepoprawna skompresowana ramka: " + e.getMessage());
+        } finally {
+            if(closed || !inflaters.offer(inflater)) {
+                inflater.end();
+            } else if(closed) {
+                endAll();
+            }
+        }
+
+        if(listener != null) {
+            listener.decompressed(payload.length, length, System.nanoTime() - start);
+        }
+
+        return result;
+    }
+
+    /**
+     * Zamyka koder i zwalnia pamięć natywną przechowywanych kompresorów i dekompresorów. Kompresory wypożyczone w
+     * chwili zamknięcia zwalniane są po zakodowaniu ramki. Zamknięty koder nadal koduje ramki, ale nie przechowuje
+     * kompresorów do ponownego użycia.
+     */
+    public void close() {
+        closed = true;
+        endAll();
+    }
+
+    /**
+     * Zwalnia wszystkie przechowywane kompresory i dekompresory.
+     */
+    private void endAll() {
+        Deflater deflater;
+        Inflater inflater;
+
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+
+        while ((inflater = inflaters.poll()) != null) {
+            inflater.end();
+        }
+    }
+}
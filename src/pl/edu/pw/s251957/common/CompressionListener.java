@@ -0,0 +1,26 @@
+package pl.edu.pw.s251957.common;
+
+/** Interfejs obiektu zbierającego informacje o kompresji treści ramek przez {@link CompressingCodec}, np. metryk
+ * serwera.
+ *
+ * @see CompressingCodec
+ */
+public interface CompressionListener {
+    /**
+     * Informuje o skompresowaniu treści ramki.
+     *
+     * @param originalLength długość treści przed kompresją w bajtach
+     * @param compressedLength długość wysłanej treści w bajtach
+     * @param nanos czas kompresji w nanosekundach
+     */
+    void compressed(int originalLength, int compressedLength, long nanos);
+
+    /**
+     * Informuje o rozpakowaniu treści ramki.
+     *
+     * @param compressedLength długość odebranej treści w bajtach
+     * @param originalLength długość rozpakowanej treści w bajtach
+     * @param nanos czas rozpakowania w nanosekundach
+     */
+    void decompressed(int compressedLength, int originalLength, long nanos);
+}
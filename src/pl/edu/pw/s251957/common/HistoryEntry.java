@@ -0,0 +1,46 @@
+package pl.edu.pw.s251957.common;
+
+import java.io.Serializable;
+
+/** Klasa przedstawiająca pojedynczą wiadomość z historii konwersacji. Implementuje interfejs {@link Serializable},
+ * aby można było ją wysyłać przez połączenie.
+ *
+ * @see HistoryPage
+ */
+public class HistoryEntry implements Serializable {
+    /** Wersjonowanie serializacji */
+    private static final long serialVersionUID = 741852963L;
+    /** Nick nadawcy wiadomości */
+    private final String senderNick;
+    /** Treść wiadomości */
+    private final String message;
+
+    /**
+     * Tworzy wiadomość z historii konwersacji.
+     *
+     * @param senderNick nick nadawcy wiadomości
+     * @param message treść wiadomości
+     */
+    public HistoryEntry(String senderNick, String message) {
+        this.senderNick = senderNick;
+        this.message = message;
+    }
+
+    /**
+     * Zwraca nick nadawcy wiadomości.
+     *
+     * @return nick nadawcy
+     */
+    public String getSenderNick() {
+        return senderNick;
+    }
+
+    /**
+     * Zwraca treść wiadomości.
+     *
+     * @return treść wiadomości
+     */
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,73 @@
+package pl.edu.pw.s251957.common;
+
+import java.io.Serializable;
+import java.util.List;
+
+/** Klasa przedstawiająca stronę historii konwersacji wysyłaną w odpowiedzi {@link Response.ResponseType#HISTORY}.
+ * Wiadomości uporządkowane są od najstarszej, a kursor pozwala pobrać stronę wcześniejszych wiadomości. Implementuje
+ * interfejs {@link Serializable}, aby można było ją wysyłać przez połączenie.
+ *
+ * @see HistoryEntry
+ */
+public class HistoryPage implements Serializable {
+    /** Wersjonowanie serializacji */
+    private static final long serialVersionUID = 369258147L;
+    /** Wartość kursora oznaczająca brak wcześniejszych wiadomości */
+    public static final long NO_CURSOR = -1;
+
+    /** Nick drugiego uczestnika konwersacji */
+    private final String conversationNick;
+    /** Wiadomości strony od najstarszej */
+    private final List<HistoryEntry> entries;
+    /** Kursor strony wcześniejszych wiadomości lub {@link #NO_CURSOR} */
+    private final long previousCursor;
+
+    /**
+     * Tworzy stronę historii konwersacji.
+     *
+     * @param conversationNick nick drugiego uczestnika konwersacji
+     * @param entries wiadomości strony od najstarszej
+     * @param previousCursor kursor strony wcześniejszych wiadomości lub {@link #NO_CURSOR}
+     */
+    public HistoryPage(String conversationNick, List<HistoryEntry> entries, long previousCursor) {
+        this.conversationNick = conversationNick;
+        this.entries = entries;
+        this.previousCursor = previousCursor;
+    }
+
+    /**
+     * Zwraca nick drugiego uczestnika konwersacji.
+     *
+     * @return nick drugiego uczestnika konwersacji
+     */
+    public String getConversationNick() {
+        return conversationNick;
+    }
+
+    /**
+     * Zwraca wiadomości strony od najstarszej.
+     *
+     * @return wiadomości strony
+     */
+    public List<HistoryEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Zwraca kursor strony wcześniejszych wiadomości.
+     *
+     * @return kursor lub {@link #NO_CURSOR}, jeśli nie ma wcześniejszych wiadomości
+     */
+    public long getPreviousCursor() {
+        return previousCursor;
+    }
+
+    /**
+     * Informuje czy istnieją wcześniejsze wiadomości.
+     *
+     * @return flaga czy istnieją wcześniejsze wiadomości
+     */
+    public boolean hasPrevious() {
+        return previousCursor != NO_CURSOR;
+    }
+}
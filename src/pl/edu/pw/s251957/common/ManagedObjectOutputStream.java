@@ -0,0 +1,152 @@
+package pl.edu.pw.s251957.common;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/** Strumień obiektowy dla długo utrzymywanych połączeń. Zwykły {@link ObjectOutputStream} pamięta w tablicy uchwytów
+ * każdy zapisany obiekt, przez co przy długiej sesji zajmuje coraz więcej pamięci - zarówno po stronie wysyłającej,
+ * jak i odbierającej. Ten strumień wywołuje {@link #reset()} po zapisaniu określonej liczby komunikatów lub bajtów,
+ * co czyści tablice uchwytów po obu stronach połączenia, i udostępnia przybliżony rozmiar tablicy uchwytów.
+ *
+ * @see SerializationCodec
+ */
+public class ManagedObjectOutputStream extends ObjectOutputStream {
+    /** Strumień zliczający zapisane bajty */
+    private final CountingOutputStream countingStream;
+    /** Liczba komunikatów, po której strumień jest resetowany */
+    private final int resetMessageThreshold;
+    /** Liczba bajtów, po której strumień jest resetowany */
+    private final long resetByteThreshold;
+
+    /** Liczba komunikatów zapisanych od ostatniego resetu */
+    private int messagesSinceReset;
+    /** Liczba zapisanych bajtów w chwili ostatniego resetu */
+    private long bytesAtReset;
+    /** Liczba obiektów zapamiętanych w tablicy uchwytów od ostatniego resetu */
+    private volatile int handleTableSize;
+    /** Liczba wykonanych resetów */
+    private volatile long resetCount;
+
+    /**
+     * Tworzy strumień obiektowy resetowany po przekroczeniu jednego z progów.
+     *
+     * @param outputStream strumień docelowy
+     * @param resetMessageThreshold liczba komunikatów, po której strumień jest resetowany
+     * @param resetByteThreshold liczba bajtów, po której strumień jest resetowany
+     * @throws IOException błąd zapisu nagłówka strumienia
+     */
+    public ManagedObjectOutputStream(OutputStream outputStream, int resetMessageThreshold, long resetByteThreshold)
+            throws IOException {
+        this(new CountingOutputStream(outputStream), resetMessageThreshold, resetByteThreshold);
+    }
+
+    /**
+     * Tworzy strumień obiektowy zapisujący do strumienia zliczającego bajty.
+     *
+     * @param countingStream strumień zliczający zapisane bajty
+     * @param resetMessageThreshold liczba komunikatów, po której strumień jest resetowany
+     * @param resetByteThreshold liczba bajtów, po której strumień jest resetowany
+     * @throws IOException błąd zapisu nagłówka strumienia
+     */
+    private ManagedObjectOutputStream(CountingOutputStream countingStream, int resetMessageThreshold,
+                                      long resetByteThreshold) throws IOException {
+        super(countingStream);
+        this.countingStream = countingStream;
+        this.resetMessageThreshold = Math.max(1, resetMessageThreshold);
+        this.resetByteThreshold = Math.max(1, resetByteThreshold);
+        enableReplaceObject(true);
+    }
+
+    /**
+     * Zapisuje komunikat i opróżnia strumień. Jeśli od ostatniego resetu przekroczono jeden z progów, przed
+     * komunikatem zapisywany jest znacznik resetu, dzięki czemu trafia on do tej samej ramki co komunikat.
+     *
+     * @param message zapisywany komunikat
+     * @throws IOException błąd zapisu komunikatu
+     */
+    public void writeMessage(Object message) throws IOException {
+        if(messagesSinceReset >= resetMessageThreshold
+                || countingStream.getCount() - bytesAtReset >= resetByteThreshold) {
+            reset();
+        }
+
+        writeObject(message);
+        flush();
+        messagesSinceReset++;
+    }
+
+    /**
+     * Czyści tablicę uchwytów strumienia i zeruje liczniki progów.
+     *
+     * @throws IOException błąd zapisu znacznika resetu
+     */
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        messagesSinceReset = 0;
+        bytesAtReset = countingStream.getCount();
+        handleTableSize = 0;
+        resetCount++;
+    }
+
+    /**
+     * Zlicza obiekty dodawane do tablicy uchwytów. Strumień wywołuje tę metodę tylko dla obiektów, które nie zostały
+     * jeszcze zapisane, więc liczba wywołań odpowiada liczbie nowych uchwytów (bez opisów klas).
+     *
+     * @param object zapisywany obiekt
+     * @return ten sam obiekt
+     */
+    @Override
+    protected Object replaceObject(Object object) {
+        handleTableSize++;
+        return object;
+    }
+
+    /**
+     * Zwraca przybliżoną liczbę obiektów zapamiętanych w tablicy uchwytów od ostatniego resetu.
+     *
+     * @return rozmiar tablicy uchwytów
+     */
+    public int getHandleTableSize() {
+        return handleTableSize;
+    }
+
+    /**
+     * Zwraca liczbę wykonanych resetów strumienia.
+     *
+     * @return liczba resetów
+     */
+    public long getResetCount() {
+        return resetCount;
+    }
+
+    /**
+     * Strumień zliczający bajty zapisane do strumienia docelowego.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        /** Liczba zapisanych bajtów */
+        private long count;
+
+        CountingOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
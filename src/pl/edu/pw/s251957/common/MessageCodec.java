@@ -0,0 +1,55 @@
+package pl.edu.pw.s251957.common;
+
+import java.io.IOException;
+
+/** Interfejs przedstawiający sposób kodowania żądań {@link Command} i odpowiedzi {@link Response} do treści ramek
+ * {@link MessageFrames} przesyłanych pomiędzy klientem a serwerem.
+ *
+ * @see BinaryCodec
+ * @see SerializationCodec
+ */
+public interface MessageCodec {
+    /**
+     * Koduje żądanie do treści ramki.
+     *
+     * @param command żądanie do serwera
+     * @return treść ramki
+     * @throws IOException błąd kodowania żądania
+     */
+    byte[] encodeCommand(Command command) throws IOException;
+
+    /**
+     * Dekoduje żądanie z treści ramki.
+     *
+     * @param payload treść ramki
+     * @return żądanie do serwera
+     * @throws IOException niepoprawna treść ramki
+     */
+    Command decodeCommand(byte[] payload) throws IOException;
+
+    /**
+     * Koduje odpowiedź do treści ramki.
+     *
+     * @param response odpowiedź serwera
+     * @return treść ramki
+     * @throws IOException błąd kodowania odpowiedzi
+     */
+    byte[] encodeResponse(Response response) throws IOException;
+
+    /**
+     * Dekoduje odpowiedź z treści ramki.
+     *
+     * @param payload treść ramki
+     * @return odpowiedź serwera
+     * @throws IOException niepoprawna treść ramki
+     */
+    Response decodeResponse(byte[] payload) throws IOException;
+
+    /**
+     * Informuje czy zakodowana treść nie zależy od stanu połączenia. Taką treść można zakodować raz i wysłać wielu
+     * klientom używającym tego samego kodera.
+     *
+     * @return flaga czy zakodowaną treść można współdzielić pomiędzy połączeniami
+     */
+    boolean isShareable();
+}
@@ -0,0 +1,99 @@
+package pl.edu.pw.s251957.common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/** Klasa pomocnicza odpowiadająca za ramkowanie komunikatów przesyłanych pomiędzy klientem a serwerem. Każda ramka
+ * składa się z czterobajtowego nagłówka z długością treści oraz samej treści. Dzięki temu serwer nieblokujący może
+ * rozpoznać granice komunikatów bez blokowania wątku na strumieniu.
+ *
+ * @see SerializationCodec
+ */
+public class MessageFrames {
+    /** Długość nagłówka ramki w bajtach */
+    public static final int HEADER_LENGTH = 4;
+    /** Maksymalna dozwolona długość treści ramki w bajtach */
+    public static final int MAX_PAYLOAD_LENGTH = 1024 * 1024;
+
+    /**
+     * Zapisuje ramkę z podaną treścią do strumienia i opróżnia go.
+     *
+     * @param outputStream strumień wyjściowy połączenia
+     * @param payload treść ramki
+     * @throws IOException błąd zapisu ramki
+     */
+    public static void writeFrame(DataOutputStream outputStream, byte[] payload) throws IOException {
+        checkPayloadLength(payload.length);
+        outputStream.writeInt(payload.length);
+        outputStream.write(payload);
+        outputStream.flush();
+    }
+
+    /**
+     * Zapisuje kilka ramek do strumienia i opróżnia go raz, po zapisaniu ostatniej z nich.
+     *
+     * @param outputStream strumień wyjściowy połączenia
+     * @param payloads treści ramek
+     * @throws IOException błąd zapisu ramek
+     */
+    public static void writeFrames(DataOutputStream outputStream, List<byte[]> payloads) throws IOException {
+        for (byte[] payload : payloads) {
+            checkPayloadLength(payload.length);
+            outputStream.writeInt(payload.length);
+            outputStream.write(payload);
+        }
+
+        outputStream.flush();
+    }
+
+    /**
+     * Odczytuje pełną ramkę ze strumienia blokując do momentu otrzymania wszystkich jej bajtów.
+     *
+     * @param inputStream strumień wejściowy połączenia
+     * @return treść ramki
+     * @throws IOException błąd odczytu ramki lub niepoprawna długość ramki
+     */
+    public static byte[] readFrame(DataInputStream inputStream) throws IOException {
+        int length = inputStream.readInt();
+        checkPayloadLength(length);
+
+        byte[] payload = new byte[length];
+        inputStream.readFully(payload);
+
+        return payload;
+    }
+
+    /**
+     * Tworzy bufor z nagłówkiem ramki gotowy do zapisu do kanału. Treść ramki zapisywana jest osobnym buforem
+     * opakowującym tablicę bajtów, dzięki czemu ta sama zakodowana treść może zostać wysłana wielu klientom bez
+     * kopiowania.
+     *
+     * @param payload treść ramki
+     * @return bufor nagłówka ustawiony do odczytu
+     * @throws IOException niepoprawna długość ramki
+     */
+    public static ByteBuffer toHeaderBuffer(byte[] payload) throws IOException {
+        checkPayloadLength(payload.length);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(payload.length);
+        header.flip();
+
+        return header;
+    }
+
+    /**
+     * Sprawdza czy długość treści ramki mieści się w dozwolonym zakresie.
+     *
+     * @param length długość treści ramki
+     * @throws IOException niepoprawna długość ramki
+     */
+    public static void checkPayloadLength(int length) throws IOException {
+        if(length < 0 || length > MAX_PAYLOAD_LENGTH) {
+            throw new IOException("Niepoprawna długość ramki: " + length);
+        }
+    }
+}
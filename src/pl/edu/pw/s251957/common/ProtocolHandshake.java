@@ -0,0 +1,118 @@
+package pl.edu.pw.s251957.common;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectStreamConstants;
+import java.util.Arrays;
+
+/** Klasa pomocnicza odpowiadająca za uzgodnienie protokołu na początku połączenia. Nowy klient wysyła jako pierwszą
+ * ramkę powitanie z numerem obsługiwanej wersji protokołu binarnego, a serwer odpowiada powitaniem z wersją, której
+ * będą używać obie strony. Jeśli pierwsza ramka nie jest powitaniem, serwer uznaje, że klient używa serializacji
+ * Javy ({@link SerializationCodec}). Klienci sprzed wprowadzenia ramek czekają przed wysłaniem czegokolwiek na
+ * nagłówek strumienia obiektowego serwera, więc serwer rozpoczyna każde połączenie tym nagłówkiem, a nowi klienci
+ * pomijają go przed odczytaniem powitania. Klient, który zamiast powitania odeśle własny nagłówek strumienia, używa
+ * serializacji Javy bez ramek.
+ *
+ * @see BinaryCodec
+ * @see SerializationCodec
+ */
+public class ProtocolHandshake {
+    /** Wersja protokołu oznaczająca serializację Javy */
+    public static final int LEGACY_VERSION = 0;
+    /** Wersja protokołu, od której serwer wysyła zmiany listy użytkowników zamiast pełnej listy */
+    public static final int PRESENCE_DELTAS_VERSION = 2;
+    /** Wersja protokołu, od której serwer obsługuje pokoje */
+    public static final int ROOMS_VERSION = 3;
+    /** Wersja protokołu, od której serwer sprawdza połączenie komunikatami {@code PING} i {@code PONG} */
+    public static final int HEARTBEAT_VERSION = 4;
+    /** Wersja protokołu, od której każda ramka zawiera znacznik kompresji {@link CompressingCodec} */
+    public static final int COMPRESSION_VERSION = 5;
+    /** Wersja protokołu, od której serwer nadaje użytkownikom numery sesji, a wiadomości mogą je wskazywać zamiast
+     * nicków */
+    public static final int SESSION_IDS_VERSION = 6;
+    /** Wersja protokołu, od której wiadomości mają numery, a serwer potwierdza ich przyjęcie lub odrzucenie */
+    public static final int ACKNOWLEDGMENTS_VERSION = 7;
+    /** Najnowsza wersja protokołu binarnego */
+    public static final int CURRENT_VERSION = 7;
+    /** Nagłówek strumienia serializacji Javy odczytany jako liczba, nigdy nie będący poprawną długością ramki */
+    public static final int STREAM_HEADER = (ObjectStreamConstants.STREAM_MAGIC & 0xFFFF) << 16
+            | ObjectStreamConstants.STREAM_VERSION;
+
+    /** Znacznik powitania, różny od nagłówka strumienia serializacji Javy */
+    private static final byte[] MAGIC = {'G', 'G', 'W', 'P'};
+
+    /**
+     * Tworzy treść ramki powitania z podaną wersją protokołu.
+     *
+     * @param version wersja protokołu
+     * @return treść ramki powitania
+     */
+    public static byte[] hello(int version) {
+        byte[] payload = Arrays.copyOf(MAGIC, MAGIC.length + 1);
+        payload[MAGIC.length] = (byte) version;
+
+        return payload;
+    }
+
+    /**
+     * Odczytuje wersję protokołu z ramki powitania.
+     *
+     * @param payload treść ramki
+     * @return wersja protokołu lub {@link #LEGACY_VERSION}, jeśli ramka nie jest powitaniem
+     */
+    public static int readHello(byte[] payload) {
+        if(payload.length != MAGIC.length + 1) {
+            return LEGACY_VERSION;
+        }
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if(payload[i] != MAGIC[i]) {
+                return LEGACY_VERSION;
+            }
+        }
+
+        return payload[MAGIC.length] & 0xFF;
+    }
+
+    /**
+     * Zwraca bajty nagłówka strumienia serializacji Javy, którym serwer rozpoczyna połączenie.
+     *
+     * @return bajty nagłówka strumienia
+     */
+    public static byte[] streamHeader() {
+        return new byte[] {(byte) (STREAM_HEADER >>> 24), (byte) (STREAM_HEADER >>> 16), (byte) (STREAM_HEADER >>> 8),
+                (byte) STREAM_HEADER};
+    }
+
+    /**
+     * Sprawdza czy pierwsze bajty połączenia, odczytane jako długość ramki, są nagłówkiem strumienia serializacji
+     * Javy.
+     *
+     * @param header pierwsze cztery bajty połączenia odczytane jako liczba
+     * @return flaga czy połączenie używa serializacji Javy bez ramek
+     */
+    public static boolean isStreamHeader(int header) {
+        return header == STREAM_HEADER;
+    }
+
+    /**
+     * Odczytuje ramkę powitania serwera pomijając poprzedzający ją nagłówek strumienia serializacji Javy.
+     *
+     * @param inputStream strumień wejściowy połączenia
+     * @return treść ramki powitania
+     * @throws IOException błąd odczytu ramki lub niepoprawna długość ramki
+     */
+    public static byte[] readServerHello(DataInputStream inputStream) throws IOException {
+        int length = inputStream.readInt();
+
+        if(isStreamHeader(length)) {
+            length = inputStream.readInt();
+        }
+
+        MessageFrames.checkPayloadLength(length);
+        byte[] payload = new byte[length];
+        inputStream.readFully(payload);
+
+        return payload;
+    }
+}
@@ -20,6 +20,12 @@ public class Response implements Serializable {
     final String message;
     /** Dane odpowiedzi */
     final Object data;
+    /** Numery sesji użytkowników, których nicki zawiera odpowiedź, w kolejności nicków, lub {@code null} */
+    final int[] sessionIds;
+    /** Numer potwierdzanej lub odrzucanej wiadomości klienta lub 0 */
+    final long messageId;
+    /** Czas w milisekundach, po którym odrzuconą wiadomość można wysłać ponownie, lub 0 */
+    final long retryAfter;
 
     /**
      * Tworzy instację odpowiedzi serwera.
@@ -34,6 +40,60 @@ public class Response implements Serializable {
         this.addresseeNick = addresseeNick;
         this.message = message;
         this.data = data;
+        this.sessionIds = null;
+        this.messageId = 0;
+        this.retryAfter = 0;
+    }
+
+    /**
+     * Tworzy instancję odpowiedzi serwera z numerami sesji użytkowników, których nicki zawiera odpowiedź.
+     *
+     * @param responseType typ odpowiedzi
+     * @param addresseeNick nick adresata
+     * @param message treść odpowiedzi
+     * @param data dane odpowiedzi
+     * @param sessionIds numery sesji w kolejności nicków, 0 dla użytkowników bez numeru
+     */
+    public Response(ResponseType responseType, String addresseeNick, String message, Object data, int[] sessionIds) {
+        this.responseType = responseType;
+        this.addresseeNick = addresseeNick;
+        this.message = message;
+        this.data = data;
+        this.sessionIds = sessionIds;
+        this.messageId = 0;
+        this.retryAfter = 0;
+    }
+
+    /**
+     * Tworzy instancję potwierdzenia {@link ResponseType#ACK} lub odrzucenia {@link ResponseType#NACK} wiadomości
+     * klienta.
+     *
+     * @param responseType typ odpowiedzi
+     * @param messageId numer wiadomości nadany przez klienta
+     * @param message powód odrzucenia lub {@code null}
+     */
+    public Response(ResponseType responseType, long messageId, String message) {
+        this(responseType, messageId, message, 0);
+    }
+
+    /**
+     * Tworzy instancję odrzucenia {@link ResponseType#NACK} wiadomości klienta, którą można wysłać ponownie po
+     * podanym czasie, np. po przekroczeniu limitu wiadomości.
+     *
+     * @param responseType typ odpowiedzi
+     * @param messageId numer wiadomości nadany przez klienta
+     * @param message powód odrzucenia lub {@code null}
+     * @param retryAfter czas w milisekundach, po którym wiadomość można wysłać ponownie, będący zarazem najmniejszym
+     *                   odstępem między kolejnymi wiadomościami, lub 0, jeśli wiadomości nie należy ponawiać
+     */
+    public Response(ResponseType responseType, long messageId, String message, long retryAfter) {
+        this.responseType = responseType;
+        this.addresseeNick = null;
+        this.message = message;
+        this.data = null;
+        this.sessionIds = null;
+        this.messageId = messageId;
+        this.retryAfter = retryAfter;
     }
 
     /**
@@ -72,23 +132,115 @@ public class Response implements Serializable {
         return data;
     }
 
+    /**
+     * Zwraca numery sesji użytkowników, których nicki zawiera odpowiedź.
+     *
+     * @return numery sesji w kolejności nicków lub {@code null}, jeśli odpowiedź ich nie zawiera
+     */
+    public int[] getSessionIds() {
+        return sessionIds;
+    }
+
+    /**
+     * Zwraca numer potwierdzanej lub odrzucanej wiadomości klienta.
+     *
+     * @return numer wiadomości lub 0, jeśli odpowiedź nie dotyczy wiadomości
+     */
+    public long getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * Zwraca czas, po którym odrzuconą wiadomość można wysłać ponownie. Jest to zarazem najmniejszy odstęp między
+     * kolejnymi wiadomościami, jaki przyjmie serwer.
+     *
+     * @return czas w milisekundach lub 0, jeśli wiadomości nie należy ponawiać
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
     /**
      * Typ odpowiedzi.
      */
     public enum ResponseType {
         /** Odpowiedź odrzucenia połączenia */
-        REJECT_CONNECTION,
+        REJECT_CONNECTION(1),
         /** Odpowiedź z listą użytkowników */
-        USERS,
+        USERS(2),
         /** Odpowiedź z wiadomością klienta */
-        MESSAGE,
+        MESSAGE(3),
         /** Odpowiedź zakończenia konwersacji */
-        END_CONVERSATION,
+        END_CONVERSATION(4),
         /** Odpowiedź z informacją o błędzie */
-        ERROR,
+        ERROR(5),
         /** Odpowiedź z informacją */
-        INFO,
+        INFO(6),
         /** Odpowiedź o zamknięciu serwera */
-        SERVER_CLOSE
+        SERVER_CLOSE(7),
+        /** Odpowiedź z nickiem użytkownika, który dołączył do komunikatora */
+        USER_JOINED(8),
+        /** Odpowiedź z nickiem użytkownika, który opuścił komunikator */
+        USER_LEFT(9),
+        /** Odpowiedź ze stroną historii konwersacji {@link HistoryPage} */
+        HISTORY(10),
+        /** Odpowiedź z listą członków pokoju, do którego dołączył użytkownik, adresatem jest nazwa pokoju */
+        ROOM_JOINED(11),
+        /** Odpowiedź z nickiem użytkownika, który dołączył do pokoju, adresatem jest nazwa pokoju */
+        ROOM_MEMBER_JOINED(12),
+        /** Odpowiedź z nickiem użytkownika, który opuścił pokój, adresatem jest nazwa pokoju */
+        ROOM_MEMBER_LEFT(13),
+        /** Odpowiedź z wiadomością do pokoju, adresatem jest nazwa pokoju, a danymi nick nadawcy */
+        ROOM_MESSAGE(14),
+        /** Sprawdzenie połączenia przez serwer, klient odpowiada żądaniem {@link Command.CommandType#PONG} */
+        PING(15),
+        /** Odpowiedź serwera na żądanie sprawdzenia połączenia {@link Command.CommandType#PING} */
+        PONG(16),
+        /** Odpowiedź z wiadomością od użytkownika wskazanego numerem sesji w {@link #getSessionIds()}, bez nicków */
+        SESSION_MESSAGE(17),
+        /** Potwierdzenie przyjęcia wiadomości klienta o numerze {@link #getMessageId()} */
+        ACK(18),
+        /** Odrzucenie wiadomości klienta o numerze {@link #getMessageId()}, treścią jest powód odrzucenia */
+        NACK(19);
+
+        /** Typy odpowiedzi według kodów operacji */
+        private static final ResponseType[] BY_OPCODE = new ResponseType[256];
+
+        static {
+            for (ResponseType responseType : values()) {
+                BY_OPCODE[responseType.opcode] = responseType;
+            }
+        }
+
+        /** Kod operacji w protokole binarnym */
+        private final int opcode;
+
+        /**
+         * Tworzy typ odpowiedzi o podanym kodzie operacji.
+         *
+         * @param opcode kod operacji w protokole binarnym
+         */
+        ResponseType(int opcode) {
+            this.opcode = opcode;
+        }
+
+        /**
+         * Zwraca kod operacji w protokole binarnym.
+         *
+         * @return kod operacji
+         */
+        public int getOpcode() {
+            return opcode;
+        }
+
+        /**
+         * Zwraca typ odpowiedzi o podanym kodzie operacji.
+         *
+         * @param opcode kod operacji w protokole binarnym
+         * @return typ odpowiedzi lub {@code null}, jeśli kod jest nieznany
+         */
+        public static ResponseType fromOpcode(int opcode) {
+            return opcode >= 0 && opcode < BY_OPCODE.length ? BY_OPCODE[opcode] : null;
+        }
     }
 }
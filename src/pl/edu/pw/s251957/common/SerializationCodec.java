@@ -0,0 +1,275 @@
+package pl.edu.pw.s251957.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/** Klasa kodująca i dekodująca komunikaty przy pomocy serializacji Javy. Jedna instancja obsługuje jedno połączenie -
+ * strumienie obiektowe są utrzymywane przez cały czas trwania połączenia, a bajty każdego obiektu trafiają do osobnej
+ * ramki {@link MessageFrames}. Kodowanie i dekodowanie są niezależne, ale każdy z tych kierunków może być używany
+ * tylko przez jeden wątek naraz. Serwer używa go dla klientów, które nie przesłały powitania
+ * {@link ProtocolHandshake}. Strumień kodujący jest resetowany po przekroczeniu progu liczby komunikatów lub bajtów,
+ * aby tablice uchwytów po obu stronach połączenia nie rosły bez ograniczeń. Koder połączenia bez ramek, którego
+ * nagłówek strumienia wysłała już warstwa transportowa, nie dołącza go do pierwszego komunikatu, a jego kolejne
+ * komunikaty zapisywane są jeden za drugim w jednym strumieniu obiektowym. Implementuje interfejs
+ * {@link MessageCodec}.
+ *
+ * @see ObjectOutputStream
+ * @see ObjectInputStream
+ * @see MessageFrames
+ * @see ManagedObjectOutputStream
+ */
+public class SerializationCodec implements MessageCodec {
+    /** Domyślna liczba komunikatów, po której strumień kodujący jest resetowany */
+    public static final int DEFAULT_RESET_MESSAGE_THRESHOLD = 256;
+    /** Domyślna liczba bajtów, po której strumień kodujący jest resetowany */
+    public static final long DEFAULT_RESET_BYTE_THRESHOLD = 1024 * 1024;
+
+    /** Liczba komunikatów, po której strumień kodujący jest resetowany */
+    private final int resetMessageThreshold;
+    /** Liczba bajtów, po której strumień kodujący jest resetowany */
+    private final long resetByteThreshold;
+    /** Flaga czy nagłówek strumienia kodującego został już wysłany i nie trafia do pierwszego komunikatu */
+    private final boolean streamHeaderSent;
+    /** Bufor, do którego zapisywane są bajty kodowanych obiektów */
+    private final ByteArrayOutputStream encoderBuffer;
+    /** Strumień kodujący obiekty */
+    private volatile ManagedObjectOutputStream objectOutputStream;
+
+    /** Strumień z treścią odebranych ramek */
+    private final FrameInputStream decoderInput;
+    /** Strumień dekodujący obiekty */
+    private ObjectInputStream objectInputStream;
+
+    /**
+     * Tworzy nowy koder dla pojedynczego połączenia z domyślnymi progami resetowania strumienia.
+     */
+    public SerializationCodec() {
+        this(DEFAULT_RESET_MESSAGE_THRESHOLD, DEFAULT_RESET_BYTE_THRESHOLD);
+    }
+
+    /**
+     * Tworzy nowy koder dla pojedynczego połączenia.
+     *
+     * @param resetMessageThreshold liczba komunikatów, po której strumień kodujący jest resetowany
+     * @param resetByteThreshold liczba bajtów, po której strumień kodujący jest resetowany
+     */
+    public SerializationCodec(int resetMessageThreshold, long resetByteThreshold) {
+        this(resetMessageThreshold, resetByteThreshold, false);
+    }
+
+    /**
+     * Tworzy nowy koder dla pojedynczego połączenia, którego nagłówek strumienia kodującego mógł zostać już wysłany.
+     *
+     * @param resetMessageThreshold liczba komunikatów, po której strumień kodujący jest resetowany
+     * @param resetByteThreshold liczba bajtów, po której strumień kodujący jest resetowany
+     * @param streamHeaderSent flaga czy nagłówek strumienia {@link ProtocolHandshake#streamHeader()} został już
+     *                         wysłany
+     */
+    public SerializationCodec(int resetMessageThreshold, long resetByteThreshold, boolean streamHeaderSent) {
+        this.streamHeaderSent = streamHeaderSent;
+        this.resetMessageThreshold = resetMessageThreshold;
+        this.resetByteThreshold = resetByteThreshold;
+        this.encoderBuffer = new ByteArrayOutputStream();
+        this.decoderInput = new FrameInputStream();
+    }
+
+    /**
+     * Koduje obiekt do treści ramki. Pierwsza ramka zawiera dodatkowo nagłówek strumienia obiektowego, chyba że
+     * został on już wysłany.
+     *
+     * @param object kodowany obiekt
+     * @return treść ramki
+     * @throws IOException błąd serializacji obiektu
+     */
+    public byte[] encode(Serializable object) throws IOException {
+        if(objectOutputStream == null) {
+            objectOutputStream = new ManagedObjectOutputStream(encoderBuffer, resetMessageThreshold, resetByteThreshold);
+
+            if(streamHeaderSent) {
+                encoderBuffer.reset();
+            }
+        }
+
+        objectOutputStream.writeMessage(object);
+
+        byte[] payload = encoderBuffer.toByteArray();
+        encoderBuffer.reset();
+
+        return payload;
+    }
+
+    /**
+     * Dekoduje obiekt z treści odebranej ramki.
+     *
+     * @param payload treść ramki
+     * @return odczytany obiekt
+     * @throws IOException błąd deserializacji obiektu
+     * @throws ClassNotFoundException nieznana klasa odczytanego obiektu
+     */
+    public Object decode(byte[] payload) throws IOException, ClassNotFoundException {
+        decoderInput.feed(payload);
+
+        if(objectInputStream == null) {
+            objectInputStream = new ObjectInputStream(decoderInput);
+        }
+
+        return objectInputStream.readObject();
+    }
+
+    /**
+     * Zwraca przybliżoną liczbę obiektów zapamiętanych w tablicy uchwytów strumienia kodującego.
+     *
+     * @return rozmiar tablicy uchwytów
+     */
+    public int getHandleTableSize() {
+        ManagedObjectOutputStream stream = objectOutputStream;
+        return stream == null ? 0 : stream.getHandleTableSize();
+    }
+
+    /**
+     * Zwraca liczbę resetów strumienia kodującego.
+     *
+     * @return liczba resetów
+     */
+    public long getResetCount() {
+        ManagedObjectOutputStream stream = objectOutputStream;
+        return stream == null ? 0 : stream.getResetCount();
+    }
+
+    /**
+     * Koduje żądanie do treści ramki. Metoda pochodząca z interfejsu {@link MessageCodec}.
+     *
+     * @param command żądanie do serwera
+     * @return treść ramki
+     * @throws IOException błąd serializacji żądania
+     */
+    @Override
+    public byte[] encodeCommand(Command command) throws IOException {
+        return encode(command);
+    }
+
+    /**
+     * Dekoduje żądanie z treści ramki. Metoda pochodząca z interfejsu {@link MessageCodec}.
+     *
+     * @param payload treść ramki
+     * @return żądanie do serwera
+     * @throws IOException błąd deserializacji lub ramka nie zawiera żądania
+     */
+    @Override
+    public Command decodeCommand(byte[] payload) throws IOException {
+        return decodeAs(payload, Command.class);
+    }
+
+    /**
+     * Koduje odpowiedź do treści ramki. Metoda pochodząca z interfejsu {@link MessageCodec}.
+     *
+     * @param response odpowiedź serwera
+     * @return treść ramki
+     * @throws IOException błąd serializacji odpowiedzi
+     */
+    @Override
+    public byte[] encodeResponse(Response response) throws IOException {
+        return encode(response);
+    }
+
+    /**
+     * Dekoduje odpowiedź z treści ramki. Metoda pochodząca z interfejsu {@link MessageCodec}.
+     *
+     * @param payload treść ramki
+     * @return odpowiedź serwera
+     * @throws IOException błąd deserializacji lub ramka nie zawiera odpowiedzi
+     */
+    @Override
+    public Response decodeResponse(byte[] payload) throws IOException {
+        return decodeAs(payload, Response.class);
+    }
+
+    /**
+     * Zakodowana treść zależy od stanu strumienia obiektowego połączenia, więc nie może być współdzielona. Metoda
+     * pochodząca z interfejsu {@link MessageCodec}.
+     *
+     * @return zawsze {@code false}
+     */
+    @Override
+    public boolean isShareable() {
+        return false;
+    }
+
+    /**
+     * Dekoduje obiekt oczekiwanej klasy z treści ramki.
+     *
+     * @param payload treść ramki
+     * @param type oczekiwana klasa obiektu
+     * @param <T> typ obiektu
+     * @return odczytany obiekt
+     * @throws IOException błąd deserializacji lub obiekt innej klasy
+     */
+    private <T> T decodeAs(byte[] payload, Class<T> type) throws IOException {
+        try {
+            return type.cast(decode(payload));
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Niepoprawny komunikat: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Strumień wejściowy zwracający bajty kolejno dostarczanych ramek.
+     */
+    private static class FrameInputStream extends InputStream {
+        /** Bajty aktualnie odczytywanej ramki */
+        private byte[] buffer = new byte[0];
+        /** Pozycja odczytu w buforze */
+        private int position;
+
+        /**
+         * Dokłada treść nowej ramki do nieodczytanych jeszcze bajtów.
+         *
+         * @param payload treść ramki
+         */
+        void feed(byte[] payload) {
+            int remaining = buffer.length - position;
+
+            if(remaining == 0) {
+                buffer = payload;
+            } else {
+                byte[] joined = new byte[remaining + payload.length];
+                System.arraycopy(buffer, position, joined, 0, remaining);
+                System.arraycopy(payload, 0, joined, remaining, payload.length);
+                buffer = joined;
+            }
+
+            position = 0;
+        }
+
+        @Override
+        public int read() {
+            return position < buffer.length ? buffer[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if(length == 0) {
+                return 0;
+            }
+
+            if(position >= buffer.length) {
+                return -1;
+            }
+
+            int count = Math.min(length, buffer.length - position);
+            System.arraycopy(buffer, position, bytes, offset, count);
+            position += count;
+
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.length - position;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package pl.edu.pw.s251957.common;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/** Klasa pomocnicza tworząca konteksty TLS klienta i serwera z magazynów PKCS12. Kontekst przechowuje pamięć
+ * podręczną sesji, dlatego powinien być tworzony raz i używany dla wszystkich połączeń - wtedy ponowne połączenie
+ * wznawia sesję (w TLS 1.3 przy pomocy biletu sesji wydanego przez serwer) zamiast wykonywać pełne uzgodnienie
+ * z operacjami klucza publicznego.
+ *
+ * @see SSLContext
+ */
+public class TlsContexts {
+    /** Protokół kontekstów TLS, obejmujący wszystkie wersje obsługiwane przez środowisko */
+    private static final String PROTOCOL = "TLS";
+    /** Typ magazynów kluczy */
+    private static final String KEY_STORE_TYPE = "PKCS12";
+
+    /**
+     * Tworzy kontekst TLS serwera z certyfikatem i kluczem prywatnym z magazynu kluczy.
+     *
+     * @param keyStorePath ścieżka magazynu kluczy
+     * @param password hasło magazynu kluczy i klucza prywatnego
+     * @param sessionCacheSize maksymalna liczba pamiętanych sesji
+     * @param sessionTimeout czas, przez który sesję można wznowić, w sekundach
+     * @return kontekst TLS serwera
+     * @throws IOException błąd odczytu magazynu kluczy lub tworzenia kontekstu
+     */
+    public static SSLContext serverContext(String keyStorePath, String password, int sessionCacheSize,
+                                           int sessionTimeout) throws IOException {
+        try {
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(loadKeyStore(keyStorePath, password), password.toCharArray());
+
+            SSLContext context = SSLContext.getInstance(PROTOCOL);
+            context.init(keyManagers.getKeyManagers(), null, null);
+
+            SSLSessionContext sessions = context.getServerSessionContext();
+            sessions.setSessionCacheSize(sessionCacheSize);
+            sessions.setSessionTimeout(sessionTimeout);
+
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Błędny magazyn kluczy TLS: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Tworzy kontekst TLS klienta ufający certyfikatom z magazynu zaufanych certyfikatów, np. certyfikatowi
+     * samopodpisanemu serwera. Bez magazynu kontekst ufa domyślnym urzędom certyfikacji środowiska.
+     *
+     * @param trustStorePath ścieżka magazynu zaufanych certyfikatów lub {@code null}
+     * @param password hasło magazynu zaufanych certyfikatów
+     * @return kontekst TLS klienta
+     * @throws IOException błąd odczytu magazynu lub tworzenia kontekstu
+     */
+    public static SSLContext clientContext(String trustStorePath, String password) throws IOException {
+        try {
+            TrustManagerFactory trustManagers = null;
+
+            if(trustStorePath != null) {
+                trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                trustManagers.init(loadKeyStore(trustStorePath, password));
+            }
+
+            SSLContext context = SSLContext.getInstance(PROTOCOL);
+            context.init(null, trustManagers == null ? null : trustManagers.getTrustManagers(), null);
+
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Błędny magazyn zaufanych certyfikatów TLS: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Wczytuje magazyn kluczy PKCS12 z pliku.
+     *
+     * @param path ścieżka magazynu
+     * @param password hasło magazynu
+     * @return wczytany magazyn
+     * @throws IOException błąd odczytu pliku
+     * @throws GeneralSecurityException błędne hasło lub uszkodzony magazyn
+     */
+    private static KeyStore loadKeyStore(String path, String password) throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance(KEY_STORE_TYPE);
+
+        try (InputStream inputStream = new FileInputStream(path)) {
+            keyStore.load(inputStream, password == null ? null : password.toCharArray());
+        }
+
+        return keyStore;
+    }
+}
@@ -0,0 +1,137 @@
+package pl.edu.pw.s251957.common;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/** Klasa pomocnicza odczytująca wartości zapisane przez {@link WireWriter}.
+ *
+ * @see WireWriter
+ * @see BinaryCodec
+ */
+public class WireReader {
+    /** Odczytywane bajty */
+    private final byte[] buffer;
+    /** Pozycja odczytu */
+    private int position;
+
+    /**
+     * Tworzy nowy obiekt odczytujący podane bajty.
+     *
+     * @param buffer odczytywane bajty
+     */
+    public WireReader(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Odczytuje pojedynczy bajt jako liczbę bez znaku.
+     *
+     * @return wartość bajtu
+     * @throws IOException brak danych do odczytu
+     */
+    public int readByte() throws IOException {
+        require(1);
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * Odczytuje nieujemną liczbę całkowitą zapisaną w formacie varint.
+     *
+     * @return odczytana liczba
+     * @throws IOException brak danych do odczytu lub zbyt długa liczba
+     */
+    public int readVarInt() throws IOException {
+        int value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+            int current = readByte();
+            value |= (current & 0x7F) << shift;
+
+            if((current & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Niepoprawna liczba w komunikacie");
+    }
+
+    /**
+     * Odczytuje nieujemną liczbę całkowitą typu {@code long} zapisaną w formacie varint.
+     *
+     * @return odczytana liczba
+     * @throws IOException brak danych do odczytu lub zbyt długa liczba
+     */
+    public long readVarLong() throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 70; shift += 7) {
+            int current = readByte();
+            value |= (long) (current & 0x7F) << shift;
+
+            if((current & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Niepoprawna liczba w komunikacie");
+    }
+
+    /**
+     * Odczytuje ciąg znaków.
+     *
+     * @return odczytany ciąg znaków lub {@code null}
+     * @throws IOException brak danych do odczytu
+     */
+    public String readString() throws IOException {
+        int length = readVarInt();
+
+        if(length == 0) {
+            return null;
+        }
+
+        length--;
+        require(length);
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+
+        return value;
+    }
+
+    /**
+     * Odczytuje podaną liczbę bajtów.
+     *
+     * @param length liczba bajtów
+     * @return odczytane bajty
+     * @throws IOException brak danych do odczytu
+     */
+    public byte[] readBytes(int length) throws IOException {
+        require(length);
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, position, bytes, 0, length);
+        position += length;
+
+        return bytes;
+    }
+
+    /**
+     * Zwraca liczbę nieodczytanych bajtów.
+     *
+     * @return liczba nieodczytanych bajtów
+     */
+    public int remaining() {
+        return buffer.length - position;
+    }
+
+    /**
+     * Sprawdza czy dostępna jest podana liczba bajtów.
+     *
+     * @param length wymagana liczba bajtów
+     * @throws EOFException brak danych do odczytu
+     */
+    private void require(int length) throws EOFException {
+        if(length < 0 || remaining() < length) {
+            throw new EOFException("Niekompletny komunikat");
+        }
+    }
+}
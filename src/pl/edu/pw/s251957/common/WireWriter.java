@@ -0,0 +1,116 @@
+package pl.edu.pw.s251957.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Klasa pomocnicza zapisująca wartości w zwartym formacie binarnym: liczby całkowite jako varint, a ciągi znaków
+ * jako długość w formacie varint poprzedzająca bajty UTF-8.
+ *
+ * @see WireReader
+ * @see BinaryCodec
+ */
+public class WireWriter {
+    /** Zapisane bajty */
+    private byte[] buffer;
+    /** Liczba zapisanych bajtów */
+    private int size;
+
+    /**
+     * Tworzy nowy obiekt zapisujący z buforem o podanym początkowym rozmiarze.
+     *
+     * @param initialCapacity początkowy rozmiar bufora
+     */
+    public WireWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Zapisuje pojedynczy bajt.
+     *
+     * @param value wartość bajtu
+     */
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * Zapisuje nieujemną liczbę całkowitą w formacie varint (7 bitów na bajt).
+     *
+     * @param value zapisywana liczba
+     */
+    public void writeVarInt(int value) {
+        ensureCapacity(5);
+
+        while ((value & ~0x7F) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * Zapisuje nieujemną liczbę całkowitą typu {@code long} w formacie varint (7 bitów na bajt).
+     *
+     * @param value zapisywana liczba
+     */
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * Zapisuje ciąg znaków. Wartość {@code null} zapisywana jest jako długość zero, a pozostałe ciągi jako długość
+     * powiększona o jeden.
+     *
+     * @param value zapisywany ciąg znaków
+     */
+    public void writeString(String value) {
+        if(value == null) {
+            writeVarInt(0);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        writeBytes(bytes);
+    }
+
+    /**
+     * Zapisuje tablicę bajtów bez jej długości.
+     *
+     * @param bytes zapisywane bajty
+     */
+    public void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    /**
+     * Zwraca zapisane bajty.
+     *
+     * @return kopia zapisanych bajtów
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Powiększa bufor, jeśli nie zmieści się w nim podana liczba bajtów.
+     *
+     * @param additional liczba dopisywanych bajtów
+     */
+    private void ensureCapacity(int additional) {
+        if(size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+}
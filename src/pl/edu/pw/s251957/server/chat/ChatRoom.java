@@ -0,0 +1,143 @@
+package pl.edu.pw.s251957.server.chat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Pokój rozmowy grupowej. Członkowie przechowywani są w tablicy kopiowanej przy każdej zmianie składu, więc
+ * rozsyłanie wiadomości iteruje po niej bez blokad i bez tworzenia obiektów. Zmiany składu są rzadkie w porównaniu
+ * z wiadomościami, dlatego koszt kopiowania jest akceptowalny. Pusty pokój zostaje zamknięty i nie przyjmuje nowych
+ * członków.
+ *
+ * @see ChatRooms
+ */
+class ChatRoom {
+    /** Pusta tablica członków */
+    private static final ClientConnection[] NO_MEMBERS = new ClientConnection[0];
+
+    /** Nazwa pokoju */
+    private final String name;
+
+    /** Połączenia członków pokoju, zastępowane nową tablicą przy każdej zmianie składu */
+    private volatile ClientConnection[] members;
+    /** Flaga czy pokój został zamknięty po odejściu ostatniego członka */
+    private boolean closed;
+
+    /**
+     * Tworzy pusty pokój o podanej nazwie.
+     *
+     * @param name nazwa pokoju
+     */
+    ChatRoom(String name) {
+        this.name = name;
+        this.members = NO_MEMBERS;
+    }
+
+    /**
+     * Zwraca nazwę pokoju.
+     *
+     * @return nazwa pokoju
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Zwraca bieżącą tablicę członków. Tablica nie jest nigdy modyfikowana, więc może być przeglądana bez blokad.
+     *
+     * @return połączenia członków pokoju
+     */
+    ClientConnection[] getMembers() {
+        return members;
+    }
+
+    /**
+     * Dodaje członka do pokoju.
+     *
+     * @param member połączenie nowego członka
+     * @return flaga czy członek został dodany - {@code false}, jeśli pokój jest zamknięty lub już do niego należy
+     */
+    synchronized boolean add(ClientConnection member) {
+        if(closed || indexOf(member) >= 0) {
+            return false;
+        }
+
+        ClientConnection[] newMembers = Arrays.copyOf(members, members.length + 1);
+        newMembers[members.length] = member;
+        members = newMembers;
+
+        return true;
+    }
+
+    /**
+     * Usuwa członka z pokoju. Po odejściu ostatniego członka pokój zostaje zamknięty.
+     *
+     * @param member połączenie członka
+     * @return flaga czy członek został usunięty
+     */
+    synchronized boolean remove(ClientConnection member) {
+        int index = indexOf(member);
+
+        if(index < 0) {
+            return false;
+        }
+
+        if(members.length == 1) {
+            members = NO_MEMBERS;
+            closed = true;
+            return true;
+        }
+
+        ClientConnection[] newMembers = new ClientConnection[members.length - 1];
+        System.arraycopy(members, 0, newMembers, 0, index);
+        System.arraycopy(members, index + 1, newMembers, index, members.length - index - 1);
+        members = newMembers;
+
+        return true;
+    }
+
+    /**
+     * Informuje czy pokój został zamknięty po odejściu ostatniego członka.
+     *
+     * @return flaga czy pokój jest zamknięty
+     */
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Zwraca nicki członków pokoju.
+     *
+     * @return nicki członków
+     */
+    List<String> getMemberNicks() {
+        ClientConnection[] currentMembers = members;
+        List<String> nicks = new ArrayList<>(currentMembers.length);
+
+        for (ClientConnection member : currentMembers) {
+            String nick = member.getClientNick();
+
+            if(nick != null) {
+                nicks.add(nick);
+            }
+        }
+
+        return nicks;
+    }
+
+    /**
+     * Wyszukuje członka w tablicy członków.
+     *
+     * @param member połączenie członka
+     * @return pozycja członka lub -1, jeśli nie należy do pokoju
+     */
+    private int indexOf(ClientConnection member) {
+        for (int i = 0; i < members.length; i++) {
+            if(members[i] == member) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
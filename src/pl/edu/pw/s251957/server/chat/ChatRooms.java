@@ -0,0 +1,231 @@
+package pl.edu.pw.s251957.server.chat;
+
+import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.Response;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** Rejestr pokojów rozmów grupowych serwera. Obsługuje tworzenie pokojów, dołączanie do nich, ich opuszczanie oraz
+ * rozsyłanie wiadomości do członków. Wiadomość do pokoju tworzona jest raz jako {@link OutboundResponse}, więc
+ * współdzielonym koderem kodowana jest tylko raz, a następnie trafia do kolejek wychodzących wszystkich członków
+ * poza nadawcą. Zmiany składu pokoju ogłaszane są pod blokadą pokoju, dzięki czemu członkowie otrzymują je w tej
+ * samej kolejności.
+ *
+ * @see ChatRoom
+ * @see ChatServer
+ */
+class ChatRooms {
+    /** Pokoje według nazwy */
+    private final ConcurrentMap<String, ChatRoom> rooms;
+
+    /**
+     * Tworzy pusty rejestr pokojów.
+     */
+    ChatRooms() {
+        this.rooms = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Obsługuje żądanie klienta dotyczące pokoju. Nadawcą żądania jest zawsze nick przypisany do połączenia.
+     *
+     * @param cmd żądanie klienta
+     * @param connection połączenie klienta
+     */
+    void handleCommand(Command cmd, ClientConnection connection) {
+        String nick = connection.getClientNick();
+        String roomName = cmd.getAddresseeNick();
+
+        if(nick == null) {
+            sendError(connection, "Użytkownik nie jest połączony");
+            return;
+        }
+
+        if(roomName == null || roomName.trim().isEmpty()) {
+            sendError(connection, "Nie podano nazwy pokoju");
+            return;
+        }
+
+        switch (cmd.getCommandType()) {
+            case CREATE_ROOM:
+                createRoom(roomName, nick, connection);
+                break;
+            case JOIN_ROOM:
+                joinRoom(roomName, nick, connection);
+                break;
+            case LEAVE_ROOM:
+                leaveRoom(roomName, connection);
+                break;
+            case SEND_ROOM_MESSAGE:
+                sendMessage(roomName, nick, cmd.getMessage(), connection);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Tworzy pokój i dołącza do niego twórcę. Zamknięty pokój, który nie został jeszcze usunięty z rejestru, jest
+     * zastępowany nowym.
+     *
+     * @param roomName nazwa pokoju
+     * @param nick nick twórcy
+     * @param connection połączenie twórcy
+     */
+    private void createRoom(String roomName, String nick, ClientConnection connection) {
+        ChatRoom room = new ChatRoom(roomName);
+        ChatRoom existing;
+
+        while ((existing = rooms.putIfAbsent(roomName, room)) != null) {
+            if(!existing.isClosed()) {
+                sendError(connection, "Pokój " + roomName + " już istnieje");
+                return;
+            }
+
+            rooms.remove(roomName, existing);
+        }
+
+        addMember(room, nick, connection);
+    }
+
+    /**
+     * Dołącza użytkownika do istniejącego pokoju.
+     *
+     * @param roomName nazwa pokoju
+     * @param nick nick użytkownika
+     * @param connection połączenie użytkownika
+     */
+    private void joinRoom(String roomName, String nick, ClientConnection connection) {
+        if(connection.isInRoom(roomName)) {
+            sendError(connection, "Należysz już do pokoju " + roomName);
+            return;
+        }
+
+        ChatRoom room = rooms.get(roomName);
+
+        if(room == null || !addMember(room, nick, connection)) {
+            sendError(connection, "Pokój " + roomName + " nie istnieje");
+        }
+    }
+
+    /**
+     * Dodaje członka do pokoju. Nowy członek otrzymuje listę członków, a pozostali informację o jego dołączeniu.
+     *
+     * @param room pokój
+     * @param nick nick nowego członka
+     * @param connection połączenie nowego członka
+     * @return flaga czy członek został dodany - {@code false}, jeśli pokój został w międzyczasie zamknięty
+     */
+    private boolean addMember(ChatRoom room, String nick, ClientConnection connection) {
+        synchronized (room) {
+            if(!room.add(connection)) {
+                return false;
+            }
+
+            connection.joinedRoom(room.getName());
+            connection.sendResponse(new Response(Response.ResponseType.ROOM_JOINED, room.getName(),
+                    "Dołączono do pokoju " + room.getName(), room.getMemberNicks()));
+            multicast(room, new OutboundResponse(new Response(Response.ResponseType.ROOM_MEMBER_JOINED,
+                    room.getName(), "Do pokoju dołączył " + nick, nick)), connection);
+        }
+
+        return true;
+    }
+
+    /**
+     * Usuwa użytkownika z pokoju. Pozostali członkowie otrzymują informację o jego odejściu, a pusty pokój zostaje
+     * usunięty z rejestru.
+     *
+     * @param roomName nazwa pokoju
+     * @param connection połączenie użytkownika
+     */
+    void leaveRoom(String roomName, ClientConnection connection) {
+        connection.leftRoom(roomName);
+        ChatRoom room = rooms.get(roomName);
+
+        if(room == null) {
+            return;
+        }
+
+        synchronized (room) {
+            if(!room.remove(connection)) {
+                return;
+            }
+
+            if(room.isClosed()) {
+                rooms.remove(roomName, room);
+                return;
+            }
+
+            String nick = connection.getClientNick();
+            multicast(room, new OutboundResponse(new Response(Response.ResponseType.ROOM_MEMBER_LEFT, roomName,
+                    "Pokój opuścił " + nick, nick)), null);
+        }
+    }
+
+    /**
+     * Usuwa rozłączonego użytkownika ze wszystkich pokojów, do których należał.
+     *
+     * @param connection połączenie użytkownika
+     */
+    void leaveAllRooms(ClientConnection connection) {
+        for (String roomName : connection.getRooms()) {
+            leaveRoom(roomName, connection);
+        }
+    }
+
+    /**
+     * Rozsyła wiadomość do wszystkich członków pokoju poza nadawcą. Odpowiedź nie zawiera nicku odbiorcy, więc jest
+     * kodowana raz i współdzielona przez wszystkich członków.
+     *
+     * @param roomName nazwa pokoju
+     * @param nick nick nadawcy
+     * @param message treść wiadomości
+     * @param connection połączenie nadawcy
+     */
+    private void sendMessage(String roomName, String nick, String message, ClientConnection connection) {
+        ChatRoom room = rooms.get(roomName);
+
+        if(room == null || !connection.isInRoom(roomName)) {
+            sendError(connection, "Nie należysz do pokoju " + roomName);
+            return;
+        }
+
+        multicast(room, new OutboundResponse(new Response(Response.ResponseType.ROOM_MESSAGE, roomName, message,
+                nick)), connection);
+    }
+
+    /**
+     * Zwraca liczbę istniejących pokojów.
+     *
+     * @return liczba pokojów
+     */
+    int getRoomCount() {
+        return rooms.size();
+    }
+
+    /**
+     * Przekazuje odpowiedź do kolejek wychodzących członków pokoju.
+     *
+     * @param room pokój
+     * @param response odpowiedź współdzielona przez odbiorców
+     * @param excluded połączenie pomijane przy rozsyłaniu lub {@code null}
+     */
+    private static void multicast(ChatRoom room, OutboundResponse response, ClientConnection excluded) {
+        for (ClientConnection member : room.getMembers()) {
+            if(member != excluded) {
+                member.sendResponse(response);
+            }
+        }
+    }
+
+    /**
+     * Wysyła klientowi informację o błędzie.
+     *
+     * @param connection połączenie klienta
+     * @param message treść błędu
+     */
+    private static void sendError(ClientConnection connection, String message) {
+        connection.sendResponse(new Response(Response.ResponseType.ERROR, null, message, null));
+    }
+}
@@ -1,34 +1,171 @@
 package pl.edu.pw.s251957.server.chat;
 
+import pl.edu.pw.s251957.common.BinaryCodec;
 import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.CompressingCodec;
+import pl.edu.pw.s251957.common.HistoryPage;
+import pl.edu.pw.s251957.common.TlsContexts;
 import pl.edu.pw.s251957.common.Response;
+import pl.edu.pw.s251957.server.cluster.ClusterListener;
+import pl.edu.pw.s251957.server.cluster.ClusterNode;
+import pl.edu.pw.s251957.server.metrics.ServerMetrics;
+import pl.edu.pw.s251957.server.store.ConversationHistoryStore;
+import pl.edu.pw.s251957.server.store.OfflineMessageStore;
+import pl.edu.pw.s251957.server.store.StoredMessage;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-/** Klasa serwera odpowiadająca za odbieranie połączeń klientów i rozpoczynanie dla nich osobnych wątków obsługujących
- * połączenie. Rozszerza klasę {@link Thread}.
+/** Klasa serwera odpowiadająca za odbieranie połączeń klientów i przekazywanie ich do obsługi. W zależności od trybu
+ * {@link ServerMode} każde połączenie dostaje osobny wątek (zwykły lub wirtualny) albo trafia do jednego z wątków
+ * {@link NioReactor}. Użytkownicy rejestrowani są w częściach {@link ShardedRegistry} należących do osobnych wątków,
+ * które przekazują też wiadomości swoim użytkownikom. Odpowiedzi do klientów wysyłane są asynchronicznie przez
+ * kolejki {@link OutboundQueue}. Po podaniu magazynu kluczy połączenia szyfrowane są TLS - w trybach blokujących
+ * przez gniazda {@link SSLServerSocket}, a w trybie nieblokującym przez {@link TlsChannel}.
+ * Jeśli w ustawieniach podano identyfikator węzła, serwer działa jako węzeł klastra {@link ClusterNode} - widzi
+ * użytkowników pozostałych węzłów i przekazuje im wiadomości do nich. Rozszerza klasę {@link Thread}.
  *
  * @author Cezary Sanecki
  * @version 1.0
  * @see Thread
+ * @see ServerMode
+ * @see ServerSettings
+ * @see ClusterNode
  * @since 01.11.2019r.
  */
-public class ChatServer extends Thread {
+public class ChatServer extends Thread implements ClusterListener {
+    /** Metoda tworząca wykonawcę z wątkami wirtualnymi lub {@code null}, jeśli nie jest dostępna */
+    private static final Method VIRTUAL_THREAD_EXECUTOR_FACTORY = findVirtualThreadExecutorFactory();
+    /** Czas oczekiwania na wysłanie oczekujących odpowiedzi przy zatrzymywaniu serwera w sekundach */
+    private static final int SHUTDOWN_FLUSH_TIMEOUT = 2;
+    /** Maksymalna łączna liczba jednocześnie otwartych historii konwersacji wszystkich części rejestru */
+    private static final int MAX_OPEN_CONVERSATIONS = 256;
+    /** Długość taktu zegara sprawdzającego połączenia w milisekundach */
+    private static final long HEARTBEAT_TICK = 100;
+    /** Liczba kubełków zegara sprawdzającego połączenia */
+    private static final int HEARTBEAT_WHEEL_SIZE = 512;
+    /** Wynik dostarczenia przyjętej wiadomości */
+    private static final CompletableFuture<String> ACCEPTED = CompletableFuture.completedFuture(null);
+    /** Powód odrzucenia wiadomości, której nie udało się zapisać w magazynie */
+    private static final String STORE_FAILURE = "Błąd przy zapisie wiadomości";
+
+    /** Ustawienia serwera */
+    private final ServerSettings settings;
+    /** Tryb obsługi połączeń */
+    private final ServerMode serverMode;
+
     /** Wystawione gniazdo do połączenia z serwerem */
     private ServerSocket serverSocket;
-    /** Mapa połączeń z użytkownikami */
-    private Map<String, ClientConnection> nicksToClientConnections;
+    /** Wykonawca pętli odczytu połączeń w trybach blokujących */
+    private ExecutorService connectionExecutor;
+    /** Wykonawca zadań opróżniających kolejki wychodzące połączeń */
+    private ExecutorService outboundExecutor;
+    /** Kanał gniazda serwera w trybie {@link ServerMode#NIO} */
+    private ServerSocketChannel serverSocketChannel;
+    /** Wątki obsługujące połączenia w trybie {@link ServerMode#NIO} */
+    private NioReactor[] reactors;
+    /** Numer wątku, który otrzyma kolejne połączenie */
+    private int nextReactor;
+    /** Rejestr połączeń z użytkownikami podzielony na części należące do osobnych wątków */
+    private final ShardedRegistry registry;
+    /** Magazyn wiadomości dla niepodłączonych użytkowników lub {@code null}, jeśli jest wyłączony */
+    private OfflineMessageStore offlineMessageStore;
+    /** Flaga czy historia konwersacji jest zapisywana */
+    private boolean historyEnabled;
+    /** Pokoje rozmów grupowych */
+    private final ChatRooms chatRooms;
+    /** Metryki pracy serwera */
+    private final ServerMetrics metrics;
+    /** Monitor udostępniający metryki przez JMX i konsolę */
+    private final ChatServerMonitor monitor;
+    /** Węzeł klastra lub {@code null}, jeśli serwer działa samodzielnie */
+    private ClusterNode clusterNode;
+    /** Koder klientów obsługujących kompresję, którzy jej nie zaproponowali - nie kompresuje odpowiedzi */
+    private final CompressingCodec framedCodec;
+    /** Koder kompresujący odpowiedzi lub {@code null}, jeśli kompresja jest wyłączona */
+    private final CompressingCodec compressingCodec;
+    /** Kontekst TLS połączeń klientów lub {@code null}, jeśli serwer nie używa TLS */
+    private SSLContext sslContext;
+    /** Zegar sprawdzający bezczynne połączenia lub {@code null}, jeśli sprawdzanie jest wyłączone */
+    private HashedWheelTimer heartbeatTimer;
 
     /**
-     * Tworzy instancję serwera i inicjalizuje pustą mapę użytkowników.
+     * Tworzy instancję serwera obsługującego każde połączenie na osobnym wątku.
      */
     public ChatServer() {
-        this.nicksToClientConnections = new HashMap<>();
+        this(ServerMode.THREADS);
+    }
+
+    /**
+     * Tworzy instancję serwera w podanym trybie. W trybie {@link ServerMode#NIO} liczba wątków obsługujących
+     * połączenia odpowiada liczbie dostępnych procesorów.
+     *
+     * @param serverMode tryb obsługi połączeń
+     */
+    public ChatServer(ServerMode serverMode) {
+        this(serverMode, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Tworzy instancję serwera w podanym trybie z podaną liczbą wątków obsługujących połączenia.
+     *
+     * @param serverMode tryb obsługi połączeń
+     * @param reactorThreads liczba wątków obsługujących połączenia w trybie {@link ServerMode#NIO}
+     */
+    public ChatServer(ServerMode serverMode, int reactorThreads) {
+        this(createSettings(serverMode, reactorThreads));
+    }
+
+    /**
+     * Tworzy instancję serwera z podanymi ustawieniami i inicjalizuje pustą mapę użytkowników.
+     *
+     * @param settings ustawienia serwera
+     */
+    public ChatServer(ServerSettings settings) {
+        super("chat-server");
+        this.settings = settings;
+        this.serverMode = settings.getServerMode();
+        this.registry = new ShardedRegistry(settings.getRegistryShards());
+        this.chatRooms = new ChatRooms();
+        this.metrics = new ServerMetrics();
+        this.monitor = new ChatServerMonitor(this, metrics);
+        this.framedCodec = new CompressingCodec(new BinaryCodec(), CompressingCodec.NO_COMPRESSION, metrics);
+        this.compressingCodec = settings.isCompressionEnabled()
+                ? new CompressingCodec(new BinaryCodec(), settings.getCompressionThreshold(), metrics) : null;
+    }
+
+    /**
+     * Tworzy ustawienia serwera z podanym trybem i liczbą wątków obsługujących połączenia.
+     *
+     * @param serverMode tryb obsługi połączeń
+     * @param reactorThreads liczba wątków obsługujących połączenia w trybie {@link ServerMode#NIO}
+     * @return ustawienia serwera
+     */
+    private static ServerSettings createSettings(ServerMode serverMode, int reactorThreads) {
+        ServerSettings settings = new ServerSettings();
+        settings.setServerMode(serverMode);
+        settings.setReactorThreads(reactorThreads);
+
+        return settings;
     }
 
     /**
@@ -50,11 +187,156 @@ public class ChatServer extends Thread {
      * @param port numer portu, na którym ma być uruchomiony serwer
      */
     private void initializeServerSocket(int port) {
+        if(serverMode == ServerMode.VIRTUAL_THREADS && VIRTUAL_THREAD_EXECUTOR_FACTORY == null) {
+            System.out.println("Wątki wirtualne nie są dostępne w tej wersji Javy - używane są zwykłe wątki");
+        }
+
         try {
-            this.serverSocket = new ServerSocket(port);
-            System.out.println("Uruchomiono server na porcie " + port);
+            this.sslContext = createSslContext();
+            this.outboundExecutor = createExecutor("client-writer");
+            openOfflineMessageStore();
+            openHistoryStore();
+            registry.start();
+            startHeartbeatTimer();
+            startClusterNode();
+
+            if(serverMode == ServerMode.NIO) {
+                this.serverSocketChannel = ServerSocketChannel.open();
+                serverSocketChannel.bind(new InetSocketAddress(port));
+                this.serverSocket = serverSocketChannel.socket();
+                startReactors();
+            } else {
+                this.serverSocket = sslContext == null ? new ServerSocket(port)
+                        : sslContext.getServerSocketFactory().createServerSocket(port);
+                this.connectionExecutor = createExecutor("client-connection");
+            }
+
+            metrics.start();
+            monitor.register(serverSocket.getLocalPort());
+            System.out.println("Uruchomiono server na porcie " + port + " w trybie " + serverMode
+                    + (sslContext == null ? "" : " z TLS"));
         } catch (IOException e) {
+            closeServerSocket();
+            this.serverSocket = null;
             System.out.println("Nie można uruchomić serwera na porcie " + port);
+        } catch (IllegalArgumentException e) {
+            closeServerSocket();
+            this.serverSocket = null;
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Tworzy kontekst TLS serwera, jeśli w ustawieniach podano magazyn kluczy.
+     *
+     * @return kontekst TLS lub {@code null}, jeśli serwer nie używa TLS
+     * @throws IllegalArgumentException nie można wczytać magazynu kluczy
+     */
+    private SSLContext createSslContext() {
+        if(settings.getTlsKeyStore() == null) {
+            return null;
+        }
+
+        try {
+            return TlsContexts.serverContext(settings.getTlsKeyStore(), settings.getTlsKeyStorePassword(),
+                    settings.getTlsSessionCacheSize(), settings.getTlsSessionTimeout());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Nie można wczytać magazynu kluczy TLS: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Uruchamia zegar sprawdzający bezczynne połączenia, jeśli sprawdzanie jest włączone w ustawieniach.
+     */
+    private void startHeartbeatTimer() {
+        if(settings.getHeartbeatInterval() > 0) {
+            this.heartbeatTimer = new HashedWheelTimer(HEARTBEAT_TICK, HEARTBEAT_WHEEL_SIZE);
+            heartbeatTimer.start();
+        }
+    }
+
+    /**
+     * Zatrzymuje zegar sprawdzający bezczynne połączenia.
+     */
+    private void stopHeartbeatTimer() {
+        if(heartbeatTimer != null) {
+            heartbeatTimer.stop();
+        }
+    }
+
+    /**
+     * Uruchamia węzeł klastra, jeśli w ustawieniach podano jego identyfikator.
+     *
+     * @throws IOException błąd otwierania gniazda węzła
+     * @throws IllegalArgumentException niepoprawny adres węzła klastra
+     */
+    private void startClusterNode() throws IOException {
+        if(settings.getClusterNodeId() == null) {
+            return;
+        }
+
+        ClusterNode node = new ClusterNode(settings.getClusterNodeId(), settings.getClusterPort(),
+                settings.getClusterPeers(), this);
+        node.start();
+        this.clusterNode = node;
+        System.out.println("Uruchomiono węzeł klastra " + node.getNodeId() + " na porcie " + settings.getClusterPort());
+    }
+
+    /**
+     * Zatrzymuje węzeł klastra.
+     */
+    private void stopClusterNode() {
+        if(clusterNode != null) {
+            clusterNode.stop();
+        }
+    }
+
+    /**
+     * Uruchamia wątki obsługujące połączenia w trybie {@link ServerMode#NIO}.
+     *
+     * @throws IOException błąd otwierania selektora
+     */
+    private void startReactors() throws IOException {
+        reactors = new NioReactor[settings.getReactorThreads()];
+
+        for (int i = 0; i < reactors.length; i++) {
+            reactors[i] = new NioReactor(this, i);
+        }
+
+        for (NioReactor reactor : reactors) {
+            reactor.start();
+        }
+    }
+
+    /**
+     * Tworzy wykonawcę zadań związanych z połączeniami. W trybie {@link ServerMode#VIRTUAL_THREADS} każde zadanie
+     * dostaje wątek wirtualny, o ile pozwala na to wersja Javy, w przeciwnym razie używane są zwykłe wątki.
+     *
+     * @param threadName nazwa zwykłych wątków wykonawcy
+     * @return wykonawca zadań związanych z połączeniami
+     */
+    private ExecutorService createExecutor(String threadName) {
+        if(serverMode == ServerMode.VIRTUAL_THREADS && VIRTUAL_THREAD_EXECUTOR_FACTORY != null) {
+            try {
+                return (ExecutorService) VIRTUAL_THREAD_EXECUTOR_FACTORY.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Nie można utworzyć wątków wirtualnych - używane są zwykłe wątki");
+            }
+        }
+
+        return Executors.newCachedThreadPool(runnable -> new Thread(runnable, threadName));
+    }
+
+    /**
+     * Wyszukuje metodę tworzącą wykonawcę z wątkami wirtualnymi, dostępną od Javy 21.
+     *
+     * @return metoda tworząca wykonawcę lub {@code null}, jeśli wersja Javy jej nie udostępnia
+     */
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
         }
     }
 
@@ -66,20 +348,41 @@ public class ChatServer extends Thread {
     public void run() {
         while (!serverSocket.isClosed()) {
             try {
-                Socket socket = serverSocket.accept();
-                handleIncomingConnection(socket);
+                if(serverMode == ServerMode.NIO) {
+                    handleIncomingChannel(serverSocketChannel.accept());
+                } else {
+                    handleIncomingConnection(serverSocket.accept());
+                }
             } catch (IOException ignored) {}
         }
     }
 
     /**
-     * Obsługuje przychodzące połączenia do serwera.
+     * Obsługuje przychodzące połączenia do serwera uruchamiając dla każdego z nich osobny wątek.
      *
      * @param socket połączenie z klientem
      */
     private synchronized void handleIncomingConnection(Socket socket) {
-        ClientConnection clientConnection = new ClientConnection(this, socket);
-        clientConnection.start();
+        metrics.recordAccept();
+
+        try {
+            SocketTransport transport = new SocketTransport(socket, metrics);
+            ClientConnection clientConnection = new ClientConnection(this, transport);
+            connectionExecutor.execute(() -> transport.readLoop(clientConnection));
+        } catch (IOException e) {
+            System.out.println("Błąd otwierania strumieni");
+        }
+    }
+
+    /**
+     * Obsługuje przychodzące połączenia do serwera przekazując je kolejno do wątków {@link NioReactor}.
+     *
+     * @param channel kanał połączenia z klientem
+     */
+    private void handleIncomingChannel(SocketChannel channel) {
+        metrics.recordAccept();
+        reactors[nextReactor].register(channel);
+        nextReactor = (nextReactor + 1) % reactors.length;
     }
 
     /**
@@ -88,61 +391,640 @@ public class ChatServer extends Thread {
     public void stopServer() {
         notifyAllClients(Response.ResponseType.SERVER_CLOSE,"Serwer został wyłączony", null);
 
+        stopClusterNode();
+        stopHeartbeatTimer();
+        registry.shutdown();
+
         try {
             serverSocket.close();
         } catch (IOException e) {
             throw new RuntimeException(e.getMessage());
         }
 
+        stopOutboundExecutor();
+        stopReactors();
+        stopConnectionExecutor();
+        closeOfflineMessageStore();
+        closeHistoryStore();
+        closeCodecs();
+        monitor.unregister();
+        metrics.stop();
         System.out.println("Zamknięto połączenie serwera");
         interrupt();
     }
 
     /**
-     * Dodaje nowego klienta do obsługiwanych połączeń.
+     * Zatrzymuje wątki obsługujące połączenia w trybie {@link ServerMode#NIO}.
+     */
+    private void stopReactors() {
+        if(reactors != null) {
+            for (NioReactor reactor : reactors) {
+                if(reactor != null) {
+                    reactor.shutdown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Kończy przyjmowanie nowych zadań przez wykonawcę kolejek wychodzących i czeka chwilę na wysłanie oczekujących
+     * odpowiedzi, m.in. informacji o zamknięciu serwera.
+     */
+    private void stopOutboundExecutor() {
+        if(outboundExecutor != null) {
+            outboundExecutor.shutdown();
+
+            try {
+                outboundExecutor.awaitTermination(SHUTDOWN_FLUSH_TIMEOUT, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Otwiera magazyn wiadomości dla niepodłączonych użytkowników, jeśli jest włączony w ustawieniach. Błąd otwarcia
+     * magazynu nie zatrzymuje serwera - wiadomości do niepodłączonych użytkowników są wtedy pomijane.
+     */
+    private void openOfflineMessageStore() {
+        if(settings.getOfflineStoreDirectory() == null) {
+            return;
+        }
+
+        OfflineMessageStore store = new OfflineMessageStore(storeDirectory(settings.getOfflineStoreDirectory()),
+                settings.getOfflineStoreSegmentSize());
+
+        try {
+            store.open();
+            this.offlineMessageStore = store;
+        } catch (IOException e) {
+            store.close();
+            System.out.println("Nie można otworzyć magazynu wiadomości: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Zapisuje na dysk i zamyka magazyn wiadomości dla niepodłączonych użytkowników.
+     */
+    private void closeOfflineMessageStore() {
+        if(offlineMessageStore != null) {
+            offlineMessageStore.close();
+        }
+    }
+
+    /**
+     * Tworzy magazyny historii konwersacji części rejestru, jeśli zapisywanie historii jest włączone w ustawieniach.
+     * Magazyny dzielą katalog, ale każdy otwiera tylko konwersacje, które przypadły jego części.
+     */
+    private void openHistoryStore() {
+        if(settings.getHistoryDirectory() == null) {
+            return;
+        }
+
+        RegistryShard[] shards = registry.getShards();
+        Path directory = storeDirectory(settings.getHistoryDirectory());
+        int maxOpenConversations = Math.max(1, MAX_OPEN_CONVERSATIONS / shards.length);
+
+        for (RegistryShard shard : shards) {
+            shard.setHistoryStore(new ConversationHistoryStore(directory, settings.getHistorySegmentSize(),
+                    maxOpenConversations));
+        }
+
+        this.historyEnabled = true;
+    }
+
+    /**
+     * Wyznacza katalog magazynu. Węzeł klastra używa podkatalogu nazwanego swoim identyfikatorem, aby kilka węzłów
+     * uruchomionych na jednej maszynie nie współdzieliło plików.
+     *
+     * @param directory katalog magazynu z ustawień
+     * @return katalog magazynu węzła
+     */
+    private Path storeDirectory(String directory) {
+        Path path = Paths.get(directory);
+        return settings.getClusterNodeId() == null ? path : path.resolve(settings.getClusterNodeId());
+    }
+
+    /**
+     * Zamyka magazyny historii konwersacji części rejestru po zatrzymaniu ich wątków.
+     */
+    private void closeHistoryStore() {
+        if(!historyEnabled) {
+            return;
+        }
+
+        for (RegistryShard shard : registry.getShards()) {
+            shard.getHistoryStore().close();
+        }
+    }
+
+    /**
+     * Zamyka kodery ramek współdzielone przez połączenia, zwalniając ich kompresory.
+     */
+    private void closeCodecs() {
+        framedCodec.close();
+
+        if(compressingCodec != null) {
+            compressingCodec.close();
+        }
+    }
+
+    /**
+     * Kończy przyjmowanie nowych zadań przez wykonawcę pętli odczytu. Trwające pętle kończą się wraz z zamknięciem
+     * gniazd klientów.
+     */
+    private void stopConnectionExecutor() {
+        if(connectionExecutor != null) {
+            connectionExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Zamyka kanał gniazda serwera, jeśli nie udało się uruchomić serwera.
+     */
+    private void closeServerSocket() {
+        stopClusterNode();
+        stopHeartbeatTimer();
+        registry.shutdown();
+        stopReactors();
+
+        if(outboundExecutor != null) {
+            outboundExecutor.shutdown();
+        }
+
+
+        try {
+            if(serverSocketChannel != null) {
+                serverSocketChannel.close();
+            }
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Zleca dodanie nowego klienta do obsługiwanych połączeń. Dodanie wykonuje wątek części rejestru, do której
+     * należy nick, więc dwa połączenia nie mogą jednocześnie otrzymać tego samego nicku, a zajęty nick zamyka
+     * połączenie z odpowiedzią {@link Response.ResponseType#REJECT_CONNECTION}.
      *
      * @param nick nick klienta
      * @param clientConnection połączenie serwerowe z klientem
      */
-    public synchronized void addClient(String nick, ClientConnection clientConnection) {
-        nicksToClientConnections.put(nick, clientConnection);
-        String message = "Doszedł użytkownik " + nick;
-        notifyAllClients(Response.ResponseType.USERS, message, new ArrayList<>(nicksToClientConnections.keySet()));
+    public void addClient(String nick, ClientConnection clientConnection) {
+        RegistryShard shard = registry.shardFor(nick);
+        shard.execute(() -> registerClient(shard, nick, clientConnection));
     }
 
     /**
-     * Usuwa klienta z obsługiwanych połączeń.
+     * Dodaje klienta do części rejestru, o ile podany nick nie jest zajęty. Klient otrzymuje numer sesji, a informacja
+     * o jego dołączeniu, razem z numerem, zostaje rozesłana do wszystkich części, zanim klient otrzyma pełną listę
+     * użytkowników według kopii części. Dzięki temu wiadomość adresowana numerem sesji, którą klient wyśle po
+     * otrzymaniu listy, trafi do części adresata po informacji o dołączeniu nadawcy. Kolejne zmiany listy trafiają do
+     * klienta przez kolejkę tej samej części, więc lista i zmiany nie mogą się rozminąć. Wiadomości zapisane dla
+     * nowego klienta, gdy był niepodłączony, trafiają do jego kolejki przed zarejestrowaniem nicku, więc żadna nowa
+     * wiadomość nie wyprzedzi starszych. W klastrze nick nie może być zajęty także na innym węźle. Wykonywana przez
+     * wątek części rejestru.
      *
+     * @param shard część rejestru, do której należy nick
      * @param nick nick klienta
+     * @param clientConnection połączenie serwerowe z klientem
      */
-    public synchronized void removeClient(String nick) {
-        nicksToClientConnections.remove(nick);
+    private void registerClient(RegistryShard shard, String nick, ClientConnection clientConnection) {
+        if(shard.getConnection(nick) != null || clusterNode != null && !clusterNode.claim(nick)) {
+            clientConnection.rejectNick(nick);
+            return;
+        }
+
+        int sessionId = shard.openSession(clientConnection);
+        publishJoined(nick, sessionId);
+
+        List<String> users = new ArrayList<>(shard.getUsers().size() + 1);
+        int[] sessionIds = new int[shard.getUsers().size() + 1];
+
+        for (Map.Entry<String, Integer> user : shard.getUsers().entrySet()) {
+            sessionIds[users.size()] = user.getValue();
+            users.add(user.getKey());
+        }
+
+        sessionIds[users.size()] = sessionId;
+        users.add(nick);
+
+        clientConnection.sendResponse(new OutboundResponse(new Response(Response.ResponseType.USERS, null,
+                "Doszedł użytkownik " + nick, users, sessionIds)));
+        deliverOfflineMessages(nick, clientConnection);
+        shard.putConnection(nick, clientConnection);
+    }
+
+    /**
+     * Rozsyła do wszystkich części rejestru informację o dołączeniu użytkownika. Odpowiedź dla klientów
+     * obsługujących zmiany listy tworzona jest raz i współdzielona przez wszystkie części.
+     *
+     * @param nick nick nowego użytkownika
+     * @param sessionId numer sesji użytkownika lub 0 dla użytkownika innego węzła klastra
+     */
+    private void publishJoined(String nick, int sessionId) {
+        String message = "Doszedł użytkownik " + nick;
+        OutboundResponse joinedResponse = new OutboundResponse(new Response(Response.ResponseType.USER_JOINED, null,
+                message, nick, sessionId == 0 ? null : new int[] {sessionId}));
+
+        registry.executeOnAll(shard -> {
+            shard.getUsers().put(nick, sessionId);
+            OutboundResponse usersResponse = null;
+
+            for (Map.Entry<String, ClientConnection> entry : shard.getConnectionsByNick().entrySet()) {
+                if(entry.getKey().equals(nick)) {
+                    continue;
+                }
+
+                if(entry.getValue().supportsPresenceDeltas()) {
+                    entry.getValue().sendResponse(joinedResponse);
+                } else {
+                    if(usersResponse == null) {
+                        usersResponse = broadcastResponse(Response.ResponseType.USERS, message,
+                                new ArrayList<>(shard.getUsers().keySet()));
+                    }
+
+                    entry.getValue().sendResponse(usersResponse);
+                }
+            }
+        });
+    }
+
+    /**
+     * Rozsyła do wszystkich części rejestru informację o odejściu użytkownika. Pełna lista dla starszych klientów
+     * tworzona jest w części tylko wtedy, gdy któryś z nich jest do niej podłączony.
+     *
+     * @param nick nick użytkownika, który odszedł
+     */
+    private void publishLeft(String nick) {
         String message = "Odszedł użytkownik " + nick;
-        notifyAllClients(Response.ResponseType.USERS, message, new ArrayList<>(nicksToClientConnections.keySet()));
+        OutboundResponse leftResponse = broadcastResponse(Response.ResponseType.USER_LEFT, message, nick);
+
+        registry.executeOnAll(shard -> {
+            shard.getUsers().remove(nick);
+            OutboundResponse usersResponse = null;
+
+            for (ClientConnection connection : shard.getConnections()) {
+                if(connection.supportsPresenceDeltas()) {
+                    connection.sendResponse(leftResponse);
+                } else {
+                    if(usersResponse == null) {
+                        usersResponse = broadcastResponse(Response.ResponseType.USERS, message,
+                                new ArrayList<>(shard.getUsers().keySet()));
+                    }
+
+                    connection.sendResponse(usersResponse);
+                }
+            }
+        });
+    }
+
+    /**
+     * Wysyła klientowi wiadomości zapisane dla niego, gdy był niepodłączony. Wiadomości oznaczane są jako
+     * dostarczone dopiero po zapisaniu do gniazda wszystkich odpowiedzi z nimi. Jeśli którakolwiek odpowiedź zostanie
+     * porzucona, np. przy przepełnieniu kolejki wychodzącej lub zerwaniu połączenia, wiadomości pozostają w magazynie
+     * i zostaną wysłane ponownie przy kolejnym połączeniu klienta.
+     *
+     * @param nick nick klienta
+     * @param clientConnection połączenie serwerowe z klientem
+     */
+    private void deliverOfflineMessages(String nick, ClientConnection clientConnection) {
+        if(offlineMessageStore == null) {
+            return;
+        }
+
+        List<StoredMessage> storedMessages;
+
+        try {
+            storedMessages = offlineMessageStore.peek(nick);
+        } catch (IOException e) {
+            System.out.println("Błąd przy odczycie zapisanych wiadomości: " + e.getMessage());
+            return;
+        }
+
+        if(storedMessages.isEmpty()) {
+            return;
+        }
+
+        long upTo = storedMessages.get(storedMessages.size() - 1).getOffset();
+        AtomicInteger unsent = new AtomicInteger(storedMessages.size());
+        Runnable onSent = () -> {
+            if(unsent.decrementAndGet() == 0) {
+                markOfflineMessagesDelivered(nick, upTo);
+            }
+        };
+
+        for (StoredMessage storedMessage : storedMessages) {
+            clientConnection.sendResponse(new OutboundResponse(new Response(Response.ResponseType.MESSAGE, nick,
+                    storedMessage.getMessage(), storedMessage.getSenderNick()), onSent));
+        }
+    }
+
+    /**
+     * Oznacza wysłane klientowi zapisane wiadomości jako dostarczone. Wywoływana przez warstwę transportową po
+     * zapisaniu ostatniej z nich do gniazda.
+     *
+     * @param nick nick klienta
+     * @param upTo pozycja ostatniej wysłanej wiadomości w magazynie
+     */
+    private void markOfflineMessagesDelivered(String nick, long upTo) {
+        try {
+            offlineMessageStore.markDelivered(nick, upTo);
+        } catch (IOException e) {
+            System.out.println("Błąd przy oznaczaniu zapisanych wiadomości: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Zleca usunięcie klienta z obsługiwanych połączeń, jeśli nick jest nadal przypisany do podanego połączenia.
+     * Pozostali użytkownicy otrzymują informację o odejściu użytkownika, tworzoną raz i współdzieloną przez
+     * wszystkich odbiorców.
+     *
+     * @param nick nick klienta
+     * @param clientConnection połączenie serwerowe z klientem
+     */
+    public void removeClient(String nick, ClientConnection clientConnection) {
+        RegistryShard shard = registry.shardFor(nick);
+
+        shard.execute(() -> {
+            if(!shard.removeConnection(nick, clientConnection)) {
+                return;
+            }
+
+            if(clusterNode != null) {
+                clusterNode.announceOffline(nick);
+            }
+
+            publishLeft(nick);
+        });
+    }
+
+    /**
+     * Informuje podłączonych użytkowników o dołączeniu użytkownika do innego węzła klastra.
+     *
+     * @param nick nick użytkownika
+     */
+    @Override
+    public void remoteUserJoined(String nick) {
+        publishJoined(nick, 0);
     }
 
     /**
-     * Informuje wszystkich użytkowników o danej odpowiedzi serwera.
+     * Informuje podłączonych użytkowników o odejściu użytkownika z innego węzła klastra.
+     *
+     * @param nick nick użytkownika
+     */
+    @Override
+    public void remoteUserLeft(String nick) {
+        publishLeft(nick);
+    }
+
+    /**
+     * Rozłącza lokalnego użytkownika, którego nick jednocześnie zajął użytkownik węzła o pierwszeństwie. Nick
+     * pozostaje na liście użytkowników, więc pozostali klienci nie otrzymują informacji o odejściu.
+     *
+     * @param nick nick użytkownika
+     */
+    @Override
+    public void localUserConflict(String nick) {
+        RegistryShard shard = registry.shardFor(nick);
+
+        shard.execute(() -> {
+            ClientConnection connection = shard.removeConnection(nick);
+
+            if(connection != null) {
+                connection.closeConnectionWithResponse(new Response(Response.ResponseType.REJECT_CONNECTION, nick,
+                        "Nick jest zajęty", null));
+            }
+        });
+    }
+
+    /**
+     * Dostarcza podłączonemu użytkownikowi żądanie przekazane przez inny węzeł klastra. Żądanie nie jest przekazywane
+     * dalej, więc przy rozbieżności katalogów obecności wiadomość trafia do magazynu zamiast krążyć między węzłami.
+     *
+     * @param cmd żądanie klienta innego węzła
+     */
+    @Override
+    public void deliverForwarded(Command cmd) {
+        if(cmd.getCommandType() == Command.CommandType.SEND_MESSAGE) {
+            sendMessage(cmd, null, false);
+        } else if(cmd.getCommandType() == Command.CommandType.END_CONVERSATION) {
+            sendEndingMessage(cmd, cmd.getClientNick(), false);
+        }
+    }
+
+    /**
+     * Informuje wszystkich użytkowników o danej odpowiedzi serwera. Odpowiedź jest kodowana raz i wysyłana
+     * wszystkim odbiorcom przez wątki części rejestru.
      *
      * @param responseType typ odpowiedzi
      * @param message treść odpowiedzi
      * @param data dane odpowiedzi
      */
-    private void notifyAllClients(Response.ResponseType responseType, String message, Object data) {
-        for (String clientNick : nicksToClientConnections.keySet()) {
-            Response response = new Response(responseType, clientNick, message, data);
-            nicksToClientConnections.get(clientNick).sendResponse(response);
+    void notifyAllClients(Response.ResponseType responseType, String message, Object data) {
+        OutboundResponse response = broadcastResponse(responseType, message, data);
+
+        registry.executeOnAll(shard -> {
+            for (ClientConnection connection : shard.getConnections()) {
+                connection.sendResponse(response);
+            }
+        });
+    }
+
+    /**
+     * Tworzy odpowiedź rozsyłaną do wielu użytkowników. Odpowiedź nie zawiera nicku adresata, dzięki czemu jej
+     * zakodowana treść jest taka sama dla wszystkich odbiorców.
+     *
+     * @param responseType typ odpowiedzi
+     * @param message treść odpowiedzi
+     * @param data dane odpowiedzi
+     * @return odpowiedź współdzielona przez odbiorców
+     */
+    private static OutboundResponse broadcastResponse(Response.ResponseType responseType, String message, Object data) {
+        return new OutboundResponse(new Response(responseType, null, message, data));
+    }
+
+    /**
+     * Zwraca ustawienia serwera.
+     *
+     * @return ustawienia serwera
+     */
+    ServerSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Zwraca wykonawcę zadań opróżniających kolejki wychodzące połączeń.
+     *
+     * @return wykonawca kolejek wychodzących
+     */
+    ExecutorService getOutboundExecutor() {
+        return outboundExecutor;
+    }
+
+    /**
+     * Zwraca współdzielony koder klientów obsługujących kompresję, który nie kompresuje odpowiedzi.
+     *
+     * @return koder bez kompresji odpowiedzi
+     */
+    CompressingCodec getFramedCodec() {
+        return framedCodec;
+    }
+
+    /**
+     * Zwraca współdzielony koder kompresujący odpowiedzi.
+     *
+     * @return koder kompresujący lub {@code null}, jeśli kompresja jest wyłączona
+     */
+    CompressingCodec getCompressingCodec() {
+        return compressingCodec;
+    }
+
+    /**
+     * Zwraca zegar sprawdzający bezczynne połączenia.
+     *
+     * @return zegar lub {@code null}, jeśli sprawdzanie połączeń jest wyłączone
+     */
+    HashedWheelTimer getHeartbeatTimer() {
+        return heartbeatTimer;
+    }
+
+    /**
+     * Zwraca pokoje rozmów grupowych.
+     *
+     * @return rejestr pokojów
+     */
+    ChatRooms getChatRooms() {
+        return chatRooms;
+    }
+
+    /**
+     * Zwraca metryki pracy serwera.
+     *
+     * @return metryki serwera
+     */
+    ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Zwraca kontekst TLS połączeń klientów.
+     *
+     * @return kontekst TLS lub {@code null}, jeśli serwer nie używa TLS
+     */
+    SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    /**
+     * Informuje czy połączenia klientów szyfrowane są TLS.
+     *
+     * @return flaga czy serwer używa TLS
+     */
+    boolean isTlsEnabled() {
+        return sslContext != null;
+    }
+
+    /**
+     * Zwraca monitor udostępniający metryki serwera.
+     *
+     * @return monitor serwera
+     */
+    ChatServerMonitor getMonitor() {
+        return monitor;
+    }
+
+    /**
+     * Zwraca rejestr użytkowników podzielony na części.
+     *
+     * @return rejestr użytkowników
+     */
+    ShardedRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Zwraca liczbę połączonych użytkowników.
+     *
+     * @return liczba użytkowników
+     */
+    public int getConnectedUsers() {
+        return registry.getConnectionCount();
+    }
+
+    /**
+     * Zwraca bieżące głębokości kolejek wychodzących połączonych użytkowników, odczytane przez wątki części rejestru.
+     *
+     * @return głębokości kolejek według nicku użytkownika
+     */
+    Map<String, Integer> getOutboundQueueDepths() {
+        Map<String, Integer> depths = new HashMap<>();
+
+        for (Map<String, Integer> shardDepths : registry.query(ChatServer::readOutboundQueueDepths)) {
+            depths.putAll(shardDepths);
         }
+
+        return depths;
+    }
+
+    /**
+     * Odczytuje głębokości kolejek wychodzących połączeń części rejestru. Wykonywana przez wątek części rejestru.
+     *
+     * @param shard część rejestru
+     * @return głębokości kolejek według nicku użytkownika
+     */
+    private static Map<String, Integer> readOutboundQueueDepths(RegistryShard shard) {
+        Map<String, Integer> depths = new HashMap<>();
+
+        for (Map.Entry<String, ClientConnection> entry : shard.getConnectionsByNick().entrySet()) {
+            depths.put(entry.getKey(), entry.getValue().getOutboundQueueSize());
+        }
+
+        return depths;
     }
 
     /**
-     * Sprawdza czy dany nick nie jest już zajęty.
+     * Zwraca łączny przybliżony rozmiar tablic uchwytów strumieni serializacji połączonych klientów. Pozwala
+     * obserwować, czy resetowanie strumieni ogranicza pamięć zajmowaną przez długie sesje.
+     *
+     * @return łączny rozmiar tablic uchwytów
+     */
+    public long getSerializationHandleTableSize() {
+        long handleTableSize = 0;
+
+        for (long shardHandleTableSize : registry.query(shard -> {
+            long size = 0;
+
+            for (ClientConnection connection : shard.getConnections()) {
+                size += connection.getHandleTableSize();
+            }
+
+            return size;
+        })) {
+            handleTableSize += shardHandleTableSize;
+        }
+
+        return handleTableSize;
+    }
+
+    /**
+     * Sprawdza czy dany nick nie jest już zajęty. Sprawdzenie wykonuje wątek części rejestru, do której należy nick.
      *
      * @param nick sprawdzany nick
      * @return flaga czy dany nick jest używany
      */
     public boolean checkNickIsUsed(String nick) {
-        return nicksToClientConnections.containsKey(nick);
+        Boolean used = registry.query(registry.shardFor(nick), shard -> shard.getConnection(nick) != null);
+
+        return Boolean.TRUE.equals(used) || clusterNode != null && clusterNode.isRemoteUser(nick);
+    }
+
+    /**
+     * Zwraca węzeł klastra.
+     *
+     * @return węzeł klastra lub {@code null}, jeśli serwer działa samodzielnie
+     */
+    ClusterNode getClusterNode() {
+        return clusterNode;
     }
 
     /**
@@ -164,14 +1046,240 @@ public class ChatServer extends Thread {
     }
 
     /**
-     * Wyślij odpowiedź serwera do danego użytkownika.
+     * Wyślij odpowiedź serwera do danego użytkownika. Żądanie przekazywane jest wątkowi części rejestru, do której
+     * należy adresat. Jeśli adresat nie jest podłączony, wiadomość zostaje zapisana w magazynie i dostarczona po jego
+     * połączeniu. Wiadomości konwersacji zapisywane są w historii przez ten sam wątek co ich dostarczenie i odczyt
+     * historii adresata, więc strona historii nie może pominąć ani powtórzyć wiadomości, którą klient otrzymał przed
+     * nią. Wiadomość do użytkownika innego węzła klastra zostaje przekazana temu węzłowi.
      *
      * @param cmd żądanie klienta
      */
     public void sendMessage(Command cmd) {
-        if(nicksToClientConnections.containsKey(cmd.getAddresseeNick())) {
-            Response response = new Response(Response.ResponseType.MESSAGE, cmd.getAddresseeNick(), cmd.getMessage(), cmd.getClientNick());
-            nicksToClientConnections.get(cmd.getAddresseeNick()).sendResponse(response);
+        sendMessage(cmd, null, true);
+    }
+
+    /**
+     * Wyślij wiadomość od podłączonego klienta tak jak {@link #sendMessage(Command)}. Jeśli wiadomość ma numer,
+     * nadawca otrzymuje jej potwierdzenie po przekazaniu adresatowi, węzłowi klastra adresata albo zapisaniu w
+     * magazynie na dysku, a odrzucenie, jeśli wiadomości nie można dostarczyć lub zapisać. Żądanie bez adresata
+     * zostaje odrzucone.
+     *
+     * @param cmd żądanie klienta
+     * @param sender połączenie serwerowe z nadawcą
+     */
+    void sendMessage(Command cmd, ClientConnection sender) {
+        if(cmd.getAddresseeNick() == null) {
+            sender.rejectCommand(cmd, "Nie podano adresata");
+            return;
+        }
+
+        sendMessage(cmd, sender, true);
+    }
+
+    /**
+     * Przekazuje wiadomość wątkowi części rejestru adresata.
+     *
+     * @param cmd żądanie klienta
+     * @param sender połączenie serwerowe z nadawcą lub {@code null} dla wiadomości z innego węzła
+     * @param forward flaga czy wiadomość do użytkownika innego węzła może zostać przekazana temu węzłowi
+     */
+    private void sendMessage(Command cmd, ClientConnection sender, boolean forward) {
+        String senderNick = sender == null ? cmd.getClientNick() : sender.getClientNick();
+        RegistryShard shard = registry.shardFor(cmd.getAddresseeNick());
+        shard.execute(() -> deliverMessage(shard, cmd, senderNick, forward).whenComplete((rejection, failure) ->
+                acknowledge(cmd, sender, failure == null ? rejection : STORE_FAILURE)));
+    }
+
+    /**
+     * Zapisuje wiadomość w historii i przekazuje ją adresatowi, węzłowi klastra adresata albo zapisuje ją
+     * w magazynie, jeśli adresat nie jest podłączony. Nadawcą wiadomości od klienta tego serwera jest zawsze
+     * użytkownik przypisany do połączenia, a nie nick podany w żądaniu. Wykonywana przez wątek części rejestru
+     * adresata, więc adresat nie może w międzyczasie dołączyć i wiadomość nie zostanie zapisana już po przekazaniu mu
+     * zapisanych wiadomości. Wiadomość zapisana w magazynie zostaje przyjęta dopiero po zapisaniu jej na dysk, a błąd
+     * tego zapisu kończy zwróconą przyszłość wyjątkiem.
+     *
+     * @param shard część rejestru, do której należy adresat
+     * @param cmd żądanie klienta
+     * @param senderNick nick nadawcy
+     * @param forward flaga czy wiadomość do użytkownika innego węzła może zostać przekazana temu węzłowi
+     * @return przyszłość z powodem odrzucenia wiadomości lub {@code null}, jeśli wiadomość została przyjęta
+     */
+    private CompletableFuture<String> deliverMessage(RegistryShard shard, Command cmd, String senderNick,
+                                                     boolean forward) {
+        if(cmd.getCommandType() == Command.CommandType.SEND_MESSAGE) {
+            appendHistory(senderNick, cmd.getAddresseeNick(), cmd.getMessage());
+        }
+
+        ClientConnection addressee = shard.getConnection(cmd.getAddresseeNick());
+
+        if(addressee != null) {
+            Response response = new Response(Response.ResponseType.MESSAGE, cmd.getAddresseeNick(), cmd.getMessage(), senderNick);
+            addressee.sendResponse(response);
+        } else if(forward && clusterNode != null && clusterNode.forward(new Command(cmd.getCommandType(), senderNick,
+                cmd.getAddresseeNick(), cmd.getMessage()))) {
+            return ACCEPTED;
+        } else if(offlineMessageStore != null) {
+            try {
+                return offlineMessageStore.store(cmd.getAddresseeNick(), senderNick, cmd.getMessage())
+                        .thenApply(stored -> null);
+            } catch (IOException e) {
+                System.out.println("Błąd przy zapisie wiadomości: " + e.getMessage());
+                return CompletableFuture.completedFuture(STORE_FAILURE);
+            }
+        } else {
+            return CompletableFuture.completedFuture("Adresat nie jest połączony");
+        }
+
+        return ACCEPTED;
+    }
+
+    /**
+     * Wysyła nadawcy potwierdzenie albo odrzucenie wiadomości, o ile wiadomość ma numer. Może być wywołana przez
+     * wątek zapisujący magazyn wiadomości po zapisaniu wiadomości na dysk.
+     *
+     * @param cmd żądanie klienta
+     * @param sender połączenie serwerowe z nadawcą lub {@code null}
+     * @param rejection powód odrzucenia wiadomości lub {@code null}, jeśli wiadomość została przyjęta
+     */
+    private void acknowledge(Command cmd, ClientConnection sender, String rejection) {
+        if(sender == null || cmd.getMessageId() == 0) {
+            return;
+        }
+
+        sender.sendResponse(rejection == null ? new Response(Response.ResponseType.ACK, cmd.getMessageId(), null)
+                : new Response(Response.ResponseType.NACK, cmd.getMessageId(), rejection));
+    }
+
+    /**
+     * Przekazuje wiadomość adresowaną numerem sesji wątkowi części rejestru, która nadała ten numer - część wynika
+     * z numeru, więc nick adresata nie jest haszowany. Nadawcą jest zawsze użytkownik przypisany do połączenia.
+     *
+     * @param cmd żądanie klienta
+     * @param sender połączenie serwerowe z nadawcą
+     */
+    void sendSessionMessage(Command cmd, ClientConnection sender) {
+        String senderNick = sender.getClientNick();
+
+        if(senderNick == null || cmd.getAddresseeId() <= 0) {
+            sender.rejectCommand(cmd, "Niepoprawny numer sesji adresata");
+            return;
+        }
+
+        RegistryShard shard = registry.shardForSession(cmd.getAddresseeId());
+        shard.execute(() -> deliverSessionMessage(shard, cmd, senderNick, sender));
+    }
+
+    /**
+     * Zapisuje w historii i przekazuje adresatowi wiadomość adresowaną numerem sesji. Adresat obsługujący numery
+     * sesji otrzymuje zamiast nicku nadawcy jego numer. Jeśli sesja adresata już się zakończyła, nadawca otrzymuje
+     * błąd - jego klient adresuje wtedy kolejne wiadomości nickiem. Wykonywana przez wątek części rejestru adresata.
+     *
+     * @param shard część rejestru, która nadała numer sesji adresata
+     * @param cmd żądanie klienta
+     * @param senderNick nick nadawcy
+     * @param sender połączenie serwerowe z nadawcą
+     */
+    private void deliverSessionMessage(RegistryShard shard, Command cmd, String senderNick, ClientConnection sender) {
+        ClientConnection addressee = shard.getSession(cmd.getAddresseeId());
+        String addresseeNick = addressee == null ? null : addressee.getClientNick();
+
+        if(addresseeNick == null) {
+            sender.rejectCommand(cmd, "Adresat nie jest połączony");
+            return;
+        }
+
+        appendHistory(senderNick, addresseeNick, cmd.getMessage());
+        int senderId = sender.getSessionId();
+
+        if(addressee.supportsSessionIds() && senderId != 0) {
+            addressee.sendResponse(new Response(Response.ResponseType.SESSION_MESSAGE, null, cmd.getMessage(), null,
+                    new int[] {senderId}));
+        } else {
+            addressee.sendResponse(new Response(Response.ResponseType.MESSAGE, addresseeNick, cmd.getMessage(), senderNick));
+        }
+
+        acknowledge(cmd, sender, null);
+    }
+
+    /**
+     * Zleca zapis wiadomości konwersacji w historii, o ile historia jest zapisywana. Wiadomość zapisuje wątek części
+     * rejestru, do której należy konwersacja. Zapis zlecany jest przed dostarczeniem wiadomości, a strony historii
+     * odczytuje ten sam wątek, więc strona pobrana po otrzymaniu wiadomości zawiera ją.
+     *
+     * @param senderNick nick nadawcy
+     * @param addresseeNick nick adresata
+     * @param message treść wiadomości
+     */
+    private void appendHistory(String senderNick, String addresseeNick, String message) {
+        if(!historyEnabled) {
+            return;
+        }
+
+        RegistryShard shard = registry.shardForConversation(senderNick, addresseeNick);
+
+        shard.execute(() -> {
+            try {
+                shard.getHistoryStore().append(senderNick, addresseeNick, message);
+            } catch (IOException e) {
+                System.out.println("Błąd przy zapisie historii: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Zleca wysłanie klientowi strony historii konwersacji. Treść żądania zawiera kursor strony albo jest pusta dla
+     * najnowszych wiadomości. Jeśli historia nie jest zapisywana, klient otrzymuje pustą stronę. Stronę odczytuje
+     * wątek części rejestru, do której należy konwersacja.
+     *
+     * @param nick nick klienta przypisany do połączenia
+     * @param cmd żądanie klienta
+     * @param clientConnection połączenie serwerowe z klientem
+     */
+    void sendHistory(String nick, Command cmd, ClientConnection clientConnection) {
+        if(cmd.getAddresseeNick() == null) {
+            clientConnection.rejectCommand(cmd, "Nie podano rozmówcy");
+            return;
+        }
+
+        long cursor;
+
+        try {
+            String message = cmd.getMessage();
+            cursor = message == null || message.isEmpty() ? HistoryPage.NO_CURSOR : Long.parseLong(message);
+        } catch (NumberFormatException e) {
+            clientConnection.sendResponse(new Response(Response.ResponseType.ERROR, nick, "Niepoprawny kursor historii", null));
+            return;
+        }
+
+        if(!historyEnabled) {
+            HistoryPage page = new HistoryPage(cmd.getAddresseeNick(), Collections.emptyList(), HistoryPage.NO_CURSOR);
+            clientConnection.sendResponse(new Response(Response.ResponseType.HISTORY, nick, null, page));
+            return;
+        }
+
+        RegistryShard shard = registry.shardForConversation(nick, cmd.getAddresseeNick());
+        shard.execute(() -> sendHistoryPage(shard.getHistoryStore(), nick, cmd.getAddresseeNick(), cursor,
+                clientConnection));
+    }
+
+    /**
+     * Odczytuje stronę historii konwersacji i wysyła ją klientowi. Wykonywana przez wątek części rejestru, do której
+     * należy konwersacja.
+     *
+     * @param historyStore magazyn historii części rejestru
+     * @param nick nick klienta przypisany do połączenia
+     * @param interlocutorNick nick rozmówcy
+     * @param cursor kursor strony
+     * @param clientConnection połączenie serwerowe z klientem
+     */
+    private void sendHistoryPage(ConversationHistoryStore historyStore, String nick, String interlocutorNick,
+                                 long cursor, ClientConnection clientConnection) {
+        try {
+            HistoryPage page = historyStore.readPage(nick, interlocutorNick, cursor, settings.getHistoryPageSize());
+            clientConnection.sendResponse(new Response(Response.ResponseType.HISTORY, nick, null, page));
+        } catch (IOException e) {
+            System.out.println("Błąd przy odczycie historii: " + e.getMessage());
+            clientConnection.sendResponse(new Response(Response.ResponseType.ERROR, nick, "Nie można odczytać historii konwersacji", null));
         }
     }
 
@@ -181,9 +1289,47 @@ public class ChatServer extends Thread {
      * @param cmd żądanie klienta
      */
     public void sendEndingMessage(Command cmd) {
-        if(nicksToClientConnections.containsKey(cmd.getAddresseeNick())) {
-            Response response = new Response(Response.ResponseType.END_CONVERSATION, cmd.getAddresseeNick(), cmd.getMessage(), cmd.getClientNick());
-            nicksToClientConnections.get(cmd.getAddresseeNick()).sendResponse(response);
+        sendEndingMessage(cmd, cmd.getClientNick(), true);
+    }
+
+    /**
+     * Wyślij kończącą odpowiedź od podłączonego klienta tak jak {@link #sendEndingMessage(Command)}. Nadawcą
+     * odpowiedzi jest użytkownik przypisany do połączenia, a nie nick podany w żądaniu. Żądanie bez adresata zostaje
+     * odrzucone.
+     *
+     * @param cmd żądanie klienta
+     * @param sender połączenie serwerowe z nadawcą
+     */
+    void sendEndingMessage(Command cmd, ClientConnection sender) {
+        if(cmd.getAddresseeNick() == null) {
+            sender.rejectCommand(cmd, "Nie podano adresata");
+            return;
         }
+
+        sendEndingMessage(cmd, sender.getClientNick(), true);
+    }
+
+    /**
+     * Wysyła kończącą odpowiedź serwera do użytkownika tego serwera albo przekazuje ją węzłowi klastra adresata.
+     * Odpowiedź wysyła wątek części rejestru adresata, więc nie wyprzedzi wcześniejszych wiadomości.
+     *
+     * @param cmd żądanie klienta
+     * @param senderNick nick nadawcy
+     * @param forward flaga czy żądanie do użytkownika innego węzła może zostać przekazane temu węzłowi
+     */
+    private void sendEndingMessage(Command cmd, String senderNick, boolean forward) {
+        RegistryShard shard = registry.shardFor(cmd.getAddresseeNick());
+
+        shard.execute(() -> {
+            ClientConnection addressee = shard.getConnection(cmd.getAddresseeNick());
+
+            if(addressee == null && forward && clusterNode != null) {
+                clusterNode.forward(new Command(cmd.getCommandType(), senderNick, cmd.getAddresseeNick(),
+                        cmd.getMessage()));
+            } else if(addressee != null) {
+                Response response = new Response(Response.ResponseType.END_CONVERSATION, cmd.getAddresseeNick(), cmd.getMessage(), senderNick);
+                addressee.sendResponse(response);
+            }
+        });
     }
 }
@@ -0,0 +1,207 @@
+package pl.edu.pw.s251957.server.chat;
+
+import java.util.List;
+import java.util.Map;
+
+/** Interfejs zarządzania serwerem komunikatora przez JMX. Udostępnia metryki pracy serwera - liczbę połączonych
+ * użytkowników, przyjęte połączenia, żądania według typu, przesłane bajty, głębokości kolejek wychodzących oraz
+ * rozkłady czasu kodowania i opóźnienia dostarczenia odpowiedzi. Częstotliwości podawane są na sekundę na podstawie
+ * ostatniej sekundowej próbki, a czasy w mikrosekundach.
+ *
+ * @see ChatServerMonitor
+ */
+public interface ChatServerMXBean {
+    /**
+     * Zwraca liczbę połączonych użytkowników.
+     *
+     * @return liczba użytkowników
+     */
+    int getConnectedUsers();
+
+    /**
+     * Zwraca liczbę istniejących pokojów rozmów grupowych.
+     *
+     * @return liczba pokojów
+     */
+    int getRooms();
+
+    /**
+     * Zwraca identyfikatory węzłów klastra połączonych z serwerem.
+     *
+     * @return identyfikatory węzłów, pusta lista dla samodzielnego serwera
+     */
+    List<String> getClusterNodes();
+
+    /**
+     * Zwraca liczbę użytkowników podłączonych do pozostałych węzłów klastra.
+     *
+     * @return liczba użytkowników innych węzłów
+     */
+    int getRemoteUsers();
+
+    /**
+     * Zwraca liczbę przyjętych połączeń od uruchomienia serwera.
+     *
+     * @return liczba połączeń
+     */
+    long getAcceptedConnections();
+
+    /**
+     * Zwraca liczbę przyjętych połączeń na sekundę.
+     *
+     * @return liczba połączeń na sekundę
+     */
+    double getAcceptRate();
+
+    /**
+     * Zwraca liczbę połączeń zamkniętych z powodu braku odpowiedzi klienta.
+     *
+     * @return liczba połączeń
+     */
+    long getReapedConnections();
+
+    /**
+     * Zwraca liczbę żądań odrzuconych z powodu przekroczenia limitu.
+     *
+     * @return liczba żądań
+     */
+    long getRateLimitedCommands();
+
+    /**
+     * Zwraca liczbę połączeń zamkniętych z powodu zalewania serwera żądaniami.
+     *
+     * @return liczba połączeń
+     */
+    long getFloodDisconnects();
+
+    /**
+     * Zwraca liczby żądań klientów według typu.
+     *
+     * @return liczby żądań według nazwy typu
+     */
+    Map<String, Long> getCommandCounts();
+
+    /**
+     * Zwraca liczby żądań klientów na sekundę według typu.
+     *
+     * @return liczby żądań na sekundę według nazwy typu
+     */
+    Map<String, Double> getCommandRates();
+
+    /**
+     * Zwraca liczbę odebranych bajtów.
+     *
+     * @return liczba bajtów
+     */
+    long getBytesIn();
+
+    /**
+     * Zwraca liczbę odebranych bajtów na sekundę.
+     *
+     * @return liczba bajtów na sekundę
+     */
+    double getBytesInRate();
+
+    /**
+     * Zwraca liczbę wysłanych bajtów.
+     *
+     * @return liczba bajtów
+     */
+    long getBytesOut();
+
+    /**
+     * Zwraca liczbę wysłanych bajtów na sekundę.
+     *
+     * @return liczba bajtów na sekundę
+     */
+    double getBytesOutRate();
+
+    /**
+     * Zwraca łączną liczbę odpowiedzi oczekujących w kolejkach wychodzących.
+     *
+     * @return łączna głębokość kolejek
+     */
+    long getTotalOutboundQueueDepth();
+
+    /**
+     * Zwraca największą głębokość kolejki wychodzącej połączenia.
+     *
+     * @return największa głębokość kolejki
+     */
+    int getMaxOutboundQueueDepth();
+
+    /**
+     * Zwraca głębokości najdłuższych niepustych kolejek wychodzących.
+     *
+     * @return głębokości kolejek według nicku użytkownika
+     */
+    Map<String, Integer> getDeepestOutboundQueues();
+
+    /**
+     * Zwraca rozkład czasu kodowania odpowiedzi - liczbę pomiarów oraz średnią, percentyle i maksimum
+     * w mikrosekundach.
+     *
+     * @return rozkład czasu kodowania
+     */
+    Map<String, Double> getEncodeTimeMicros();
+
+    /**
+     * Zwraca rozkład opóźnienia od utworzenia odpowiedzi do przekazania jej warstwie transportowej - liczbę pomiarów
+     * oraz średnią, percentyle i maksimum w mikrosekundach.
+     *
+     * @return rozkład opóźnienia dostarczenia
+     */
+    Map<String, Double> getDeliveryLatencyMicros();
+
+    /**
+     * Zwraca liczbę bajtów odpowiedzi przekazanych do kompresji.
+     *
+     * @return liczba bajtów przed kompresją
+     */
+    long getCompressionOriginalBytes();
+
+    /**
+     * Zwraca liczbę bajtów odpowiedzi wysłanych po próbie kompresji.
+     *
+     * @return liczba bajtów po kompresji
+     */
+    long getCompressionCompressedBytes();
+
+    /**
+     * Zwraca stosunek długości odpowiedzi po kompresji do długości przed kompresją.
+     *
+     * @return stopień kompresji
+     */
+    double getCompressionRatio();
+
+    /**
+     * Zwraca rozkład czasu kompresji odpowiedzi - liczbę pomiarów oraz średnią, percentyle i maksimum
+     * w mikrosekundach.
+     *
+     * @return rozkład czasu kompresji
+     */
+    Map<String, Double> getCompressTimeMicros();
+
+    /**
+     * Zwraca rozkład czasu rozpakowania żądań - liczbę pomiarów oraz średnią, percentyle i maksimum
+     * w mikrosekundach.
+     *
+     * @return rozkład czasu rozpakowania
+     */
+    Map<String, Double> getDecompressTimeMicros();
+
+    /**
+     * Zwraca liczbę zakończonych uzgodnień TLS.
+     *
+     * @return liczba uzgodnień
+     */
+    long getTlsHandshakes();
+
+    /**
+     * Zwraca rozkład czasu uzgodnień TLS - liczbę pomiarów oraz średnią, percentyle i maksimum w mikrosekundach.
+     * Wznowione sesje uzgadniane są znacznie szybciej niż pełne uzgodnienia.
+     *
+     * @return rozkład czasu uzgodnień
+     */
+    Map<String, Double> getTlsHandshakeTimeMicros();
+}
@@ -0,0 +1,350 @@
+package pl.edu.pw.s251957.server.chat;
+
+import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.server.cluster.ClusterNode;
+import pl.edu.pw.s251957.server.metrics.LatencyHistogram;
+import pl.edu.pw.s251957.server.metrics.ServerMetrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/** Monitor serwera komunikatora udostępniający jego metryki przez JMX oraz w postaci raportu tekstowego dla konsoli
+ * administratora. Liczniki i histogramy pochodzą z {@link ServerMetrics}, a głębokości kolejek wychodzących
+ * odczytywane są z połączeń w chwili zapytania. Implementuje interfejs {@link ChatServerMXBean}.
+ *
+ * @see ChatServer
+ * @see ServerMetrics
+ */
+class ChatServerMonitor implements ChatServerMXBean {
+    /** Domena nazw obiektów JMX serwera */
+    private static final String JMX_DOMAIN = "pl.edu.pw.s251957";
+    /** Liczba najdłuższych kolejek wychodzących podawanych w metrykach */
+    private static final int DEEPEST_QUEUES = 10;
+    /** Liczba nanosekund w mikrosekundzie */
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    /** Monitorowany serwer */
+    private final ChatServer chatServer;
+    /** Metryki serwera */
+    private final ServerMetrics metrics;
+
+    /** Nazwa obiektu zarejestrowanego w JMX lub {@code null}, jeśli monitor nie jest zarejestrowany */
+    private ObjectName objectName;
+
+    /**
+     * Tworzy monitor podanego serwera.
+     *
+     * @param chatServer monitorowany serwer
+     * @param metrics metryki serwera
+     */
+    ChatServerMonitor(ChatServer chatServer, ServerMetrics metrics) {
+        this.chatServer = chatServer;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Rejestruje monitor w serwerze JMX platformy pod nazwą zawierającą port serwera. Błąd rejestracji nie
+     * wstrzymuje pracy serwera.
+     *
+     * @param port numer portu serwera
+     */
+    synchronized void register(int port) {
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=ChatServer,port=" + port);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            System.out.println("Nie można zarejestrować metryk serwera w JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Wyrejestrowuje monitor z serwera JMX platformy.
+     */
+    synchronized void unregister() {
+        if(objectName == null) {
+            return;
+        }
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            mBeanServer.unregisterMBean(objectName);
+        } catch (JMException e) {
+            System.out.println("Nie można wyrejestrować metryk serwera z JMX: " + e.getMessage());
+        }
+
+        objectName = null;
+    }
+
+    @Override
+    public int getConnectedUsers() {
+        return chatServer.getConnectedUsers();
+    }
+
+    @Override
+    public int getRooms() {
+        return chatServer.getChatRooms().getRoomCount();
+    }
+
+    @Override
+    public List<String> getClusterNodes() {
+        ClusterNode clusterNode = chatServer.getClusterNode();
+        return clusterNode == null ? Collections.emptyList() : clusterNode.getConnectedNodes();
+    }
+
+    @Override
+    public int getRemoteUsers() {
+        ClusterNode clusterNode = chatServer.getClusterNode();
+        return clusterNode == null ? 0 : clusterNode.getRemoteUsers().size();
+    }
+
+    @Override
+    public long getAcceptedConnections() {
+        return metrics.getAcceptedConnections();
+    }
+
+    @Override
+    public double getAcceptRate() {
+        return metrics.getAcceptRate();
+    }
+
+    @Override
+    public long getReapedConnections() {
+        return metrics.getReapedConnections();
+    }
+
+    @Override
+    public long getRateLimitedCommands() {
+        return metrics.getRateLimitedCommands();
+    }
+
+    @Override
+    public long getFloodDisconnects() {
+        return metrics.getFloodDisconnects();
+    }
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+
+        for (Map.Entry<Command.CommandType, Long> entry : metrics.getCommandCounts().entrySet()) {
+            counts.put(entry.getKey().name(), entry.getValue());
+        }
+
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getCommandRates() {
+        Map<String, Double> rates = new LinkedHashMap<>();
+
+        for (Map.Entry<Command.CommandType, Double> entry : metrics.getCommandRates().entrySet()) {
+            rates.put(entry.getKey().name(), entry.getValue());
+        }
+
+        return rates;
+    }
+
+    @Override
+    public long getBytesIn() {
+        return metrics.getBytesIn();
+    }
+
+    @Override
+    public double getBytesInRate() {
+        return metrics.getBytesInRate();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return metrics.getBytesOut();
+    }
+
+    @Override
+    public double getBytesOutRate() {
+        return metrics.getBytesOutRate();
+    }
+
+    @Override
+    public long getTotalOutboundQueueDepth() {
+        long total = 0;
+
+        for (int depth : chatServer.getOutboundQueueDepths().values()) {
+            total += depth;
+        }
+
+        return total;
+    }
+
+    @Override
+    public int getMaxOutboundQueueDepth() {
+        int max = 0;
+
+        for (int depth : chatServer.getOutboundQueueDepths().values()) {
+            max = Math.max(max, depth);
+        }
+
+        return max;
+    }
+
+    @Override
+    public Map<String, Integer> getDeepestOutboundQueues() {
+        List<Map.Entry<String, Integer>> queues = new ArrayList<>();
+
+        for (Map.Entry<String, Integer> entry : chatServer.getOutboundQueueDepths().entrySet()) {
+            if(entry.getValue() > 0) {
+                queues.add(entry);
+            }
+        }
+
+        queues.sort((first, second) -> Integer.compare(second.getValue(), first.getValue()));
+
+        Map<String, Integer> deepest = new LinkedHashMap<>();
+
+        for (int i = 0; i < queues.size() && i < DEEPEST_QUEUES; i++) {
+            deepest.put(queues.get(i).getKey(), queues.get(i).getValue());
+        }
+
+        return deepest;
+    }
+
+    @Override
+    public Map<String, Double> getEncodeTimeMicros() {
+        return summarize(metrics.getEncodeTimes());
+    }
+
+    @Override
+    public Map<String, Double> getDeliveryLatencyMicros() {
+        return summarize(metrics.getDeliveryLatencies());
+    }
+
+    @Override
+    public long getCompressionOriginalBytes() {
+        return metrics.getCompressionOriginalBytes();
+    }
+
+    @Override
+    public long getCompressionCompressedBytes() {
+        return metrics.getCompressionCompressedBytes();
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        return metrics.getCompressionRatio();
+    }
+
+    @Override
+    public Map<String, Double> getCompressTimeMicros() {
+        return summarize(metrics.getCompressTimes());
+    }
+
+    @Override
+    public Map<String, Double> getDecompressTimeMicros() {
+        return summarize(metrics.getDecompressTimes());
+    }
+
+    @Override
+    public long getTlsHandshakes() {
+        return metrics.getTlsHandshakes();
+    }
+
+    @Override
+    public Map<String, Double> getTlsHandshakeTimeMicros() {
+        return summarize(metrics.getTlsHandshakeTimes());
+    }
+
+    /**
+     * Tworzy tekstowy raport metryk serwera dla konsoli administratora.
+     *
+     * @return raport metryk
+     */
+    String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "Połączeni użytkownicy: %d, pokoje: %d%n", getConnectedUsers(),
+                getRooms()));
+
+        if(chatServer.getClusterNode() != null) {
+            report.append(String.format(Locale.ROOT, "Węzeł klastra %s, połączone węzły: %s, użytkownicy innych węzłów: %d%n",
+                    chatServer.getClusterNode().getNodeId(), getClusterNodes(), getRemoteUsers()));
+        }
+
+        report.append(String.format(Locale.ROOT, "Przyjęte połączenia: %d (%.1f/s)%n", getAcceptedConnections(),
+                getAcceptRate()));
+        report.append(String.format(Locale.ROOT, "Połączenia zamknięte z powodu braku odpowiedzi: %d%n",
+                getReapedConnections()));
+        report.append(String.format(Locale.ROOT, "Żądania ponad limit: %d, połączenia zamknięte za zalewanie: %d%n",
+                getRateLimitedCommands(), getFloodDisconnects()));
+        report.append(String.format(Locale.ROOT, "Bajty odebrane: %d (%.1f/s), wysłane: %d (%.1f/s)%n",
+                getBytesIn(), getBytesInRate(), getBytesOut(), getBytesOutRate()));
+        report.append("Żądania według typu:").append(System.lineSeparator());
+
+        Map<String, Double> commandRates = getCommandRates();
+
+        for (Map.Entry<String, Long> entry : getCommandCounts().entrySet()) {
+            report.append(String.format(Locale.ROOT, "  %-20s %d (%.1f/s)%n", entry.getKey(), entry.getValue(),
+                    commandRates.get(entry.getKey())));
+        }
+
+        report.append(String.format(Locale.ROOT, "Kolejki wychodzące: łącznie %d, najdłuższa %d%n",
+                getTotalOutboundQueueDepth(), getMaxOutboundQueueDepth()));
+
+        for (Map.Entry<String, Integer> entry : getDeepestOutboundQueues().entrySet()) {
+            report.append(String.format(Locale.ROOT, "  %s: %d%n", entry.getKey(), entry.getValue()));
+        }
+
+        appendHistogram(report, "Czas kodowania odpowiedzi", getEncodeTimeMicros());
+        appendHistogram(report, "Opóźnienie dostarczenia", getDeliveryLatencyMicros());
+        report.append(String.format(Locale.ROOT, "Kompresja: %d B -> %d B (%.1f%%)%n", getCompressionOriginalBytes(),
+                getCompressionCompressedBytes(), getCompressionRatio() * 100));
+        appendHistogram(report, "Czas kompresji", getCompressTimeMicros());
+        appendHistogram(report, "Czas rozpakowania", getDecompressTimeMicros());
+
+        if(chatServer.isTlsEnabled()) {
+            report.append(String.format(Locale.ROOT, "Uzgodnienia TLS: %d%n", getTlsHandshakes()));
+            appendHistogram(report, "Czas uzgodnienia TLS", getTlsHandshakeTimeMicros());
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * Dopisuje do raportu rozkład czasu.
+     *
+     * @param report budowany raport
+     * @param title nazwa rozkładu
+     * @param summary rozkład czasu w mikrosekundach
+     */
+    private static void appendHistogram(StringBuilder report, String title, Map<String, Double> summary) {
+        report.append(String.format(Locale.ROOT,
+                "%s [us]: n=%.0f, średnia=%.1f, p50=%.1f, p99=%.1f, p99.9=%.1f, max=%.1f%n", title,
+                summary.get("count"), summary.get("mean"), summary.get("p50"), summary.get("p99"),
+                summary.get("p99.9"), summary.get("max")));
+    }
+
+    /**
+     * Podsumowuje histogram - liczbę pomiarów oraz średnią, percentyle i maksimum w mikrosekundach.
+     *
+     * @param histogram histogram czasów w nanosekundach
+     * @return podsumowanie histogramu
+     */
+    private static Map<String, Double> summarize(LatencyHistogram histogram) {
+        Map<String, Double> summary = new LinkedHashMap<>();
+        summary.put("count", (double) histogram.getCount());
+        summary.put("mean", histogram.getMean() / NANOS_PER_MICRO);
+        summary.put("p50", histogram.getPercentile(50) / NANOS_PER_MICRO);
+        summary.put("p99", histogram.getPercentile(99) / NANOS_PER_MICRO);
+        summary.put("p99.9", histogram.getPercentile(99.9) / NANOS_PER_MICRO);
+        summary.put("max", histogram.getMax() / NANOS_PER_MICRO);
+
+        return summary;
+    }
+}
@@ -1,124 +1,544 @@
 package pl.edu.pw.s251957.server.chat;
 
+import pl.edu.pw.s251957.common.BinaryCodec;
 import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.CompressingCodec;
+import pl.edu.pw.s251957.common.MessageCodec;
+import pl.edu.pw.s251957.common.MessageFrames;
+import pl.edu.pw.s251957.common.ProtocolHandshake;
 import pl.edu.pw.s251957.common.Response;
+import pl.edu.pw.s251957.common.SerializationCodec;
+import pl.edu.pw.s251957.server.metrics.ServerMetrics;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
-/** Klasa serwera odpowiadająca za połączenie z konkretnym klientem. Rozszerza klasę {@link Thread}.
+/** Klasa serwera odpowiadająca za połączenie z konkretnym klientem. Obsługuje żądania klienta niezależnie od
+ * sposobu przesyłania danych, który zapewnia warstwa transportowa {@link ConnectionTransport}. Na podstawie pierwszej
+ * odebranej ramki wybiera koder komunikatów - binarny dla klientów wysyłających powitanie
+ * {@link ProtocolHandshake} albo serializację Javy dla starszych klientów. Klient, który w żądaniu połączenia
+ * zaproponował kompresję, otrzymuje dłuższe odpowiedzi skompresowane koderem {@link CompressingCodec}. Połączenie, od
+ * którego przez dłuższy czas nie nadeszła żadna ramka, zostaje sprawdzone komunikatem
+ * {@link Response.ResponseType#PING}, a jeśli klient nadal milczy - zamknięte przez zegar {@link HashedWheelTimer}.
+ * Obsługiwane żądania zależą od stanu połączenia {@link ConnectionState}, np. przed żądaniem połączenia z nickiem
+ * klient nie może wysyłać wiadomości. Żądania wybranych typów ograniczane są wiadrami żetonów {@link TokenBucket} -
+ * żądanie ponad limit zostaje odrzucone odpowiedzią z błędem, a połączenie, którego żądania są odrzucane zbyt często,
+ * zostaje zamknięte.
  *
  * @author Cezary Sanecki
  * @version 1.0
- * @see ObjectOutputStream
- * @see ObjectInputStream
+ * @see ConnectionTransport
+ * @see ProtocolHandshake
+ * @see BinaryCodec
+ * @see SerializationCodec
  * @see ChatServer
+ * @see HashedWheelTimer
+ * @see ConnectionState
+ * @see RateLimit
  * @since 01.11.2019r.
  */
-public class ClientConnection extends Thread {
-    /** Gniazdo połączenia z klientem */
-    private Socket socket;
-    /** Strumień wyjściowy połączenia z klientem */
-    private ObjectOutputStream objectOutputStream;
-    /** Strumień wejściowy połączenia z klientem */
-    private ObjectInputStream objectInputStream;
+public class ClientConnection {
+    /** Warstwa transportowa połączenia z klientem */
+    private final ConnectionTransport transport;
+    /** Wspólny, bezstanowy koder protokołu binarnego */
+    private static final BinaryCodec BINARY_CODEC = new BinaryCodec();
+
+    /** Koder komunikatów połączenia z klientem, ustalany na podstawie pierwszej ramki */
+    private volatile MessageCodec codec;
+    /** Uzgodniona wersja protokołu */
+    private volatile int protocolVersion;
+    /** Kolejka odpowiedzi oczekujących na wysłanie do klienta */
+    private final OutboundQueue outboundQueue;
+    /** Sposób postępowania z odpowiedzią, która nie mieści się w kolejce wychodzącej */
+    private final OverflowPolicy overflowPolicy;
 
     /** Nick obsługiwanego klienta */
     private String clientNick;
+    /** Numer sesji nadany klientowi przez część rejestru lub 0 przed jego dodaniem */
+    private volatile int sessionId;
     /** Główna, zarządzająca część serwera */
     private ChatServer chatServer;
+    /** Metryki serwera */
+    private final ServerMetrics metrics;
+    /** Nazwy pokojów, do których należy klient */
+    private final Set<String> rooms;
+    /** Chwila odebrania ostatniej ramki według {@link System#nanoTime()} */
+    private volatile long lastReadTime;
+    /** Zaplanowane sprawdzenie połączenia lub {@code null}, jeśli sprawdzanie jest wyłączone */
+    private volatile HashedWheelTimer.Timeout heartbeat;
+    /** Stan połączenia */
+    private final AtomicReference<ConnectionState> state;
+    /** Wiadra żetonów według typu żądania, typy bez limitu nie mają wpisu */
+    private final Map<Command.CommandType, TokenBucket> rateLimits;
+    /** Wiadro żetonów odrzuconych żądań lub {@code null}, jeśli połączenie nie jest zamykane za zalewanie */
+    private final TokenBucket floodLimit;
+    /** Chwila według {@link System#nanoTime()}, przed którą wiadomości z numerem są odrzucane do ponowienia */
+    private long retryDeadline;
 
     /**
      * Inicjalizuje nowy obiekt klasy {@link ClientConnection} serwera odpowiadający za połączenie z konkretnym
-     * klientem. Przyjmuje jako argument obiekt odpowiedzialny za zarządzenie serwerem {@code chatServer} oraz gniazdo
-     * połączenia z konkretnym klientem.
+     * klientem. Przyjmuje jako argument obiekt odpowiedzialny za zarządzenie serwerem {@code chatServer} oraz warstwę
+     * transportową połączenia z konkretnym klientem.
+     *
+     * @param chatServer główna, zarządzająca część serwera
+     * @param transport warstwa transportowa połączenia z konkretnym klientem
+     */
+    public ClientConnection(ChatServer chatServer, ConnectionTransport transport) {
+        this(chatServer, transport, System.nanoTime());
+    }
+
+    /**
+     * Inicjalizuje nowy obiekt klasy {@link ClientConnection} utworzony w podanej chwili, od której liczony jest czas
+     * bezczynności połączenia i uzupełniane są limity żądań.
      *
      * @param chatServer główna, zarządzająca część serwera
-     * @param socket gniazdo połączenia z konkretnym klientem
+     * @param transport warstwa transportowa połączenia z konkretnym klientem
+     * @param now obecna chwila według {@link System#nanoTime()}
      */
-    public ClientConnection(ChatServer chatServer, Socket socket) {
+    ClientConnection(ChatServer chatServer, ConnectionTransport transport, long now) {
         this.chatServer = chatServer;
-        this.socket = socket;
-        openStreams();
+        this.transport = transport;
+        this.metrics = chatServer.getMetrics();
+        this.rooms = ConcurrentHashMap.newKeySet();
+        this.state = new AtomicReference<>(ConnectionState.AWAITING_HELLO);
+        this.outboundQueue = new OutboundQueue(this, transport, chatServer.getOutboundExecutor(),
+                chatServer.getSettings().getOutboundQueueCapacity(), metrics);
+        this.overflowPolicy = chatServer.getSettings().getOverflowPolicy();
+        this.lastReadTime = now;
+        this.rateLimits = createRateLimits(chatServer.getSettings(), lastReadTime);
+        RateLimit flood = chatServer.getSettings().getFloodLimit();
+        this.floodLimit = flood == null ? null : new TokenBucket(flood, lastReadTime);
+        this.retryDeadline = lastReadTime;
+        scheduleHeartbeat(TimeUnit.MILLISECONDS.toNanos(chatServer.getSettings().getHeartbeatInterval()));
+    }
+
+    /**
+     * Tworzy pełne wiadra żetonów dla typów żądań ograniczonych w ustawieniach serwera.
+     *
+     * @param settings ustawienia serwera
+     * @param now obecna chwila według {@link System#nanoTime()}
+     * @return wiadra żetonów według typu żądania
+     */
+    private static Map<Command.CommandType, TokenBucket> createRateLimits(ServerSettings settings, long now) {
+        Map<Command.CommandType, TokenBucket> buckets = new EnumMap<>(Command.CommandType.class);
+
+        for (Command.CommandType commandType : Command.CommandType.values()) {
+            RateLimit limit = settings.getRateLimit(commandType);
+
+            if(limit != null) {
+                buckets.put(commandType, new TokenBucket(limit, now));
+            }
+        }
+
+        return buckets;
     }
 
     /**
-     * Otwiera wszystkie strumienie połączenia z konkretnym klientem
+     * Dekoduje żądanie klienta z odebranej ramki i przekazuje je do obsłużenia. Ramki odebrane po rozpoczęciu
+     * zamykania połączenia są pomijane. Wywoływana przez warstwę transportową na wątku odczytującym dane połączenia.
+     *
+     * @param payload treść odebranej ramki
      */
-    private void openStreams() {
+    void handleFrame(byte[] payload) {
+        lastReadTime = System.nanoTime();
+        metrics.recordBytesIn(MessageFrames.HEADER_LENGTH + payload.length);
+
+        if(state.get().compareTo(ConnectionState.CLOSING) >= 0) {
+            return;
+        }
+
         try {
-            objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
-            objectInputStream = new ObjectInputStream(socket.getInputStream());
+            if(codec == null && negotiateProtocol(payload)) {
+                return;
+            }
+
+            Command cmd = codec.decodeCommand(payload);
+            handleCommand(cmd);
         } catch (IOException e) {
-            System.out.println("Błąd otwierania strumieni");
+            System.out.println("Błąd przy odczytywaniu polecenia od klienta: " + e.getMessage());
+            closeConnection();
+        }
+    }
+
+    /**
+     * Wybiera koder komunikatów na podstawie pierwszej ramki od klienta. Jeśli ramka jest powitaniem, odsyła klientowi
+     * uzgodnioną wersję protokołu binarnego.
+     *
+     * @param payload treść pierwszej ramki
+     * @return flaga czy ramka była powitaniem i została już obsłużona
+     * @throws IOException błąd wysyłania powitania
+     */
+    private boolean negotiateProtocol(byte[] payload) throws IOException {
+        int clientVersion = ProtocolHandshake.readHello(payload);
+
+        if(clientVersion == ProtocolHandshake.LEGACY_VERSION) {
+            useSerialization(false);
+            return false;
+        }
+
+        protocolVersion = Math.min(clientVersion, ProtocolHandshake.CURRENT_VERSION);
+        codec = protocolVersion >= ProtocolHandshake.COMPRESSION_VERSION ? chatServer.getFramedCodec() : BINARY_CODEC;
+        advanceState(ConnectionState.AWAITING_NICK);
+        byte[] hello = ProtocolHandshake.hello(protocolVersion);
+        transport.send(hello);
+        metrics.recordBytesOut(MessageFrames.HEADER_LENGTH + hello.length);
+
+        return true;
+    }
+
+    /**
+     * Przełącza połączenie na serializację Javy bez ramek, używaną przez klientów sprzed wprowadzenia protokołu
+     * binarnego. Wywoływana przez warstwę transportową, która wysłała już nagłówek strumienia obiektowego serwera.
+     */
+    void useStreamSerialization() {
+        useSerialization(true);
+    }
+
+    /**
+     * Ustawia koder serializacji Javy i oczekuje na żądanie połączenia z nickiem.
+     *
+     * @param streamHeaderSent flaga czy nagłówek strumienia obiektowego został już wysłany
+     */
+    private void useSerialization(boolean streamHeaderSent) {
+        protocolVersion = ProtocolHandshake.LEGACY_VERSION;
+        ServerSettings settings = chatServer.getSettings();
+        codec = new SerializationCodec(settings.getSerializationResetMessages(), settings.getSerializationResetBytes(),
+                streamHeaderSent);
+        advanceState(ConnectionState.AWAITING_NICK);
+    }
+
+    /**
+     * Obsługuje obiekt odczytany ze strumienia obiektowego klienta używającego serializacji bez ramek. Obiekty
+     * odebrane po rozpoczęciu zamykania połączenia są pomijane. Wywoływana przez warstwę transportową na wątku
+     * odczytującym dane połączenia.
+     *
+     * @param object odczytany obiekt
+     */
+    void handleObject(Object object) {
+        lastReadTime = System.nanoTime();
+
+        if(state.get().compareTo(ConnectionState.CLOSING) >= 0) {
+            return;
+        }
+
+        if(!(object instanceof Command)) {
+            System.out.println("Błąd przy odczytywaniu polecenia od klienta: niepoprawny komunikat");
+            closeConnection();
+            return;
+        }
+
+        handleCommand((Command) object);
+    }
+
+    /**
+     * Informuje o zamknięciu połączenia przez warstwę transportową. Jeśli klient nie rozłączył się wcześniej, zostaje
+     * usunięty z obsługiwanych połączeń.
+     */
+    void connectionClosed() {
+        advanceState(ConnectionState.CLOSED);
+        cancelHeartbeat();
+        outboundQueue.discard();
+        unregisterClient();
+    }
+
+    /**
+     * Planuje kolejne sprawdzenie połączenia, jeśli serwer sprawdza bezczynne połączenia.
+     *
+     * @param delay czas do sprawdzenia w nanosekundach
+     */
+    private void scheduleHeartbeat(long delay) {
+        HashedWheelTimer timer = chatServer.getHeartbeatTimer();
+
+        if(timer != null && state.get() != ConnectionState.CLOSED) {
+            heartbeat = timer.newTimeout(() -> checkHeartbeat(System.nanoTime()), delay, TimeUnit.NANOSECONDS);
         }
     }
 
     /**
-     * Odpowiada za obieranie żądań od klienta dopóki gniazdo połączenia nie jest zamknięte. Metoda pochodząca z
-     * rozszerzanej klasy {@link Thread}
+     * Anuluje zaplanowane sprawdzenie połączenia.
      */
-    @Override
-    public void run() {
-        while (!socket.isClosed()) {
-            try {
-                Command cmd = (Command) objectInputStream.readObject();
-                handleCommand(cmd);
-            } catch (IOException e) {
-                closeConnection();
-            } catch (ClassNotFoundException e) {
-                System.out.println("Błąd przy odczytywaniu polecenia od klienta");
+    private void cancelHeartbeat() {
+        HashedWheelTimer.Timeout timeout = heartbeat;
+
+        if(timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Sprawdza połączenie na wątku zegara. Połączenie bez ramki od klienta dłużej niż odstęp sprawdzania otrzymuje
+     * {@link Response.ResponseType#PING}, a połączenie, które nie przysłało niczego także w czasie oczekiwania na
+     * odpowiedź, zostaje zamknięte. Dotyczy to również połączeń, które nie wysłały powitania. Starsi klienci nie
+     * potrafią odpowiedzieć, więc po uzgodnieniu starszej wersji protokołu sprawdzanie jest kończone.
+     *
+     * @param now obecna chwila według {@link System#nanoTime()}
+     */
+    void checkHeartbeat(long now) {
+        if(state.get() == ConnectionState.CLOSED) {
+            return;
+        }
+
+        ServerSettings settings = chatServer.getSettings();
+        long interval = TimeUnit.MILLISECONDS.toNanos(settings.getHeartbeatInterval());
+        long deadline = interval + TimeUnit.MILLISECONDS.toNanos(settings.getHeartbeatTimeout());
+        long idle = now - lastReadTime;
+
+        if(idle >= deadline) {
+            reap();
+        } else if(codec != null && !supportsHeartbeat()) {
+            heartbeat = null;
+        } else if(idle >= interval) {
+            if(codec != null) {
+                sendResponse(new Response(Response.ResponseType.PING, null, null, null));
             }
+
+            scheduleHeartbeat(deadline - idle);
+        } else {
+            scheduleHeartbeat(interval - idle);
         }
     }
 
+    /**
+     * Zamyka połączenie, które nie odpowiedziało na sprawdzenie. Zamknięcie przez warstwę transportową usuwa klienta
+     * z serwera tak samo jak zerwanie połączenia.
+     */
+    private void reap() {
+        System.out.println("Klient nie odpowiada - zamykanie połączenia");
+        metrics.recordReap();
+        outboundQueue.discard();
+        transport.abort();
+    }
+
     /**
      * Obsługa żądania klienta.
      *
      * @param cmd żądanie klienta
      */
     private void handleCommand(Command cmd) {
+        metrics.recordCommand(cmd.getCommandType());
+
+        if(!acceptsCommand(cmd.getCommandType())) {
+            String message = cmd.getCommandType() == Command.CommandType.CONNECT
+                    ? "Użytkownik jest już połączony" : "Użytkownik nie jest połączony";
+            rejectCommand(cmd, message);
+            return;
+        }
+
+        if(!checkRateLimit(cmd, lastReadTime)) {
+            return;
+        }
+
         switch (cmd.getCommandType()) {
             case CONNECT:
                 handleConnectionCommand(cmd);
                 break;
             case START_CONVERSATION:
             case SEND_MESSAGE:
-                chatServer.sendMessage(cmd);
+                chatServer.sendMessage(cmd, this);
+                break;
+            case SESSION_MESSAGE:
+                chatServer.sendSessionMessage(cmd, this);
                 break;
             case END_CONVERSATION:
-                chatServer.sendEndingMessage(cmd);
+                chatServer.sendEndingMessage(cmd, this);
                 break;
             case DISCONNECT:
                 stopConnection();
                 break;
+            case HISTORY:
+                handleHistoryCommand(cmd);
+                break;
+            case CREATE_ROOM:
+            case JOIN_ROOM:
+            case LEAVE_ROOM:
+            case SEND_ROOM_MESSAGE:
+                chatServer.getChatRooms().handleCommand(cmd, this);
+                break;
+            case PING:
+                sendResponse(new Response(Response.ResponseType.PONG, null, null, null));
+                break;
+            case PONG:
+                break;
         }
     }
 
     /**
-     * Obsługa żadania połączenia z serwerem.
+     * Sprawdza czy żądanie danego typu może zostać obsłużone w obecnym stanie połączenia. Żądanie połączenia
+     * przyjmowane jest tylko raz, a pozostałe żądania, z wyjątkiem rozłączenia i sprawdzania połączenia, dopiero po
+     * nim.
      *
-     * @param cmd żadanie klienta
+     * @param commandType typ żądania
+     * @return flaga czy żądanie może zostać obsłużone
      */
-    private void handleConnectionCommand(Command cmd) {
-        if(chatServer.checkNickIsUsed(cmd.getClientNick())) {
-            Response response = new Response(Response.ResponseType.REJECT_CONNECTION, cmd.getClientNick(), "Nick jest zajęty", null);
-            closeConnectionWithResponse(response);
+    private boolean acceptsCommand(Command.CommandType commandType) {
+        switch (commandType) {
+            case DISCONNECT:
+            case PING:
+            case PONG:
+                return true;
+            case CONNECT:
+                return state.get() == ConnectionState.AWAITING_NICK;
+            default:
+                return state.get() == ConnectionState.CONNECTED;
+        }
+    }
+
+    /**
+     * Pobiera żeton z wiadra żądań danego typu. Żądanie ponad limit zostaje odrzucone odpowiedzią z błędem, a jeśli
+     * przekroczony został także limit odrzuconych żądań, połączenie zostaje zamknięte. Odrzucenie wiadomości z
+     * numerem podaje odstęp między żetonami, po którym klient może wysłać ją ponownie. Do tego czasu odrzucane są też
+     * kolejne wiadomości z numerem, aby ponowiona wiadomość nie została wyprzedzona przez późniejsze.
+     *
+     * @param cmd żądanie klienta
+     * @param now chwila odebrania żądania według {@link System#nanoTime()}
+     * @return flaga czy żądanie może zostać obsłużone
+     */
+    boolean checkRateLimit(Command cmd, long now) {
+        TokenBucket bucket = rateLimits.get(cmd.getCommandType());
+
+        if(bucket == null) {
+            return true;
+        }
+
+        boolean retrying = cmd.getMessageId() != 0 && now - retryDeadline < 0;
+
+        if(!retrying && bucket.tryAcquire(now)) {
+            return true;
+        }
+
+        metrics.recordRateLimited();
+
+        if(floodLimit != null && !floodLimit.tryAcquire(now)) {
+            System.out.println("Klient zalewa serwer żądaniami - zamykanie połączenia");
+            metrics.recordFloodDisconnect();
+            closeConnectionWithResponse(new Response(Response.ResponseType.ERROR, null,
+                    "Połączenie zamknięte z powodu zbyt wielu żądań", null));
+        } else if(cmd.getMessageId() != 0) {
+            long retryAfter = bucket.getIntervalMillis();
+
+            if(!retrying) {
+                retryDeadline = now + TimeUnit.MILLISECONDS.toNanos(retryAfter);
+            }
+
+            rejectCommand(cmd, "Przekroczono limit żądań, spróbuj ponownie później", retryAfter);
+        } else {
+            rejectCommand(cmd, "Przekroczono limit żądań, spróbuj ponownie później");
+        }
+
+        return false;
+    }
+
+    /**
+     * Odrzuca żądanie klienta. Wiadomość z numerem zostaje odrzucona odpowiedzią
+     * {@link Response.ResponseType#NACK}, aby klient przestał oczekiwać na jej potwierdzenie, a pozostałe żądania
+     * odpowiedzią z błędem.
+     *
+     * @param cmd odrzucane żądanie
+     * @param reason powód odrzucenia
+     */
+    void rejectCommand(Command cmd, String reason) {
+        rejectCommand(cmd, reason, 0);
+    }
+
+    /**
+     * Odrzuca żądanie klienta tak jak {@link #rejectCommand(Command, String)}, pozwalając ponowić wiadomość z numerem
+     * po podanym czasie.
+     *
+     * @param cmd odrzucane żądanie
+     * @param reason powód odrzucenia
+     * @param retryAfter czas w milisekundach, po którym wiadomość można wysłać ponownie, lub 0
+     */
+    private void rejectCommand(Command cmd, String reason, long retryAfter) {
+        if(cmd.getMessageId() != 0) {
+            sendResponse(new Response(Response.ResponseType.NACK, cmd.getMessageId(), reason, retryAfter));
         } else {
-            welcomeNewUser(cmd.getClientNick());
+            sendResponse(new Response(Response.ResponseType.ERROR, getClientNick(), reason, null));
         }
     }
 
     /**
-     * Obsługuje dodawanie nowego użytkownika.
+     * Przenosi połączenie do podanego stanu, o ile nie jest ono już w tym lub późniejszym stanie.
+     *
+     * @param next nowy stan połączenia
+     * @return flaga czy stan został zmieniony
+     */
+    private boolean advanceState(ConnectionState next) {
+        ConnectionState previous = state.getAndUpdate(current -> current.compareTo(next) < 0 ? next : current);
+        return previous.compareTo(next) < 0;
+    }
+
+    /**
+     * Obsługa żadania połączenia z serwerem. Jeśli klient zaproponował kompresję, a serwer ma ją włączoną, kolejne
+     * odpowiedzi kodowane są koderem kompresującym. Nick zostaje przypisany do połączenia przed zleceniem jego zajęcia
+     * na serwerze, aby zerwanie połączenia w trakcie dodawania zawsze usunęło klienta. Żądanie bez nicku zamyka
+     * połączenie z odmową.
      *
-     * @param nick nick użytkownika
+     * @param cmd żadanie klienta
      */
-    private void welcomeNewUser(String nick) {
+    private void handleConnectionCommand(Command cmd) {
+        String nick = cmd.getClientNick();
+
+        if(nick == null || nick.trim().isEmpty()) {
+            closeConnectionWithResponse(new Response(Response.ResponseType.REJECT_CONNECTION, nick, "Nie podano nicku", null));
+            return;
+        }
+
+        if(!advanceState(ConnectionState.CONNECTED)) {
+            return;
+        }
+
+        if(CompressingCodec.DEFLATE.equals(cmd.getMessage()) && codec == chatServer.getFramedCodec()
+                && chatServer.getCompressingCodec() != null) {
+            codec = chatServer.getCompressingCodec();
+        }
+
         setClientNick(nick);
-        chatServer.addClient(clientNick, this);
+        chatServer.addClient(nick, this);
+    }
+
+    /**
+     * Zamyka połączenie, którego nick okazał się zajęty. Nick zostaje odebrany połączeniu, więc jego zamknięcie nie
+     * usunie użytkownika, który zajął nick wcześniej.
+     *
+     * @param nick zajęty nick
+     */
+    void rejectNick(String nick) {
+        takeClientNick();
+        Response response = new Response(Response.ResponseType.REJECT_CONNECTION, nick, "Nick jest zajęty", null);
+        closeConnectionWithResponse(response);
+    }
+
+    /**
+     * Obsługa żądania strony historii konwersacji. Historia udostępniana jest tylko dla nicku przypisanego do
+     * połączenia, niezależnie od nicku podanego w żądaniu.
+     *
+     * @param cmd żądanie klienta
+     */
+    private void handleHistoryCommand(Command cmd) {
+        String nick = getClientNick();
+
+        if(nick == null) {
+            sendResponse(new Response(Response.ResponseType.ERROR, null, "Użytkownik nie jest połączony", null));
+            return;
+        }
+
+        chatServer.sendHistory(nick, cmd, this);
+    }
+
+    /**
+     * Zwraca nick obsługiwanego klienta.
+     *
+     * @return nick klienta lub {@code null}, jeśli klient nie jest dodany
+     */
+    synchronized String getClientNick() {
+        return clientNick;
     }
 
     /**
@@ -126,29 +546,185 @@ public class ClientConnection extends Thread {
      *
      * @param clientNick nick użytkownika
      */
-    private void setClientNick(String clientNick) {
+    private synchronized void setClientNick(String clientNick) {
         this.clientNick = clientNick;
     }
 
+    /**
+     * Zwraca numer sesji nadany klientowi.
+     *
+     * @return numer sesji lub 0, jeśli klient nie został jeszcze dodany
+     */
+    int getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Ustawia numer sesji nadany klientowi przez część rejestru.
+     *
+     * @param sessionId numer sesji
+     */
+    void setSessionId(int sessionId) {
+        this.sessionId = sessionId;
+    }
+
     /**
      * Kończy połączenie z serwerem.
      */
     private void stopConnection() {
-        chatServer.removeClient(clientNick);
+        unregisterClient();
         closeConnection();
     }
 
     /**
-     * Wysyła odpowiedź do klienta.
+     * Usuwa klienta z obsługiwanych połączeń, jeśli został wcześniej dodany.
+     */
+    private void unregisterClient() {
+        chatServer.getChatRooms().leaveAllRooms(this);
+        String nick = takeClientNick();
+
+        if(nick != null) {
+            chatServer.removeClient(nick, this);
+        }
+    }
+
+    /**
+     * Zapamiętuje pokój, do którego dołączył klient.
+     *
+     * @param roomName nazwa pokoju
+     */
+    void joinedRoom(String roomName) {
+        rooms.add(roomName);
+    }
+
+    /**
+     * Zapomina pokój opuszczony przez klienta.
+     *
+     * @param roomName nazwa pokoju
+     */
+    void leftRoom(String roomName) {
+        rooms.remove(roomName);
+    }
+
+    /**
+     * Informuje czy klient należy do pokoju.
+     *
+     * @param roomName nazwa pokoju
+     * @return flaga czy klient należy do pokoju
+     */
+    boolean isInRoom(String roomName) {
+        return rooms.contains(roomName);
+    }
+
+    /**
+     * Zwraca nazwy pokojów, do których należy klient.
+     *
+     * @return kopia nazw pokojów
+     */
+    List<String> getRooms() {
+        return new ArrayList<>(rooms);
+    }
+
+    /**
+     * Zwraca nick obsługiwanego klienta i czyści go, aby klient został usunięty z serwera tylko raz.
+     *
+     * @return nick klienta lub {@code null}, jeśli klient nie był dodany
+     */
+    private synchronized String takeClientNick() {
+        String nick = clientNick;
+        clientNick = null;
+
+        return nick;
+    }
+
+    /**
+     * Zleca wysłanie odpowiedzi do klienta. Odpowiedź trafia do kolejki wychodzącej połączenia, więc wątek
+     * wywołujący nie czeka na zapis do gniazda. Jeśli kolejka jest pełna, odpowiedź zostaje porzucona albo
+     * połączenie zamknięte, zależnie od ustawień serwera.
      *
      * @param response odpowiedź serwera
      */
     public void sendResponse(Response response) {
-        try{
-            objectOutputStream.writeObject(response);
-        } catch (IOException e) {
-            System.out.println("Błąd przy wysyle komunikatu");
+        sendResponse(new OutboundResponse(response));
+    }
+
+    /**
+     * Zleca wysłanie odpowiedzi, która może być jednocześnie rozsyłana do innych klientów. Odpowiedź zakodowana
+     * współdzielonym koderem nie jest kodowana ponownie.
+     *
+     * @param response odpowiedź oczekująca na wysłanie
+     */
+    void sendResponse(OutboundResponse response) {
+        if(!outboundQueue.offer(response) && overflowPolicy == OverflowPolicy.DISCONNECT) {
+            System.out.println("Klient nie odbiera komunikatów - zamykanie połączenia");
+            outboundQueue.discard();
+            transport.abort();
+        }
+    }
+
+    /**
+     * Informuje czy klient obsługuje zmiany listy użytkowników ({@link Response.ResponseType#USER_JOINED},
+     * {@link Response.ResponseType#USER_LEFT}). Starsi klienci otrzymują zawsze pełną listę.
+     *
+     * @return flaga czy klient obsługuje zmiany listy użytkowników
+     */
+    boolean supportsPresenceDeltas() {
+        return protocolVersion >= ProtocolHandshake.PRESENCE_DELTAS_VERSION;
+    }
+
+    /**
+     * Informuje czy klient odpowiada na sprawdzenie połączenia {@link Response.ResponseType#PING}.
+     *
+     * @return flaga czy klient obsługuje sprawdzanie połączenia
+     */
+    boolean supportsHeartbeat() {
+        return protocolVersion >= ProtocolHandshake.HEARTBEAT_VERSION;
+    }
+
+    /**
+     * Informuje czy klient obsługuje numery sesji - otrzymuje je wraz z listą użytkowników i może nimi adresować
+     * wiadomości, a wiadomości od użytkowników tego serwera otrzymuje z numerem sesji nadawcy zamiast nicków.
+     *
+     * @return flaga czy klient obsługuje numery sesji
+     */
+    boolean supportsSessionIds() {
+        return protocolVersion >= ProtocolHandshake.SESSION_IDS_VERSION;
+    }
+
+    /**
+     * Zwraca przybliżoną liczbę obiektów zapamiętanych w tablicy uchwytów strumienia serializacji połączenia.
+     * Dla klientów protokołu binarnego zawsze zero.
+     *
+     * @return rozmiar tablicy uchwytów
+     */
+    int getHandleTableSize() {
+        MessageCodec currentCodec = codec;
+
+        if(currentCodec instanceof SerializationCodec) {
+            return ((SerializationCodec) currentCodec).getHandleTableSize();
         }
+
+        return 0;
+    }
+
+    /**
+     * Koduje odpowiedź do treści ramki przy pomocy uzgodnionego kodera. Wywoływana przez kolejkę wychodzącą.
+     *
+     * @param response odpowiedź oczekująca na wysłanie
+     * @return treść ramki
+     * @throws IOException błąd kodowania odpowiedzi
+     */
+    byte[] encodeResponse(OutboundResponse response) throws IOException {
+        return response.encode(codec, metrics);
+    }
+
+    /**
+     * Zwraca liczbę odpowiedzi oczekujących w kolejce wychodzącej połączenia.
+     *
+     * @return głębokość kolejki wychodzącej
+     */
+    int getOutboundQueueSize() {
+        return outboundQueue.size();
     }
 
     /**
@@ -162,17 +738,10 @@ public class ClientConnection extends Thread {
     }
 
     /**
-     * Zamyka połączenie z klientem zamykając przy tym gniazdo, strumienie oraz przerywając wątek.
+     * Zamyka połączenie z klientem po wysłaniu odpowiedzi oczekujących w kolejce wychodzącej.
      */
     private void closeConnection() {
-        try {
-            objectInputStream.close();
-            objectOutputStream.close();
-            socket.close();
-        } catch (IOException e) {
-            System.out.println("Błąd przy zamykaniu połączenia: " + e.getMessage());
-        }
-
-        interrupt();
+        advanceState(ConnectionState.CLOSING);
+        outboundQueue.closeAfterFlush();
     }
 }
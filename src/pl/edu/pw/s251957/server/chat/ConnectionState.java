@@ -0,0 +1,19 @@
+package pl.edu.pw.s251957.server.chat;
+
+/** Stan połączenia z klientem {@link ClientConnection}. Połączenie przechodzi przez stany tylko w kolejności
+ * deklaracji, choć może pominąć niektóre z nich, a od stanu zależy, które żądania klienta są obsługiwane.
+ *
+ * @see ClientConnection
+ */
+enum ConnectionState {
+    /** Oczekiwanie na pierwszą ramkę, z której wybierany jest koder komunikatów */
+    AWAITING_HELLO,
+    /** Oczekiwanie na żądanie połączenia z nickiem, obsługiwane są tylko żądania niewymagające nicku */
+    AWAITING_NICK,
+    /** Klient ma przypisany nick i może wysyłać wszystkie żądania */
+    CONNECTED,
+    /** Połączenie jest zamykane po wysłaniu oczekujących odpowiedzi, kolejne żądania są pomijane */
+    CLOSING,
+    /** Połączenie zostało zamknięte przez warstwę transportową */
+    CLOSED
+}
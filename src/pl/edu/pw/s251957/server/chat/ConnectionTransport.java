@@ -0,0 +1,53 @@
+package pl.edu.pw.s251957.server.chat;
+
+import java.io.IOException;
+import java.util.List;
+
+/** Interfejs przedstawiający warstwę transportową połączenia z klientem. Odpowiada za przesyłanie ramek z
+ * zakodowanymi odpowiedziami serwera, niezależnie od tego czy połączenie obsługiwane jest blokująco czy przez
+ * selektor.
+ *
+ * @see ClientConnection
+ * @see SocketTransport
+ * @see NioTransport
+ */
+public interface ConnectionTransport {
+    /**
+     * Wysyła ramkę z podaną treścią do klienta.
+     *
+     * @param payload treść ramki
+     * @throws IOException błąd wysyłania ramki
+     */
+    void send(byte[] payload) throws IOException;
+
+    /**
+     * Wysyła do klienta kilka ramek naraz, opróżniając strumień tylko raz po ostatniej z nich.
+     *
+     * @param payloads treści ramek
+     * @throws IOException błąd wysyłania ramek
+     */
+    default void sendBatch(List<byte[]> payloads) throws IOException {
+        sendBatch(payloads, null);
+    }
+
+    /**
+     * Wysyła do klienta kilka ramek naraz i wywołuje {@code onWritten} po zapisaniu ostatniej z nich do gniazda.
+     * Jeśli połączenie zostanie zamknięte przed zapisem, {@code onWritten} nie jest wywoływane. Może zostać wywołane
+     * z blokadą warstwy transportowej, więc nie powinno blokować.
+     *
+     * @param payloads treści ramek
+     * @param onWritten zadanie wywoływane po zapisaniu ramek lub {@code null}
+     * @throws IOException błąd wysyłania ramek
+     */
+    void sendBatch(List<byte[]> payloads, Runnable onWritten) throws IOException;
+
+    /**
+     * Zamyka połączenie z klientem. Ramki zlecone wcześniej do wysłania są jeszcze dostarczane.
+     */
+    void close();
+
+    /**
+     * Natychmiast zamyka połączenie z klientem porzucając niewysłane ramki. Może być wywołana z dowolnego wątku.
+     */
+    void abort();
+}
@@ -3,6 +3,8 @@ package pl.edu.pw.s251957.server.chat;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
 
 /** Klasa serwera obsługująca komendy konsolowe pochodzące od administratora odpwiedzialne za zarządzanie serwerem.
  *
@@ -49,6 +51,7 @@ public class ConsoleServerRunner {
      *  - start - uruchamia serwer
      *  - stop - zatrzymuje serwer
      *  - info - wyświetla dostępne opcje
+     *  - metrics - wyświetla metryki pracy serwera
      *  - exit - natychmiastowe wyłączenie serwera
      *  - niedozwolone komendy
      *
@@ -61,6 +64,8 @@ public class ConsoleServerRunner {
             stopChatServer();
         } else if(command.equals("info")) {
             showServerCommand();
+        } else if(command.equals("metrics")) {
+            showMetrics();
         } else if(command.equals("exit")) {
             stopChatServer();
             System.out.println("Do zobaczenia!");
@@ -74,14 +79,17 @@ public class ConsoleServerRunner {
      * Uruchamia główny serwer odpowiedzialny za komunikator.
      */
     private void startChatServer() {
-        if(chatServer == null) {
-            this.chatServer = new ChatServer();
-        }
-
         try {
-            if (!chatServer.isRunning()) {
+            if (chatServer == null || !chatServer.isRunning()) {
                 System.out.print("Podaj numer portu: ");
                 int port = parseReadPort(commandReader.readLine());
+                System.out.print("Podaj tryb serwera (threads/virtual_threads/nio, domyślnie threads): ");
+                ServerMode serverMode = parseReadServerMode(commandReader.readLine());
+                ServerSettings settings = new ServerSettings();
+                settings.setServerMode(serverMode);
+                readTlsSettings(settings);
+                readClusterSettings(settings);
+                this.chatServer = new ChatServer(settings);
                 chatServer.startServer(port);
             } else {
                 System.out.println("Serwer jest już uruchomiony na porcie " + chatServer.getPort());
@@ -91,6 +99,60 @@ public class ConsoleServerRunner {
         }
     }
 
+    /**
+     * Odczytuje ustawienia TLS. Pusta ścieżka magazynu kluczy oznacza połączenia nieszyfrowane.
+     *
+     * @param settings ustawienia serwera
+     * @throws IOException błąd odczytu z konsoli
+     */
+    private void readTlsSettings(ServerSettings settings) throws IOException {
+        System.out.print("Podaj ścieżkę magazynu kluczy TLS (puste - bez TLS): ");
+        String keyStore = commandReader.readLine();
+
+        if(keyStore == null || keyStore.trim().isEmpty()) {
+            return;
+        }
+
+        System.out.print("Podaj hasło magazynu kluczy: ");
+        String password = commandReader.readLine();
+
+        settings.setTlsKeyStore(keyStore.trim());
+        settings.setTlsKeyStorePassword(password == null ? "" : password);
+    }
+
+    /**
+     * Odczytuje ustawienia klastra. Pusty identyfikator węzła oznacza samodzielny serwer.
+     *
+     * @param settings ustawienia serwera
+     * @throws IOException błąd odczytu z konsoli
+     */
+    private void readClusterSettings(ServerSettings settings) throws IOException {
+        System.out.print("Podaj identyfikator węzła klastra (puste - bez klastra): ");
+        String nodeId = commandReader.readLine();
+
+        if(nodeId == null || nodeId.trim().isEmpty()) {
+            return;
+        }
+
+        System.out.print("Podaj numer portu klastra: ");
+        int clusterPort = parseReadPort(commandReader.readLine());
+        System.out.print("Podaj adresy węzłów klastra (host:port oddzielone przecinkami): ");
+        String readPeers = commandReader.readLine();
+        List<String> peers = new ArrayList<>();
+
+        if(readPeers != null) {
+            for (String peer : readPeers.split(",")) {
+                if(!peer.trim().isEmpty()) {
+                    peers.add(peer.trim());
+                }
+            }
+        }
+
+        settings.setClusterNodeId(nodeId.trim());
+        settings.setClusterPort(clusterPort);
+        settings.setClusterPeers(peers);
+    }
+
     /**
      * Zatrzymuje działanie serwera komunikatora.
      */
@@ -101,6 +163,17 @@ public class ConsoleServerRunner {
         }
     }
 
+    /**
+     * Pokazuje metryki pracy uruchomionego serwera.
+     */
+    private void showMetrics() {
+        if(chatServer != null && chatServer.isRunning()) {
+            System.out.print(chatServer.getMonitor().report());
+        } else {
+            System.out.println("Serwer nie jest uruchomiony");
+        }
+    }
+
     /**
      * Pokazuje dostępne komendy
      */
@@ -108,6 +181,7 @@ public class ConsoleServerRunner {
         System.out.println("Dozwolone komendy:");
         System.out.println("  start - uruchamia server");
         System.out.println("  stop - zatrzymuje serwer");
+        System.out.println("  metrics - wyświetla metryki serwera");
         System.out.println("  exit - kończy działanie serwera");
     }
 
@@ -129,6 +203,24 @@ public class ConsoleServerRunner {
         return port;
     }
 
+    /**
+     * Parsuje podany tryb serwera. Pusty tryb oznacza obsługę każdego połączenia na osobnym wątku.
+     *
+     * @param readServerMode tryb serwera jako ciąg znaków
+     * @return tryb serwera
+     */
+    private ServerMode parseReadServerMode(String readServerMode) {
+        if(readServerMode == null || readServerMode.trim().isEmpty()) {
+            return ServerMode.THREADS;
+        }
+
+        try {
+            return ServerMode.valueOf(readServerMode.trim().toUpperCase());
+        } catch(IllegalArgumentException exception) {
+            throw new IllegalArgumentException("Podano nieprawidłowy tryb serwera");
+        }
+    }
+
     /**
      * Uruchamia działanie administratora serwera.
      */
@@ -0,0 +1,237 @@
+package pl.edu.pw.s251957.server.chat;
+
+import java.util.concurrent.TimeUnit;
+
+/** Zegar zadań opóźnionych w postaci koła z kubełkami. Koło dzieli czas na takty o stałej długości, a zadanie trafia do
+ * kubełka taktu, w którym upływa jego termin, wraz z liczbą pełnych obrotów koła, które muszą minąć przed jego
+ * wykonaniem. Zaplanowanie i anulowanie zadania nie zależą od liczby zaplanowanych zadań, dzięki czemu zegar obsługuje
+ * sprawdzanie dziesiątek tysięcy połączeń jednym wątkiem. Zadania wykonywane są z dokładnością do jednego taktu przez
+ * wątek zegara, dlatego powinny być krótkie. Nowe zadania przekazywane są wątkowi zegara przez kolejkę
+ * {@link MpscQueue}, więc kubełki nie wymagają blokad.
+ *
+ * @see MpscQueue
+ * @see ClientConnection
+ */
+class HashedWheelTimer {
+    /** Długość taktu w nanosekundach */
+    private final long tickDuration;
+    /** Kubełki koła, każdy jako lista jednokierunkowa zadań */
+    private final Timeout[] wheel;
+    /** Maska wyznaczająca kubełek z numeru taktu */
+    private final int mask;
+    /** Zadania zaplanowane, ale jeszcze nieprzeniesione do kubełków */
+    private final MpscQueue<Timeout> pendingTimeouts;
+    /** Chwila uruchomienia zegara według {@link System#nanoTime()} */
+    private final long startTime;
+
+    /** Wątek zegara */
+    private Thread workerThread;
+
+    /**
+     * Tworzy zegar o podanej długości taktu i liczbie kubełków.
+     *
+     * @param tickDuration długość taktu w milisekundach, co najmniej 1
+     * @param ticksPerWheel liczba kubełków, zaokrąglana w górę do potęgi dwójki
+     */
+    HashedWheelTimer(long tickDuration, int ticksPerWheel) {
+        this(tickDuration, ticksPerWheel, System.nanoTime());
+    }
+
+    /**
+     * Tworzy zegar o podanej długości taktu i liczbie kubełków, którego czas liczony jest od podanej chwili.
+     *
+     * @param tickDuration długość taktu w milisekundach, co najmniej 1
+     * @param ticksPerWheel liczba kubełków, zaokrąglana w górę do potęgi dwójki
+     * @param startTime chwila uruchomienia zegara według {@link System#nanoTime()}
+     */
+    HashedWheelTimer(long tickDuration, int ticksPerWheel, long startTime) {
+        int size = Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1;
+
+        this.tickDuration = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickDuration));
+        this.wheel = new Timeout[size];
+        this.mask = size - 1;
+        this.pendingTimeouts = new MpscQueue<>();
+        this.startTime = startTime;
+    }
+
+    /**
+     * Uruchamia wątek zegara.
+     */
+    synchronized void start() {
+        if(workerThread != null) {
+            return;
+        }
+
+        workerThread = new Thread(this::runWorker, "heartbeat-timer");
+        workerThread.setDaemon(true);
+        workerThread.start();
+    }
+
+    /**
+     * Zatrzymuje wątek zegara. Zadania, których termin nie upłynął, nie zostaną wykonane.
+     */
+    synchronized void stop() {
+        if(workerThread != null) {
+            workerThread.interrupt();
+            workerThread = null;
+        }
+    }
+
+    /**
+     * Planuje wykonanie zadania po podanym czasie. Może być wywoływana przez dowolny wątek, również przez zadanie
+     * wykonywane przez zegar.
+     *
+     * @param task zadanie
+     * @param delay czas do wykonania zadania
+     * @param unit jednostka czasu
+     * @return zaplanowane zadanie, które można anulować
+     */
+    Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        return newTimeout(task, delay, unit, System.nanoTime());
+    }
+
+    /**
+     * Planuje wykonanie zadania po podanym czasie liczonym od podanej chwili.
+     *
+     * @param task zadanie
+     * @param delay czas do wykonania zadania
+     * @param unit jednostka czasu
+     * @param now obecna chwila według {@link System#nanoTime()}
+     * @return zaplanowane zadanie, które można anulować
+     */
+    Timeout newTimeout(Runnable task, long delay, TimeUnit unit, long now) {
+        Timeout timeout = new Timeout(task, now - startTime + unit.toNanos(Math.max(0, delay)));
+        pendingTimeouts.offer(timeout);
+
+        return timeout;
+    }
+
+    /**
+     * Co takt przenosi nowe zadania do kubełków i wykonuje zadania kubełka bieżącego taktu, dopóki wątek nie zostanie
+     * przerwany.
+     */
+    private void runWorker() {
+        long tick = 0;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            long sleepTime = tickDuration * (tick + 1) - (System.nanoTime() - startTime);
+
+            if(sleepTime > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepTime);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            advance(tick);
+            tick++;
+        }
+    }
+
+    /**
+     * Obsługuje takt o podanym numerze - przenosi nowe zadania do kubełków i wykonuje zadania, których termin upłynął.
+     * Wywoływana przez wątek zegara dla kolejnych taktów.
+     *
+     * @param tick numer bieżącego taktu
+     */
+    void advance(long tick) {
+        transferTimeouts(tick);
+        expireTimeouts(tick);
+    }
+
+    /**
+     * Przenosi nowe zadania do kubełków. Zadanie, którego termin już upłynął, trafia do kubełka bieżącego taktu.
+     *
+     * @param tick numer bieżącego taktu
+     */
+    private void transferTimeouts(long tick) {
+        Timeout timeout;
+
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if(timeout.cancelled) {
+                continue;
+            }
+
+            long calculated = Math.max(timeout.deadline / tickDuration, tick);
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+
+            int index = (int) (calculated & mask);
+            timeout.next = wheel[index];
+            wheel[index] = timeout;
+        }
+    }
+
+    /**
+     * Wykonuje zadania kubełka bieżącego taktu, których termin upłynął w tym obrocie koła, i usuwa anulowane. Błąd
+     * zadania nie zatrzymuje zegara.
+     *
+     * @param tick numer bieżącego taktu
+     */
+    private void expireTimeouts(long tick) {
+        int index = (int) (tick & mask);
+        Timeout previous = null;
+        Timeout timeout = wheel[index];
+
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            boolean expired = !timeout.cancelled && timeout.remainingRounds <= 0;
+
+            if(timeout.cancelled || expired) {
+                if(previous == null) {
+                    wheel[index] = next;
+                } else {
+                    previous.next = next;
+                }
+
+                timeout.next = null;
+            } else {
+                timeout.remainingRounds--;
+                previous = timeout;
+            }
+
+            if(expired) {
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    System.out.println("Błąd w zadaniu zegara: " + e.getMessage());
+                }
+            }
+
+            timeout = next;
+        }
+    }
+
+    /** Zadanie zaplanowane w zegarze
+     */
+    static class Timeout {
+        /** Zadanie do wykonania */
+        private final Runnable task;
+        /** Termin wykonania względem uruchomienia zegara w nanosekundach */
+        private final long deadline;
+        /** Liczba pełnych obrotów koła pozostała do wykonania, zmieniana tylko przez wątek zegara */
+        private long remainingRounds;
+        /** Następne zadanie w kubełku, zmieniane tylko przez wątek zegara */
+        private Timeout next;
+        /** Flaga czy zadanie zostało anulowane */
+        private volatile boolean cancelled;
+
+        /**
+         * Tworzy zadanie z terminem wykonania.
+         *
+         * @param task zadanie do wykonania
+         * @param deadline termin wykonania względem uruchomienia zegara w nanosekundach
+         */
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Anuluje zadanie. Wątek zegara usunie je z kubełka przy najbliższym jego przeglądaniu.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package pl.edu.pw.s251957.server.chat;
+
+import java.util.Arrays;
+
+/** Tablica połączeń według numeru sesji z adresowaniem otwartym. Klucze przechowywane są w tablicy liczb, więc
+ * wyszukanie połączenia nie tworzy obiektów ani nie porównuje nicków - wymaga tylko wymieszania numeru i przejrzenia
+ * kolejnych pól tablicy. Kolizje rozwiązywane są sondowaniem liniowym, a usunięcie przesuwa kolejne wpisy z powrotem,
+ * więc tablica nie zawiera znaczników usuniętych wpisów. Numer 0 oznacza puste pole i nie może być kluczem. Klasa nie
+ * jest bezpieczna wątkowo - używa jej tylko wątek {@link RegistryShard}.
+ *
+ * @see RegistryShard
+ */
+class IntConnectionMap {
+    /** Początkowa liczba pól tablicy, potęga dwójki */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Numery sesji, 0 dla pustych pól */
+    private int[] keys;
+    /** Połączenia w polach odpowiadających numerom sesji */
+    private ClientConnection[] values;
+    /** Liczba wpisów */
+    private int size;
+
+    /**
+     * Tworzy pustą tablicę.
+     */
+    IntConnectionMap() {
+        this.keys = new int[INITIAL_CAPACITY];
+        this.values = new ClientConnection[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Zwraca połączenie o podanym numerze sesji.
+     *
+     * @param key numer sesji
+     * @return połączenie lub {@code null}, jeśli numer nie jest zapisany
+     */
+    ClientConnection get(int key) {
+        int mask = keys.length - 1;
+
+        for (int i = slot(key, mask); keys[i] != 0; i = (i + 1) & mask) {
+            if(keys[i] == key) {
+                return values[i];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Zapisuje połączenie pod podanym numerem sesji, zastępując wcześniejsze.
+     *
+     * @param key numer sesji różny od 0
+     * @param value połączenie
+     */
+    void put(int key, ClientConnection value) {
+        if(key == 0) {
+            throw new IllegalArgumentException("Numer sesji nie może być równy 0");
+        }
+
+        if((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+
+        while (keys[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+
+        if(keys[i] == 0) {
+            keys[i] = key;
+            size++;
+        }
+
+        values[i] = value;
+    }
+
+    /**
+     * Usuwa wpis, jeśli pod podanym numerem sesji zapisane jest podane połączenie.
+     *
+     * @param key numer sesji
+     * @param value połączenie
+     * @return flaga czy wpis został usunięty
+     */
+    boolean remove(int key, ClientConnection value) {
+        int mask = keys.length - 1;
+
+        for (int i = slot(key, mask); keys[i] != 0; i = (i + 1) & mask) {
+            if(keys[i] == key) {
+                if(values[i] != value) {
+                    return false;
+                }
+
+                removeAt(i, mask);
+                size--;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Zwraca liczbę wpisów.
+     *
+     * @return liczba wpisów
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Opróżnia pole i przesuwa na jego miejsce kolejne wpisy, których pole docelowe nie leży między opróżnionym
+     * polem a ich obecnym położeniem, aby sondowanie nadal je znajdowało.
+     *
+     * @param hole opróżniane pole
+     * @param mask maska indeksu pola
+     */
+    private void removeAt(int hole, int mask) {
+        int i = hole;
+
+        while (true) {
+            i = (i + 1) & mask;
+
+            if(keys[i] == 0) {
+                break;
+            }
+
+            int home = slot(keys[i], mask);
+
+            if(((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+
+        keys[hole] = 0;
+        values[hole] = null;
+    }
+
+    /**
+     * Przenosi wpisy do tablicy o podanej liczbie pól.
+     *
+     * @param capacity nowa liczba pól, potęga dwójki
+     */
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        ClientConnection[] oldValues = values;
+        keys = new int[capacity];
+        values = new ClientConnection[capacity];
+        int mask = capacity - 1;
+
+        for (int j = 0; j < oldKeys.length; j++) {
+            if(oldKeys[j] != 0) {
+                int i = slot(oldKeys[j], mask);
+
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+
+        Arrays.fill(oldValues, null);
+    }
+
+    /**
+     * Wyznacza pole docelowe numeru sesji. Numery jednej części rejestru mają takie same najmłodsze bity, dlatego
+     * numer jest mieszany mnożeniem przez stałą złotego podziału, a pole wyznaczają najstarsze bity iloczynu.
+     *
+     * @param key numer sesji
+     * @param mask maska indeksu pola
+     * @return indeks pola docelowego
+     */
+    static int slot(int key, int mask) {
+        return (key * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+    }
+}
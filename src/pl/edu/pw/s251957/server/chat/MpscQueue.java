@@ -0,0 +1,86 @@
+package pl.edu.pw.s251957.server.chat;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Nieograniczona kolejka bez blokad dla wielu producentów i jednego konsumenta. Producent dołącza nowy węzeł jedną
+ * operacją {@link AtomicReference#getAndSet(Object)} na końcu kolejki, a konsument odczytuje węzły od początku bez
+ * żadnych operacji atomowych. Elementy dodane przez jednego producenta odczytywane są w kolejności dodania. Metody
+ * {@link #poll()} i {@link #isEmpty()} może wywoływać tylko wątek konsumenta.
+ *
+ * @param <E> typ elementów kolejki
+ * @see RegistryShard
+ */
+class MpscQueue<E> {
+    /** Ostatni dodany węzeł, zmieniany przez producentów */
+    private final AtomicReference<Node<E>> last;
+    /** Węzeł poprzedzający pierwszy element, zmieniany tylko przez konsumenta */
+    private Node<E> first;
+
+    /**
+     * Tworzy pustą kolejkę.
+     */
+    MpscQueue() {
+        Node<E> stub = new Node<>(null);
+        this.last = new AtomicReference<>(stub);
+        this.first = stub;
+    }
+
+    /**
+     * Dodaje element na końcu kolejki. Może być wywoływana przez dowolny wątek.
+     *
+     * @param element dodawany element
+     */
+    void offer(E element) {
+        Node<E> node = new Node<>(element);
+        last.getAndSet(node).next = node;
+    }
+
+    /**
+     * Pobiera pierwszy element kolejki. Element dodawany w tej chwili przez producenta może jeszcze nie być
+     * widoczny.
+     *
+     * @return pierwszy element lub {@code null}, jeśli kolejka jest pusta
+     */
+    E poll() {
+        Node<E> next = first.next;
+
+        if(next == null) {
+            return null;
+        }
+
+        E element = next.element;
+        next.element = null;
+        first = next;
+
+        return element;
+    }
+
+    /**
+     * Sprawdza czy w kolejce nie ma widocznych elementów.
+     *
+     * @return flaga czy kolejka jest pusta
+     */
+    boolean isEmpty() {
+        return first.next == null;
+    }
+
+    /** Węzeł kolejki
+     *
+     * @param <E> typ elementu
+     */
+    private static class Node<E> {
+        /** Element węzła, usuwany po pobraniu */
+        private E element;
+        /** Następny węzeł */
+        private volatile Node<E> next;
+
+        /**
+         * Tworzy węzeł z elementem.
+         *
+         * @param element element węzła
+         */
+        private Node(E element) {
+            this.element = element;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package pl.edu.pw.s251957.server.chat;
+
+import javax.net.ssl.SSLEngine;
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/** Wątek serwera obsługujący wiele połączeń z klientami przy pomocy jednego selektora {@link Selector}. Serwer
+ * uruchamia kilka takich wątków i rozdziela pomiędzy nie przyjęte połączenia. Rozszerza klasę {@link Thread}.
+ *
+ * @see Thread
+ * @see NioTransport
+ * @see ChatServer
+ */
+public class NioReactor extends Thread {
+    /** Główna, zarządzająca część serwera */
+    private final ChatServer chatServer;
+    /** Selektor kanałów obsługiwanych przez wątek */
+    private final Selector selector;
+    /** Przyjęte kanały oczekujące na rejestrację w selektorze */
+    private final Queue<SocketChannel> pendingChannels;
+    /** Połączenia oczekujące na zamknięcie przez wątek */
+    private final Queue<NioTransport> pendingCloses;
+
+    /** Flaga informująca o tym czy wątek jest uruchomiony */
+    private volatile boolean running;
+
+    /**
+     * Tworzy wątek obsługujący połączenia wraz z jego selektorem.
+     *
+     * @param chatServer główna, zarządzająca część serwera
+     * @param index numer wątku w puli
+     * @throws IOException błąd otwierania selektora
+     */
+    public NioReactor(ChatServer chatServer, int index) throws IOException {
+        super("nio-reactor-" + index);
+        this.chatServer = chatServer;
+        this.selector = Selector.open();
+        this.pendingChannels = new ConcurrentLinkedQueue<>();
+        this.pendingCloses = new ConcurrentLinkedQueue<>();
+        this.running = true;
+    }
+
+    /**
+     * Przekazuje przyjęty kanał do obsługi przez ten wątek.
+     *
+     * @param channel kanał połączenia z klientem
+     */
+    public void register(SocketChannel channel) {
+        pendingChannels.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * Zleca zamknięcie połączenia na wątku obsługującym jego kanał.
+     *
+     * @param transport zamykane połączenie
+     */
+    void scheduleClose(NioTransport transport) {
+        pendingCloses.add(transport);
+        selector.wakeup();
+    }
+
+    /**
+     * Wybudza selektor, jeśli metoda wywołana została spoza wątku obsługującego.
+     */
+    void wakeup() {
+        if(Thread.currentThread() != this) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Zatrzymuje wątek. Oczekujące ramki są jeszcze wysyłane, a następnie wszystkie połączenia zostają zamknięte.
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Obsługuje zdarzenia gotowości kanałów dopóki wątek jest uruchomiony. Metoda pochodząca z rozszerzanej klasy
+     * {@link Thread}
+     */
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                System.out.println("Błąd selektora: " + e.getMessage());
+                break;
+            }
+
+            registerPendingChannels();
+            closePendingTransports();
+            handleSelectedKeys();
+        }
+
+        closeAllTransports();
+    }
+
+    /**
+     * Rejestruje w selektorze kanały przekazane do obsługi.
+     */
+    private void registerPendingChannels() {
+        SocketChannel channel;
+
+        while ((channel = pendingChannels.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                NioTransport transport = new NioTransport(channel, key, this, createTlsChannel(channel));
+                transport.setConnection(new ClientConnection(chatServer, transport));
+                key.attach(transport);
+                transport.sendStreamHeader();
+            } catch (IOException e) {
+                System.out.println("Błąd rejestracji połączenia: " + e.getMessage());
+                closeChannel(channel);
+            }
+        }
+    }
+
+    /**
+     * Tworzy szyfrowanie kanału, jeśli serwer używa TLS. Wszystkie kanały korzystają z jednego kontekstu TLS
+     * serwera, dzięki czemu klienci mogą wznawiać sesje.
+     *
+     * @param channel kanał połączenia z klientem
+     * @return szyfrowanie kanału lub {@code null}, jeśli serwer nie używa TLS
+     * @throws IOException błąd rozpoczęcia uzgodnienia
+     */
+    private TlsChannel createTlsChannel(SocketChannel channel) throws IOException {
+        if(chatServer.getSslContext() == null) {
+            return null;
+        }
+
+        SSLEngine engine = chatServer.getSslContext().createSSLEngine();
+        engine.setUseClientMode(false);
+
+        return new TlsChannel(channel, engine, chatServer.getMetrics());
+    }
+
+    /**
+     * Zamyka połączenia, których zamknięcie zostało zlecone z innych wątków.
+     */
+    private void closePendingTransports() {
+        NioTransport transport;
+
+        while ((transport = pendingCloses.poll()) != null) {
+            transport.closeNow();
+        }
+    }
+
+    /**
+     * Obsługuje kanały gotowe do odczytu lub zapisu. Błąd obsługi jednego połączenia zamyka tylko to połączenie, a
+     * wątek obsługuje dalej pozostałe.
+     */
+    private void handleSelectedKeys() {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+            NioTransport transport = (NioTransport) key.attachment();
+
+            try {
+                if(key.isValid() && key.isReadable()) {
+                    transport.handleRead();
+                }
+
+                if(key.isValid() && key.isWritable()) {
+                    transport.handleWrite();
+                }
+            } catch (IOException | CancelledKeyException e) {
+                transport.closeNow();
+            } catch (RuntimeException e) {
+                System.out.println("Błąd obsługi połączenia klienta: " + e);
+                transport.closeNow();
+            }
+        }
+    }
+
+    /**
+     * Zamyka wszystkie połączenia obsługiwane przez wątek oraz selektor.
+     */
+    private void closeAllTransports() {
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            NioTransport transport = (NioTransport) key.attachment();
+
+            if(transport != null) {
+                transport.flushAndClose();
+            }
+        }
+
+        SocketChannel channel;
+
+        while ((channel = pendingChannels.poll()) != null) {
+            closeChannel(channel);
+        }
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.out.println("Błąd przy zamykaniu selektora: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Zamyka kanał, który nie został przekazany do obsługi.
+     *
+     * @param channel zamykany kanał
+     */
+    private void closeChannel(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Błąd przy zamykaniu połączenia: " + e.getMessage());
+        }
+    }
+}
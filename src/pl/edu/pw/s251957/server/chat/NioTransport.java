@@ -0,0 +1,446 @@
+package pl.edu.pw.s251957.server.chat;
+
+import pl.edu.pw.s251957.common.MessageFrames;
+import pl.edu.pw.s251957.common.ProtocolHandshake;
+import pl.edu.pw.s251957.common.Response;
+import pl.edu.pw.s251957.common.SerializationCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/** Nieblokująca warstwa transportowa połączenia z klientem obsługiwana przez wątek {@link NioReactor}. Odebrane
+ * bajty składane są w ramki w buforze połączenia, a ramki do wysłania trafiają do kolejki zapisywanej w miarę
+ * gotowości kanału. Połączenie szyfrowane przesyła bajty przez {@link TlsChannel}, a ramki oczekują w kolejce do
+ * zakończenia uzgodnienia TLS. Połączenie zaczyna się od nagłówka strumienia obiektowego, tak jak w transporcie
+ * blokującym, ale klient używający serializacji Javy bez ramek nie jest obsługiwany - otrzymuje odmowę połączenia, a
+ * jego dalsze dane są pomijane. Implementuje interfejs {@link ConnectionTransport}.
+ *
+ * @see NioReactor
+ * @see ConnectionTransport
+ * @see TlsChannel
+ */
+public class NioTransport implements ConnectionTransport {
+    /** Początkowy rozmiar bufora odczytu */
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    /** Maksymalna liczba buforów zapisywanych do kanału jednym wywołaniem */
+    private static final int MAX_GATHERED_BUFFERS = 128;
+
+    /** Kanał połączenia z klientem */
+    private final SocketChannel channel;
+    /** Klucz rejestracji kanału w selektorze */
+    private final SelectionKey selectionKey;
+    /** Wątek obsługujący kanał */
+    private final NioReactor reactor;
+    /** Szyfrowanie kanału lub {@code null}, jeśli połączenie nie używa TLS */
+    private final TlsChannel tls;
+    /** Połączenie z klientem obsługujące odebrane ramki */
+    private ClientConnection connection;
+
+    /** Bufor odebranych, jeszcze nieprzetworzonych bajtów */
+    private ByteBuffer readBuffer;
+    /** Kolejka buforów (nagłówków i treści ramek) oczekujących na zapis do kanału */
+    private final Deque<ByteBuffer> writeQueue;
+    /** Zadania wywoływane po zapisaniu ostatnich buforów partii, w kolejności zapisu */
+    private final Deque<WriteCallback> writeCallbacks;
+    /** Flaga czy odebrane bajty są pomijane, ponieważ klient nie używa ramek */
+    private boolean discardingInput;
+    /** Flaga czy połączenie ma zostać zamknięte po wysłaniu oczekujących ramek */
+    private boolean closeRequested;
+    /** Flaga czy połączenie jest zamknięte */
+    private boolean closed;
+
+    /**
+     * Tworzy warstwę transportową dla zarejestrowanego w selektorze kanału.
+     *
+     * @param channel kanał połączenia z klientem
+     * @param selectionKey klucz rejestracji kanału w selektorze
+     * @param reactor wątek obsługujący kanał
+     * @param tls szyfrowanie kanału lub {@code null}, jeśli połączenie nie używa TLS
+     */
+    NioTransport(SocketChannel channel, SelectionKey selectionKey, NioReactor reactor, TlsChannel tls) {
+        this.channel = channel;
+        this.selectionKey = selectionKey;
+        this.reactor = reactor;
+        this.tls = tls;
+        this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        this.writeQueue = new ArrayDeque<>();
+        this.writeCallbacks = new ArrayDeque<>();
+    }
+
+    /**
+     * Ustawia połączenie z klientem obsługujące odebrane ramki.
+     *
+     * @param connection połączenie z klientem
+     */
+    void setConnection(ClientConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Dodaje ramkę do kolejki wysyłania i próbuje od razu zapisać ją do kanału. Metoda pochodząca z interfejsu
+     * {@link ConnectionTransport}.
+     *
+     * @param payload treść ramki
+     * @throws IOException błąd wysyłania ramki lub połączenie jest zamykane
+     */
+    @Override
+    public void send(byte[] payload) throws IOException {
+        sendBatch(Collections.singletonList(payload), null);
+    }
+
+    /**
+     * Dodaje ramki do kolejki wysyłania i próbuje od razu zapisać je do kanału. Jeśli kanał nie przyjmie wszystkich
+     * ramek, resztę zapisze wątek {@link NioReactor}, a {@code onWritten} zostanie wywołane dopiero po zapisaniu
+     * ostatniej z nich. Treść ramek nie jest kopiowana - do kolejki trafiają bufory opakowujące przekazane tablice,
+     * więc nie mogą one być później modyfikowane. Metoda pochodząca z interfejsu {@link ConnectionTransport}.
+     *
+     * @param payloads treści ramek
+     * @param onWritten zadanie wywoływane po zapisaniu ramek lub {@code null}
+     * @throws IOException błąd wysyłania ramek lub połączenie jest zamykane
+     */
+    @Override
+    public void sendBatch(List<byte[]> payloads, Runnable onWritten) throws IOException {
+        List<ByteBuffer> frames = new ArrayList<>(payloads.size() * 2);
+
+        for (byte[] payload : payloads) {
+            frames.add(MessageFrames.toHeaderBuffer(payload));
+            frames.add(ByteBuffer.wrap(payload));
+        }
+
+        enqueue(frames, onWritten);
+    }
+
+    /**
+     * Wysyła klientowi nagłówek strumienia obiektowego, na który czekają klienci sprzed wprowadzenia ramek.
+     * Wywoływana przez wątek {@link NioReactor} po zarejestrowaniu kanału.
+     *
+     * @throws IOException błąd wysyłania nagłówka
+     */
+    void sendStreamHeader() throws IOException {
+        enqueue(Collections.singletonList(ByteBuffer.wrap(ProtocolHandshake.streamHeader())), null);
+    }
+
+    /**
+     * Dodaje bufory do kolejki wysyłania i próbuje od razu zapisać je do kanału. Bufory, których kanał nie przyjmie,
+     * zapisze wątek {@link NioReactor}.
+     *
+     * @param frames bufory do wysłania
+     * @param onWritten zadanie wywoływane po zapisaniu ostatniego bufora lub {@code null}
+     * @throws IOException błąd wysyłania lub połączenie jest zamykane
+     */
+    private void enqueue(List<ByteBuffer> frames, Runnable onWritten) throws IOException {
+        synchronized (writeQueue) {
+            if(closed || closeRequested) {
+                throw new IOException("Połączenie z klientem jest zamykane");
+            }
+
+            boolean waitingForWrite = !writeQueue.isEmpty();
+            writeQueue.addAll(frames);
+
+            if(onWritten != null && !frames.isEmpty()) {
+                writeCallbacks.addLast(new WriteCallback(frames.get(frames.size() - 1), onWritten));
+            }
+
+            if(waitingForWrite) {
+                return;
+            }
+
+            try {
+                writePendingFrames();
+            } catch (IOException e) {
+                reactor.scheduleClose(this);
+                throw e;
+            }
+
+            if(isWaitingForWrite()) {
+                selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                reactor.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Zamyka połączenie po wysłaniu oczekujących ramek. Metoda pochodząca z interfejsu {@link ConnectionTransport}.
+     */
+    @Override
+    public void close() {
+        synchronized (writeQueue) {
+            if(closed) {
+                return;
+            }
+
+            if(!writeQueue.isEmpty() || (tls != null && tls.hasPendingOutput())) {
+                closeRequested = true;
+                return;
+            }
+        }
+
+        closeNow();
+    }
+
+    /**
+     * Zleca natychmiastowe zamknięcie połączenia wątkowi {@link NioReactor}. Metoda pochodząca z interfejsu
+     * {@link ConnectionTransport}.
+     */
+    @Override
+    public void abort() {
+        reactor.scheduleClose(this);
+    }
+
+    /**
+     * Odczytuje dostępne bajty z kanału i przekazuje do obsłużenia wszystkie kompletne ramki. Połączenie szyfrowane
+     * odczytuje dane, dopóki są odszyfrowane bajty, a następnie wysyła komunikaty uzgodnienia i ramki, które czekały
+     * na jego zakończenie.
+     *
+     * @throws IOException błąd odczytu z kanału lub niepoprawna ramka
+     */
+    void handleRead() throws IOException {
+        do {
+            int received = tls == null ? channel.read(readBuffer) : tls.read(readBuffer);
+
+            if(received < 0) {
+                closeNow();
+                return;
+            }
+
+            handleFrames();
+        } while (tls != null && !isClosed() && tls.hasBufferedInput());
+
+        if(tls != null && !isClosed()) {
+            handleWrite();
+        }
+    }
+
+    /**
+     * Przekazuje do obsłużenia wszystkie kompletne ramki z bufora odczytu.
+     *
+     * @throws IOException niepoprawna ramka
+     */
+    private void handleFrames() throws IOException {
+        if(discardingInput) {
+            readBuffer.clear();
+            return;
+        }
+
+        readBuffer.flip();
+
+        while (readBuffer.remaining() >= MessageFrames.HEADER_LENGTH && !isClosed()) {
+            int length = readBuffer.getInt(readBuffer.position());
+
+            if(ProtocolHandshake.isStreamHeader(length)) {
+                rejectStreamClient();
+                return;
+            }
+
+            MessageFrames.checkPayloadLength(length);
+
+            if(readBuffer.remaining() < MessageFrames.HEADER_LENGTH + length) {
+                break;
+            }
+
+            readBuffer.position(readBuffer.position() + MessageFrames.HEADER_LENGTH);
+            byte[] payload = new byte[length];
+            readBuffer.get(payload);
+            connection.handleFrame(payload);
+        }
+
+        readBuffer.compact();
+        ensureReadCapacity();
+    }
+
+    /**
+     * Odmawia połączenia klientowi używającemu serializacji Javy bez ramek. Odmowa zapisywana jest w strumieniu
+     * obiektowym bez ramki, dzięki czemu klient może ją odczytać, a połączenie zostaje zamknięte po jej wysłaniu.
+     *
+     * @throws IOException błąd wysyłania odmowy
+     */
+    private void rejectStreamClient() throws IOException {
+        System.out.println("Klient używa serializacji bez ramek, nieobsługiwanej w trybie NIO - zamykanie połączenia");
+        discardingInput = true;
+        readBuffer.clear();
+        Response response = new Response(Response.ResponseType.REJECT_CONNECTION, null,
+                "Serwer nie obsługuje tej wersji klienta", null);
+        byte[] payload = new SerializationCodec(1, Long.MAX_VALUE, true).encodeResponse(response);
+        enqueue(Collections.singletonList(ByteBuffer.wrap(payload)), null);
+        close();
+    }
+
+    /**
+     * Powiększa bufor odczytu, jeśli nie zmieści się w nim rozpoczęta ramka.
+     */
+    private void ensureReadCapacity() {
+        if(readBuffer.position() < MessageFrames.HEADER_LENGTH) {
+            return;
+        }
+
+        int frameLength = MessageFrames.HEADER_LENGTH + readBuffer.getInt(0);
+
+        if(frameLength > readBuffer.capacity()) {
+            ByteBuffer enlarged = ByteBuffer.allocate(frameLength);
+            readBuffer.flip();
+            enlarged.put(readBuffer);
+            readBuffer = enlarged;
+        }
+    }
+
+    /**
+     * Zapisuje do kanału oczekujące ramki, a po opróżnieniu kolejki wyłącza oczekiwanie na gotowość zapisu. Odczyt
+     * połączenia szyfrowanego wstrzymany do czasu zapisania komunikatu uzgodnienia jest wznawiany.
+     *
+     * @throws IOException błąd zapisu do kanału lub odczytu wznowionego po zapisie
+     */
+    void handleWrite() throws IOException {
+        boolean closeAfterFlush;
+
+        synchronized (writeQueue) {
+            writePendingFrames();
+
+            if(isWaitingForWrite()) {
+                selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+
+            selectionKey.interestOps(SelectionKey.OP_READ);
+            closeAfterFlush = closeRequested && writeQueue.isEmpty();
+        }
+
+        if(closeAfterFlush) {
+            closeNow();
+        } else if(tls != null && tls.isReadStalled()) {
+            handleRead();
+        }
+    }
+
+    /**
+     * Informuje czy połączenie czeka na gotowość kanału do zapisu. Ramki połączenia szyfrowanego czekają w trakcie
+     * uzgodnienia na odczyt komunikatów klienta, a nie na gotowość kanału. Wywoływana z blokadą kolejki.
+     *
+     * @return flaga czy należy czekać na gotowość zapisu
+     */
+    private boolean isWaitingForWrite() {
+        if(tls == null) {
+            return !writeQueue.isEmpty();
+        }
+
+        return tls.hasPendingOutput() || (!writeQueue.isEmpty() && !tls.isHandshaking());
+    }
+
+    /**
+     * Zapisuje do kanału tyle oczekujących ramek, ile kanał jest w stanie przyjąć bez blokowania. Kilka ramek
+     * zapisywanych jest jednym wywołaniem systemowym, każda jako para buforów: nagłówek i treść. Połączenie szyfrowane
+     * najpierw zapisuje zaszyfrowane wcześniej rekordy. Po zapisaniu ostatniego bufora partii wywoływane jest jej
+     * zadanie.
+     *
+     * @throws IOException błąd zapisu do kanału
+     */
+    private void writePendingFrames() throws IOException {
+        if(tls != null && !tls.flush()) {
+            return;
+        }
+
+        while (!writeQueue.isEmpty()) {
+            ByteBuffer[] frames = new ByteBuffer[Math.min(writeQueue.size(), MAX_GATHERED_BUFFERS)];
+            Iterator<ByteBuffer> iterator = writeQueue.iterator();
+
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = iterator.next();
+            }
+
+            if(tls == null) {
+                channel.write(frames);
+            } else {
+                tls.write(frames);
+            }
+
+            for (ByteBuffer frame : frames) {
+                if(frame.hasRemaining()) {
+                    return;
+                }
+
+                writeQueue.pollFirst();
+
+                if(!writeCallbacks.isEmpty() && writeCallbacks.peekFirst().lastFrame == frame) {
+                    writeCallbacks.pollFirst().callback.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * Próbuje wysłać oczekujące ramki, a następnie zamyka połączenie. Używane przy zatrzymywaniu serwera.
+     */
+    void flushAndClose() {
+        synchronized (writeQueue) {
+            try {
+                if(!closed) {
+                    writePendingFrames();
+                }
+            } catch (IOException ignored) {}
+        }
+
+        closeNow();
+    }
+
+    /**
+     * Natychmiast zamyka kanał porzucając oczekujące ramki i informuje o tym połączenie z klientem.
+     */
+    void closeNow() {
+        synchronized (writeQueue) {
+            if(closed) {
+                return;
+            }
+
+            closed = true;
+            writeQueue.clear();
+            writeCallbacks.clear();
+        }
+
+        selectionKey.cancel();
+
+        if(tls != null) {
+            tls.close();
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Błąd przy zamykaniu połączenia: " + e.getMessage());
+        }
+
+        connection.connectionClosed();
+    }
+
+    /**
+     * Informuje czy połączenie zostało zamknięte.
+     *
+     * @return flaga czy połączenie jest zamknięte
+     */
+    private boolean isClosed() {
+        synchronized (writeQueue) {
+            return closed;
+        }
+    }
+
+    /**
+     * Zadanie wywoływane po zapisaniu ostatniego bufora partii ramek.
+     */
+    private static final class WriteCallback {
+        /** Ostatni bufor partii */
+        private final ByteBuffer lastFrame;
+        /** Zadanie wywoływane po jego zapisaniu */
+        private final Runnable callback;
+
+        WriteCallback(ByteBuffer lastFrame, Runnable callback) {
+            this.lastFrame = lastFrame;
+            this.callback = callback;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package pl.edu.pw.s251957.server.chat;
+
+import pl.edu.pw.s251957.common.MessageFrames;
+import pl.edu.pw.s251957.server.metrics.ServerMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Ograniczona kolejka odpowiedzi oczekujących na wysłanie do jednego klienta. Wątek zlecający odpowiedź tylko dodaje
+ * ją do kolejki, a kolejkę opróżnia zadanie uruchamiane na wspólnym wykonawcy serwera - najwyżej jedno naraz dla
+ * danego połączenia. Zadanie koduje zebrane odpowiedzi i wysyła je partiami, z jednym opróżnieniem strumienia na
+ * partię. Dzięki temu wolny odbiorca nie wstrzymuje dostarczania komunikatów innym użytkownikom. Po wysłaniu partii
+ * w metrykach serwera zapisywane są wysłane bajty i opóźnienia dostarczenia odpowiedzi, a warstwa transportowa
+ * wywołuje zadania odpowiedzi partii po zapisaniu jej do gniazda. Implementuje interfejs {@link Runnable}.
+ *
+ * @see ClientConnection
+ * @see OverflowPolicy
+ */
+public class OutboundQueue implements Runnable {
+    /** Maksymalna liczba odpowiedzi wysyłanych w jednej partii */
+    private static final int MAX_BATCH_SIZE = 64;
+
+    /** Połączenie z klientem kodujące odpowiedzi */
+    private final ClientConnection connection;
+    /** Warstwa transportowa połączenia z klientem */
+    private final ConnectionTransport transport;
+    /** Wykonawca zadań opróżniających kolejkę */
+    private final Executor executor;
+    /** Pojemność kolejki */
+    private final int capacity;
+    /** Metryki serwera */
+    private final ServerMetrics metrics;
+
+    /** Odpowiedzi oczekujące na wysłanie */
+    private final Queue<OutboundResponse> responses;
+    /** Liczba odpowiedzi oczekujących na wysłanie */
+    private final AtomicInteger size;
+    /** Flaga czy zadanie opróżniające kolejkę jest zlecone lub trwa */
+    private final AtomicBoolean scheduled;
+
+    /** Flaga czy połączenie ma zostać zamknięte po wysłaniu oczekujących odpowiedzi */
+    private volatile boolean closeRequested;
+    /** Flaga czy kolejka przestała przyjmować i wysyłać odpowiedzi */
+    private volatile boolean discarded;
+
+    /**
+     * Tworzy kolejkę wychodzącą połączenia z klientem.
+     *
+     * @param connection połączenie z klientem kodujące odpowiedzi
+     * @param transport warstwa transportowa połączenia
+     * @param executor wykonawca zadań opróżniających kolejkę
+     * @param capacity pojemność kolejki
+     * @param metrics metryki serwera
+     */
+    OutboundQueue(ClientConnection connection, ConnectionTransport transport, Executor executor, int capacity,
+                  ServerMetrics metrics) {
+        this.connection = connection;
+        this.transport = transport;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.metrics = metrics;
+        this.responses = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicInteger();
+        this.scheduled = new AtomicBoolean();
+    }
+
+    /**
+     * Dodaje odpowiedź do kolejki i zleca jej wysłanie. Po zamknięciu kolejki odpowiedzi są pomijane.
+     *
+     * @param response odpowiedź oczekująca na wysłanie
+     * @return flaga czy odpowiedź zmieściła się w kolejce
+     */
+    boolean offer(OutboundResponse response) {
+        if(discarded || closeRequested) {
+            return true;
+        }
+
+        if(size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            return false;
+        }
+
+        responses.add(response);
+        schedule();
+
+        return true;
+    }
+
+    /**
+     * Zleca zamknięcie połączenia po wysłaniu wszystkich oczekujących odpowiedzi.
+     */
+    void closeAfterFlush() {
+        closeRequested = true;
+        schedule();
+    }
+
+    /**
+     * Porzuca oczekujące odpowiedzi i przestaje przyjmować nowe. Używane po zerwaniu połączenia.
+     */
+    void discard() {
+        discarded = true;
+        responses.clear();
+        size.set(0);
+    }
+
+    /**
+     * Zwraca liczbę odpowiedzi oczekujących na wysłanie.
+     *
+     * @return liczba oczekujących odpowiedzi
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Opróżnia kolejkę, a jeśli w międzyczasie pojawiły się nowe odpowiedzi, zleca kolejne opróżnienie. Metoda
+     * pochodząca z interfejsu {@link Runnable}.
+     */
+    @Override
+    public void run() {
+        try {
+            drain();
+        } finally {
+            scheduled.set(false);
+        }
+
+        if(!discarded && (!responses.isEmpty() || closeRequested)) {
+            schedule();
+        }
+    }
+
+    /**
+     * Zleca zadanie opróżniające kolejkę, o ile nie jest już zlecone.
+     */
+    private void schedule() {
+        if(scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Koduje oczekujące odpowiedzi i wysyła je partiami. Jeśli zlecono zamknięcie, zamyka połączenie po wysłaniu
+     * ostatniej partii.
+     */
+    private void drain() {
+        List<byte[]> batch = new ArrayList<>();
+        long[] createdTimes = new long[MAX_BATCH_SIZE];
+        List<Runnable> sentCallbacks = new ArrayList<>();
+        OutboundResponse response;
+
+        while (!discarded && (response = responses.poll()) != null) {
+            size.decrementAndGet();
+
+            try {
+                createdTimes[batch.size()] = response.getCreatedNanos();
+                batch.add(connection.encodeResponse(response));
+
+                if(response.getOnSent() != null) {
+                    sentCallbacks.add(response.getOnSent());
+                }
+            } catch (IOException e) {
+                System.out.println("Błąd przy kodowaniu komunikatu: " + e.getMessage());
+            }
+
+            if(batch.size() == MAX_BATCH_SIZE) {
+                sendBatch(batch, createdTimes, sentCallbacks);
+                batch.clear();
+                sentCallbacks = new ArrayList<>();
+            }
+        }
+
+        sendBatch(batch, createdTimes, sentCallbacks);
+
+        if(closeRequested && !discarded && responses.isEmpty()) {
+            discarded = true;
+            transport.close();
+        }
+    }
+
+    /**
+     * Wysyła partię ramek i zapisuje w metrykach wysłane bajty oraz opóźnienia dostarczenia odpowiedzi. Błąd
+     * wysyłania oznacza zerwane połączenie, które zostaje natychmiast zamknięte.
+     *
+     * @param batch treści ramek
+     * @param createdTimes chwile utworzenia odpowiedzi partii
+     * @param sentCallbacks zadania odpowiedzi partii wywoływane po jej zapisaniu do gniazda
+     */
+    private void sendBatch(List<byte[]> batch, long[] createdTimes, List<Runnable> sentCallbacks) {
+        if(batch.isEmpty() || discarded) {
+            return;
+        }
+
+        try {
+            transport.sendBatch(batch, sentCallbacks.isEmpty() ? null : () -> sentCallbacks.forEach(Runnable::run));
+
+            long now = System.nanoTime();
+            long bytes = 0;
+
+            for (int i = 0; i < batch.size(); i++) {
+                bytes += MessageFrames.HEADER_LENGTH + batch.get(i).length;
+                metrics.recordDeliveryLatency(now - createdTimes[i]);
+            }
+
+            metrics.recordBytesOut(bytes);
+        } catch (IOException e) {
+            System.out.println("Błąd przy wysyle komunikatu");
+            discard();
+            transport.abort();
+        }
+    }
+}
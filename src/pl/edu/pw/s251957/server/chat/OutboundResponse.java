@@ -0,0 +1,122 @@
+package pl.edu.pw.s251957.server.chat;
+
+import pl.edu.pw.s251957.common.MessageCodec;
+import pl.edu.pw.s251957.common.Response;
+import pl.edu.pw.s251957.server.metrics.ServerMetrics;
+
+import java.io.IOException;
+
+/** Odpowiedź serwera oczekująca w kolejce wychodzącej {@link OutboundQueue}. Ta sama instancja może trafić do kolejek
+ * wielu klientów - przy rozsyłaniu komunikatu do wszystkich użytkowników odpowiedź jest kodowana tylko raz dla
+ * każdego współdzielonego kodera, a powstała tablica bajtów wysyłana jest wszystkim odbiorcom. Zakodowanej treści
+ * nie wolno modyfikować. Odpowiedź pamięta treść dla kilku współdzielonych koderów naraz, ponieważ odbiorcy mogą
+ * używać różnych wersji protokołu i kompresji. Koderzy zależni od stanu połączenia kodują odpowiedź osobno dla
+ * każdego odbiorcy. Odpowiedź do jednego odbiorcy może mieć zadanie wywoływane po zapisaniu jej do gniazda.
+ *
+ * @see OutboundQueue
+ * @see MessageCodec#isShareable()
+ */
+final class OutboundResponse {
+    /** Liczba współdzielonych koderów, dla których zapamiętywana jest treść */
+    private static final int SHARED_SLOTS = 3;
+
+    /** Odpowiedź serwera */
+    private final Response response;
+    /** Chwila utworzenia odpowiedzi według {@link System#nanoTime()} */
+    private final long createdNanos;
+    /** Zadanie wywoływane po zapisaniu odpowiedzi do gniazda lub {@code null} */
+    private final Runnable onSent;
+
+    /** Koderzy, którymi zakodowano zapamiętane treści */
+    private final MessageCodec[] sharedCodecs = new MessageCodec[SHARED_SLOTS];
+    /** Zapamiętane treści ramki, w kolejności jak {@link #sharedCodecs} */
+    private final byte[][] sharedPayloads = new byte[SHARED_SLOTS][];
+
+    /**
+     * Tworzy odpowiedź oczekującą na wysłanie.
+     *
+     * @param response odpowiedź serwera
+     */
+    OutboundResponse(Response response) {
+        this(response, null);
+    }
+
+    /**
+     * Tworzy odpowiedź oczekującą na wysłanie, po której zapisaniu do gniazda wywoływane jest podane zadanie. Jeśli
+     * odpowiedź zostanie porzucona, zadanie nie jest wywoływane.
+     *
+     * @param response odpowiedź serwera
+     * @param onSent zadanie wywoływane po zapisaniu odpowiedzi lub {@code null}
+     */
+    OutboundResponse(Response response, Runnable onSent) {
+        this.response = response;
+        this.createdNanos = System.nanoTime();
+        this.onSent = onSent;
+    }
+
+    /**
+     * Koduje odpowiedź do treści ramki. Dla współdzielonego kodera treść jest kodowana tylko przy pierwszym wywołaniu,
+     * a kolejni odbiorcy otrzymują tę samą tablicę bajtów. Gdy wszystkie miejsca są zajęte, zastępowane jest
+     * ostatnie z nich. Czas kodowania zapisywany jest w metrykach tylko wtedy,
+     * gdy odpowiedź jest faktycznie kodowana.
+     *
+     * @param codec koder połączenia odbiorcy
+     * @param metrics metryki serwera
+     * @return treść ramki
+     * @throws IOException błąd kodowania odpowiedzi
+     */
+    byte[] encode(MessageCodec codec, ServerMetrics metrics) throws IOException {
+        if(!codec.isShareable()) {
+            return encodeTimed(codec, metrics);
+        }
+
+        synchronized (this) {
+            int slot = 0;
+
+            while (slot < SHARED_SLOTS - 1 && sharedCodecs[slot] != null && sharedCodecs[slot] != codec) {
+                slot++;
+            }
+
+            if(sharedCodecs[slot] != codec) {
+                sharedPayloads[slot] = encodeTimed(codec, metrics);
+                sharedCodecs[slot] = codec;
+            }
+
+            return sharedPayloads[slot];
+        }
+    }
+
+    /**
+     * Zwraca chwilę utworzenia odpowiedzi, od której liczone jest opóźnienie jej dostarczenia.
+     *
+     * @return chwila utworzenia według {@link System#nanoTime()}
+     */
+    long getCreatedNanos() {
+        return createdNanos;
+    }
+
+    /**
+     * Zwraca zadanie wywoływane po zapisaniu odpowiedzi do gniazda.
+     *
+     * @return zadanie lub {@code null}
+     */
+    Runnable getOnSent() {
+        return onSent;
+    }
+
+    /**
+     * Koduje odpowiedź podanym koderem i zapisuje czas kodowania w metrykach.
+     *
+     * @param codec koder połączenia odbiorcy
+     * @param metrics metryki serwera
+     * @return treść ramki
+     * @throws IOException błąd kodowania odpowiedzi
+     */
+    private byte[] encodeTimed(MessageCodec codec, ServerMetrics metrics) throws IOException {
+        long start = System.nanoTime();
+        byte[] payload = codec.encodeResponse(response);
+        metrics.recordEncodeTime(System.nanoTime() - start);
+
+        return payload;
+    }
+}
@@ -0,0 +1,12 @@
+package pl.edu.pw.s251957.server.chat;
+
+/** Sposób postępowania z odpowiedzią, która nie mieści się w kolejce wychodzącej połączenia {@link OutboundQueue}.
+ *
+ * @see OutboundQueue
+ */
+public enum OverflowPolicy {
+    /** Odpowiedź zostaje porzucona, a połączenie pozostaje otwarte */
+    DROP,
+    /** Połączenie z klientem, który nie nadąża z odbiorem, zostaje zamknięte */
+    DISCONNECT
+}
@@ -0,0 +1,66 @@
+package pl.edu.pw.s251957.server.chat;
+
+/** Limit żądań jednego typu od jednego połączenia w postaci wiadra żetonów - połączenie może wysłać naraz do
+ * {@code burst} żądań, a później kolejne żetony przybywają ze stałą częstotliwością. Obiekt jest niezmienny, więc
+ * jeden limit może być współdzielony przez ustawienia wielu typów żądań.
+ *
+ * @see ServerSettings
+ * @see TokenBucket
+ */
+public final class RateLimit {
+    /** Maksymalna liczba żetonów w wiadrze */
+    private final int burst;
+    /** Liczba żetonów przybywających na sekundę */
+    private final double ratePerSecond;
+
+    /**
+     * Tworzy limit żądań.
+     *
+     * @param burst maksymalna liczba żądań wysłanych naraz, co najmniej 1
+     * @param ratePerSecond liczba żądań na sekundę po wyczerpaniu serii, większa od 0
+     */
+    public RateLimit(int burst, double ratePerSecond) {
+        if(burst < 1) {
+            throw new IllegalArgumentException("Seria żądań musi wynosić co najmniej 1");
+        }
+
+        if(!(ratePerSecond > 0)) {
+            throw new IllegalArgumentException("Liczba żądań na sekundę musi być większa od 0");
+        }
+
+        this.burst = burst;
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    /**
+     * Zwraca maksymalną liczbę żądań wysłanych naraz.
+     *
+     * @return liczba żetonów w pełnym wiadrze
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Zwraca liczbę żądań na sekundę po wyczerpaniu serii.
+     *
+     * @return liczba żetonów przybywających na sekundę
+     */
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    /**
+     * Zwraca odstęp między kolejnymi żetonami.
+     *
+     * @return odstęp w nanosekundach, co najmniej 1
+     */
+    long getIntervalNanos() {
+        return Math.max(1, (long) (1_000_000_000L / ratePerSecond));
+    }
+
+    @Override
+    public String toString() {
+        return burst + " naraz, " + ratePerSecond + "/s";
+    }
+}
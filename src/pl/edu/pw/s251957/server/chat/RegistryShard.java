@@ -0,0 +1,269 @@
+package pl.edu.pw.s251957.server.chat;
+
+import pl.edu.pw.s251957.server.store.ConversationHistoryStore;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/** Część rejestru użytkowników należąca do jednego wątku. Wątek przechowuje połączenia użytkowników, których nicki
+ * przypadły mu w {@link ShardedRegistry}, oraz własną kopię nicków wszystkich użytkowników z ich numerami sesji,
+ * aktualizowaną zdarzeniami dołączenia i odejścia. Dodanemu połączeniu wątek nadaje numer sesji, którego reszta
+ * z dzielenia przez liczbę części jest numerem tej części, więc wiadomość adresowana numerem trafia do właściwej
+ * części bez haszowania nicku, a połączenie wyszukiwane jest w tablicy {@link IntConnectionMap}. Pozostałe wątki nie
+ * odczytują tych struktur - przekazują wątkowi zadania przez kolejkę {@link MpscQueue}, które wykonuje on po kolei,
+ * więc struktury nie wymagają blokad. Pusta kolejka usypia wątek do czasu dodania kolejnego zadania. Wątek ma też
+ * własny magazyn {@link ConversationHistoryStore} z historią konwersacji, które przypadły mu według pary uczestników,
+ * więc zapis i odczyt historii również nie wymagają blokad. Rozszerza klasę {@link Thread}.
+ *
+ * @see ShardedRegistry
+ * @see MpscQueue
+ */
+class RegistryShard extends Thread {
+    /** Zadania oczekujące na wykonanie przez wątek */
+    private final MpscQueue<Runnable> tasks;
+    /** Połączenia użytkowników należących do wątku według nicku */
+    private final Map<String, ClientConnection> connections;
+    /** Połączenia użytkowników należących do wątku według numeru sesji */
+    private final IntConnectionMap sessions;
+    /** Kopia nicków wszystkich użytkowników z ich numerami sesji, 0 dla użytkowników innych węzłów klastra */
+    private final Map<String, Integer> users;
+    /** Numer części rejestru */
+    private final int index;
+    /** Liczba części rejestru */
+    private final int shardCount;
+    /** Licznik nadanych numerów sesji */
+    private int sessionCounter;
+    /** Magazyn historii konwersacji należących do wątku lub {@code null}, jeśli historia nie jest zapisywana */
+    private ConversationHistoryStore historyStore;
+
+    /** Flaga informująca o tym czy wątek jest uruchomiony */
+    private volatile boolean running;
+    /** Flaga czy wątek czeka na zadania */
+    private volatile boolean parked;
+    /** Liczba połączeń użytkowników należących do wątku */
+    private volatile int connectionCount;
+
+    /**
+     * Tworzy wątek części rejestru.
+     *
+     * @param index numer części rejestru
+     * @param shardCount liczba części rejestru
+     */
+    RegistryShard(int index, int shardCount) {
+        super("registry-shard-" + index);
+        this.tasks = new MpscQueue<>();
+        this.connections = new HashMap<>();
+        this.sessions = new IntConnectionMap();
+        this.users = new HashMap<>();
+        this.index = index;
+        this.shardCount = shardCount;
+        this.running = true;
+        setDaemon(true);
+    }
+
+    /**
+     * Zleca wątkowi zadanie. Zadania zlecone przez jeden wątek wykonywane są w kolejności zlecenia.
+     *
+     * @param task zadanie
+     */
+    void execute(Runnable task) {
+        tasks.offer(task);
+
+        if(parked) {
+            LockSupport.unpark(this);
+        }
+    }
+
+    /**
+     * Kończy pracę wątku po wykonaniu zadań zleconych przed wywołaniem metody.
+     */
+    void shutdown() {
+        execute(() -> running = false);
+    }
+
+    /**
+     * Wykonuje zlecone zadania, dopóki wątek jest uruchomiony. Błąd zadania nie zatrzymuje wątku.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            Runnable task = tasks.poll();
+
+            if(task == null) {
+                awaitTask();
+                continue;
+            }
+
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.out.println("Błąd w wątku rejestru: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Usypia wątek, jeśli kolejka nadal jest pusta. Flaga ustawiana jest przed ponownym sprawdzeniem kolejki, więc
+     * producent dodający zadanie w tej chwili zawsze wybudzi wątek.
+     */
+    private void awaitTask() {
+        parked = true;
+
+        if(tasks.isEmpty()) {
+            LockSupport.park(this);
+        }
+
+        parked = false;
+    }
+
+    /**
+     * Zwraca połączenie użytkownika należącego do wątku. Wywoływana tylko przez wątek części rejestru.
+     *
+     * @param nick nick użytkownika
+     * @return połączenie użytkownika lub {@code null}, jeśli użytkownik nie jest podłączony
+     */
+    ClientConnection getConnection(String nick) {
+        return connections.get(nick);
+    }
+
+    /**
+     * Zwraca połączenie o podanym numerze sesji. Wywoływana tylko przez wątek części rejestru.
+     *
+     * @param sessionId numer sesji nadany przez tę część
+     * @return połączenie użytkownika lub {@code null}, jeśli sesja została zakończona
+     */
+    ClientConnection getSession(int sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * Nadaje połączeniu numer sesji i zapisuje je pod tym numerem. Numery nadawane są kolejno, a po wyczerpaniu
+     * zakresu liczb dodatnich licznik zaczyna od początku, pomijając numery wciąż używanych sesji. Sesja kończy się
+     * razem z usunięciem połączenia. Wywoływana tylko przez wątek części rejestru.
+     *
+     * @param connection połączenie użytkownika
+     * @return numer sesji połączenia
+     */
+    int openSession(ClientConnection connection) {
+        int sessionId;
+
+        do {
+            if(++sessionCounter > (Integer.MAX_VALUE - index) / shardCount) {
+                sessionCounter = 1;
+            }
+
+            sessionId = sessionCounter * shardCount + index;
+        } while (sessions.get(sessionId) != null);
+
+        sessions.put(sessionId, connection);
+        connection.setSessionId(sessionId);
+
+        return sessionId;
+    }
+
+    /**
+     * Zapisuje połączenie użytkownika. Wywoływana tylko przez wątek części rejestru.
+     *
+     * @param nick nick użytkownika
+     * @param connection połączenie użytkownika
+     */
+    void putConnection(String nick, ClientConnection connection) {
+        connections.put(nick, connection);
+        connectionCount = connections.size();
+    }
+
+    /**
+     * Usuwa połączenie użytkownika, jeśli nick jest nadal do niego przypisany. Wywoływana tylko przez wątek części
+     * rejestru.
+     *
+     * @param nick nick użytkownika
+     * @param connection połączenie użytkownika
+     * @return flaga czy połączenie zostało usunięte
+     */
+    boolean removeConnection(String nick, ClientConnection connection) {
+        boolean removed = connections.remove(nick, connection);
+
+        if(removed) {
+            sessions.remove(connection.getSessionId(), connection);
+        }
+
+        connectionCount = connections.size();
+
+        return removed;
+    }
+
+    /**
+     * Usuwa połączenie użytkownika niezależnie od tego, które połączenie jest przypisane do nicku. Wywoływana tylko
+     * przez wątek części rejestru.
+     *
+     * @param nick nick użytkownika
+     * @return usunięte połączenie lub {@code null}, jeśli użytkownik nie był podłączony
+     */
+    ClientConnection removeConnection(String nick) {
+        ClientConnection connection = connections.remove(nick);
+
+        if(connection != null) {
+            sessions.remove(connection.getSessionId(), connection);
+        }
+
+        connectionCount = connections.size();
+
+        return connection;
+    }
+
+    /**
+     * Zwraca połączenia użytkowników należących do wątku. Wywoływana tylko przez wątek części rejestru.
+     *
+     * @return połączenia użytkowników
+     */
+    Collection<ClientConnection> getConnections() {
+        return connections.values();
+    }
+
+    /**
+     * Zwraca połączenia użytkowników należących do wątku według nicku. Wywoływana tylko przez wątek części rejestru.
+     *
+     * @return połączenia użytkowników według nicku
+     */
+    Map<String, ClientConnection> getConnectionsByNick() {
+        return connections;
+    }
+
+    /**
+     * Zwraca kopię nicków wszystkich użytkowników z ich numerami sesji. Wywoływana tylko przez wątek części rejestru.
+     *
+     * @return numery sesji według nicków użytkowników, 0 dla użytkowników innych węzłów klastra
+     */
+    Map<String, Integer> getUsers() {
+        return users;
+    }
+
+    /**
+     * Zwraca magazyn historii konwersacji należących do wątku. Wywoływana tylko przez wątek części rejestru.
+     *
+     * @return magazyn historii lub {@code null}, jeśli historia nie jest zapisywana
+     */
+    ConversationHistoryStore getHistoryStore() {
+        return historyStore;
+    }
+
+    /**
+     * Ustawia magazyn historii konwersacji należących do wątku. Wywoływana przed uruchomieniem wątku.
+     *
+     * @param historyStore magazyn historii
+     */
+    void setHistoryStore(ConversationHistoryStore historyStore) {
+        this.historyStore = historyStore;
+    }
+
+    /**
+     * Zwraca liczbę połączeń użytkowników należących do wątku. Może być wywoływana przez dowolny wątek.
+     *
+     * @return liczba połączeń
+     */
+    int getConnectionCount() {
+        return connectionCount;
+    }
+}
@@ -0,0 +1,14 @@
+package pl.edu.pw.s251957.server.chat;
+
+/** Tryb obsługi połączeń klientów przez serwer {@link ChatServer}.
+ *
+ * @see ChatServer
+ */
+public enum ServerMode {
+    /** Każde połączenie obsługiwane jest przez osobny wątek blokujący na gnieździe */
+    THREADS,
+    /** Każde połączenie obsługiwane jest przez osobny wątek wirtualny blokujący na gnieździe */
+    VIRTUAL_THREADS,
+    /** Wszystkie połączenia obsługiwane są przez niewielką pulę wątków nieblokujących opartych o {@link java.nio.channels.Selector} */
+    NIO
+}
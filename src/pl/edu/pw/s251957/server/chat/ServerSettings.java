@@ -0,0 +1,573 @@
+package pl.edu.pw.s251957.server.chat;
+
+import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.CompressingCodec;
+import pl.edu.pw.s251957.common.MessageFrames;
+import pl.edu.pw.s251957.common.SerializationCodec;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/** Klasa przedstawiająca ustawienia serwera {@link ChatServer}. Każde ustawienie ma wartość domyślną, więc wystarczy
+ * zmienić tylko wybrane z nich.
+ *
+ * @see ChatServer
+ */
+public class ServerSettings {
+    /** Tryb obsługi połączeń */
+    private ServerMode serverMode;
+    /** Liczba wątków obsługujących połączenia w trybie {@link ServerMode#NIO} */
+    private int reactorThreads;
+    /** Liczba części rejestru użytkowników, każda z własnym wątkiem */
+    private int registryShards;
+    /** Maksymalna liczba odpowiedzi oczekujących na wysłanie do jednego klienta */
+    private int outboundQueueCapacity;
+    /** Sposób postępowania z odpowiedzią, która nie mieści się w kolejce wychodzącej */
+    private OverflowPolicy overflowPolicy;
+    /** Liczba komunikatów, po której strumień serializacji starszego klienta jest resetowany */
+    private int serializationResetMessages;
+    /** Liczba bajtów, po której strumień serializacji starszego klienta jest resetowany */
+    private long serializationResetBytes;
+    /** Flaga czy serwer kompresuje odpowiedzi dla klientów, którzy zaproponowali kompresję */
+    private boolean compressionEnabled;
+    /** Minimalna długość kompresowanej odpowiedzi w bajtach */
+    private int compressionThreshold;
+    /** Ścieżka magazynu kluczy PKCS12 z certyfikatem serwera, {@code null} wyłącza TLS */
+    private String tlsKeyStore;
+    /** Hasło magazynu kluczy i klucza prywatnego serwera */
+    private String tlsKeyStorePassword;
+    /** Maksymalna liczba sesji TLS pamiętanych przez serwer do wznowienia */
+    private int tlsSessionCacheSize;
+    /** Czas, przez który sesję TLS można wznowić, w sekundach */
+    private int tlsSessionTimeout;
+    /** Czas bez odebranej ramki, po którym serwer wysyła klientowi {@code PING}, w milisekundach, 0 wyłącza */
+    private long heartbeatInterval;
+    /** Czas oczekiwania na dowolną ramkę od klienta po wysłaniu {@code PING} w milisekundach */
+    private long heartbeatTimeout;
+    /** Limity żądań jednego połączenia według typu, typy bez limitu nie mają wpisu */
+    private final Map<Command.CommandType, RateLimit> rateLimits;
+    /** Limit żądań odrzuconych z powodu przekroczenia limitu, po którym połączenie jest zamykane, {@code null} wyłącza */
+    private RateLimit floodLimit;
+    /** Katalog magazynu wiadomości dla niepodłączonych użytkowników, {@code null} wyłącza magazyn */
+    private String offlineStoreDirectory;
+    /** Rozmiar segmentu dziennika magazynu wiadomości w bajtach */
+    private int offlineStoreSegmentSize;
+    /** Katalog historii konwersacji, {@code null} wyłącza zapisywanie historii */
+    private String historyDirectory;
+    /** Maksymalny rozmiar segmentu historii konwersacji w bajtach */
+    private int historySegmentSize;
+    /** Liczba wiadomości na stronie historii konwersacji */
+    private int historyPageSize;
+    /** Identyfikator węzła klastra, {@code null} uruchamia samodzielny serwer */
+    private String clusterNodeId;
+    /** Port, na którym węzeł przyjmuje połączenia od innych węzłów klastra */
+    private int clusterPort;
+    /** Adresy węzłów klastra w postaci {@code host:port} */
+    private List<String> clusterPeers;
+
+    /**
+     * Tworzy ustawienia z wartościami domyślnymi.
+     */
+    public ServerSettings() {
+        this.serverMode = ServerMode.THREADS;
+        this.reactorThreads = Runtime.getRuntime().availableProcessors();
+        this.registryShards = Runtime.getRuntime().availableProcessors();
+        this.outboundQueueCapacity = 1024;
+        this.overflowPolicy = OverflowPolicy.DISCONNECT;
+        this.serializationResetMessages = SerializationCodec.DEFAULT_RESET_MESSAGE_THRESHOLD;
+        this.serializationResetBytes = SerializationCodec.DEFAULT_RESET_BYTE_THRESHOLD;
+        this.compressionEnabled = true;
+        this.compressionThreshold = CompressingCodec.DEFAULT_THRESHOLD;
+        this.tlsKeyStore = null;
+        this.tlsKeyStorePassword = "";
+        this.tlsSessionCacheSize = 20000;
+        this.tlsSessionTimeout = 3600;
+        this.heartbeatInterval = 30000;
+        this.heartbeatTimeout = 10000;
+        this.rateLimits = new EnumMap<>(Command.CommandType.class);
+        this.rateLimits.put(Command.CommandType.SEND_MESSAGE, new RateLimit(20, 10));
+        this.rateLimits.put(Command.CommandType.SESSION_MESSAGE, new RateLimit(20, 10));
+        this.rateLimits.put(Command.CommandType.SEND_ROOM_MESSAGE, new RateLimit(20, 10));
+        this.rateLimits.put(Command.CommandType.START_CONVERSATION, new RateLimit(10, 1));
+        this.rateLimits.put(Command.CommandType.CREATE_ROOM, new RateLimit(10, 1));
+        this.rateLimits.put(Command.CommandType.JOIN_ROOM, new RateLimit(10, 1));
+        this.rateLimits.put(Command.CommandType.HISTORY, new RateLimit(20, 5));
+        this.floodLimit = new RateLimit(20, 1);
+        this.offlineStoreDirectory = "offline-messages";
+        this.offlineStoreSegmentSize = 16 * 1024 * 1024;
+        this.historyDirectory = "history";
+        this.historySegmentSize = 4 * 1024 * 1024;
+        this.historyPageSize = 50;
+        this.clusterNodeId = null;
+        this.clusterPort = 7000;
+        this.clusterPeers = new ArrayList<>();
+    }
+
+    /**
+     * Zwraca tryb obsługi połączeń.
+     *
+     * @return tryb obsługi połączeń
+     */
+    public ServerMode getServerMode() {
+        return serverMode;
+    }
+
+    /**
+     * Ustawia tryb obsługi połączeń.
+     *
+     * @param serverMode tryb obsługi połączeń
+     */
+    public void setServerMode(ServerMode serverMode) {
+        this.serverMode = serverMode;
+    }
+
+    /**
+     * Zwraca liczbę wątków obsługujących połączenia w trybie {@link ServerMode#NIO}.
+     *
+     * @return liczba wątków
+     */
+    public int getReactorThreads() {
+        return reactorThreads;
+    }
+
+    /**
+     * Ustawia liczbę wątków obsługujących połączenia w trybie {@link ServerMode#NIO}.
+     *
+     * @param reactorThreads liczba wątków, co najmniej jeden
+     */
+    public void setReactorThreads(int reactorThreads) {
+        this.reactorThreads = Math.max(1, reactorThreads);
+    }
+
+    /**
+     * Zwraca liczbę części rejestru użytkowników.
+     *
+     * @return liczba części
+     */
+    public int getRegistryShards() {
+        return registryShards;
+    }
+
+    /**
+     * Ustawia liczbę części rejestru użytkowników. Każda część ma własny wątek, który rejestruje jej użytkowników
+     * i przekazuje im wiadomości.
+     *
+     * @param registryShards liczba części, co najmniej jedna
+     */
+    public void setRegistryShards(int registryShards) {
+        this.registryShards = Math.max(1, registryShards);
+    }
+
+    /**
+     * Zwraca maksymalną liczbę odpowiedzi oczekujących na wysłanie do jednego klienta.
+     *
+     * @return pojemność kolejki wychodzącej
+     */
+    public int getOutboundQueueCapacity() {
+        return outboundQueueCapacity;
+    }
+
+    /**
+     * Ustawia maksymalną liczbę odpowiedzi oczekujących na wysłanie do jednego klienta.
+     *
+     * @param outboundQueueCapacity pojemność kolejki wychodzącej, co najmniej jeden
+     */
+    public void setOutboundQueueCapacity(int outboundQueueCapacity) {
+        this.outboundQueueCapacity = Math.max(1, outboundQueueCapacity);
+    }
+
+    /**
+     * Zwraca sposób postępowania z odpowiedzią, która nie mieści się w kolejce wychodzącej.
+     *
+     * @return sposób postępowania z przepełnieniem
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Ustawia sposób postępowania z odpowiedzią, która nie mieści się w kolejce wychodzącej.
+     *
+     * @param overflowPolicy sposób postępowania z przepełnieniem
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Zwraca liczbę komunikatów, po której strumień serializacji starszego klienta jest resetowany.
+     *
+     * @return próg liczby komunikatów
+     */
+    public int getSerializationResetMessages() {
+        return serializationResetMessages;
+    }
+
+    /**
+     * Ustawia liczbę komunikatów, po której strumień serializacji starszego klienta jest resetowany.
+     *
+     * @param serializationResetMessages próg liczby komunikatów, co najmniej jeden
+     */
+    public void setSerializationResetMessages(int serializationResetMessages) {
+        this.serializationResetMessages = Math.max(1, serializationResetMessages);
+    }
+
+    /**
+     * Zwraca liczbę bajtów, po której strumień serializacji starszego klienta jest resetowany.
+     *
+     * @return próg liczby bajtów
+     */
+    public long getSerializationResetBytes() {
+        return serializationResetBytes;
+    }
+
+    /**
+     * Ustawia liczbę bajtów, po której strumień serializacji starszego klienta jest resetowany.
+     *
+     * @param serializationResetBytes próg liczby bajtów, co najmniej jeden
+     */
+    public void setSerializationResetBytes(long serializationResetBytes) {
+        this.serializationResetBytes = Math.max(1, serializationResetBytes);
+    }
+
+    /**
+     * Informuje czy serwer kompresuje odpowiedzi dla klientów, którzy zaproponowali kompresję w żądaniu połączenia.
+     *
+     * @return flaga czy kompresja jest włączona
+     */
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * Włącza lub wyłącza kompresję odpowiedzi. Ramki skompresowane przez klientów są odczytywane niezależnie od tego
+     * ustawienia.
+     *
+     * @param compressionEnabled flaga czy kompresja jest włączona
+     */
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    /**
+     * Zwraca minimalną długość kompresowanej odpowiedzi.
+     *
+     * @return długość w bajtach
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Ustawia minimalną długość kompresowanej odpowiedzi. Krótkie odpowiedzi zyskują na kompresji niewiele, a koszt
+     * procesora pozostaje ten sam.
+     *
+     * @param compressionThreshold długość w bajtach, co najmniej 1
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = Math.max(1, compressionThreshold);
+    }
+
+    /**
+     * Zwraca ścieżkę magazynu kluczy z certyfikatem serwera.
+     *
+     * @return ścieżka magazynu kluczy lub {@code null}, jeśli TLS jest wyłączony
+     */
+    public String getTlsKeyStore() {
+        return tlsKeyStore;
+    }
+
+    /**
+     * Ustawia ścieżkę magazynu kluczy PKCS12 z certyfikatem serwera. Podanie magazynu włącza szyfrowanie wszystkich
+     * połączeń klientów w każdym trybie serwera.
+     *
+     * @param tlsKeyStore ścieżka magazynu kluczy lub {@code null}, aby wyłączyć TLS
+     */
+    public void setTlsKeyStore(String tlsKeyStore) {
+        this.tlsKeyStore = tlsKeyStore;
+    }
+
+    /**
+     * Zwraca hasło magazynu kluczy serwera.
+     *
+     * @return hasło magazynu kluczy
+     */
+    public String getTlsKeyStorePassword() {
+        return tlsKeyStorePassword;
+    }
+
+    /**
+     * Ustawia hasło magazynu kluczy, używane również jako hasło klucza prywatnego serwera.
+     *
+     * @param tlsKeyStorePassword hasło magazynu kluczy
+     */
+    public void setTlsKeyStorePassword(String tlsKeyStorePassword) {
+        this.tlsKeyStorePassword = tlsKeyStorePassword;
+    }
+
+    /**
+     * Zwraca maksymalną liczbę sesji TLS pamiętanych przez serwer.
+     *
+     * @return liczba sesji
+     */
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    /**
+     * Ustawia maksymalną liczbę sesji TLS pamiętanych przez serwer do wznowienia. Pamięć podręczna powinna mieścić
+     * sesje wszystkich użytkowników, aby po awarii sieci łączący się ponownie klienci nie wykonywali pełnego
+     * uzgodnienia.
+     *
+     * @param tlsSessionCacheSize liczba sesji, co najmniej 1
+     */
+    public void setTlsSessionCacheSize(int tlsSessionCacheSize) {
+        this.tlsSessionCacheSize = Math.max(1, tlsSessionCacheSize);
+    }
+
+    /**
+     * Zwraca czas, przez który sesję TLS można wznowić.
+     *
+     * @return czas w sekundach
+     */
+    public int getTlsSessionTimeout() {
+        return tlsSessionTimeout;
+    }
+
+    /**
+     * Ustawia czas, przez który sesję TLS można wznowić, również przy pomocy biletu sesji.
+     *
+     * @param tlsSessionTimeout czas w sekundach, co najmniej 1
+     */
+    public void setTlsSessionTimeout(int tlsSessionTimeout) {
+        this.tlsSessionTimeout = Math.max(1, tlsSessionTimeout);
+    }
+
+    /**
+     * Zwraca czas bez odebranej ramki, po którym serwer sprawdza połączenie wysyłając {@code PING}.
+     *
+     * @return czas w milisekundach lub 0, jeśli sprawdzanie połączeń jest wyłączone
+     */
+    public long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    /**
+     * Ustawia czas bez odebranej ramki, po którym serwer sprawdza połączenie wysyłając {@code PING}. Wartość 0
+     * wyłącza sprawdzanie i zamykanie bezczynnych połączeń.
+     *
+     * @param heartbeatInterval czas w milisekundach, co najmniej 0
+     */
+    public void setHeartbeatInterval(long heartbeatInterval) {
+        this.heartbeatInterval = Math.max(0, heartbeatInterval);
+    }
+
+    /**
+     * Zwraca czas oczekiwania na ramkę od klienta po wysłaniu {@code PING}. Połączenie, które w tym czasie nic nie
+     * przyśle, zostaje zamknięte.
+     *
+     * @return czas w milisekundach
+     */
+    public long getHeartbeatTimeout() {
+        return heartbeatTimeout;
+    }
+
+    /**
+     * Ustawia czas oczekiwania na ramkę od klienta po wysłaniu {@code PING}.
+     *
+     * @param heartbeatTimeout czas w milisekundach, co najmniej 1
+     */
+    public void setHeartbeatTimeout(long heartbeatTimeout) {
+        this.heartbeatTimeout = Math.max(1, heartbeatTimeout);
+    }
+
+    /**
+     * Zwraca limit żądań danego typu od jednego połączenia.
+     *
+     * @param commandType typ żądania
+     * @return limit żądań lub {@code null}, jeśli żądania tego typu nie są ograniczane
+     */
+    public RateLimit getRateLimit(Command.CommandType commandType) {
+        return rateLimits.get(commandType);
+    }
+
+    /**
+     * Ustawia limit żądań danego typu od jednego połączenia. Domyślnie ograniczane są wiadomości, rozpoczęcia
+     * konwersacji, tworzenie i dołączanie do pokojów oraz pobieranie historii.
+     *
+     * @param commandType typ żądania
+     * @param rateLimit limit żądań lub {@code null}, aby nie ograniczać żądań tego typu
+     */
+    public void setRateLimit(Command.CommandType commandType, RateLimit rateLimit) {
+        if(rateLimit == null) {
+            rateLimits.remove(commandType);
+        } else {
+            rateLimits.put(commandType, rateLimit);
+        }
+    }
+
+    /**
+     * Zwraca limit żądań odrzuconych z powodu przekroczenia limitu. Połączenie, które go przekroczy, zostaje zamknięte.
+     *
+     * @return limit odrzuconych żądań lub {@code null}, jeśli połączenia nie są zamykane
+     */
+    public RateLimit getFloodLimit() {
+        return floodLimit;
+    }
+
+    /**
+     * Ustawia limit żądań odrzuconych z powodu przekroczenia limitu, po którym połączenie jest zamykane.
+     *
+     * @param floodLimit limit odrzuconych żądań lub {@code null}, aby nie zamykać połączeń
+     */
+    public void setFloodLimit(RateLimit floodLimit) {
+        this.floodLimit = floodLimit;
+    }
+
+    /**
+     * Zwraca katalog magazynu wiadomości dla niepodłączonych użytkowników.
+     *
+     * @return katalog magazynu lub {@code null}, jeśli magazyn jest wyłączony
+     */
+    public String getOfflineStoreDirectory() {
+        return offlineStoreDirectory;
+    }
+
+    /**
+     * Ustawia katalog magazynu wiadomości dla niepodłączonych użytkowników.
+     *
+     * @param offlineStoreDirectory katalog magazynu lub {@code null}, aby wyłączyć magazyn
+     */
+    public void setOfflineStoreDirectory(String offlineStoreDirectory) {
+        this.offlineStoreDirectory = offlineStoreDirectory;
+    }
+
+    /**
+     * Zwraca rozmiar segmentu dziennika magazynu wiadomości.
+     *
+     * @return rozmiar segmentu w bajtach
+     */
+    public int getOfflineStoreSegmentSize() {
+        return offlineStoreSegmentSize;
+    }
+
+    /**
+     * Ustawia rozmiar segmentu dziennika magazynu wiadomości. Segment musi pomieścić największą dozwoloną ramkę.
+     *
+     * @param offlineStoreSegmentSize rozmiar segmentu w bajtach
+     */
+    public void setOfflineStoreSegmentSize(int offlineStoreSegmentSize) {
+        this.offlineStoreSegmentSize = Math.max(2 * MessageFrames.MAX_PAYLOAD_LENGTH, offlineStoreSegmentSize);
+    }
+
+    /**
+     * Zwraca katalog historii konwersacji.
+     *
+     * @return katalog historii lub {@code null}, jeśli historia nie jest zapisywana
+     */
+    public String getHistoryDirectory() {
+        return historyDirectory;
+    }
+
+    /**
+     * Ustawia katalog historii konwersacji.
+     *
+     * @param historyDirectory katalog historii lub {@code null}, aby wyłączyć zapisywanie historii
+     */
+    public void setHistoryDirectory(String historyDirectory) {
+        this.historyDirectory = historyDirectory;
+    }
+
+    /**
+     * Zwraca maksymalny rozmiar segmentu historii konwersacji.
+     *
+     * @return rozmiar segmentu w bajtach
+     */
+    public int getHistorySegmentSize() {
+        return historySegmentSize;
+    }
+
+    /**
+     * Ustawia maksymalny rozmiar segmentu historii konwersacji.
+     *
+     * @param historySegmentSize rozmiar segmentu w bajtach, co najmniej jeden
+     */
+    public void setHistorySegmentSize(int historySegmentSize) {
+        this.historySegmentSize = Math.max(1, historySegmentSize);
+    }
+
+    /**
+     * Zwraca liczbę wiadomości na stronie historii konwersacji.
+     *
+     * @return liczba wiadomości na stronie
+     */
+    public int getHistoryPageSize() {
+        return historyPageSize;
+    }
+
+    /**
+     * Ustawia liczbę wiadomości na stronie historii konwersacji.
+     *
+     * @param historyPageSize liczba wiadomości na stronie, co najmniej jedna
+     */
+    public void setHistoryPageSize(int historyPageSize) {
+        this.historyPageSize = Math.max(1, historyPageSize);
+    }
+
+    /**
+     * Zwraca identyfikator węzła klastra.
+     *
+     * @return identyfikator węzła lub {@code null}, jeśli serwer działa samodzielnie
+     */
+    public String getClusterNodeId() {
+        return clusterNodeId;
+    }
+
+    /**
+     * Ustawia identyfikator węzła klastra. Identyfikator musi być unikalny w klastrze, a przy konflikcie nicków
+     * pierwszeństwo ma węzeł o mniejszym identyfikatorze.
+     *
+     * @param clusterNodeId identyfikator węzła lub {@code null}, aby uruchomić samodzielny serwer
+     */
+    public void setClusterNodeId(String clusterNodeId) {
+        this.clusterNodeId = clusterNodeId;
+    }
+
+    /**
+     * Zwraca port, na którym węzeł przyjmuje połączenia od innych węzłów klastra.
+     *
+     * @return numer portu
+     */
+    public int getClusterPort() {
+        return clusterPort;
+    }
+
+    /**
+     * Ustawia port, na którym węzeł przyjmuje połączenia od innych węzłów klastra.
+     *
+     * @param clusterPort numer portu
+     */
+    public void setClusterPort(int clusterPort) {
+        this.clusterPort = clusterPort;
+    }
+
+    /**
+     * Zwraca adresy węzłów klastra.
+     *
+     * @return adresy węzłów w postaci {@code host:port}
+     */
+    public List<String> getClusterPeers() {
+        return clusterPeers;
+    }
+
+    /**
+     * Ustawia adresy węzłów klastra. Lista może zawierać adres samego węzła.
+     *
+     * @param clusterPeers adresy węzłów w postaci {@code host:port}
+     */
+    public void setClusterPeers(List<String> clusterPeers) {
+        this.clusterPeers = new ArrayList<>(clusterPeers);
+    }
+}
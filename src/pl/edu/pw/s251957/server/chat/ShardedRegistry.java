@@ -0,0 +1,258 @@
+package pl.edu.pw.s251957.server.chat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/** Rejestr użytkowników podzielony na części {@link RegistryShard}, z których każda należy do jednego wątku. Nick
+ * przypisywany jest części przez haszowanie spójne - na pierścieniu wartości skrótu każda część zajmuje wiele
+ * wirtualnych punktów, a nick trafia do części pierwszego punktu za jego skrótem. Dzięki temu zmiana liczby części
+ * przenosi tylko niewielką część nicków, a nicki rozkładają się równomiernie. Wszystkie operacje na nicku wykonuje
+ * wątek jego części, więc dołączanie, odchodzenie i przekazywanie wiadomości różnych użytkowników nie czekają na
+ * wspólną blokadę.
+ *
+ * @see RegistryShard
+ * @see ChatServer
+ */
+class ShardedRegistry {
+    /** Liczba wirtualnych punktów każdej części na pierścieniu */
+    private static final int VIRTUAL_NODES = 64;
+    /** Czas oczekiwania na zakończenie wątku części przy zatrzymywaniu rejestru w milisekundach */
+    private static final long SHUTDOWN_TIMEOUT = 2000;
+    /** Czas oczekiwania na wynik zapytania do części w sekundach */
+    private static final int QUERY_TIMEOUT = 5;
+
+    /** Części rejestru */
+    private final RegistryShard[] shards;
+    /** Posortowane skróty punktów pierścienia */
+    private final int[] ringHashes;
+    /** Numery części punktów pierścienia, w kolejności jak {@link #ringHashes} */
+    private final int[] ringShards;
+
+    /**
+     * Tworzy rejestr o podanej liczbie części i buduje pierścień haszowania spójnego.
+     *
+     * @param shardCount liczba części, co najmniej jedna
+     */
+    ShardedRegistry(int shardCount) {
+        this.shards = new RegistryShard[Math.max(1, shardCount)];
+        long[] points = new long[shards.length * VIRTUAL_NODES];
+
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new RegistryShard(i, shards.length);
+
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                int hash = hash(i * VIRTUAL_NODES + v + 0x5bd1e995);
+                points[i * VIRTUAL_NODES + v] = ((long) hash << 32) | i;
+            }
+        }
+
+        Arrays.sort(points);
+        this.ringHashes = new int[points.length];
+        this.ringShards = new int[points.length];
+
+        for (int i = 0; i < points.length; i++) {
+            ringHashes[i] = (int) (points[i] >> 32);
+            ringShards[i] = (int) points[i];
+        }
+    }
+
+    /**
+     * Miesza bity wartości skrótu, aby podobne nicki i kolejne punkty były rozłożone po całym pierścieniu.
+     *
+     * @param value wartość skrótu
+     * @return wymieszana wartość skrótu
+     */
+    private static int hash(int value) {
+        int hash = value;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+
+        return hash;
+    }
+
+    /**
+     * Uruchamia wątki części rejestru.
+     */
+    void start() {
+        for (RegistryShard shard : shards) {
+            shard.start();
+        }
+    }
+
+    /**
+     * Zatrzymuje wątki części rejestru po wykonaniu zleconych już zadań.
+     */
+    void shutdown() {
+        for (RegistryShard shard : shards) {
+            shard.shutdown();
+        }
+
+        for (RegistryShard shard : shards) {
+            try {
+                shard.join(SHUTDOWN_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Wyznacza część rejestru, do której należy nick.
+     *
+     * @param nick nick użytkownika
+     * @return część rejestru
+     */
+    RegistryShard shardFor(String nick) {
+        return shardForHash(nick.hashCode());
+    }
+
+    /**
+     * Wyznacza część rejestru, do której należy konwersacja pary użytkowników. Kolejność nicków nie ma znaczenia.
+     *
+     * @param firstNick nick pierwszego uczestnika
+     * @param secondNick nick drugiego uczestnika
+     * @return część rejestru
+     */
+    RegistryShard shardForConversation(String firstNick, String secondNick) {
+        return firstNick.compareTo(secondNick) <= 0
+                ? shardForHash(31 * firstNick.hashCode() + secondNick.hashCode())
+                : shardForHash(31 * secondNick.hashCode() + firstNick.hashCode());
+    }
+
+    /**
+     * Wyznacza część rejestru pierwszego punktu pierścienia za wymieszanym skrótem.
+     *
+     * @param value skrót klucza
+     * @return część rejestru
+     */
+    private RegistryShard shardForHash(int value) {
+        int hash = hash(value);
+        int index = Arrays.binarySearch(ringHashes, hash);
+
+        if(index < 0) {
+            index = -index - 1;
+        }
+
+        return shards[ringShards[index == ringHashes.length ? 0 : index]];
+    }
+
+    /**
+     * Wyznacza część rejestru, która nadała numer sesji. Numer nie jest haszowany - część wynika z reszty z dzielenia
+     * numeru przez liczbę części.
+     *
+     * @param sessionId dodatni numer sesji
+     * @return część rejestru
+     */
+    RegistryShard shardForSession(int sessionId) {
+        return shards[sessionId % shards.length];
+    }
+
+    /**
+     * Zwraca wszystkie części rejestru.
+     *
+     * @return części rejestru
+     */
+    RegistryShard[] getShards() {
+        return shards;
+    }
+
+    /**
+     * Zleca zadanie wszystkim częściom rejestru.
+     *
+     * @param task zadanie wykonywane przez wątek każdej części
+     */
+    void executeOnAll(Consumer<RegistryShard> task) {
+        for (RegistryShard shard : shards) {
+            shard.execute(() -> task.accept(shard));
+        }
+    }
+
+    /**
+     * Zwraca łączną liczbę połączeń użytkowników we wszystkich częściach.
+     *
+     * @return liczba połączeń
+     */
+    int getConnectionCount() {
+        int count = 0;
+
+        for (RegistryShard shard : shards) {
+            count += shard.getConnectionCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * Wykonuje zapytanie na wątku każdej części i czeka na wyniki. Służy do odczytu stanu rejestru spoza jego
+     * wątków, np. przez monitor serwera.
+     *
+     * @param query zapytanie wykonywane przez wątek części
+     * @param <T> typ wyniku zapytania
+     * @return wyniki zapytania dla kolejnych części, bez części, które nie odpowiedziały w wyznaczonym czasie
+     */
+    <T> List<T> query(Function<RegistryShard, T> query) {
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+
+        for (RegistryShard shard : shards) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            shard.execute(() -> future.complete(query.apply(shard)));
+            futures.add(future);
+        }
+
+        List<T> results = new ArrayList<>();
+
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.get(QUERY_TIMEOUT, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | TimeoutException ignored) {}
+        }
+
+        return results;
+    }
+
+    /**
+     * Wykonuje zapytanie na wątku podanej części i czeka na wynik.
+     *
+     * @param shard część rejestru
+     * @param query zapytanie wykonywane przez wątek części
+     * @param <T> typ wyniku zapytania
+     * @return wynik zapytania lub {@code null}, jeśli część nie odpowiedziała w wyznaczonym czasie
+     */
+    <T> T query(RegistryShard shard, Function<RegistryShard, T> query) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        shard.execute(() -> future.complete(query.apply(shard)));
+
+        try {
+            return future.get(QUERY_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Czeka, aż wątki części wykonają zadania zlecone przed wywołaniem metody wraz z zadaniami, które w ich trakcie
+     * zleciły innym częściom - zdarzenia dołączenia i odejścia rozsyłane są do pozostałych części jednym krokiem,
+     * więc wystarczą dwie rundy.
+     */
+    void flush() {
+        query(shard -> null);
+        query(shard -> null);
+    }
+}
@@ -0,0 +1,227 @@
+package pl.edu.pw.s251957.server.chat;
+
+import pl.edu.pw.s251957.common.MessageFrames;
+import pl.edu.pw.s251957.common.ProtocolHandshake;
+import pl.edu.pw.s251957.server.metrics.ServerMetrics;
+
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Blokująca warstwa transportowa połączenia z klientem. Odczyt ramek odbywa się w pętli na osobnym wątku, a zapis
+ * bezpośrednio na wątku wysyłającym odpowiedź. Zapis chroniony jest blokadą {@link ReentrantLock} zamiast
+ * {@code synchronized}, aby blokujący zapis nie przypinał wątku wirtualnego do wątku nośnego. Gniazdo
+ * {@link SSLSocket} wykonuje uzgodnienie TLS na wątku odczytu przed odebraniem pierwszej ramki. Połączenie zaczyna się
+ * od nagłówka strumienia obiektowego, na który czekają klienci sprzed wprowadzenia ramek. Jeśli klient odpowie
+ * własnym nagłówkiem strumienia, obiekty odczytywane są wprost ze strumienia obiektowego, a odpowiedzi zapisywane bez
+ * ramek. Implementuje interfejs {@link ConnectionTransport}.
+ *
+ * @see ConnectionTransport
+ * @see ClientConnection
+ */
+public class SocketTransport implements ConnectionTransport {
+    /** Gniazdo połączenia z klientem */
+    private final Socket socket;
+    /** Strumień wejściowy połączenia z klientem */
+    private final DataInputStream inputStream;
+    /** Strumień wyjściowy połączenia z klientem */
+    private final DataOutputStream outputStream;
+    /** Blokada zapisu ramek */
+    private final ReentrantLock writeLock;
+    /** Metryki serwera */
+    private final ServerMetrics metrics;
+    /** Flaga czy klient używa serializacji Javy bez ramek */
+    private volatile boolean unframed;
+
+    /**
+     * Tworzy warstwę transportową dla gniazda połączenia z klientem i otwiera jego strumienie.
+     *
+     * @param socket gniazdo połączenia z klientem
+     * @param metrics metryki serwera
+     * @throws IOException błąd otwierania strumieni
+     */
+    public SocketTransport(Socket socket, ServerMetrics metrics) throws IOException {
+        this.socket = socket;
+        this.inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.outputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.writeLock = new ReentrantLock();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Odbiera ramki od klienta dopóki gniazdo połączenia nie jest zamknięte i przekazuje je do obsłużenia. Klient
+     * używający serializacji Javy bez ramek przekazuje zamiast nich odczytane obiekty. Po zerwaniu połączenia
+     * informuje o tym obiekt {@code connection}.
+     *
+     * @param connection połączenie z klientem obsługujące odebrane ramki
+     */
+    public void readLoop(ClientConnection connection) {
+        try {
+            completeTlsHandshake();
+            send(ProtocolHandshake.streamHeader(), false);
+
+            if(isStreamHeaderNext()) {
+                readObjects(connection);
+            } else {
+                readFrames(connection);
+            }
+        } catch (IOException ignored) {
+        } finally {
+            close();
+            connection.connectionClosed();
+        }
+    }
+
+    /**
+     * Wykonuje uzgodnienie TLS, jeśli połączenie jest szyfrowane, i zapisuje jego czas w metrykach.
+     *
+     * @throws IOException błąd uzgodnienia
+     */
+    private void completeTlsHandshake() throws IOException {
+        if(socket instanceof SSLSocket) {
+            long start = System.nanoTime();
+            ((SSLSocket) socket).startHandshake();
+            metrics.recordTlsHandshake(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sprawdza bez zużywania bajtów czy klient rozpoczął połączenie nagłówkiem strumienia obiektowego zamiast ramki.
+     *
+     * @return flaga czy klient używa serializacji Javy bez ramek
+     * @throws IOException błąd odczytu
+     */
+    private boolean isStreamHeaderNext() throws IOException {
+        inputStream.mark(MessageFrames.HEADER_LENGTH);
+        int header = inputStream.readInt();
+        inputStream.reset();
+
+        return ProtocolHandshake.isStreamHeader(header);
+    }
+
+    /**
+     * Odbiera ramki od klienta dopóki gniazdo połączenia nie jest zamknięte i przekazuje je do obsłużenia.
+     *
+     * @param connection połączenie z klientem obsługujące odebrane ramki
+     * @throws IOException błąd odczytu lub niepoprawna ramka
+     */
+    private void readFrames(ClientConnection connection) throws IOException {
+        while (!socket.isClosed()) {
+            connection.handleFrame(MessageFrames.readFrame(inputStream));
+        }
+    }
+
+    /**
+     * Odczytuje obiekty ze strumienia obiektowego klienta dopóki gniazdo połączenia nie jest zamknięte i przekazuje
+     * je do obsłużenia. Od tej chwili odpowiedzi zapisywane są bez ramek.
+     *
+     * @param connection połączenie z klientem obsługujące odebrane obiekty
+     * @throws IOException błąd odczytu lub nieznana klasa odczytanego obiektu
+     */
+    private void readObjects(ClientConnection connection) throws IOException {
+        unframed = true;
+        connection.useStreamSerialization();
+        ObjectInputStream objectInputStream = new ObjectInputStream(inputStream);
+
+        while (!socket.isClosed()) {
+            try {
+                connection.handleObject(objectInputStream.readObject());
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Niepoprawny komunikat: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Wysyła ramkę do klienta, a klientowi używającemu serializacji bez ramek - same bajty treści. Metoda pochodząca
+     * z interfejsu {@link ConnectionTransport}.
+     *
+     * @param payload treść ramki
+     * @throws IOException błąd wysyłania ramki
+     */
+    @Override
+    public void send(byte[] payload) throws IOException {
+        send(payload, !unframed);
+    }
+
+    /**
+     * Wysyła do klienta treść w ramce albo same jej bajty.
+     *
+     * @param payload treść do wysłania
+     * @param framed flaga czy treść ma zostać poprzedzona nagłówkiem ramki
+     * @throws IOException błąd wysyłania
+     */
+    private void send(byte[] payload, boolean framed) throws IOException {
+        writeLock.lock();
+
+        try {
+            if(framed) {
+                MessageFrames.writeFrame(outputStream, payload);
+            } else {
+                outputStream.write(payload);
+                outputStream.flush();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Wysyła do klienta kilka ramek z jednym opróżnieniem strumienia. Zapis jest synchroniczny, więc {@code onWritten}
+     * wywoływane jest przed powrotem z metody. Metoda pochodząca z interfejsu {@link ConnectionTransport}.
+     *
+     * @param payloads treści ramek
+     * @param onWritten zadanie wywoływane po zapisaniu ramek lub {@code null}
+     * @throws IOException błąd wysyłania ramek
+     */
+    @Override
+    public void sendBatch(List<byte[]> payloads, Runnable onWritten) throws IOException {
+        writeLock.lock();
+
+        try {
+            if(unframed) {
+                for (byte[] payload : payloads) {
+                    outputStream.write(payload);
+                }
+
+                outputStream.flush();
+            } else {
+                MessageFrames.writeFrames(outputStream, payloads);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        if(onWritten != null) {
+            onWritten.run();
+        }
+    }
+
+    /**
+     * Zamyka gniazdo połączenia. Zapis jest synchroniczny, więc nie ma oczekujących ramek. Metoda pochodząca z
+     * interfejsu {@link ConnectionTransport}.
+     */
+    @Override
+    public void abort() {
+        close();
+    }
+
+    /**
+     * Zamyka gniazdo połączenia wraz ze strumieniami. Metoda pochodząca z interfejsu {@link ConnectionTransport}.
+     */
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.out.println("Błąd przy zamykaniu połączenia: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package pl.edu.pw.s251957.server.chat;
+
+import pl.edu.pw.s251957.server.metrics.ServerMetrics;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/** Szyfrowanie TLS nieblokującego kanału przy pomocy {@link SSLEngine}. Odczyt odszyfrowuje rekordy odebrane z kanału
+ * do bufora danych aplikacji, a zapis szyfruje bufory ramek i zapisuje rekordy do kanału, nie blokując wątku, gdy
+ * kanał nie przyjmuje danych. Uzgodnienie prowadzone jest w trakcie zwykłego odczytu i zapisu, a zadania silnika
+ * wykonywane są od razu przez wątek {@link NioReactor}. Zapis i strona zapisu uzgodnienia chronione są monitorem
+ * obiektu, ponieważ ramki mogą być zapisywane z dowolnego wątku, a odczyt wykonuje tylko wątek obsługujący kanał.
+ *
+ * @see NioTransport
+ * @see SSLEngine
+ */
+class TlsChannel {
+    /** Pusty bufor danych aplikacji używany przy wysyłaniu komunikatów uzgodnienia */
+    private static final ByteBuffer[] NO_DATA = {ByteBuffer.allocate(0)};
+
+    /** Kanał połączenia z klientem */
+    private final SocketChannel channel;
+    /** Silnik TLS połączenia */
+    private final SSLEngine engine;
+    /** Metryki serwera */
+    private final ServerMetrics metrics;
+    /** Chwila rozpoczęcia uzgodnienia według {@link System#nanoTime()} */
+    private final long handshakeStart;
+
+    /** Odebrane, jeszcze nieodszyfrowane rekordy w trybie zapisu */
+    private ByteBuffer netIn;
+    /** Odszyfrowane dane, które nie zmieściły się w buforze odczytu połączenia, w trybie zapisu */
+    private ByteBuffer appIn;
+    /** Zaszyfrowane rekordy oczekujące na zapis do kanału w trybie zapisu */
+    private final ByteBuffer netOut;
+    /** Flaga czy klient zakończył sesję TLS */
+    private boolean inboundClosed;
+    /** Flaga czy odszyfrowywanie zostało wstrzymane, bo kanał nie przyjął komunikatu uzgodnienia */
+    private boolean readStalled;
+    /** Flaga czy uzgodnienie zostało zapisane w metrykach */
+    private boolean handshakeRecorded;
+
+    /**
+     * Tworzy szyfrowanie kanału i rozpoczyna uzgodnienie po stronie serwera.
+     *
+     * @param channel kanał połączenia z klientem
+     * @param engine silnik TLS w trybie serwera
+     * @param metrics metryki serwera
+     * @throws IOException błąd rozpoczęcia uzgodnienia
+     */
+    TlsChannel(SocketChannel channel, SSLEngine engine, ServerMetrics metrics) throws IOException {
+        SSLSession session = engine.getSession();
+
+        this.channel = channel;
+        this.engine = engine;
+        this.metrics = metrics;
+        this.handshakeStart = System.nanoTime();
+        this.netIn = ByteBuffer.allocate(session.getPacketBufferSize());
+        this.appIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+        this.netOut = ByteBuffer.allocate(session.getPacketBufferSize());
+
+        engine.beginHandshake();
+    }
+
+    /**
+     * Odczytuje dostępne rekordy z kanału, prowadzi uzgodnienie i przenosi odszyfrowane dane do bufora {@code dst}.
+     * Dane, które się nie zmieszczą, pozostają w buforze kanału do następnego wywołania.
+     *
+     * @param dst bufor odczytu połączenia w trybie zapisu
+     * @return liczba przeniesionych bajtów lub -1, jeśli klient zamknął połączenie
+     * @throws IOException błąd odczytu z kanału lub niepoprawny rekord TLS
+     */
+    int read(ByteBuffer dst) throws IOException {
+        int received = inboundClosed ? -1 : channel.read(netIn);
+        readStalled = false;
+        netIn.flip();
+
+        try {
+            unwrapAvailable(dst);
+        } finally {
+            netIn.compact();
+        }
+
+        int transferred = transferTo(dst);
+
+        if(transferred == 0 && appIn.position() == 0 && (received < 0 || inboundClosed)) {
+            return -1;
+        }
+
+        return transferred;
+    }
+
+    /**
+     * Informuje czy w buforze kanału pozostały odszyfrowane dane, które nie zmieściły się w buforze odczytu.
+     *
+     * @return flaga czy są dane do przeniesienia
+     */
+    boolean hasBufferedInput() {
+        return appIn.position() > 0;
+    }
+
+    /**
+     * Informuje czy odszyfrowywanie zostało wstrzymane do czasu zapisania komunikatu uzgodnienia do kanału.
+     *
+     * @return flaga czy odczyt należy wznowić po zapisie
+     */
+    boolean isReadStalled() {
+        return readStalled;
+    }
+
+    /**
+     * Szyfruje dane z buforów i zapisuje powstałe rekordy do kanału. Dane nie są szyfrowane przed zakończeniem
+     * uzgodnienia ani gdy kanał nie przyjął poprzednich rekordów.
+     *
+     * @param srcs bufory ramek
+     * @return liczba zaszyfrowanych bajtów danych
+     * @throws IOException błąd zapisu do kanału lub sesja TLS została zamknięta
+     */
+    synchronized long write(ByteBuffer[] srcs) throws IOException {
+        long consumed = 0;
+
+        while (flush() && !isHandshaking() && hasRemaining(srcs)) {
+            SSLEngineResult result = engine.wrap(srcs, netOut);
+            consumed += result.bytesConsumed();
+            recordHandshake(result);
+
+            if(result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new IOException("Sesja TLS została zamknięta");
+            }
+        }
+
+        return consumed;
+    }
+
+    /**
+     * Zapisuje do kanału oczekujące rekordy oraz komunikaty uzgodnienia, które silnik ma do wysłania.
+     *
+     * @return flaga czy wszystkie rekordy zostały zapisane
+     * @throws IOException błąd zapisu do kanału
+     */
+    synchronized boolean flush() throws IOException {
+        while (true) {
+            if(netOut.position() > 0) {
+                netOut.flip();
+                channel.write(netOut);
+                netOut.compact();
+
+                if(netOut.position() > 0) {
+                    return false;
+                }
+            }
+
+            SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+
+            if(status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+            } else if(status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                SSLEngineResult result = engine.wrap(NO_DATA, netOut);
+                recordHandshake(result);
+
+                if(result.bytesProduced() == 0) {
+                    return true;
+                }
+            } else {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Informuje czy w buforze kanału pozostały zaszyfrowane rekordy oczekujące na zapis.
+     *
+     * @return flaga czy są rekordy do zapisania
+     */
+    synchronized boolean hasPendingOutput() {
+        return netOut.position() > 0;
+    }
+
+    /**
+     * Kończy sesję TLS wysyłając klientowi powiadomienie o zamknięciu, o ile kanał je przyjmie bez blokowania.
+     */
+    synchronized void close() {
+        engine.closeOutbound();
+
+        try {
+            flush();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Odszyfrowuje odebrane rekordy dopóki są kompletne, wysyłając po drodze komunikaty uzgodnienia.
+     *
+     * @param dst bufor odczytu połączenia, do którego przenoszone są dane przy zapełnieniu bufora kanału
+     * @throws IOException błąd zapisu komunikatu uzgodnienia lub niepoprawny rekord TLS
+     */
+    private void unwrapAvailable(ByteBuffer dst) throws IOException {
+        while (true) {
+            SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+
+            if(status == SSLEngineResult.HandshakeStatus.NEED_TASK || status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                if(!flush()) {
+                    readStalled = true;
+                    return;
+                }
+
+                continue;
+            }
+
+            if(!netIn.hasRemaining() || inboundClosed) {
+                return;
+            }
+
+            SSLEngineResult result = engine.unwrap(netIn, appIn);
+            recordHandshake(result);
+
+            switch (result.getStatus()) {
+                case BUFFER_UNDERFLOW:
+                    ensureNetInCapacity();
+                    return;
+                case BUFFER_OVERFLOW:
+                    if(appIn.position() == 0) {
+                        appIn = ByteBuffer.allocate(Math.max(engine.getSession().getApplicationBufferSize(),
+                                appIn.capacity() * 2));
+                    } else if(transferTo(dst) == 0) {
+                        return;
+                    }
+
+                    break;
+                case CLOSED:
+                    inboundClosed = true;
+                    return;
+                default:
+                    if(result.bytesConsumed() == 0 && result.bytesProduced() == 0
+                            && result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+                        return;
+                    }
+            }
+        }
+    }
+
+    /**
+     * Powiększa bufor odebranych rekordów, jeśli nie zmieści się w nim cały rekord. Bufor jest w trybie odczytu.
+     */
+    private void ensureNetInCapacity() {
+        int packetSize = engine.getSession().getPacketBufferSize();
+
+        if(netIn.capacity() < packetSize) {
+            ByteBuffer enlarged = ByteBuffer.allocate(packetSize);
+            enlarged.put(netIn);
+            enlarged.flip();
+            netIn = enlarged;
+        }
+    }
+
+    /**
+     * Przenosi odszyfrowane dane do bufora odczytu połączenia, tyle ile się zmieści.
+     *
+     * @param dst bufor odczytu połączenia w trybie zapisu
+     * @return liczba przeniesionych bajtów
+     */
+    private int transferTo(ByteBuffer dst) {
+        appIn.flip();
+        int count = Math.min(appIn.remaining(), dst.remaining());
+        ByteBuffer chunk = appIn.duplicate();
+        chunk.limit(chunk.position() + count);
+        dst.put(chunk);
+        appIn.position(appIn.position() + count);
+        appIn.compact();
+
+        return count;
+    }
+
+    /**
+     * Wykonuje zadania silnika, np. weryfikację klucza, na bieżącym wątku.
+     */
+    private void runDelegatedTasks() {
+        Runnable task;
+
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Informuje czy trwa uzgodnienie, w czasie którego nie można szyfrować danych aplikacji.
+     *
+     * @return flaga czy trwa uzgodnienie
+     */
+    boolean isHandshaking() {
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        return status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+                && status != SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+
+    /**
+     * Zapisuje w metrykach czas pierwszego zakończonego uzgodnienia.
+     *
+     * @param result wynik operacji silnika
+     */
+    private synchronized void recordHandshake(SSLEngineResult result) {
+        if(!handshakeRecorded && result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED) {
+            handshakeRecorded = true;
+            metrics.recordTlsHandshake(System.nanoTime() - handshakeStart);
+        }
+    }
+
+    /**
+     * Sprawdza czy w buforach pozostały dane.
+     *
+     * @param buffers bufory
+     * @return flaga czy którykolwiek bufor ma dane
+     */
+    private static boolean hasRemaining(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            if(buffer.hasRemaining()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
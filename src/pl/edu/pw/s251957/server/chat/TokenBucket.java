@@ -0,0 +1,63 @@
+package pl.edu.pw.s251957.server.chat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Wiadro żetonów jednego połączenia dla limitu {@link RateLimit}. Zamiast liczby żetonów i chwili ostatniego
+ * uzupełnienia wiadro pamięta jedną liczbę - teoretyczną chwilę, w której byłoby znów pełne. Pobranie żetonu przesuwa
+ * ją o odstęp między żetonami, a żeton jest dostępny, dopóki przesunięta chwila nie wyprzedza obecnej o więcej niż
+ * pojemność wiadra. Stan zmieniany jest jedną operacją porównaj-i-zamień, więc sprawdzanie limitu nie wymaga blokad.
+ *
+ * @see RateLimit
+ * @see ClientConnection
+ */
+class TokenBucket {
+    /** Odstęp między żetonami w nanosekundach */
+    private final long interval;
+    /** Najdalsze dopuszczalne wyprzedzenie obecnej chwili w nanosekundach */
+    private final long tolerance;
+    /** Chwila, w której wiadro byłoby pełne, według {@link System#nanoTime()} */
+    private final AtomicLong fullAt;
+
+    /**
+     * Tworzy pełne wiadro dla podanego limitu.
+     *
+     * @param limit limit żądań
+     * @param now obecna chwila według {@link System#nanoTime()}
+     */
+    TokenBucket(RateLimit limit, long now) {
+        this.interval = limit.getIntervalNanos();
+        this.tolerance = interval * limit.getBurst();
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Zwraca odstęp między żetonami zaokrąglony w górę do milisekund. Po tym czasie od odmowy żeton jest na pewno
+     * dostępny.
+     *
+     * @return odstęp między żetonami w milisekundach
+     */
+    long getIntervalMillis() {
+        return (interval + 999_999) / 1_000_000;
+    }
+
+    /**
+     * Pobiera żeton, jeśli jest dostępny.
+     *
+     * @param now obecna chwila według {@link System#nanoTime()}
+     * @return flaga czy żeton został pobrany
+     */
+    boolean tryAcquire(long now) {
+        while (true) {
+            long current = fullAt.get();
+            long next = (current - now > 0 ? current : now) + interval;
+
+            if(next - now > tolerance) {
+                return false;
+            }
+
+            if(fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+}
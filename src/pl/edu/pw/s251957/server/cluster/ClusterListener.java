@@ -0,0 +1,39 @@
+package pl.edu.pw.s251957.server.cluster;
+
+import pl.edu.pw.s251957.common.Command;
+
+/** Interfejs przedstawiający zdarzenia klastra przekazywane do lokalnego serwera - zmiany obecności użytkowników
+ * podłączonych do innych węzłów, konflikty nicków oraz żądania przekazane przez inne węzły.
+ *
+ * @see ClusterNode
+ */
+public interface ClusterListener {
+    /**
+     * Informuje o dołączeniu użytkownika do innego węzła klastra.
+     *
+     * @param nick nick użytkownika
+     */
+    void remoteUserJoined(String nick);
+
+    /**
+     * Informuje o odejściu użytkownika podłączonego do innego węzła klastra.
+     *
+     * @param nick nick użytkownika
+     */
+    void remoteUserLeft(String nick);
+
+    /**
+     * Informuje, że lokalny użytkownik zajął nick jednocześnie z użytkownikiem węzła o pierwszeństwie i musi
+     * zostać rozłączony.
+     *
+     * @param nick nick użytkownika
+     */
+    void localUserConflict(String nick);
+
+    /**
+     * Dostarcza lokalnemu adresatowi żądanie przekazane przez inny węzeł klastra.
+     *
+     * @param cmd żądanie klienta
+     */
+    void deliverForwarded(Command cmd);
+}
@@ -0,0 +1,79 @@
+package pl.edu.pw.s251957.server.cluster;
+
+import pl.edu.pw.s251957.common.WireWriter;
+
+/** Klasa pomocnicza tworząca komunikaty przesyłane pomiędzy węzłami klastra. Każdy komunikat zaczyna się bajtem
+ * typu, po którym następują pola zapisane przez {@link WireWriter}. Przekazywane żądania klientów zapisywane są
+ * koderem binarnym protokołu klienta.
+ *
+ * @see NodeLink
+ */
+class ClusterMessages {
+    /** Powitanie z identyfikatorem węzła, pierwszy komunikat każdego połączenia */
+    static final int HELLO = 1;
+    /** Dołączenie użytkownika do węzła nadawcy */
+    static final int USER_ONLINE = 2;
+    /** Odejście użytkownika z węzła nadawcy */
+    static final int USER_OFFLINE = 3;
+    /** Żądanie klienta przekazane do węzła adresata */
+    static final int FORWARD = 4;
+
+    /**
+     * Tworzy powitanie węzła.
+     *
+     * @param nodeId identyfikator węzła
+     * @return treść ramki
+     */
+    static byte[] hello(String nodeId) {
+        return withString(HELLO, nodeId);
+    }
+
+    /**
+     * Tworzy informację o dołączeniu użytkownika.
+     *
+     * @param nick nick użytkownika
+     * @return treść ramki
+     */
+    static byte[] userOnline(String nick) {
+        return withString(USER_ONLINE, nick);
+    }
+
+    /**
+     * Tworzy informację o odejściu użytkownika.
+     *
+     * @param nick nick użytkownika
+     * @return treść ramki
+     */
+    static byte[] userOffline(String nick) {
+        return withString(USER_OFFLINE, nick);
+    }
+
+    /**
+     * Tworzy komunikat przekazania żądania klienta.
+     *
+     * @param encodedCommand żądanie zakodowane koderem binarnym
+     * @return treść ramki
+     */
+    static byte[] forward(byte[] encodedCommand) {
+        WireWriter writer = new WireWriter(encodedCommand.length + 1);
+        writer.writeByte(FORWARD);
+        writer.writeBytes(encodedCommand);
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Tworzy komunikat z jednym polem tekstowym.
+     *
+     * @param type typ komunikatu
+     * @param value wartość pola
+     * @return treść ramki
+     */
+    private static byte[] withString(int type, String value) {
+        WireWriter writer = new WireWriter(value.length() * 3 + 8);
+        writer.writeByte(type);
+        writer.writeString(value);
+
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,486 @@
+package pl.edu.pw.s251957.server.cluster;
+
+import pl.edu.pw.s251957.common.BinaryCodec;
+import pl.edu.pw.s251957.common.Command;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** Węzeł klastra serwerów komunikatora. Każdy węzeł łączy się ze wszystkimi węzłami z listy adresów i przyjmuje
+ * połączenia od pozostałych, a następnie rozsyła im informacje o dołączaniu i odchodzeniu swoich użytkowników. Na tej
+ * podstawie każdy węzeł utrzymuje katalog obecności - przypisanie nicków użytkowników innych węzłów do węzła, do
+ * którego są podłączeni - i przekazuje żądania do węzła adresata.
+ *
+ * <p>Jeśli ten sam nick zostanie jednocześnie zajęty na dwóch węzłach, pierwszeństwo ma węzeł o mniejszym
+ * identyfikatorze, a użytkownik drugiego węzła zostaje rozłączony. Gdy dwa węzły połączą się ze sobą nawzajem,
+ * zostaje połączenie nawiązane przez węzeł o mniejszym identyfikatorze. Zerwane połączenia są ponawiane co sekundę.
+ * Zmiany obecności porządkowane są blokadą węzła, więc odbiorca zdarzeń otrzymuje je w kolejności, w jakiej
+ * zmieniał się katalog, a zajęcie nicku przez lokalnego użytkownika nie może rozminąć się z jego zajęciem na innym
+ * węźle. Komunikaty do innych węzłów są pod blokadą jedynie dodawane do kolejek połączeń {@link NodeLink}, które
+ * nie czekają na zapis do gniazda, dzięki czemu kolejność zmian jest zachowana, a wolny węzeł nie wstrzymuje
+ * wątków serwera.
+ *
+ * @see ClusterListener
+ * @see NodeLink
+ */
+public class ClusterNode {
+    /** Odstęp ponawiania połączeń z innymi węzłami w milisekundach */
+    private static final long RECONNECT_INTERVAL = 1000;
+    /** Czas oczekiwania na nawiązanie połączenia z innym węzłem w milisekundach */
+    private static final int CONNECT_TIMEOUT = 1000;
+    /** Koder przekazywanych żądań klientów */
+    private static final BinaryCodec CODEC = new BinaryCodec();
+
+    /** Identyfikator węzła */
+    private final String nodeId;
+    /** Port, na którym węzeł przyjmuje połączenia od innych węzłów */
+    private final int port;
+    /** Adresy pozostałych węzłów */
+    private final List<InetSocketAddress> peers;
+    /** Odbiorca zdarzeń klastra */
+    private final ClusterListener listener;
+    /** Blokada porządkująca zmiany obecności */
+    private final Object presenceLock;
+
+    /** Zarejestrowane połączenia według identyfikatora węzła */
+    private final ConcurrentMap<String, NodeLink> links;
+    /** Połączenia wychodzące według adresu węzła */
+    private final ConcurrentMap<InetSocketAddress, NodeLink> outboundLinks;
+    /** Identyfikatory węzłów według ich adresów, poznane z powitań */
+    private final ConcurrentMap<InetSocketAddress, String> peerNodeIds;
+    /** Węzły użytkowników podłączonych do innych węzłów według nicku */
+    private final ConcurrentMap<String, String> remoteUsers;
+    /** Nicki użytkowników podłączonych do lokalnego węzła */
+    private final Set<String> localUsers;
+
+    /** Gniazdo przyjmujące połączenia od innych węzłów */
+    private ServerSocket serverSocket;
+    /** Flaga czy węzeł jest uruchomiony */
+    private volatile boolean running;
+
+    /**
+     * Tworzy węzeł klastra. Adresy węzłów podawane są w postaci {@code host:port} i mogą zawierać adres samego węzła,
+     * dzięki czemu wszystkie węzły mogą używać tej samej listy.
+     *
+     * @param nodeId identyfikator węzła, unikalny w klastrze
+     * @param port port, na którym węzeł przyjmuje połączenia od innych węzłów
+     * @param peers adresy węzłów klastra
+     * @param listener odbiorca zdarzeń klastra
+     * @throws IllegalArgumentException niepoprawny adres węzła
+     */
+    public ClusterNode(String nodeId, int port, List<String> peers, ClusterListener listener) {
+        this.nodeId = nodeId;
+        this.port = port;
+        this.peers = new ArrayList<>();
+        this.listener = listener;
+        this.presenceLock = new Object();
+        this.links = new ConcurrentHashMap<>();
+        this.outboundLinks = new ConcurrentHashMap<>();
+        this.peerNodeIds = new ConcurrentHashMap<>();
+        this.remoteUsers = new ConcurrentHashMap<>();
+        this.localUsers = ConcurrentHashMap.newKeySet();
+
+        for (String peer : peers) {
+            this.peers.add(parseAddress(peer));
+        }
+    }
+
+    /**
+     * Parsuje adres węzła w postaci {@code host:port}.
+     *
+     * @param address adres węzła
+     * @return adres gniazda węzła
+     * @throws IllegalArgumentException niepoprawny adres węzła
+     */
+    private static InetSocketAddress parseAddress(String address) {
+        int separator = address.lastIndexOf(':');
+
+        try {
+            if(separator <= 0) {
+                throw new NumberFormatException();
+            }
+
+            return new InetSocketAddress(address.substring(0, separator).trim(),
+                    Integer.parseInt(address.substring(separator + 1).trim()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Niepoprawny adres węzła klastra: " + address);
+        }
+    }
+
+    /**
+     * Uruchamia przyjmowanie połączeń od innych węzłów oraz łączenie się z nimi.
+     *
+     * @throws IOException błąd otwierania gniazda węzła
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        running = true;
+
+        Thread acceptor = new Thread(this::acceptLinks, "cluster-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        Thread connector = new Thread(this::connectLinks, "cluster-connector");
+        connector.setDaemon(true);
+        connector.start();
+    }
+
+    /**
+     * Zatrzymuje węzeł i zamyka połączenia z innymi węzłami.
+     */
+    public void stop() {
+        running = false;
+
+        try {
+            if(serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException ignored) {}
+
+        for (NodeLink link : new ArrayList<>(outboundLinks.values())) {
+            link.close();
+        }
+
+        for (NodeLink link : new ArrayList<>(links.values())) {
+            link.close();
+        }
+    }
+
+    /**
+     * Przyjmuje połączenia od innych węzłów, dopóki węzeł jest uruchomiony.
+     */
+    private void acceptLinks() {
+        while (running) {
+            try {
+                startLink(serverSocket.accept(), null);
+            } catch (IOException e) {
+                if(running) {
+                    System.out.println("Błąd przy przyjmowaniu połączenia od węzła: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Co sekundę łączy się z węzłami, z którymi nie ma połączenia. Pomijany jest adres samego węzła oraz węzły
+     * połączone połączeniem przychodzącym.
+     */
+    private void connectLinks() {
+        while (running) {
+            for (InetSocketAddress peer : peers) {
+                if(running && needsLink(peer)) {
+                    try {
+                        Socket socket = new Socket();
+                        socket.connect(peer, CONNECT_TIMEOUT);
+                        startLink(socket, peer);
+                    } catch (IOException ignored) {}
+                }
+            }
+
+            try {
+                Thread.sleep(RECONNECT_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sprawdza czy należy nawiązać połączenie z węzłem o podanym adresie.
+     *
+     * @param peer adres węzła
+     * @return flaga czy brakuje połączenia z węzłem
+     */
+    private boolean needsLink(InetSocketAddress peer) {
+        NodeLink outbound = outboundLinks.get(peer);
+
+        if(outbound != null && !outbound.isClosed()) {
+            return false;
+        }
+
+        String peerNodeId = peerNodeIds.get(peer);
+
+        return peerNodeId == null || !peerNodeId.equals(nodeId) && !links.containsKey(peerNodeId);
+    }
+
+    /**
+     * Uruchamia połączenie z innym węzłem.
+     *
+     * @param socket gniazdo połączenia
+     * @param peer adres węzła dla połączenia wychodzącego lub {@code null} dla przychodzącego
+     * @throws IOException błąd otwierania strumieni
+     */
+    private void startLink(Socket socket, InetSocketAddress peer) throws IOException {
+        NodeLink link;
+
+        try {
+            link = new NodeLink(this, socket, peer);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        if(peer != null) {
+            outboundLinks.put(peer, link);
+        }
+
+        link.start();
+    }
+
+    /**
+     * Rejestruje połączenie po odebraniu powitania i wysyła nim listę lokalnych użytkowników. Połączenie z samym
+     * sobą oraz zdublowane połączenie z tym samym węzłem zostają odrzucone.
+     *
+     * @param link połączenie z innym węzłem
+     * @return flaga czy połączenie zostało zarejestrowane
+     */
+    boolean linkEstablished(NodeLink link) {
+        String remoteNodeId = link.getRemoteNodeId();
+
+        if(link.isOutbound()) {
+            peerNodeIds.put(link.getPeerAddress(), remoteNodeId);
+        }
+
+        if(remoteNodeId.equals(nodeId)) {
+            return false;
+        }
+
+        synchronized (presenceLock) {
+            NodeLink existing = links.get(remoteNodeId);
+
+            if(existing != null && !existing.isClosed() && !isPreferred(link, existing)) {
+                return false;
+            }
+
+            links.put(remoteNodeId, link);
+
+            if(existing != null) {
+                existing.close();
+            }
+
+            List<byte[]> onlineMessages = new ArrayList<>(localUsers.size());
+
+            for (String nick : localUsers) {
+                onlineMessages.add(ClusterMessages.userOnline(nick));
+            }
+
+            link.sendAll(onlineMessages);
+        }
+
+        System.out.println("Połączono z węzłem klastra " + remoteNodeId);
+        return true;
+    }
+
+    /**
+     * Porównuje dwa połączenia z tym samym węzłem. Preferowane jest połączenie nawiązane przez węzeł o mniejszym
+     * identyfikatorze, a przy równych - nowsze.
+     *
+     * @param link nowe połączenie
+     * @param existing zarejestrowane połączenie
+     * @return flaga czy nowe połączenie powinno zastąpić zarejestrowane
+     */
+    private boolean isPreferred(NodeLink link, NodeLink existing) {
+        String linkInitiator = link.isOutbound() ? nodeId : link.getRemoteNodeId();
+        String existingInitiator = existing.isOutbound() ? nodeId : existing.getRemoteNodeId();
+
+        return linkInitiator.compareTo(existingInitiator) <= 0;
+    }
+
+    /**
+     * Usuwa zamknięte połączenie. Jeśli było zarejestrowane, a węzeł nie jest zatrzymywany, użytkownicy węzła po
+     * drugiej stronie zostają usunięci z katalogu obecności.
+     *
+     * @param link zamknięte połączenie
+     */
+    void linkClosed(NodeLink link) {
+        if(link.isOutbound()) {
+            outboundLinks.remove(link.getPeerAddress(), link);
+        }
+
+        String remoteNodeId = link.getRemoteNodeId();
+
+        if(remoteNodeId == null) {
+            return;
+        }
+
+        synchronized (presenceLock) {
+            if(!links.remove(remoteNodeId, link) || !running) {
+                return;
+            }
+
+            for (Map.Entry<String, String> entry : remoteUsers.entrySet()) {
+                if(entry.getValue().equals(remoteNodeId) && remoteUsers.remove(entry.getKey(), remoteNodeId)) {
+                    listener.remoteUserLeft(entry.getKey());
+                }
+            }
+        }
+
+        if(running) {
+            System.out.println("Rozłączono z węzłem klastra " + remoteNodeId);
+        }
+    }
+
+    /**
+     * Zapisuje w katalogu obecności użytkownika innego węzła. Jeśli ten sam nick ma lokalny użytkownik albo
+     * użytkownik jeszcze innego węzła, nick pozostaje przy węźle o mniejszym identyfikatorze.
+     *
+     * @param ownerNodeId identyfikator węzła użytkownika
+     * @param nick nick użytkownika
+     */
+    void remoteUserOnline(String ownerNodeId, String nick) {
+        synchronized (presenceLock) {
+            if(localUsers.contains(nick)) {
+                if(ownerNodeId.compareTo(nodeId) > 0) {
+                    return;
+                }
+
+                localUsers.remove(nick);
+                remoteUsers.put(nick, ownerNodeId);
+                listener.localUserConflict(nick);
+                return;
+            }
+
+            String currentOwner = remoteUsers.get(nick);
+
+            if(currentOwner == null) {
+                remoteUsers.put(nick, ownerNodeId);
+                listener.remoteUserJoined(nick);
+            } else if(ownerNodeId.compareTo(currentOwner) < 0) {
+                remoteUsers.put(nick, ownerNodeId);
+            }
+        }
+    }
+
+    /**
+     * Usuwa z katalogu obecności użytkownika, który odszedł z innego węzła.
+     *
+     * @param ownerNodeId identyfikator węzła użytkownika
+     * @param nick nick użytkownika
+     */
+    void remoteUserOffline(String ownerNodeId, String nick) {
+        synchronized (presenceLock) {
+            if(remoteUsers.remove(nick, ownerNodeId)) {
+                listener.remoteUserLeft(nick);
+            }
+        }
+    }
+
+    /**
+     * Przekazuje lokalnemu serwerowi żądanie odebrane od innego węzła.
+     *
+     * @param cmd żądanie klienta
+     */
+    void forwardReceived(Command cmd) {
+        listener.deliverForwarded(cmd);
+    }
+
+    /**
+     * Zajmuje nick dla lokalnego użytkownika i ogłasza jego dołączenie pozostałym węzłom, o ile nick nie należy do
+     * użytkownika innego węzła.
+     *
+     * @param nick nick użytkownika
+     * @return flaga czy nick został zajęty
+     */
+    public boolean claim(String nick) {
+        synchronized (presenceLock) {
+            if(remoteUsers.containsKey(nick)) {
+                return false;
+            }
+
+            localUsers.add(nick);
+            broadcast(ClusterMessages.userOnline(nick));
+            return true;
+        }
+    }
+
+    /**
+     * Ogłasza pozostałym węzłom odejście lokalnego użytkownika.
+     *
+     * @param nick nick użytkownika
+     */
+    public void announceOffline(String nick) {
+        synchronized (presenceLock) {
+            if(localUsers.remove(nick)) {
+                broadcast(ClusterMessages.userOffline(nick));
+            }
+        }
+    }
+
+    /**
+     * Przekazuje żądanie do węzła, do którego podłączony jest adresat.
+     *
+     * @param cmd żądanie klienta
+     * @return flaga czy żądanie trafiło do kolejki połączenia z węzłem adresata - {@code false}, jeśli adresat nie
+     * jest podłączony do innego węzła lub połączenie z jego węzłem zostało zerwane albo przepełnione
+     */
+    public boolean forward(Command cmd) {
+        String ownerNodeId = remoteUsers.get(cmd.getAddresseeNick());
+        NodeLink link = ownerNodeId == null ? null : links.get(ownerNodeId);
+
+        if(link == null) {
+            return false;
+        }
+
+        return link.send(ClusterMessages.forward(CODEC.encodeCommand(cmd)));
+    }
+
+    /**
+     * Informuje czy użytkownik o podanym nicku jest podłączony do innego węzła.
+     *
+     * @param nick nick użytkownika
+     * @return flaga czy użytkownik jest podłączony do innego węzła
+     */
+    public boolean isRemoteUser(String nick) {
+        return remoteUsers.containsKey(nick);
+    }
+
+    /**
+     * Zwraca nicki użytkowników podłączonych do innych węzłów.
+     *
+     * @return nicki użytkowników
+     */
+    public List<String> getRemoteUsers() {
+        return new ArrayList<>(remoteUsers.keySet());
+    }
+
+    /**
+     * Zwraca identyfikatory połączonych węzłów.
+     *
+     * @return identyfikatory węzłów
+     */
+    public List<String> getConnectedNodes() {
+        List<String> nodes = new ArrayList<>(links.keySet());
+        Collections.sort(nodes);
+
+        return nodes;
+    }
+
+    /**
+     * Zwraca identyfikator węzła.
+     *
+     * @return identyfikator węzła
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Dodaje komunikat do kolejek wysyłania wszystkich połączonych węzłów.
+     *
+     * @param payload treść ramki
+     */
+    private void broadcast(byte[] payload) {
+        for (NodeLink link : links.values()) {
+            link.send(payload);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package pl.edu.pw.s251957.server.cluster;
+
+import pl.edu.pw.s251957.common.BinaryCodec;
+import pl.edu.pw.s251957.common.MessageFrames;
+import pl.edu.pw.s251957.common.WireReader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Połączenie pomiędzy dwoma węzłami klastra. Komunikaty przesyłane są w ramkach {@link MessageFrames} tak jak
+ * w połączeniach z klientami. Obie strony zaczynają od powitania z identyfikatorem węzła, po czym odbierane
+ * komunikaty przekazywane są do {@link ClusterNode} na osobnym wątku. Wysyłanie nie blokuje - ramki trafiają do
+ * ograniczonej kolejki, którą zapisuje do gniazda osobny wątek połączenia, więc wolny węzeł nie wstrzymuje wątków
+ * serwera. Jeśli kolejka się przepełni, połączenie zostaje zamknięte, a po ponownym połączeniu węzły wymieniają
+ * listy użytkowników od nowa.
+ *
+ * @see ClusterNode
+ * @see ClusterMessages
+ */
+class NodeLink {
+    /** Koder przekazywanych żądań klientów */
+    private static final BinaryCodec CODEC = new BinaryCodec();
+    /** Maksymalna liczba ramek oczekujących na wysłanie */
+    private static final int MAX_QUEUED_FRAMES = 16 * 1024;
+
+    /** Lokalny węzeł klastra */
+    private final ClusterNode clusterNode;
+    /** Gniazdo połączenia z innym węzłem */
+    private final Socket socket;
+    /** Adres, z którym połączył się lokalny węzeł, lub {@code null} dla połączenia przychodzącego */
+    private final InetSocketAddress peerAddress;
+    /** Strumień wejściowy połączenia */
+    private final DataInputStream inputStream;
+    /** Strumień wyjściowy połączenia */
+    private final DataOutputStream outputStream;
+    /** Ramki oczekujące na wysłanie */
+    private final Deque<byte[]> queuedFrames;
+    /** Blokada kolejki ramek */
+    private final ReentrantLock queueLock;
+    /** Warunek pojawienia się ramek w kolejce lub zamknięcia połączenia */
+    private final Condition framesQueued;
+    /** Flaga czy połączenie jest zamykane */
+    private boolean closing;
+
+    /** Identyfikator węzła po drugiej stronie, znany po odebraniu powitania */
+    private volatile String remoteNodeId;
+
+    /**
+     * Tworzy połączenie z innym węzłem i otwiera strumienie gniazda.
+     *
+     * @param clusterNode lokalny węzeł klastra
+     * @param socket gniazdo połączenia z innym węzłem
+     * @param peerAddress adres, z którym połączył się lokalny węzeł, lub {@code null} dla połączenia przychodzącego
+     * @throws IOException błąd otwierania strumieni
+     */
+    NodeLink(ClusterNode clusterNode, Socket socket, InetSocketAddress peerAddress) throws IOException {
+        this.clusterNode = clusterNode;
+        this.socket = socket;
+        this.peerAddress = peerAddress;
+        this.inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.outputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.queuedFrames = new ArrayDeque<>();
+        this.queueLock = new ReentrantLock();
+        this.framesQueued = queueLock.newCondition();
+    }
+
+    /**
+     * Zleca wysłanie powitania i uruchamia wątki zapisujący i odbierający komunikaty.
+     */
+    void start() {
+        send(ClusterMessages.hello(clusterNode.getNodeId()));
+
+        Thread writer = new Thread(this::writeLoop, "cluster-link-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        Thread reader = new Thread(this::readLoop, "cluster-link");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Dodaje ramkę do kolejki wysyłania bez czekania na zapis. Jeśli kolejka jest pełna, węzeł po drugiej stronie nie
+     * nadąża z odbiorem, więc połączenie zostaje zamknięte, a węzeł uznany za niedostępny.
+     *
+     * @param payload treść ramki
+     * @return flaga czy ramka trafiła do kolejki
+     */
+    boolean send(byte[] payload) {
+        queueLock.lock();
+
+        try {
+            if(closing) {
+                return false;
+            }
+
+            if(queuedFrames.size() < MAX_QUEUED_FRAMES) {
+                queuedFrames.addLast(payload);
+                framesQueued.signal();
+                return true;
+            }
+        } finally {
+            queueLock.unlock();
+        }
+
+        System.out.println("Węzeł klastra " + remoteNodeId + " nie odbiera komunikatów - zamykanie połączenia");
+        close();
+        return false;
+    }
+
+    /**
+     * Dodaje ramki do kolejki wysyłania bez względu na jej ograniczenie. Używane do wysłania listy lokalnych
+     * użytkowników po nawiązaniu połączenia.
+     *
+     * @param payloads treści ramek
+     */
+    void sendAll(List<byte[]> payloads) {
+        queueLock.lock();
+
+        try {
+            if(!closing) {
+                queuedFrames.addAll(payloads);
+                framesQueued.signal();
+            }
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Zamyka połączenie z innym węzłem. Ramki oczekujące w kolejce są porzucane.
+     */
+    void close() {
+        queueLock.lock();
+
+        try {
+            closing = true;
+            queuedFrames.clear();
+            framesQueued.signal();
+        } finally {
+            queueLock.unlock();
+        }
+
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.out.println("Błąd przy zamykaniu połączenia z węzłem: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Informuje czy połączenie jest zamknięte.
+     *
+     * @return flaga czy połączenie jest zamknięte
+     */
+    boolean isClosed() {
+        return socket.isClosed();
+    }
+
+    /**
+     * Zwraca identyfikator węzła po drugiej stronie połączenia.
+     *
+     * @return identyfikator węzła lub {@code null}, jeśli powitanie nie zostało jeszcze odebrane
+     */
+    String getRemoteNodeId() {
+        return remoteNodeId;
+    }
+
+    /**
+     * Zwraca adres, z którym połączył się lokalny węzeł.
+     *
+     * @return adres węzła lub {@code null} dla połączenia przychodzącego
+     */
+    InetSocketAddress getPeerAddress() {
+        return peerAddress;
+    }
+
+    /**
+     * Informuje czy połączenie zostało nawiązane przez lokalny węzeł.
+     *
+     * @return flaga czy połączenie jest wychodzące
+     */
+    boolean isOutbound() {
+        return peerAddress != null;
+    }
+
+    /**
+     * Zapisuje do gniazda ramki z kolejki wysyłania, wszystkie oczekujące z jednym opróżnieniem strumienia, dopóki
+     * połączenie nie zostanie zamknięte. Błąd zapisu zamyka połączenie.
+     */
+    private void writeLoop() {
+        List<byte[]> batch = new ArrayList<>();
+
+        try {
+            while (true) {
+                queueLock.lock();
+
+                try {
+                    while (queuedFrames.isEmpty() && !closing) {
+                        framesQueued.await();
+                    }
+
+                    if(closing) {
+                        return;
+                    }
+
+                    batch.addAll(queuedFrames);
+                    queuedFrames.clear();
+                } finally {
+                    queueLock.unlock();
+                }
+
+                MessageFrames.writeFrames(outputStream, batch);
+                batch.clear();
+            }
+        } catch (IOException | InterruptedException ignored) {
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Odbiera powitanie, rejestruje połączenie w węźle i przekazuje mu kolejne komunikaty, dopóki połączenie nie
+     * zostanie zamknięte.
+     */
+    private void readLoop() {
+        try {
+            WireReader hello = new WireReader(MessageFrames.readFrame(inputStream));
+
+            if(hello.readByte() != ClusterMessages.HELLO) {
+                throw new IOException("Brak powitania węzła");
+            }
+
+            remoteNodeId = hello.readString();
+
+            if(!clusterNode.linkEstablished(this)) {
+                close();
+                return;
+            }
+
+            while (!socket.isClosed()) {
+                handleMessage(MessageFrames.readFrame(inputStream));
+            }
+        } catch (IOException ignored) {
+        } finally {
+            close();
+            clusterNode.linkClosed(this);
+        }
+    }
+
+    /**
+     * Przekazuje odebrany komunikat do lokalnego węzła.
+     *
+     * @param payload treść ramki
+     * @throws IOException niepoprawna treść ramki
+     */
+    private void handleMessage(byte[] payload) throws IOException {
+        WireReader reader = new WireReader(payload);
+        int type = reader.readByte();
+
+        switch (type) {
+            case ClusterMessages.USER_ONLINE:
+                clusterNode.remoteUserOnline(remoteNodeId, reader.readString());
+                break;
+            case ClusterMessages.USER_OFFLINE:
+                clusterNode.remoteUserOffline(remoteNodeId, reader.readString());
+                break;
+            case ClusterMessages.FORWARD:
+                clusterNode.forwardReceived(CODEC.decodeCommand(reader.readBytes(reader.remaining())));
+                break;
+            default:
+                throw new IOException("Nieznany komunikat węzła: " + type);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package pl.edu.pw.s251957.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Histogram czasów w nanosekundach, zapisywany bez blokad przez wiele wątków. Przedziały są logarytmiczno-liniowe -
+ * każda potęga dwójki dzielona jest na {@code 2^SUB_BUCKET_BITS} równych części, więc względny błąd odczytanego
+ * percentyla nie przekracza 12,5%, a cały histogram zajmuje stałą pamięć niezależnie od zakresu wartości.
+ *
+ * @see ServerMetrics
+ */
+public class LatencyHistogram {
+    /** Liczba bitów wyznaczających część potęgi dwójki */
+    private static final int SUB_BUCKET_BITS = 3;
+    /** Liczba części każdej potęgi dwójki */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Liczba przedziałów obejmujących wszystkie wartości typu {@code long} */
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    /** Liczności przedziałów */
+    private final AtomicLongArray counts;
+    /** Liczba zapisanych wartości */
+    private final LongAdder count;
+    /** Suma zapisanych wartości */
+    private final LongAdder sum;
+    /** Największa zapisana wartość */
+    private final AtomicLong max;
+
+    /**
+     * Tworzy pusty histogram.
+     */
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Zapisuje czas w histogramie. Wartości ujemne zapisywane są jako zero.
+     *
+     * @param nanos czas w nanosekundach
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+
+        long currentMax;
+
+        while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+            // ponowna próba po równoczesnej zmianie maksimum
+        }
+    }
+
+    /**
+     * Zwraca liczbę zapisanych wartości.
+     *
+     * @return liczba wartości
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Zwraca średnią zapisanych wartości.
+     *
+     * @return średnia w nanosekundach lub zero dla pustego histogramu
+     */
+    public double getMean() {
+        long currentCount = count.sum();
+        return currentCount == 0 ? 0 : (double) sum.sum() / currentCount;
+    }
+
+    /**
+     * Zwraca największą zapisaną wartość.
+     *
+     * @return największa wartość w nanosekundach
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Zwraca przybliżoną wartość percentyla - górną granicę przedziału, w którym się znajduje, ograniczoną
+     * największą zapisaną wartością.
+     *
+     * @param percentile percentyl z zakresu od 0 do 100
+     * @return wartość percentyla w nanosekundach lub zero dla pustego histogramu
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        if(total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+
+            if(seen >= rank) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Wyznacza numer przedziału dla wartości.
+     *
+     * @param value nieujemna wartość
+     * @return numer przedziału
+     */
+    private static int bucketIndex(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Wyznacza największą wartość należącą do przedziału.
+     *
+     * @param index numer przedziału
+     * @return górna granica przedziału
+     */
+    private static long bucketUpperBound(int index) {
+        if(index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
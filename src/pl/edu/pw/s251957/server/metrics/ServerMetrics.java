@@ -0,0 +1,482 @@
+package pl.edu.pw.s251957.server.metrics;
+
+import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.CompressionListener;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Metryki pracy serwera - liczniki przyjętych połączeń, żądań według typu i przesłanych bajtów oraz histogramy
+ * czasu kodowania odpowiedzi i opóźnienia ich dostarczenia. Liczniki zwiększane są bez blokad przez wątki
+ * obsługujące połączenia, a wątek próbkujący co sekundę wyznacza z nich częstotliwości na sekundę.
+ *
+ * @see LatencyHistogram
+ */
+public class ServerMetrics implements CompressionListener {
+    /** Odstęp próbkowania liczników w milisekundach */
+    private static final long SAMPLE_INTERVAL = 1000;
+
+    /** Typy żądań klientów */
+    private static final Command.CommandType[] COMMAND_TYPES = Command.CommandType.values();
+
+    /** Liczba przyjętych połączeń */
+    private final LongAdder acceptedConnections;
+    /** Liczba połączeń zamkniętych przez serwer z powodu braku odpowiedzi klienta */
+    private final LongAdder reapedConnections;
+    /** Liczba żądań odrzuconych z powodu przekroczenia limitu */
+    private final LongAdder rateLimitedCommands;
+    /** Liczba połączeń zamkniętych z powodu zalewania serwera żądaniami */
+    private final LongAdder floodDisconnects;
+    /** Liczby żądań według numerów typów */
+    private final LongAdder[] commands;
+    /** Liczba odebranych bajtów */
+    private final LongAdder bytesIn;
+    /** Liczba wysłanych bajtów */
+    private final LongAdder bytesOut;
+    /** Czasy kodowania odpowiedzi */
+    private final LatencyHistogram encodeTimes;
+    /** Opóźnienia od utworzenia odpowiedzi do przekazania jej warstwie transportowej */
+    private final LatencyHistogram deliveryLatencies;
+    /** Liczba bajtów treści przed kompresją */
+    private final LongAdder compressionOriginalBytes;
+    /** Liczba bajtów treści po kompresji */
+    private final LongAdder compressionCompressedBytes;
+    /** Czasy kompresji treści */
+    private final LatencyHistogram compressTimes;
+    /** Liczba bajtów rozpakowanych treści */
+    private final LongAdder decompressedBytes;
+    /** Czasy rozpakowania treści */
+    private final LatencyHistogram decompressTimes;
+    /** Liczba zakończonych uzgodnień TLS */
+    private final LongAdder tlsHandshakes;
+    /** Czasy uzgodnień TLS */
+    private final LatencyHistogram tlsHandshakeTimes;
+
+    /** Wartości liczników przy poprzedniej próbce, w kolejności: połączenia, bajty odebrane, bajty wysłane, żądania */
+    private long[] lastSample;
+    /** Chwila poprzedniej próbki według {@link System#nanoTime()} */
+    private long lastSampleTime;
+    /** Częstotliwości na sekundę z ostatniej próbki, w kolejności jak {@link #lastSample} */
+    private volatile double[] rates;
+    /** Wątek próbkujący liczniki */
+    private Thread samplerThread;
+
+    /**
+     * Tworzy metryki z zerowymi licznikami.
+     */
+    public ServerMetrics() {
+        this.acceptedConnections = new LongAdder();
+        this.reapedConnections = new LongAdder();
+        this.rateLimitedCommands = new LongAdder();
+        this.floodDisconnects = new LongAdder();
+        this.commands = new LongAdder[COMMAND_TYPES.length];
+        this.bytesIn = new LongAdder();
+        this.bytesOut = new LongAdder();
+        this.encodeTimes = new LatencyHistogram();
+        this.deliveryLatencies = new LatencyHistogram();
+        this.compressionOriginalBytes = new LongAdder();
+        this.compressionCompressedBytes = new LongAdder();
+        this.compressTimes = new LatencyHistogram();
+        this.decompressedBytes = new LongAdder();
+        this.decompressTimes = new LatencyHistogram();
+        this.tlsHandshakes = new LongAdder();
+        this.tlsHandshakeTimes = new LatencyHistogram();
+
+        for (int i = 0; i < commands.length; i++) {
+            commands[i] = new LongAdder();
+        }
+
+        this.lastSample = sampleCounters();
+        this.lastSampleTime = System.nanoTime();
+        this.rates = new double[lastSample.length];
+    }
+
+    /**
+     * Uruchamia wątek próbkujący liczniki.
+     */
+    public synchronized void start() {
+        if(samplerThread != null) {
+            return;
+        }
+
+        samplerThread = new Thread(this::runSampler, "metrics-sampler");
+        samplerThread.setDaemon(true);
+        samplerThread.start();
+    }
+
+    /**
+     * Zatrzymuje wątek próbkujący liczniki.
+     */
+    public synchronized void stop() {
+        if(samplerThread != null) {
+            samplerThread.interrupt();
+            samplerThread = null;
+        }
+    }
+
+    /**
+     * Zapisuje przyjęcie połączenia.
+     */
+    public void recordAccept() {
+        acceptedConnections.increment();
+    }
+
+    /**
+     * Zapisuje zamknięcie połączenia, które nie odpowiedziało na sprawdzenie.
+     */
+    public void recordReap() {
+        reapedConnections.increment();
+    }
+
+    /**
+     * Zapisuje odrzucenie żądania z powodu przekroczenia limitu.
+     */
+    public void recordRateLimited() {
+        rateLimitedCommands.increment();
+    }
+
+    /**
+     * Zapisuje zamknięcie połączenia, które zalewało serwer żądaniami.
+     */
+    public void recordFloodDisconnect() {
+        floodDisconnects.increment();
+    }
+
+    /**
+     * Zapisuje zakończone uzgodnienie TLS.
+     *
+     * @param nanos czas uzgodnienia w nanosekundach
+     */
+    public void recordTlsHandshake(long nanos) {
+        tlsHandshakes.increment();
+        tlsHandshakeTimes.record(nanos);
+    }
+
+    /**
+     * Zapisuje żądanie klienta danego typu.
+     *
+     * @param commandType typ żądania
+     */
+    public void recordCommand(Command.CommandType commandType) {
+        commands[commandType.ordinal()].increment();
+    }
+
+    /**
+     * Zapisuje odebrane bajty.
+     *
+     * @param bytes liczba bajtów
+     */
+    public void recordBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    /**
+     * Zapisuje wysłane bajty.
+     *
+     * @param bytes liczba bajtów
+     */
+    public void recordBytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * Zapisuje czas kodowania odpowiedzi.
+     *
+     * @param nanos czas w nanosekundach
+     */
+    public void recordEncodeTime(long nanos) {
+        encodeTimes.record(nanos);
+    }
+
+    /**
+     * Zapisuje opóźnienie dostarczenia odpowiedzi.
+     *
+     * @param nanos opóźnienie w nanosekundach
+     */
+    public void recordDeliveryLatency(long nanos) {
+        deliveryLatencies.record(nanos);
+    }
+
+    /**
+     * Zapisuje kompresję treści ramki. Metoda pochodząca z interfejsu {@link CompressionListener}.
+     *
+     * @param originalLength długość treści przed kompresją w bajtach
+     * @param compressedLength długość wysłanej treści w bajtach
+     * @param nanos czas kompresji w nanosekundach
+     */
+    @Override
+    public void compressed(int originalLength, int compressedLength, long nanos) {
+        compressionOriginalBytes.add(originalLength);
+        compressionCompressedBytes.add(compressedLength);
+        compressTimes.record(nanos);
+    }
+
+    /**
+     * Zapisuje rozpakowanie treści ramki. Metoda pochodząca z interfejsu {@link CompressionListener}.
+     *
+     * @param compressedLength długość odebranej treści w bajtach
+     * @param originalLength długość rozpakowanej treści w bajtach
+     * @param nanos czas rozpakowania w nanosekundach
+     */
+    @Override
+    public void decompressed(int compressedLength, int originalLength, long nanos) {
+        decompressedBytes.add(originalLength);
+        decompressTimes.record(nanos);
+    }
+
+    /**
+     * Zwraca liczbę przyjętych połączeń.
+     *
+     * @return liczba połączeń
+     */
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    /**
+     * Zwraca liczbę połączeń zamkniętych z powodu braku odpowiedzi klienta.
+     *
+     * @return liczba połączeń
+     */
+    public long getReapedConnections() {
+        return reapedConnections.sum();
+    }
+
+    /**
+     * Zwraca liczbę żądań odrzuconych z powodu przekroczenia limitu.
+     *
+     * @return liczba żądań
+     */
+    public long getRateLimitedCommands() {
+        return rateLimitedCommands.sum();
+    }
+
+    /**
+     * Zwraca liczbę połączeń zamkniętych z powodu zalewania serwera żądaniami.
+     *
+     * @return liczba połączeń
+     */
+    public long getFloodDisconnects() {
+        return floodDisconnects.sum();
+    }
+
+    /**
+     * Zwraca liczbę przyjętych połączeń na sekundę.
+     *
+     * @return liczba połączeń na sekundę
+     */
+    public double getAcceptRate() {
+        return rates[0];
+    }
+
+    /**
+     * Zwraca liczbę odebranych bajtów.
+     *
+     * @return liczba bajtów
+     */
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    /**
+     * Zwraca liczbę odebranych bajtów na sekundę.
+     *
+     * @return liczba bajtów na sekundę
+     */
+    public double getBytesInRate() {
+        return rates[1];
+    }
+
+    /**
+     * Zwraca liczbę wysłanych bajtów.
+     *
+     * @return liczba bajtów
+     */
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * Zwraca liczbę wysłanych bajtów na sekundę.
+     *
+     * @return liczba bajtów na sekundę
+     */
+    public double getBytesOutRate() {
+        return rates[2];
+    }
+
+    /**
+     * Zwraca liczby żądań według typu.
+     *
+     * @return liczby żądań
+     */
+    public Map<Command.CommandType, Long> getCommandCounts() {
+        Map<Command.CommandType, Long> counts = new EnumMap<>(Command.CommandType.class);
+
+        for (Command.CommandType commandType : COMMAND_TYPES) {
+            counts.put(commandType, commands[commandType.ordinal()].sum());
+        }
+
+        return counts;
+    }
+
+    /**
+     * Zwraca liczby żądań na sekundę według typu.
+     *
+     * @return liczby żądań na sekundę
+     */
+    public Map<Command.CommandType, Double> getCommandRates() {
+        double[] currentRates = rates;
+        Map<Command.CommandType, Double> commandRates = new EnumMap<>(Command.CommandType.class);
+
+        for (Command.CommandType commandType : COMMAND_TYPES) {
+            commandRates.put(commandType, currentRates[3 + commandType.ordinal()]);
+        }
+
+        return commandRates;
+    }
+
+    /**
+     * Zwraca histogram czasów kodowania odpowiedzi.
+     *
+     * @return histogram czasów kodowania
+     */
+    public LatencyHistogram getEncodeTimes() {
+        return encodeTimes;
+    }
+
+    /**
+     * Zwraca histogram opóźnień od utworzenia odpowiedzi do przekazania jej warstwie transportowej.
+     *
+     * @return histogram opóźnień dostarczenia
+     */
+    public LatencyHistogram getDeliveryLatencies() {
+        return deliveryLatencies;
+    }
+
+    /**
+     * Zwraca liczbę bajtów treści przekazanych do kompresji.
+     *
+     * @return liczba bajtów przed kompresją
+     */
+    public long getCompressionOriginalBytes() {
+        return compressionOriginalBytes.sum();
+    }
+
+    /**
+     * Zwraca liczbę bajtów treści wysłanych po próbie kompresji.
+     *
+     * @return liczba bajtów po kompresji
+     */
+    public long getCompressionCompressedBytes() {
+        return compressionCompressedBytes.sum();
+    }
+
+    /**
+     * Zwraca stosunek długości treści po kompresji do długości przed kompresją.
+     *
+     * @return stopień kompresji lub 1, jeśli żadna treść nie była kompresowana
+     */
+    public double getCompressionRatio() {
+        long original = getCompressionOriginalBytes();
+        return original == 0 ? 1 : (double) getCompressionCompressedBytes() / original;
+    }
+
+    /**
+     * Zwraca liczbę bajtów rozpakowanych treści odebranych od klientów.
+     *
+     * @return liczba bajtów po rozpakowaniu
+     */
+    public long getDecompressedBytes() {
+        return decompressedBytes.sum();
+    }
+
+    /**
+     * Zwraca histogram czasów kompresji treści.
+     *
+     * @return histogram czasów kompresji
+     */
+    public LatencyHistogram getCompressTimes() {
+        return compressTimes;
+    }
+
+    /**
+     * Zwraca histogram czasów rozpakowania treści.
+     *
+     * @return histogram czasów rozpakowania
+     */
+    public LatencyHistogram getDecompressTimes() {
+        return decompressTimes;
+    }
+
+    /**
+     * Zwraca liczbę zakończonych uzgodnień TLS.
+     *
+     * @return liczba uzgodnień
+     */
+    public long getTlsHandshakes() {
+        return tlsHandshakes.sum();
+    }
+
+    /**
+     * Zwraca histogram czasów uzgodnień TLS.
+     *
+     * @return histogram czasów uzgodnień
+     */
+    public LatencyHistogram getTlsHandshakeTimes() {
+        return tlsHandshakeTimes;
+    }
+
+    /**
+     * Co sekundę wyznacza częstotliwości na podstawie przyrostu liczników, dopóki wątek nie zostanie przerwany.
+     */
+    private void runSampler() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(SAMPLE_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            sample();
+        }
+    }
+
+    /**
+     * Wyznacza częstotliwości od poprzedniej próbki.
+     */
+    private void sample() {
+        long[] sample = sampleCounters();
+        long now = System.nanoTime();
+        double seconds = (double) (now - lastSampleTime) / TimeUnit.SECONDS.toNanos(1);
+        double[] newRates = new double[sample.length];
+
+        for (int i = 0; i < sample.length; i++) {
+            newRates[i] = (sample[i] - lastSample[i]) / seconds;
+        }
+
+        lastSample = sample;
+        lastSampleTime = now;
+        rates = newRates;
+    }
+
+    /**
+     * Odczytuje bieżące wartości liczników.
+     *
+     * @return wartości liczników w kolejności: połączenia, bajty odebrane, bajty wysłane, żądania według typu
+     */
+    private long[] sampleCounters() {
+        long[] sample = new long[3 + commands.length];
+        sample[0] = acceptedConnections.sum();
+        sample[1] = bytesIn.sum();
+        sample[2] = bytesOut.sum();
+
+        for (int i = 0; i < commands.length; i++) {
+            sample[3 + i] = commands[i].sum();
+        }
+
+        return sample;
+    }
+}
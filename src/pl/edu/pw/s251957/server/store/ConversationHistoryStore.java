@@ -0,0 +1,176 @@
+package pl.edu.pw.s251957.server.store;
+
+import pl.edu.pw.s251957.common.HistoryEntry;
+import pl.edu.pw.s251957.common.HistoryPage;
+import pl.edu.pw.s251957.common.WireReader;
+import pl.edu.pw.s251957.common.WireWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Magazyn historii konwersacji pomiędzy parami użytkowników. Historia każdej pary zapisywana jest w osobnym
+ * katalogu jako {@link ConversationLog}, a klienci pobierają ją stronami od najnowszych wiadomości. Strona
+ * wyszukiwana jest po numerze wiadomości - najpierw segment w uporządkowanej mapie, potem pozycja w rzadkim indeksie
+ * segmentu - więc koszt pobrania strony nie zależy od długości historii. Otwartych jest tylko ostatnio używanych
+ * {@code maxOpenConversations} konwersacji.
+ *
+ * Wiadomości nie są wymuszane na dysk przy każdym zapisie. Historia nie jest potwierdzana nadawcy, więc wystarcza
+ * zapis do pamięci podręcznej systemu plików, a niedokończony rekord ostatniego segmentu jest obcinany przy ponownym
+ * otwarciu konwersacji.
+ *
+ * Magazyn nie jest synchronizowany - używa go jeden wątek. Serwer tworzy osobny magazyn dla każdego wątku rejestru
+ * i kieruje do niego konwersacje według pary uczestników, więc zapisy różnych konwersacji nie czekają na wspólną
+ * blokadę. Magazyny mogą dzielić katalog, o ile każda konwersacja należy tylko do jednego z nich.
+ *
+ * @see ConversationLog
+ * @see HistoryPage
+ */
+public class ConversationHistoryStore {
+    /** Co która wiadomość segmentu zapisywana jest w jego indeksie */
+    private static final int INDEX_INTERVAL = 32;
+
+    /** Katalog magazynu */
+    private final Path directory;
+    /** Maksymalny rozmiar segmentu w bajtach */
+    private final int segmentSize;
+    /** Otwarte konwersacje od najdawniej używanej */
+    private final Map<String, ConversationLog> openConversations;
+
+    /**
+     * Tworzy magazyn historii w podanym katalogu.
+     *
+     * @param directory katalog magazynu
+     * @param segmentSize maksymalny rozmiar segmentu w bajtach
+     * @param maxOpenConversations maksymalna liczba jednocześnie otwartych konwersacji
+     */
+    public ConversationHistoryStore(Path directory, int segmentSize, int maxOpenConversations) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.openConversations = new LinkedHashMap<String, ConversationLog>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ConversationLog> eldest) {
+                if(size() > maxOpenConversations) {
+                    eldest.getValue().close();
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Dopisuje wiadomość do historii konwersacji nadawcy z adresatem.
+     *
+     * @param senderNick nick nadawcy
+     * @param addresseeNick nick adresata
+     * @param message treść wiadomości
+     * @throws IOException błąd zapisu historii
+     */
+    public void append(String senderNick, String addresseeNick, String message) throws IOException {
+        WireWriter writer = new WireWriter(64);
+        writer.writeString(senderNick);
+        writer.writeString(message);
+
+        getConversation(senderNick, addresseeNick, true).append(writer.toByteArray());
+    }
+
+    /**
+     * Odczytuje stronę historii konwersacji użytkownika z drugim uczestnikiem. Strona zawiera najwyżej {@code limit}
+     * wiadomości poprzedzających kursor. Jeśli konwersacja nie ma jeszcze historii, strona jest pusta, a katalog
+     * konwersacji nie jest tworzony.
+     *
+     * @param nick nick użytkownika pobierającego historię
+     * @param conversationNick nick drugiego uczestnika konwersacji
+     * @param cursor kursor strony lub {@link HistoryPage#NO_CURSOR} dla najnowszych wiadomości
+     * @param limit maksymalna liczba wiadomości strony
+     * @return strona historii konwersacji
+     * @throws IOException błąd odczytu historii
+     */
+    public HistoryPage readPage(String nick, String conversationNick, long cursor, int limit)
+            throws IOException {
+        ConversationLog conversation = getConversation(nick, conversationNick, false);
+
+        if(conversation == null) {
+            return new HistoryPage(conversationNick, Collections.emptyList(), HistoryPage.NO_CURSOR);
+        }
+
+        long nextSequence = conversation.getNextSequence();
+        long to = cursor == HistoryPage.NO_CURSOR ? nextSequence : Math.max(0, Math.min(cursor, nextSequence));
+        long from = Math.max(0, to - limit);
+
+        List<HistoryEntry> entries = new ArrayList<>((int) (to - from));
+
+        for (byte[] record : conversation.read(from, to)) {
+            WireReader reader = new WireReader(record);
+            entries.add(new HistoryEntry(reader.readString(), reader.readString()));
+        }
+
+        return new HistoryPage(conversationNick, entries, from > 0 ? from : HistoryPage.NO_CURSOR);
+    }
+
+    /**
+     * Zamyka wszystkie otwarte konwersacje.
+     */
+    public void close() {
+        Iterator<ConversationLog> iterator = openConversations.values().iterator();
+
+        while (iterator.hasNext()) {
+            iterator.next().close();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Zwraca otwartą historię konwersacji pary użytkowników, otwierając ją w razie potrzeby. Kolejność nicków nie ma
+     * znaczenia.
+     *
+     * @param firstNick nick pierwszego uczestnika
+     * @param secondNick nick drugiego uczestnika
+     * @param create flaga czy utworzyć katalog konwersacji, jeśli nie istnieje
+     * @return historia konwersacji lub {@code null}, jeśli nie istnieje, a nie należało jej tworzyć
+     * @throws IOException błąd otwierania historii
+     */
+    private ConversationLog getConversation(String firstNick, String secondNick, boolean create) throws IOException {
+        String key = firstNick.compareTo(secondNick) <= 0
+                ? toDirectoryName(firstNick) + '-' + toDirectoryName(secondNick)
+                : toDirectoryName(secondNick) + '-' + toDirectoryName(firstNick);
+        ConversationLog conversation = openConversations.get(key);
+
+        if(conversation == null) {
+            if(!create && !Files.isDirectory(directory.resolve(key))) {
+                return null;
+            }
+
+            Files.createDirectories(directory);
+            conversation = ConversationLog.open(directory.resolve(key), segmentSize, INDEX_INTERVAL);
+            openConversations.put(key, conversation);
+        }
+
+        return conversation;
+    }
+
+    /**
+     * Zamienia nick na bezpieczną nazwę katalogu zapisując bajty nicku szesnastkowo.
+     *
+     * @param nick nick użytkownika
+     * @return nazwa katalogu
+     */
+    private static String toDirectoryName(String nick) {
+        StringBuilder name = new StringBuilder();
+
+        for (byte b : nick.getBytes(StandardCharsets.UTF_8)) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return name.toString();
+    }
+}
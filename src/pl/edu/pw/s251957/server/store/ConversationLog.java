@@ -0,0 +1,186 @@
+package pl.edu.pw.s251957.server.store;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Historia jednej konwersacji zapisana w katalogu jako ciąg segmentów {@link HistorySegment}. Każda wiadomość ma
+ * kolejny numer w konwersacji, a segmenty nazwane są numerem swojej pierwszej wiadomości. Segment zawierający
+ * wiadomość o danym numerze wyszukiwany jest w uporządkowanej mapie segmentów.
+ *
+ * @see HistorySegment
+ * @see ConversationHistoryStore
+ */
+class ConversationLog {
+    /** Rozszerzenie plików segmentów */
+    private static final String SEGMENT_EXTENSION = ".seg";
+    /** Rozszerzenie plików indeksów */
+    private static final String INDEX_EXTENSION = ".idx";
+
+    /** Katalog konwersacji */
+    private final Path directory;
+    /** Maksymalny rozmiar segmentu w bajtach */
+    private final int segmentSize;
+    /** Co który rekord zapisywana jest jego pozycja w indeksie */
+    private final int indexInterval;
+    /** Segmenty według numerów ich pierwszych wiadomości */
+    private final TreeMap<Long, HistorySegment> segments;
+
+    /**
+     * Tworzy pustą historię konwersacji dla podanego katalogu.
+     *
+     * @param directory katalog konwersacji
+     * @param segmentSize maksymalny rozmiar segmentu w bajtach
+     * @param indexInterval co który rekord zapisywana jest jego pozycja w indeksie
+     */
+    private ConversationLog(Path directory, int segmentSize, int indexInterval) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.indexInterval = indexInterval;
+        this.segments = new TreeMap<>();
+    }
+
+    /**
+     * Otwiera historię konwersacji, tworząc jej katalog, jeśli nie istnieje.
+     *
+     * @param directory katalog konwersacji
+     * @param segmentSize maksymalny rozmiar segmentu w bajtach
+     * @param indexInterval co który rekord zapisywana jest jego pozycja w indeksie
+     * @return otwarta historia konwersacji
+     * @throws IOException błąd otwierania segmentów
+     */
+    static ConversationLog open(Path directory, int segmentSize, int indexInterval) throws IOException {
+        Files.createDirectories(directory);
+        ConversationLog log = new ConversationLog(directory, segmentSize, indexInterval);
+
+        try {
+            log.openSegments();
+        } catch (IOException e) {
+            log.close();
+            throw e;
+        }
+
+        return log;
+    }
+
+    /**
+     * Dopisuje rekord wiadomości, otwierając nowy segment, jeśli ostatni osiągnął maksymalny rozmiar.
+     *
+     * @param record treść rekordu
+     * @throws IOException błąd zapisu
+     */
+    void append(byte[] record) throws IOException {
+        Map.Entry<Long, HistorySegment> last = segments.lastEntry();
+        HistorySegment segment = last == null ? null : last.getValue();
+
+        if(segment == null || segment.getSize() > 0 && segment.getSize() + record.length > segmentSize) {
+            segment = openSegment(getNextSequence(), -1);
+            segments.put(segment.getBaseSequence(), segment);
+        }
+
+        segment.append(record);
+    }
+
+    /**
+     * Odczytuje rekordy wiadomości o numerach z podanego przedziału.
+     *
+     * @param from numer pierwszej wiadomości
+     * @param to numer wiadomości za ostatnią odczytywaną
+     * @return treści rekordów w kolejności numerów
+     * @throws IOException błąd odczytu
+     */
+    List<byte[]> read(long from, long to) throws IOException {
+        List<byte[]> records = new ArrayList<>((int) Math.max(0, to - from));
+        long sequence = from;
+
+        while (sequence < to) {
+            HistorySegment segment = segments.floorEntry(sequence).getValue();
+            int offset = (int) (sequence - segment.getBaseSequence());
+            int count = (int) Math.min(to - sequence, segment.getRecordCount() - offset);
+
+            if(count <= 0) {
+                throw new IOException("Brak wiadomości " + sequence + " w historii konwersacji");
+            }
+
+            records.addAll(segment.read(offset, count));
+            sequence += count;
+        }
+
+        return records;
+    }
+
+    /**
+     * Zwraca numer, który otrzyma kolejna wiadomość, równy liczbie wiadomości w konwersacji.
+     *
+     * @return numer kolejnej wiadomości
+     */
+    long getNextSequence() {
+        Map.Entry<Long, HistorySegment> last = segments.lastEntry();
+
+        return last == null ? 0 : last.getKey() + last.getValue().getRecordCount();
+    }
+
+    /**
+     * Zamyka wszystkie segmenty konwersacji.
+     */
+    void close() {
+        for (HistorySegment segment : segments.values()) {
+            segment.close();
+        }
+
+        segments.clear();
+    }
+
+    /**
+     * Otwiera istniejące segmenty konwersacji. Liczba rekordów wcześniejszych segmentów wynika z numeru pierwszej
+     * wiadomości kolejnego segmentu, a ostatni segment jest odczytywany od ostatniego wpisu indeksu.
+     *
+     * @throws IOException błąd otwierania segmentów
+     */
+    private void openSegments() throws IOException {
+        List<Long> baseSequences = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+
+                try {
+                    baseSequences.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_EXTENSION.length())));
+                } catch (NumberFormatException e) {
+                    System.out.println("Pominięto nieznany plik historii: " + name);
+                }
+            }
+        }
+
+        baseSequences.sort(null);
+
+        for (int i = 0; i < baseSequences.size(); i++) {
+            long baseSequence = baseSequences.get(i);
+            boolean last = i == baseSequences.size() - 1;
+            int recordCount = last ? -1 : (int) (baseSequences.get(i + 1) - baseSequence);
+            segments.put(baseSequence, openSegment(baseSequence, recordCount));
+        }
+    }
+
+    /**
+     * Otwiera segment o podanym numerze pierwszej wiadomości.
+     *
+     * @param baseSequence numer pierwszej wiadomości segmentu
+     * @param recordCount liczba rekordów segmentu lub {@code -1}, jeśli należy ją ustalić
+     * @return otwarty segment
+     * @throws IOException błąd otwierania segmentu
+     */
+    private HistorySegment openSegment(long baseSequence, int recordCount) throws IOException {
+        String name = String.format("%020d", baseSequence);
+
+        Path segmentPath = directory.resolve(name + SEGMENT_EXTENSION);
+        Path indexPath = directory.resolve(name + INDEX_EXTENSION);
+
+        return HistorySegment.open(segmentPath, indexPath, baseSequence, indexInterval, recordCount);
+    }
+}
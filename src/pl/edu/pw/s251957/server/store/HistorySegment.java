@@ -0,0 +1,355 @@
+package pl.edu.pw.s251957.server.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/** Segment historii jednej konwersacji. Wiadomości dopisywane są do pliku segmentu jako rekordy z długością, sumą
+ * kontrolną CRC32 i treścią, a do pliku indeksu zapisywana jest pozycja co {@code indexInterval}-tego rekordu.
+ * Dzięki rzadkiemu indeksowi odczyt rekordu o danym numerze wymaga przejścia najwyżej {@code indexInterval}
+ * nagłówków, niezależnie od długości segmentu.
+ *
+ * @see ConversationLog
+ */
+class HistorySegment {
+    /** Długość nagłówka rekordu w bajtach (długość i suma kontrolna) */
+    private static final int RECORD_HEADER_LENGTH = 8;
+    /** Długość wpisu indeksu w bajtach */
+    private static final int INDEX_ENTRY_LENGTH = 4;
+
+    /** Numer pierwszej wiadomości segmentu w konwersacji */
+    private final long baseSequence;
+    /** Co który rekord zapisywana jest jego pozycja w indeksie */
+    private final int indexInterval;
+    /** Kanał pliku segmentu */
+    private final FileChannel segmentChannel;
+    /** Kanał pliku indeksu */
+    private final FileChannel indexChannel;
+
+    /** Pozycje co {@code indexInterval}-tego rekordu segmentu */
+    private int[] indexPositions;
+    /** Liczba wpisów indeksu */
+    private int indexSize;
+    /** Rozmiar segmentu w bajtach */
+    private long size;
+    /** Liczba rekordów segmentu */
+    private int recordCount;
+
+    /**
+     * Tworzy segment dla otwartych plików segmentu i indeksu.
+     *
+     * @param baseSequence numer pierwszej wiadomości segmentu
+     * @param indexInterval co który rekord zapisywana jest jego pozycja w indeksie
+     * @param segmentChannel kanał pliku segmentu
+     * @param indexChannel kanał pliku indeksu
+     */
+    private HistorySegment(long baseSequence, int indexInterval, FileChannel segmentChannel, FileChannel indexChannel) {
+        this.baseSequence = baseSequence;
+        this.indexInterval = indexInterval;
+        this.segmentChannel = segmentChannel;
+        this.indexChannel = indexChannel;
+    }
+
+    /**
+     * Otwiera segment i wczytuje jego indeks. Jeśli liczba rekordów nie jest znana (ostatni segment konwersacji),
+     * zostaje ustalona przez odczyt rekordów od ostatniego wpisu indeksu, a niedokończony rekord jest obcinany.
+     *
+     * @param segmentPath ścieżka pliku segmentu
+     * @param indexPath ścieżka pliku indeksu
+     * @param baseSequence numer pierwszej wiadomości segmentu
+     * @param indexInterval co który rekord zapisywana jest jego pozycja w indeksie
+     * @param knownRecordCount liczba rekordów segmentu lub {@code -1}, jeśli należy ją ustalić
+     * @return otwarty segment
+     * @throws IOException błąd otwierania lub odczytu plików
+     */
+    static HistorySegment open(Path segmentPath, Path indexPath, long baseSequence, int indexInterval,
+                               int knownRecordCount) throws IOException {
+        FileChannel segmentChannel = FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        FileChannel indexChannel = null;
+
+        try {
+            indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            HistorySegment segment = new HistorySegment(baseSequence, indexInterval, segmentChannel, indexChannel);
+            segment.loadIndex();
+
+            if(knownRecordCount < 0) {
+                segment.recover();
+            } else {
+                segment.size = segmentChannel.size();
+                segment.recordCount = knownRecordCount;
+            }
+
+            return segment;
+        } catch (IOException e) {
+            segmentChannel.close();
+
+            if(indexChannel != null) {
+                indexChannel.close();
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Dopisuje rekord na końcu segmentu, a co {@code indexInterval}-ty rekord także jego pozycję do indeksu.
+     *
+     * @param record treść rekordu
+     * @throws IOException błąd zapisu
+     */
+    void append(byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_LENGTH + record.length);
+        buffer.putInt(record.length);
+        buffer.putInt(checksum(record));
+        buffer.put(record);
+        buffer.flip();
+
+        long position = size;
+        writeFully(segmentChannel, buffer, position);
+        size += RECORD_HEADER_LENGTH + record.length;
+
+        if(recordCount % indexInterval == 0) {
+            addIndexEntry((int) position);
+        }
+
+        recordCount++;
+    }
+
+    /**
+     * Odczytuje kolejne rekordy segmentu zaczynając od rekordu o podanym numerze w segmencie. Pozycja pierwszego
+     * rekordu ustalana jest na podstawie indeksu.
+     *
+     * @param from numer pierwszego rekordu w segmencie
+     * @param count liczba rekordów
+     * @return treści rekordów
+     * @throws IOException błąd odczytu lub uszkodzony rekord
+     */
+    List<byte[]> read(int from, int count) throws IOException {
+        List<byte[]> records = new ArrayList<>(count);
+        long position = indexPositions[from / indexInterval];
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+
+        for (int skipped = from % indexInterval; skipped > 0; skipped--) {
+            position += RECORD_HEADER_LENGTH + readHeader(header, position);
+        }
+
+        for (int i = 0; i < count; i++) {
+            int length = readHeader(header, position);
+            int expectedChecksum = header.getInt(4);
+            ByteBuffer record = ByteBuffer.allocate(length);
+            readFully(segmentChannel, record, position + RECORD_HEADER_LENGTH);
+
+            if(checksum(record.array()) != expectedChecksum) {
+                throw new IOException("Uszkodzony rekord historii na pozycji " + position);
+            }
+
+            records.add(record.array());
+            position += RECORD_HEADER_LENGTH + length;
+        }
+
+        return records;
+    }
+
+    /**
+     * Zwraca numer pierwszej wiadomości segmentu w konwersacji.
+     *
+     * @return numer pierwszej wiadomości
+     */
+    long getBaseSequence() {
+        return baseSequence;
+    }
+
+    /**
+     * Zwraca liczbę rekordów segmentu.
+     *
+     * @return liczba rekordów
+     */
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Zwraca rozmiar segmentu w bajtach.
+     *
+     * @return rozmiar segmentu
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * Zamyka pliki segmentu i indeksu.
+     */
+    void close() {
+        try {
+            segmentChannel.close();
+            indexChannel.close();
+        } catch (IOException e) {
+            System.out.println("Błąd przy zamykaniu segmentu historii: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Wczytuje wpisy indeksu, pomijając niedokończony wpis na końcu pliku.
+     *
+     * @throws IOException błąd odczytu indeksu
+     */
+    private void loadIndex() throws IOException {
+        indexSize = (int) (indexChannel.size() / INDEX_ENTRY_LENGTH);
+        indexPositions = new int[Math.max(16, indexSize)];
+        ByteBuffer buffer = ByteBuffer.allocate(indexSize * INDEX_ENTRY_LENGTH);
+        readFully(indexChannel, buffer, 0);
+        buffer.flip();
+
+        for (int i = 0; i < indexSize; i++) {
+            indexPositions[i] = buffer.getInt();
+        }
+    }
+
+    /**
+     * Ustala liczbę rekordów segmentu odczytując rekordy od ostatniego poprawnego wpisu indeksu. Uzupełnia brakujące
+     * wpisy indeksu i obcina niedokończony rekord zapisany przed awarią.
+     *
+     * @throws IOException błąd odczytu lub zapisu plików
+     */
+    private void recover() throws IOException {
+        long fileSize = segmentChannel.size();
+
+        while (indexSize > 0 && recordLengthAt(indexPositions[indexSize - 1], fileSize) < 0) {
+            indexSize--;
+        }
+
+        indexChannel.truncate((long) indexSize * INDEX_ENTRY_LENGTH);
+
+        long position = indexSize > 0 ? indexPositions[indexSize - 1] : 0;
+        int record = indexSize > 0 ? (indexSize - 1) * indexInterval : 0;
+        int length;
+
+        while ((length = recordLengthAt(position, fileSize)) >= 0) {
+            if(record % indexInterval == 0 && record / indexInterval == indexSize) {
+                addIndexEntry((int) position);
+            }
+
+            position += RECORD_HEADER_LENGTH + length;
+            record++;
+        }
+
+        segmentChannel.truncate(position);
+        size = position;
+        recordCount = record;
+    }
+
+    /**
+     * Sprawdza poprawność rekordu na podanej pozycji.
+     *
+     * @param position pozycja rekordu
+     * @param fileSize rozmiar pliku segmentu
+     * @return długość treści rekordu lub {@code -1}, jeśli na podanej pozycji nie ma poprawnego rekordu
+     * @throws IOException błąd odczytu
+     */
+    private int recordLengthAt(long position, long fileSize) throws IOException {
+        if(fileSize - position < RECORD_HEADER_LENGTH) {
+            return -1;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+        int length = readHeader(header, position);
+
+        if(length <= 0 || fileSize - position - RECORD_HEADER_LENGTH < length) {
+            return -1;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(length);
+        readFully(segmentChannel, record, position + RECORD_HEADER_LENGTH);
+
+        return checksum(record.array()) == header.getInt(4) ? length : -1;
+    }
+
+    /**
+     * Odczytuje nagłówek rekordu do podanego bufora.
+     *
+     * @param header bufor nagłówka
+     * @param position pozycja rekordu
+     * @return długość treści rekordu
+     * @throws IOException błąd odczytu
+     */
+    private int readHeader(ByteBuffer header, long position) throws IOException {
+        header.clear();
+        readFully(segmentChannel, header, position);
+
+        return header.getInt(0);
+    }
+
+    /**
+     * Dodaje wpis do indeksu w pamięci i w pliku.
+     *
+     * @param position pozycja rekordu
+     * @throws IOException błąd zapisu indeksu
+     */
+    private void addIndexEntry(int position) throws IOException {
+        if(indexSize == indexPositions.length) {
+            indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+        }
+
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_LENGTH);
+        entry.putInt(position);
+        entry.flip();
+        writeFully(indexChannel, entry, (long) indexSize * INDEX_ENTRY_LENGTH);
+        indexPositions[indexSize++] = position;
+    }
+
+    /**
+     * Zapisuje cały bufor do kanału od podanej pozycji.
+     *
+     * @param channel kanał pliku
+     * @param buffer zapisywany bufor
+     * @param position pozycja w pliku
+     * @throws IOException błąd zapisu
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Wypełnia bufor bajtami kanału od podanej pozycji.
+     *
+     * @param channel kanał pliku
+     * @param buffer wypełniany bufor
+     * @param position pozycja w pliku
+     * @throws IOException błąd odczytu lub koniec pliku
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+
+            if(read < 0) {
+                throw new IOException("Nieoczekiwany koniec pliku historii");
+            }
+
+            position += read;
+        }
+    }
+
+    /**
+     * Liczy sumę kontrolną treści rekordu.
+     *
+     * @param record treść rekordu
+     * @return suma kontrolna
+     */
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,223 @@
+package pl.edu.pw.s251957.server.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/** Pojedynczy segment dziennika wiadomości {@link OfflineMessageStore}. Segment jest plikiem o stałym rozmiarze
+ * odwzorowanym w pamięci, do którego rekordy są wyłącznie dopisywane. Każdy rekord składa się z długości, sumy
+ * kontrolnej CRC32 oraz treści. Niezapisana część pliku wypełniona jest zerami, więc rekord o zerowej długości
+ * oznacza koniec danych, a rekord z niepoprawną sumą kontrolną - zapis przerwany awarią.
+ *
+ * @see OfflineMessageStore
+ */
+class LogSegment {
+    /** Długość nagłówka rekordu w bajtach (długość i suma kontrolna) */
+    static final int RECORD_HEADER_LENGTH = 8;
+
+    /** Numer segmentu, kolejne segmenty mają rosnące numery */
+    private final long id;
+    /** Ścieżka pliku segmentu */
+    private final Path path;
+    /** Kanał pliku segmentu */
+    private final FileChannel channel;
+    /** Plik segmentu odwzorowany w pamięci */
+    private final MappedByteBuffer buffer;
+    /** Pozycja, od której dopisywany jest kolejny rekord */
+    private int writePosition;
+
+    /**
+     * Tworzy segment dla otwartego i odwzorowanego w pamięci pliku.
+     *
+     * @param id numer segmentu
+     * @param path ścieżka pliku segmentu
+     * @param channel kanał pliku segmentu
+     * @param buffer plik segmentu odwzorowany w pamięci
+     */
+    private LogSegment(long id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Otwiera segment, tworząc jego plik, jeśli nie istnieje. Istniejący plik większy od podanego rozmiaru jest
+     * odwzorowywany w całości.
+     *
+     * @param id numer segmentu
+     * @param path ścieżka pliku segmentu
+     * @param size rozmiar segmentu w bajtach
+     * @return otwarty segment
+     * @throws IOException błąd otwierania lub odwzorowania pliku
+     */
+    static LogSegment open(long id, Path path, int size) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        try {
+            long mappedSize = Math.max(size, channel.size());
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+            return new LogSegment(id, path, channel, buffer);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Odczytuje kolejne poprawne rekordy segmentu i ustawia pozycję zapisu za ostatnim z nich.
+     *
+     * @param consumer odbiorca odczytanych rekordów
+     * @throws IOException błąd obsługi rekordu
+     */
+    void recover(RecordConsumer consumer) throws IOException {
+        int position = 0;
+        byte[] record;
+
+        while ((record = readAt(position)) != null) {
+            consumer.accept(this, position, record);
+            position += RECORD_HEADER_LENGTH + record.length;
+        }
+
+        writePosition = position;
+    }
+
+    /**
+     * Dopisuje rekord na końcu segmentu.
+     *
+     * @param record treść rekordu
+     * @return pozycja rekordu w segmencie lub {@code -1}, jeśli rekord nie mieści się w segmencie
+     */
+    int append(byte[] record) {
+        if(buffer.capacity() - writePosition < RECORD_HEADER_LENGTH + record.length) {
+            return -1;
+        }
+
+        int position = writePosition;
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.putInt(record.length);
+        view.putInt(checksum(record));
+        view.put(record);
+        writePosition = view.position();
+
+        return position;
+    }
+
+    /**
+     * Odczytuje rekord zapisany na podanej pozycji.
+     *
+     * @param position pozycja rekordu w segmencie
+     * @return treść rekordu
+     * @throws IOException na podanej pozycji nie ma poprawnego rekordu
+     */
+    byte[] read(int position) throws IOException {
+        byte[] record = readAt(position);
+
+        if(record == null) {
+            throw new IOException("Uszkodzony rekord w segmencie " + path.getFileName() + " na pozycji " + position);
+        }
+
+        return record;
+    }
+
+    /**
+     * Odczytuje rekord z podanej pozycji, sprawdzając jego długość i sumę kontrolną.
+     *
+     * @param position pozycja rekordu w segmencie
+     * @return treść rekordu lub {@code null}, jeśli na podanej pozycji nie ma poprawnego rekordu
+     */
+    private byte[] readAt(int position) {
+        if(buffer.capacity() - position < RECORD_HEADER_LENGTH) {
+            return null;
+        }
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        int length = view.getInt();
+        int checksum = view.getInt();
+
+        if(length <= 0 || length > view.remaining()) {
+            return null;
+        }
+
+        byte[] record = new byte[length];
+        view.get(record);
+
+        return checksum(record) == checksum ? record : null;
+    }
+
+    /**
+     * Wymusza zapis zmienionych stron segmentu na dysk.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Zamyka kanał pliku segmentu.
+     */
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Błąd przy zamykaniu segmentu dziennika: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Zamyka segment i usuwa jego plik.
+     */
+    void delete() {
+        close();
+
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.out.println("Błąd przy usuwaniu segmentu dziennika: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Zwraca numer segmentu.
+     *
+     * @return numer segmentu
+     */
+    long getId() {
+        return id;
+    }
+
+    /**
+     * Liczy sumę kontrolną treści rekordu.
+     *
+     * @param record treść rekordu
+     * @return suma kontrolna
+     */
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Interfejs odbiorcy rekordów odczytywanych przy otwieraniu dziennika.
+     */
+    interface RecordConsumer {
+        /**
+         * Obsługuje odczytany rekord.
+         *
+         * @param segment segment zawierający rekord
+         * @param position pozycja rekordu w segmencie
+         * @param record treść rekordu
+         * @throws IOException niepoprawna treść rekordu
+         */
+        void accept(LogSegment segment, int position, byte[] record) throws IOException;
+    }
+}
@@ -0,0 +1,632 @@
+package pl.edu.pw.s251957.server.store;
+
+import pl.edu.pw.s251957.common.WireReader;
+import pl.edu.pw.s251957.common.WireWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/** Trwały magazyn wiadomości wysłanych do niepodłączonych użytkowników. Wiadomości są dopisywane do dziennika
+ * podzielonego na segmenty {@link LogSegment} odwzorowane w pamięci, a w pamięci przechowywany jest tylko indeks
+ * pozycji wiadomości każdego odbiorcy. Odczytanie wiadomości nie usuwa ich z magazynu - dopiero po wysłaniu ich
+ * odbiorcy serwer oznacza je jako dostarczone, co zapisywane jest w dzienniku rekordem dostarczenia wszystkich
+ * wiadomości odbiorcy do podanej pozycji. Segmenty bez niedostarczonych wiadomości są usuwane. Po ponownym
+ * uruchomieniu serwera indeks odtwarzany jest z dziennika.
+ *
+ * Niedostarczona wiadomość do użytkownika, który długo się nie podłącza, nie przytrzymuje całego dziennika -
+ * najstarszy segment z nielicznymi niedostarczonymi wiadomościami jest kompaktowany przez ponowne dopisanie tych
+ * wiadomości na końcu dziennika. Przeniesiona wiadomość zachowuje swoją pierwotną pozycję.
+ *
+ * Zapis na dysk odbywa się grupowo - osobny wątek wymusza zapis wszystkich zmienionych segmentów naraz i kończy
+ * przyszłości {@link CompletableFuture} wszystkich rekordów dopisanych przed tym zapisem. Dopisywanie rekordów nie
+ * czeka więc na dysk, a jedno wywołanie {@code fsync} obejmuje wiele wiadomości.
+ *
+ * @see LogSegment
+ * @see StoredMessage
+ */
+public class OfflineMessageStore {
+    /** Typ rekordu z wiadomością */
+    private static final int MESSAGE_RECORD = 1;
+    /** Typ rekordu oznaczającego dostarczenie wszystkich wcześniejszych wiadomości odbiorcy */
+    private static final int DELIVERED_RECORD = 2;
+    /** Typ rekordu oznaczającego dostarczenie wiadomości odbiorcy do podanej pozycji w dzienniku */
+    private static final int DELIVERED_UP_TO_RECORD = 3;
+    /** Typ rekordu z wiadomością przeniesioną przy kompaktowaniu, zawierającego pierwotną pozycję wiadomości */
+    private static final int MOVED_MESSAGE_RECORD = 4;
+    /** Odwrotność części segmentu, którą mogą zająć wiadomości przenoszone przy kompaktowaniu */
+    private static final int COMPACTION_RATIO = 4;
+    /** Rozszerzenie plików segmentów */
+    private static final String SEGMENT_EXTENSION = ".log";
+
+    /** Katalog dziennika */
+    private final Path directory;
+    /** Rozmiar segmentu w bajtach */
+    private final int segmentSize;
+
+    /** Segmenty dziennika od najstarszego */
+    private final Deque<LogSegment> segments;
+    /** Liczba niedostarczonych wiadomości w poszczególnych segmentach */
+    private final Map<LogSegment, Integer> pendingCounts;
+    /** Pozycje niedostarczonych wiadomości poszczególnych odbiorców */
+    private final Map<String, List<MessagePointer>> pendingMessages;
+
+    /** Segmenty zmienione od ostatniego zapisu na dysk */
+    private final Set<LogSegment> dirtySegments;
+    /** Przyszłości rekordów oczekujących na zapis na dysk */
+    private List<CompletableFuture<Void>> pendingSyncs;
+    /** Wątek grupowo zapisujący segmenty na dysk */
+    private Thread syncThread;
+    /** Flaga czy magazyn jest zamknięty */
+    private boolean closed;
+
+    /**
+     * Tworzy magazyn przechowujący dziennik w podanym katalogu. Magazyn trzeba otworzyć metodą {@link #open()}.
+     *
+     * @param directory katalog dziennika
+     * @param segmentSize rozmiar segmentu w bajtach
+     */
+    public OfflineMessageStore(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.segments = new ArrayDeque<>();
+        this.pendingCounts = new HashMap<>();
+        this.pendingMessages = new HashMap<>();
+        this.dirtySegments = new LinkedHashSet<>();
+        this.pendingSyncs = new ArrayList<>();
+    }
+
+    /**
+     * Otwiera dziennik, odtwarza z niego indeks niedostarczonych wiadomości i uruchamia wątek zapisujący segmenty
+     * na dysk.
+     *
+     * @throws IOException błąd otwierania katalogu lub segmentów dziennika
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+
+        for (Map.Entry<Long, Path> entry : findSegmentFiles().entrySet()) {
+            LogSegment segment = LogSegment.open(entry.getKey(), entry.getValue(), segmentSize);
+            segments.addLast(segment);
+            segment.recover(this::recoverRecord);
+        }
+
+        if(segments.isEmpty()) {
+            segments.addLast(openSegment(0));
+        }
+
+        removeDeliveredSegments();
+
+        syncThread = new Thread(this::runGroupCommits, "offline-store-sync");
+        syncThread.setDaemon(true);
+        syncThread.start();
+    }
+
+    /**
+     * Zapisuje wiadomość dla niepodłączonego odbiorcy.
+     *
+     * @param recipientNick nick odbiorcy
+     * @param senderNick nick nadawcy
+     * @param message treść wiadomości
+     * @return przyszłość kończona po zapisaniu wiadomości na dysk
+     * @throws IOException magazyn jest zamknięty lub wiadomość nie mieści się w segmencie
+     */
+    public synchronized CompletableFuture<Void> store(String recipientNick, String senderNick, String message)
+            throws IOException {
+        WireWriter writer = new WireWriter(64);
+        writer.writeByte(MESSAGE_RECORD);
+        writer.writeString(recipientNick);
+        writer.writeString(senderNick);
+        writer.writeString(message);
+
+        LogSegment activeSegment = segments.peekLast();
+        MessagePointer pointer = append(writer.toByteArray());
+        pendingMessages.computeIfAbsent(recipientNick, nick -> new ArrayList<>()).add(pointer);
+        pendingCounts.merge(pointer.segment, 1, Integer::sum);
+
+        if(pointer.segment != activeSegment) {
+            compactOldestSegment();
+        }
+
+        return requestSync();
+    }
+
+    /**
+     * Zwraca niedostarczone wiadomości odbiorcy w kolejności ich zapisania. Wiadomości pozostają w magazynie do
+     * czasu oznaczenia ich jako dostarczone metodą {@link #markDelivered(String, long)}.
+     *
+     * @param recipientNick nick odbiorcy
+     * @return wiadomości odbiorcy, pusta lista jeśli nie ma żadnych
+     * @throws IOException magazyn jest zamknięty lub błąd odczytu dziennika
+     */
+    public synchronized List<StoredMessage> peek(String recipientNick) throws IOException {
+        if(closed) {
+            throw new IOException("Magazyn wiadomości jest zamknięty");
+        }
+
+        List<MessagePointer> pointers = pendingMessages.get(recipientNick);
+
+        if(pointers == null) {
+            return Collections.emptyList();
+        }
+
+        List<StoredMessage> messages = new ArrayList<>(pointers.size());
+
+        for (MessagePointer pointer : pointers) {
+            messages.add(readMessage(pointer.segment.read(pointer.position), pointer.getOffset()));
+        }
+
+        return messages;
+    }
+
+    /**
+     * Oznacza w dzienniku jako dostarczone wiadomości odbiorcy zapisane nie później niż wiadomość o podanej pozycji.
+     * Wiadomości zapisane po odczytaniu ich metodą {@link #peek(String)} pozostają w magazynie.
+     *
+     * @param recipientNick nick odbiorcy
+     * @param upTo pozycja ostatniej dostarczonej wiadomości, zwracana przez {@link StoredMessage#getOffset()}
+     * @return przyszłość kończona po zapisaniu rekordu dostarczenia na dysk
+     * @throws IOException magazyn jest zamknięty
+     */
+    public synchronized CompletableFuture<Void> markDelivered(String recipientNick, long upTo) throws IOException {
+        if(!pendingMessages.containsKey(recipientNick)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        WireWriter writer = new WireWriter(24);
+        writer.writeByte(DELIVERED_UP_TO_RECORD);
+        writer.writeString(recipientNick);
+        writer.writeVarLong(upTo);
+        append(writer.toByteArray());
+
+        removeDelivered(recipientNick, upTo);
+        removeDeliveredSegments();
+
+        return requestSync();
+    }
+
+    /**
+     * Zwraca liczbę niedostarczonych wiadomości w magazynie.
+     *
+     * @return liczba niedostarczonych wiadomości
+     */
+    public synchronized int getPendingMessageCount() {
+        int count = 0;
+
+        for (int segmentCount : pendingCounts.values()) {
+            count += segmentCount;
+        }
+
+        return count;
+    }
+
+    /**
+     * Zapisuje oczekujące zmiany na dysk i zamyka magazyn.
+     */
+    public void close() {
+        Thread thread;
+
+        synchronized (this) {
+            if(closed) {
+                return;
+            }
+
+            closed = true;
+            thread = syncThread;
+            notifyAll();
+        }
+
+        if(thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (this) {
+            for (LogSegment segment : segments) {
+                segment.force();
+                segment.close();
+            }
+
+            segments.clear();
+        }
+    }
+
+    /**
+     * Dopisuje rekord do aktywnego segmentu, otwierając nowy segment, jeśli rekord się nie mieści.
+     *
+     * @param record treść rekordu
+     * @return pozycja dopisanego rekordu
+     * @throws IOException magazyn jest zamknięty, rekord jest większy od segmentu lub błąd otwierania segmentu
+     */
+    private MessagePointer append(byte[] record) throws IOException {
+        if(closed) {
+            throw new IOException("Magazyn wiadomości jest zamknięty");
+        }
+
+        if(LogSegment.RECORD_HEADER_LENGTH + record.length > segmentSize) {
+            throw new IOException("Wiadomość nie mieści się w segmencie dziennika");
+        }
+
+        LogSegment segment = segments.peekLast();
+        int position = segment.append(record);
+
+        if(position < 0) {
+            segment = openSegment(segment.getId() + 1);
+            segments.addLast(segment);
+            position = segment.append(record);
+        }
+
+        dirtySegments.add(segment);
+
+        return new MessagePointer(segment, position);
+    }
+
+    /**
+     * Zleca zapis zmienionych segmentów na dysk.
+     *
+     * @return przyszłość kończona po najbliższym zapisie na dysk
+     */
+    private CompletableFuture<Void> requestSync() {
+        CompletableFuture<Void> sync = new CompletableFuture<>();
+        pendingSyncs.add(sync);
+        notifyAll();
+
+        return sync;
+    }
+
+    /**
+     * Pętla wątku zapisującego. Wymusza zapis wszystkich zmienionych segmentów naraz poza blokadą magazynu, więc
+     * rekordy dopisywane w trakcie zapisu czekają na kolejny, wspólny zapis.
+     */
+    private void runGroupCommits() {
+        while (true) {
+            List<CompletableFuture<Void>> syncs;
+            List<LogSegment> segmentsToSync;
+
+            synchronized (this) {
+                while (pendingSyncs.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+
+                if(pendingSyncs.isEmpty()) {
+                    return;
+                }
+
+                syncs = pendingSyncs;
+                pendingSyncs = new ArrayList<>();
+                segmentsToSync = new ArrayList<>(dirtySegments);
+                dirtySegments.clear();
+            }
+
+            try {
+                for (LogSegment segment : segmentsToSync) {
+                    segment.force();
+                }
+
+                for (CompletableFuture<Void> sync : syncs) {
+                    sync.complete(null);
+                }
+            } catch (UncheckedIOException e) {
+                System.out.println("Błąd przy zapisie dziennika wiadomości: " + e.getMessage());
+
+                for (CompletableFuture<Void> sync : syncs) {
+                    sync.completeExceptionally(e.getCause());
+                }
+            }
+        }
+    }
+
+    /**
+     * Odtwarza indeks na podstawie rekordu odczytanego przy otwieraniu dziennika.
+     *
+     * @param segment segment zawierający rekord
+     * @param position pozycja rekordu w segmencie
+     * @param record treść rekordu
+     * @throws IOException nieznany typ rekordu
+     */
+    private void recoverRecord(LogSegment segment, int position, byte[] record) throws IOException {
+        WireReader reader = new WireReader(record);
+        int recordType = reader.readByte();
+        String recipientNick = reader.readString();
+
+        if(recordType == MESSAGE_RECORD) {
+            pendingMessages.computeIfAbsent(recipientNick, nick -> new ArrayList<>())
+                    .add(new MessagePointer(segment, position));
+            pendingCounts.merge(segment, 1, Integer::sum);
+        } else if(recordType == MOVED_MESSAGE_RECORD) {
+            reader.readString();
+            reader.readString();
+            placeMovedMessage(recipientNick, new MessagePointer(segment, position, reader.readVarLong()));
+        } else if(recordType == DELIVERED_RECORD) {
+            removeDelivered(recipientNick, Long.MAX_VALUE);
+        } else if(recordType == DELIVERED_UP_TO_RECORD) {
+            removeDelivered(recipientNick, reader.readVarLong());
+        } else {
+            throw new IOException("Nieznany typ rekordu dziennika: " + recordType);
+        }
+    }
+
+    /**
+     * Usuwa z indeksu wiadomości odbiorcy zapisane do podanej pozycji i zmniejsza liczniki niedostarczonych
+     * wiadomości ich segmentów.
+     *
+     * @param recipientNick nick odbiorcy
+     * @param upTo pozycja ostatniej dostarczonej wiadomości
+     */
+    private void removeDelivered(String recipientNick, long upTo) {
+        List<MessagePointer> pointers = pendingMessages.get(recipientNick);
+
+        if(pointers == null) {
+            return;
+        }
+
+        Iterator<MessagePointer> iterator = pointers.iterator();
+
+        while (iterator.hasNext()) {
+            MessagePointer pointer = iterator.next();
+
+            if(pointer.getOffset() > upTo) {
+                break;
+            }
+
+            iterator.remove();
+            decrementPendingCount(pointer.segment);
+        }
+
+        if(pointers.isEmpty()) {
+            pendingMessages.remove(recipientNick);
+        }
+    }
+
+    /**
+     * Umieszcza w indeksie wiadomość przeniesioną przy kompaktowaniu. Wiadomość zastępuje swój pierwowzór o tej samej
+     * pozycji, a jeśli pierwowzór został już usunięty razem ze swoim segmentem, trafia na miejsce wynikające z jej
+     * pozycji, więc wiadomości odbiorcy pozostają uporządkowane według pozycji.
+     *
+     * @param recipientNick nick odbiorcy
+     * @param moved pozycja przeniesionej wiadomości
+     */
+    private void placeMovedMessage(String recipientNick, MessagePointer moved) {
+        List<MessagePointer> pointers = pendingMessages.computeIfAbsent(recipientNick, nick -> new ArrayList<>());
+        int index = pointers.size();
+
+        while (index > 0 && pointers.get(index - 1).getOffset() > moved.getOffset()) {
+            index--;
+        }
+
+        if(index > 0 && pointers.get(index - 1).getOffset() == moved.getOffset()) {
+            decrementPendingCount(pointers.set(index - 1, moved).segment);
+        } else {
+            pointers.add(index, moved);
+        }
+
+        pendingCounts.merge(moved.segment, 1, Integer::sum);
+    }
+
+    /**
+     * Zmniejsza licznik niedostarczonych wiadomości segmentu, usuwając go po dojściu do zera.
+     *
+     * @param segment segment, z którego ubyła niedostarczona wiadomość
+     */
+    private void decrementPendingCount(LogSegment segment) {
+        pendingCounts.computeIfPresent(segment, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Kompaktuje najstarszy segment, jeśli tylko nieliczne niedostarczone wiadomości przytrzymują usunięcie jego i
+     * kolejnych segmentów. Wszystkie niedostarczone wiadomości odbiorców, którzy mają wiadomość w najstarszym
+     * segmencie, dopisywane są ponownie na końcu dziennika z pierwotnymi pozycjami, więc kolejność wiadomości
+     * odbiorcy i pozycje zwrócone wcześniej przez {@link #peek(String)} pozostają ważne. Kompaktowanie jest
+     * pomijane, gdy przeniesione wiadomości zajęłyby więcej niż część segmentu określoną przez
+     * {@link #COMPACTION_RATIO}. Segmenty bez niedostarczonych wiadomości usuwane są dopiero po zapisaniu kopii na
+     * dysk.
+     *
+     * @throws IOException błąd odczytu dziennika lub otwierania segmentu
+     */
+    private void compactOldestSegment() throws IOException {
+        LogSegment oldest = segments.peekFirst();
+
+        if(segments.size() < 3 || !pendingCounts.containsKey(oldest)) {
+            return;
+        }
+
+        Map<String, List<byte[]>> movedRecords = new HashMap<>();
+        int movedSize = 0;
+
+        for (Map.Entry<String, List<MessagePointer>> entry : pendingMessages.entrySet()) {
+            if(!containsSegment(entry.getValue(), oldest)) {
+                continue;
+            }
+
+            List<byte[]> records = new ArrayList<>(entry.getValue().size());
+
+            for (MessagePointer pointer : entry.getValue()) {
+                byte[] record = movedRecord(entry.getKey(), pointer);
+                movedSize += LogSegment.RECORD_HEADER_LENGTH + record.length;
+
+                if(movedSize > segmentSize / COMPACTION_RATIO) {
+                    return;
+                }
+
+                records.add(record);
+            }
+
+            movedRecords.put(entry.getKey(), records);
+        }
+
+        for (Map.Entry<String, List<byte[]>> entry : movedRecords.entrySet()) {
+            List<MessagePointer> originals = new ArrayList<>(pendingMessages.get(entry.getKey()));
+
+            for (int i = 0; i < originals.size(); i++) {
+                MessagePointer copy = append(entry.getValue().get(i));
+                placeMovedMessage(entry.getKey(),
+                        new MessagePointer(copy.segment, copy.position, originals.get(i).getOffset()));
+            }
+        }
+
+        for (LogSegment segment : dirtySegments) {
+            segment.force();
+        }
+
+        removeDeliveredSegments();
+    }
+
+    /**
+     * Sprawdza, czy któraś z wiadomości znajduje się w podanym segmencie.
+     *
+     * @param pointers pozycje wiadomości
+     * @param segment szukany segment
+     * @return flaga czy segment zawiera którąś z wiadomości
+     */
+    private static boolean containsSegment(List<MessagePointer> pointers, LogSegment segment) {
+        for (MessagePointer pointer : pointers) {
+            if(pointer.segment == segment) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Tworzy rekord przeniesionej wiadomości na podstawie jej dotychczasowego rekordu.
+     *
+     * @param recipientNick nick odbiorcy
+     * @param pointer pozycja dotychczasowego rekordu wiadomości
+     * @return treść rekordu przeniesionej wiadomości
+     * @throws IOException błąd odczytu dziennika
+     */
+    private static byte[] movedRecord(String recipientNick, MessagePointer pointer) throws IOException {
+        StoredMessage message = readMessage(pointer.segment.read(pointer.position), pointer.getOffset());
+
+        WireWriter writer = new WireWriter(64);
+        writer.writeByte(MOVED_MESSAGE_RECORD);
+        writer.writeString(recipientNick);
+        writer.writeString(message.getSenderNick());
+        writer.writeString(message.getMessage());
+        writer.writeVarLong(pointer.getOffset());
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Usuwa najstarsze segmenty, w których nie ma już niedostarczonych wiadomości. Usuwane są tylko segmenty z
+     * początku dziennika, aby rekord dostarczenia nigdy nie zniknął przed rekordem wiadomości, której dotyczy.
+     */
+    private void removeDeliveredSegments() {
+        while (segments.size() > 1 && !pendingCounts.containsKey(segments.peekFirst())) {
+            LogSegment segment = segments.pollFirst();
+            dirtySegments.remove(segment);
+            segment.delete();
+        }
+    }
+
+    /**
+     * Otwiera nowy segment o podanym numerze.
+     *
+     * @param id numer segmentu
+     * @return otwarty segment
+     * @throws IOException błąd tworzenia pliku segmentu
+     */
+    private LogSegment openSegment(long id) throws IOException {
+        return LogSegment.open(id, directory.resolve(String.format("%020d%s", id, SEGMENT_EXTENSION)), segmentSize);
+    }
+
+    /**
+     * Wyszukuje pliki segmentów w katalogu dziennika.
+     *
+     * @return ścieżki plików segmentów uporządkowane według numerów segmentów
+     * @throws IOException błąd odczytu katalogu
+     */
+    private Map<Long, Path> findSegmentFiles() throws IOException {
+        Map<Long, Path> segmentFiles = new TreeMap<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+
+                try {
+                    segmentFiles.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_EXTENSION.length())), file);
+                } catch (NumberFormatException e) {
+                    System.out.println("Pominięto nieznany plik dziennika: " + name);
+                }
+            }
+        }
+
+        return segmentFiles;
+    }
+
+    /**
+     * Odczytuje wiadomość z treści rekordu wiadomości, także przeniesionej.
+     *
+     * @param record treść rekordu wiadomości
+     * @param offset pozycja wiadomości w dzienniku
+     * @return zapisana wiadomość
+     * @throws IOException niepoprawna treść rekordu
+     */
+    private static StoredMessage readMessage(byte[] record, long offset) throws IOException {
+        WireReader reader = new WireReader(record);
+
+        int recordType = reader.readByte();
+
+        if(recordType != MESSAGE_RECORD && recordType != MOVED_MESSAGE_RECORD) {
+            throw new IOException("Rekord dziennika nie zawiera wiadomości");
+        }
+
+        return new StoredMessage(reader.readString(), reader.readString(), reader.readString(), offset);
+    }
+
+    /**
+     * Pozycja rekordu wiadomości w dzienniku.
+     */
+    private static final class MessagePointer {
+        /** Segment zawierający rekord */
+        private final LogSegment segment;
+        /** Pozycja rekordu w segmencie */
+        private final int position;
+        /** Pozycja wiadomości w dzienniku, dla przeniesionej wiadomości pozycja jej pierwotnego rekordu */
+        private final long offset;
+
+        MessagePointer(LogSegment segment, int position) {
+            this(segment, position, segment.getId() << 32 | position);
+        }
+
+        MessagePointer(LogSegment segment, int position, long offset) {
+            this.segment = segment;
+            this.position = position;
+            this.offset = offset;
+        }
+
+        /**
+         * Zwraca pozycję wiadomości w całym dzienniku - numer segmentu w starszych bitach i pozycję w segmencie w
+         * młodszych, dzięki czemu pozycje rosną w kolejności zapisu także po ponownym uruchomieniu serwera.
+         * Przeniesiona wiadomość zachowuje pozycję pierwotnego rekordu.
+         *
+         * @return pozycja wiadomości w dzienniku
+         */
+        long getOffset() {
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package pl.edu.pw.s251957.server.store;
+
+/** Klasa przedstawiająca wiadomość zapisaną w magazynie {@link OfflineMessageStore} dla niepodłączonego odbiorcy.
+ *
+ * @see OfflineMessageStore
+ */
+public final class StoredMessage {
+    /** Nick odbiorcy wiadomości */
+    private final String recipientNick;
+    /** Nick nadawcy wiadomości */
+    private final String senderNick;
+    /** Treść wiadomości */
+    private final String message;
+    /** Pozycja wiadomości w dzienniku magazynu */
+    private final long offset;
+
+    /**
+     * Tworzy zapisaną wiadomość.
+     *
+     * @param recipientNick nick odbiorcy wiadomości
+     * @param senderNick nick nadawcy wiadomości
+     * @param message treść wiadomości
+     * @param offset pozycja wiadomości w dzienniku magazynu
+     */
+    public StoredMessage(String recipientNick, String senderNick, String message, long offset) {
+        this.recipientNick = recipientNick;
+        this.senderNick = senderNick;
+        this.message = message;
+        this.offset = offset;
+    }
+
+    /**
+     * Zwraca nick odbiorcy wiadomości.
+     *
+     * @return nick odbiorcy
+     */
+    public String getRecipientNick() {
+        return recipientNick;
+    }
+
+    /**
+     * Zwraca nick nadawcy wiadomości.
+     *
+     * @return nick nadawcy
+     */
+    public String getSenderNick() {
+        return senderNick;
+    }
+
+    /**
+     * Zwraca treść wiadomości.
+     *
+     * @return treść wiadomości
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Zwraca pozycję wiadomości w dzienniku magazynu, którą przekazuje się do
+     * {@link OfflineMessageStore#markDelivered(String, long)}.
+     *
+     * @return pozycja wiadomości
+     */
+    public long getOffset() {
+        return offset;
+    }
+}
@@ -0,0 +1,170 @@
+package pl.edu.pw.s251957.client.chat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import pl.edu.pw.s251957.client.util.model.ServerConnectionConfig;
+import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.HistoryPage;
+import pl.edu.pw.s251957.common.Response;
+import pl.edu.pw.s251957.server.chat.ChatServer;
+import pl.edu.pw.s251957.server.chat.ServerMode;
+import pl.edu.pw.s251957.server.chat.ServerSettings;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Testy okna niepotwierdzonych wiadomości klienta wobec domyślnych limitów wiadomości serwera. Seria wiadomości
+ * dłuższa od serii dozwolonej przez serwer musi dotrzeć w całości i w kolejności, bez zamknięcia połączenia za
+ * zalewanie serwera.
+ */
+class MessageWindowTest {
+    /** Liczba wysyłanych wiadomości, ponad dwukrotnie większa od domyślnej serii serwera */
+    private static final int MESSAGE_COUNT = 50;
+    /** Czas oczekiwania na zdarzenie w sekundach */
+    private static final int TIMEOUT = 10;
+
+    /** Testowany serwer */
+    private ChatServer server;
+    /** Klient nadawcy */
+    private ClientHandler sender;
+    /** Klient adresata */
+    private ClientHandler addressee;
+
+    @AfterEach
+    void stop() {
+        if(sender != null) {
+            sender.closeClientConnection();
+        }
+
+        if(addressee != null) {
+            addressee.closeClientConnection();
+        }
+
+        if(server != null) {
+            server.stopServer();
+        }
+    }
+
+    @Test
+    void burstAboveServerLimitIsDeliveredInOrder() throws Exception {
+        ServerSettings settings = new ServerSettings();
+        settings.setServerMode(ServerMode.THREADS);
+        settings.setHistoryDirectory(null);
+        settings.setOfflineStoreDirectory(null);
+        server = new ChatServer(settings);
+        server.startServer(0);
+        ServerConnectionConfig config = new ServerConnectionConfig("localhost", server.getPort());
+
+        RecordingUI senderUI = new RecordingUI();
+        sender = new ClientHandler(new ClientSenderSocket());
+        sender.setClientUI(senderUI);
+        sender.connect("ala", config);
+        senderUI.awaitUser("ala");
+
+        RecordingUI addresseeUI = new RecordingUI();
+        addressee = new ClientHandler(new ClientSenderSocket());
+        addressee.setClientUI(addresseeUI);
+        addressee.connect("ola", config);
+        senderUI.awaitUser("ola");
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            sender.send(new Command(Command.CommandType.SEND_MESSAGE, "ala", "ola", "wiadomość " + i));
+        }
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            Response message = addresseeUI.messages.poll(TIMEOUT, TimeUnit.SECONDS);
+
+            assertNotNull(message, "Nie dotarła wiadomość " + i);
+            assertEquals("wiadomość " + i, message.getMessage());
+        }
+
+        assertTrue(sender.isConnected());
+        assertEquals(0, senderUI.errors.size(), senderUI.errors.toString());
+    }
+
+    /**
+     * Interfejs użytkownika zapisujący otrzymane wiadomości, widocznych użytkowników i błędy.
+     */
+    private static class RecordingUI implements ClientUI {
+        /** Otrzymane wiadomości */
+        private final BlockingQueue<Response> messages = new LinkedBlockingQueue<>();
+        /** Widoczni użytkownicy */
+        private final Set<String> users = ConcurrentHashMap.newKeySet();
+        /** Wyświetlone błędy */
+        private final List<String> errors = new CopyOnWriteArrayList<>();
+
+        /**
+         * Czeka, aż użytkownik będzie widoczny.
+         *
+         * @param user nick użytkownika
+         */
+        void awaitUser(String user) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+
+            while (!users.contains(user)) {
+                assertTrue(System.nanoTime() - deadline < 0, "Użytkownik " + user + " nie dołączył");
+                Thread.sleep(10);
+            }
+        }
+
+        @Override
+        public void showDialog(String title, String message, boolean error) {
+            if(error) {
+                errors.add(message);
+            }
+        }
+
+        @Override
+        public void showUsers(List<String> users) {
+            this.users.addAll(users);
+        }
+
+        @Override
+        public void addUser(String user) {
+            users.add(user);
+        }
+
+        @Override
+        public void removeUser(String user) {
+            users.remove(user);
+        }
+
+        @Override
+        public void changeConnectionStatus(boolean isConnected) {}
+
+        @Override
+        public void closeClientChat() {}
+
+        @Override
+        public void receiveMessage(Response response) {
+            messages.add(response);
+        }
+
+        @Override
+        public void receiveEndingMessage(Response response) {}
+
+        @Override
+        public void showHistory(HistoryPage page) {}
+
+        @Override
+        public void showRoom(String roomName, List<String> members) {}
+
+        @Override
+        public void addRoomMember(String roomName, String member) {}
+
+        @Override
+        public void removeRoomMember(String roomName, String member) {}
+
+        @Override
+        public void receiveRoomMessage(Response response) {}
+    }
+}
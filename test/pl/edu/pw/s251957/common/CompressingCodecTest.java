@@ -0,0 +1,61 @@
+package pl.edu.pw.s251957.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Testy kodera kompresującego ramki.
+ */
+class CompressingCodecTest {
+    /** Długa treść wiadomości, która zostanie skompresowana */
+    private static final String MESSAGE = new String(new char[64]).replace("\0", "cześć, co słychać? ");
+
+    @Test
+    void concurrentThreadsShareBoundedPool() throws Exception {
+        CompressingCodec codec = new CompressingCodec(new BinaryCodec(), 1, null);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<String>> results = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < 256; i++) {
+                String message = MESSAGE + i;
+                results.add(executor.submit(() -> roundTrip(codec, message)));
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(MESSAGE + i, results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void closedCodecStillEncodesFrames() throws Exception {
+        CompressingCodec codec = new CompressingCodec(new BinaryCodec(), 1, null);
+        roundTrip(codec, MESSAGE);
+
+        codec.close();
+
+        assertEquals(MESSAGE, roundTrip(codec, MESSAGE));
+    }
+
+    /**
+     * Koduje i dekoduje odpowiedź z wiadomością.
+     *
+     * @param codec testowany koder
+     * @param message treść wiadomości
+     * @return treść odczytanej wiadomości
+     */
+    private static String roundTrip(CompressingCodec codec, String message) throws Exception {
+        Response response = new Response(Response.ResponseType.MESSAGE, "ala", message, null);
+
+        return codec.decodeResponse(codec.encodeResponse(response)).getMessage();
+    }
+}
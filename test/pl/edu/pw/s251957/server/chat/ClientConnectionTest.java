@@ -0,0 +1,139 @@
+package pl.edu.pw.s251957.server.chat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.ProtocolHandshake;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Testy połączenia serwerowego z podawaną chwilą. Połączenie utworzone jest w chwili 0, a testy wywołują jego
+ * metody z kolejnymi chwilami, bez czekania na zegar.
+ */
+class ClientConnectionTest {
+    /** Odstęp sprawdzania połączenia w milisekundach */
+    private static final long HEARTBEAT_INTERVAL = 1000;
+    /** Czas oczekiwania na odpowiedź na sprawdzenie w milisekundach */
+    private static final long HEARTBEAT_TIMEOUT = 500;
+    /** Czas oczekiwania na zamknięcie połączenia przez kolejkę wychodzącą w milisekundach */
+    private static final long CLOSE_TIMEOUT = 5000;
+
+    /** Uruchomiony serwer, którego kolejki wychodzące wysyłają odpowiedzi, lub {@code null} */
+    private ChatServer server;
+
+    @AfterEach
+    void stopServer() {
+        if(server != null) {
+            server.stopServer();
+        }
+    }
+
+    @Test
+    void idleConnectionIsReapedAfterIntervalAndTimeout() {
+        ServerSettings settings = new ServerSettings();
+        settings.setHeartbeatInterval(HEARTBEAT_INTERVAL);
+        settings.setHeartbeatTimeout(HEARTBEAT_TIMEOUT);
+        ChatServer server = new ChatServer(settings);
+        RecordingTransport transport = new RecordingTransport();
+        ClientConnection connection = new ClientConnection(server, transport, 0);
+
+        connection.checkHeartbeat(millis(HEARTBEAT_INTERVAL - 1));
+        connection.checkHeartbeat(millis(HEARTBEAT_INTERVAL));
+        connection.checkHeartbeat(millis(HEARTBEAT_INTERVAL + HEARTBEAT_TIMEOUT - 1));
+
+        assertFalse(transport.closed);
+        assertEquals(0, server.getMetrics().getReapedConnections());
+
+        connection.checkHeartbeat(millis(HEARTBEAT_INTERVAL + HEARTBEAT_TIMEOUT));
+
+        assertTrue(transport.closed);
+        assertEquals(1, server.getMetrics().getReapedConnections());
+    }
+
+    @Test
+    void messagesAboveBurstAreRejectedUntilRefill() {
+        ClientConnection connection = connectWithLimits(new RecordingTransport());
+        Command message = new Command(Command.CommandType.SEND_MESSAGE, "ala", "ola", "Cześć");
+
+        assertTrue(connection.checkRateLimit(message, 0));
+        assertTrue(connection.checkRateLimit(message, 0));
+        assertFalse(connection.checkRateLimit(message, 0));
+        assertFalse(connection.checkRateLimit(message, millis(999)));
+        assertTrue(connection.checkRateLimit(message, millis(1000)));
+
+        assertEquals(2, server.getMetrics().getRateLimitedCommands());
+        assertEquals(0, server.getMetrics().getFloodDisconnects());
+    }
+
+    @Test
+    void floodingClientIsDisconnected() throws Exception {
+        RecordingTransport transport = new RecordingTransport();
+        ClientConnection connection = connectWithLimits(transport);
+        Command message = new Command(Command.CommandType.SEND_MESSAGE, "ala", "ola", "Cześć");
+
+        for (int i = 0; i < 2 + 3; i++) {
+            connection.checkRateLimit(message, 0);
+        }
+
+        assertEquals(0, server.getMetrics().getFloodDisconnects());
+
+        assertTrue(connection.checkRateLimit(message, millis(1000)));
+        assertFalse(connection.checkRateLimit(message, millis(1000)));
+        assertEquals(0, server.getMetrics().getFloodDisconnects());
+
+        assertFalse(connection.checkRateLimit(message, millis(1000)));
+        assertEquals(1, server.getMetrics().getFloodDisconnects());
+        awaitClosed(transport);
+    }
+
+    /**
+     * Uruchamia serwer z limitem dwóch wiadomości na sekundę i limitem trzech odrzuconych żądań na sekundę, a
+     * następnie tworzy połączenie w chwili 0 i uzgadnia wersję protokołu, aby połączenie mogło wysyłać odpowiedzi.
+     *
+     * @param transport warstwa transportowa połączenia
+     * @return połączenie po uzgodnieniu wersji protokołu
+     */
+    private ClientConnection connectWithLimits(RecordingTransport transport) {
+        ServerSettings settings = new ServerSettings();
+        settings.setServerMode(ServerMode.THREADS);
+        settings.setHistoryDirectory(null);
+        settings.setOfflineStoreDirectory(null);
+        settings.setRateLimit(Command.CommandType.SEND_MESSAGE, new RateLimit(2, 1));
+        settings.setFloodLimit(new RateLimit(3, 1));
+        server = new ChatServer(settings);
+        server.startServer(0);
+
+        ClientConnection connection = new ClientConnection(server, transport, 0);
+        connection.handleFrame(ProtocolHandshake.hello(ProtocolHandshake.ROOMS_VERSION));
+
+        return connection;
+    }
+
+    /**
+     * Czeka, aż kolejka wychodząca zamknie połączenie.
+     *
+     * @param transport warstwa transportowa połączenia
+     */
+    private static void awaitClosed(RecordingTransport transport) throws InterruptedException {
+        long deadline = System.nanoTime() + millis(CLOSE_TIMEOUT);
+
+        while (!transport.closed) {
+            assertTrue(System.nanoTime() - deadline < 0, "Połączenie nie zostało zamknięte");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Zamienia milisekundy na chwilę według {@link System#nanoTime()} liczoną od utworzenia połączenia.
+     *
+     * @param millis czas od utworzenia połączenia w milisekundach
+     * @return chwila w nanosekundach
+     */
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,114 @@
+package pl.edu.pw.s251957.server.chat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Testy zegara zadań opóźnionych. Zegar nie jest uruchamiany - testy podają chwilę planowania zadań i same
+ * obsługują kolejne takty.
+ */
+class HashedWheelTimerTest {
+    /** Długość taktu w milisekundach */
+    private static final long TICK = 10;
+    /** Liczba kubełków koła */
+    private static final int WHEEL_SIZE = 8;
+
+    /** Takty, w których wykonano zadania */
+    private final List<Long> executions = new ArrayList<>();
+    /** Obsługiwany takt */
+    private long tick;
+
+    @Test
+    void taskWaitsFullRoundsBeforeExecution() {
+        HashedWheelTimer timer = new HashedWheelTimer(TICK, WHEEL_SIZE, 0);
+        timer.newTimeout(() -> executions.add(tick), 3 * WHEEL_SIZE * TICK + 2 * TICK, TimeUnit.MILLISECONDS, 0);
+
+        advance(timer, 4 * WHEEL_SIZE);
+
+        assertEquals(listOf(3 * WHEEL_SIZE + 2), executions);
+    }
+
+    @Test
+    void tasksInSameBucketExpireInTheirRounds() {
+        HashedWheelTimer timer = new HashedWheelTimer(TICK, WHEEL_SIZE, 0);
+        timer.newTimeout(() -> executions.add(tick), WHEEL_SIZE * TICK + 5 * TICK, TimeUnit.MILLISECONDS, 0);
+        timer.newTimeout(() -> executions.add(tick), 5 * TICK, TimeUnit.MILLISECONDS, 0);
+
+        advance(timer, 3 * WHEEL_SIZE);
+
+        assertEquals(listOf(5, WHEEL_SIZE + 5), executions);
+    }
+
+    @Test
+    void taskScheduledLaterCountsFromItsOwnStart() {
+        HashedWheelTimer timer = new HashedWheelTimer(TICK, WHEEL_SIZE, 0);
+        advance(timer, 3);
+
+        timer.newTimeout(() -> executions.add(tick), 2 * TICK, TimeUnit.MILLISECONDS,
+                TimeUnit.MILLISECONDS.toNanos(3 * TICK));
+        advance(timer, 2 * WHEEL_SIZE);
+
+        assertEquals(listOf(5), executions);
+    }
+
+    @Test
+    void overdueTaskRunsInCurrentTick() {
+        HashedWheelTimer timer = new HashedWheelTimer(TICK, WHEEL_SIZE, 0);
+        advance(timer, 4);
+
+        timer.newTimeout(() -> executions.add(tick), 0, TimeUnit.MILLISECONDS, 0);
+        advance(timer, 1);
+
+        assertEquals(listOf(4), executions);
+    }
+
+    @Test
+    void cancelledTaskIsNotExecuted() {
+        HashedWheelTimer timer = new HashedWheelTimer(TICK, WHEEL_SIZE, 0);
+        HashedWheelTimer.Timeout pending = timer.newTimeout(() -> executions.add(tick), 2 * TICK,
+                TimeUnit.MILLISECONDS, 0);
+        HashedWheelTimer.Timeout scheduled = timer.newTimeout(() -> executions.add(tick), WHEEL_SIZE * TICK + TICK,
+                TimeUnit.MILLISECONDS, 0);
+        pending.cancel();
+        advance(timer, 2);
+        scheduled.cancel();
+
+        advance(timer, 2 * WHEEL_SIZE);
+
+        assertTrue(executions.isEmpty());
+    }
+
+    /**
+     * Obsługuje podaną liczbę kolejnych taktów zegara.
+     *
+     * @param timer testowany zegar
+     * @param ticks liczba taktów
+     */
+    private void advance(HashedWheelTimer timer, int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            timer.advance(tick);
+            tick++;
+        }
+    }
+
+    /**
+     * Tworzy listę numerów taktów.
+     *
+     * @param ticks numery taktów
+     * @return lista numerów taktów
+     */
+    private static List<Long> listOf(long... ticks) {
+        List<Long> list = new ArrayList<>();
+
+        for (long value : ticks) {
+            list.add(value);
+        }
+
+        return list;
+    }
+}
@@ -0,0 +1,145 @@
+package pl.edu.pw.s251957.server.chat;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Testy tablicy połączeń według numeru sesji.
+ */
+class IntConnectionMapTest {
+    /** Maska indeksu pola pustej tablicy */
+    private static final int INITIAL_MASK = 63;
+
+    /** Połączenia zapisywane w tablicy */
+    private static final List<ClientConnection> CONNECTIONS = new ArrayList<>();
+
+    @BeforeAll
+    static void createConnections() {
+        ChatServer server = new ChatServer(new ServerSettings());
+
+        for (int i = 0; i < 8; i++) {
+            CONNECTIONS.add(new ClientConnection(server, new RecordingTransport()));
+        }
+    }
+
+    @Test
+    void collidingKeysAreFoundAcrossWrapAround() {
+        int[] keys = keysWithSlot(INITIAL_MASK, 3);
+        IntConnectionMap map = new IntConnectionMap();
+
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], CONNECTIONS.get(i));
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            assertSame(CONNECTIONS.get(i), map.get(keys[i]));
+        }
+
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    void removalDuringWrapAroundShiftsFollowingKeys() {
+        int[] keys = keysWithSlot(INITIAL_MASK, 3);
+        IntConnectionMap map = new IntConnectionMap();
+
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], CONNECTIONS.get(i));
+        }
+
+        assertFalse(map.remove(keys[0], CONNECTIONS.get(1)));
+        assertTrue(map.remove(keys[0], CONNECTIONS.get(0)));
+
+        assertNull(map.get(keys[0]));
+        assertSame(CONNECTIONS.get(1), map.get(keys[1]));
+        assertSame(CONNECTIONS.get(2), map.get(keys[2]));
+
+        assertTrue(map.remove(keys[1], CONNECTIONS.get(1)));
+
+        assertSame(CONNECTIONS.get(2), map.get(keys[2]));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void resizeKeepsEntriesWithSameLowBits() {
+        IntConnectionMap map = new IntConnectionMap();
+
+        for (int i = 1; i <= 1000; i++) {
+            map.put(i * 16 + 5, CONNECTIONS.get(i % CONNECTIONS.size()));
+        }
+
+        for (int i = 1; i <= 1000; i += 2) {
+            assertTrue(map.remove(i * 16 + 5, CONNECTIONS.get(i % CONNECTIONS.size())));
+        }
+
+        for (int i = 1; i <= 1000; i++) {
+            ClientConnection expected = i % 2 == 0 ? CONNECTIONS.get(i % CONNECTIONS.size()) : null;
+            assertSame(expected, map.get(i * 16 + 5));
+        }
+
+        assertEquals(500, map.size());
+    }
+
+    @Test
+    void randomOperationsMatchHashMap() {
+        Random random = new Random(251957);
+        IntConnectionMap map = new IntConnectionMap();
+        Map<Integer, ClientConnection> expected = new HashMap<>();
+
+        for (int operation = 0; operation < 20000; operation++) {
+            int key = 1 + random.nextInt(100);
+            ClientConnection connection = CONNECTIONS.get(random.nextInt(CONNECTIONS.size()));
+
+            if(random.nextBoolean()) {
+                map.put(key, connection);
+                expected.put(key, connection);
+            } else {
+                assertEquals(expected.remove(key, connection), map.remove(key, connection));
+            }
+
+            assertEquals(expected.size(), map.size());
+        }
+
+        for (int key = 1; key <= 100; key++) {
+            assertSame(expected.get(key), map.get(key));
+        }
+    }
+
+    @Test
+    void zeroKeyIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new IntConnectionMap().put(0, CONNECTIONS.get(0)));
+    }
+
+    /**
+     * Wyszukuje kolejne numery sesji o podanym polu docelowym. Dla ostatniego pola tablicy sondowanie kolejnych
+     * numerów przechodzi na jej początek.
+     *
+     * @param slot pole docelowe
+     * @param count liczba numerów
+     * @return numery sesji
+     */
+    private static int[] keysWithSlot(int slot, int count) {
+        int[] keys = new int[count];
+        int found = 0;
+
+        for (int key = 1; found < count; key++) {
+            if(IntConnectionMap.slot(key, INITIAL_MASK) == slot) {
+                keys[found++] = key;
+            }
+        }
+
+        return keys;
+    }
+}
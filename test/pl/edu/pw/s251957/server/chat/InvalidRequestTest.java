@@ -0,0 +1,183 @@
+package pl.edu.pw.s251957.server.chat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import pl.edu.pw.s251957.common.BinaryCodec;
+import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.MessageFrames;
+import pl.edu.pw.s251957.common.ProtocolHandshake;
+import pl.edu.pw.s251957.common.Response;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Testy niepoprawnych żądań klientów. Serwer w trybie NIO ma jeden wątek reaktora, więc żądanie, którego obsługa
+ * zatrzymałaby ten wątek, odcięłoby od serwera wszystkich pozostałych klientów.
+ */
+class InvalidRequestTest {
+    /** Czas oczekiwania na odpowiedź serwera w milisekundach */
+    private static final int READ_TIMEOUT = 5000;
+
+    /** Testowany serwer */
+    private ChatServer server;
+
+    @AfterEach
+    void stopServer() {
+        if(server != null) {
+            server.stopServer();
+        }
+    }
+
+    @Test
+    void connectWithoutNickIsRejected() throws Exception {
+        server = startServer();
+
+        try (FramedClient client = new FramedClient(server.getPort())) {
+            client.send(new Command(Command.CommandType.CONNECT, null, null, null));
+            assertEquals("Nie podano nicku", client.receive(Response.ResponseType.REJECT_CONNECTION).getMessage());
+        }
+
+        try (FramedClient client = new FramedClient(server.getPort())) {
+            client.send(new Command(Command.CommandType.CONNECT, " ", null, null));
+            client.receive(Response.ResponseType.REJECT_CONNECTION);
+        }
+
+        assertReactorServesClients();
+    }
+
+    @Test
+    void failingRequestDoesNotStopReactor() throws Exception {
+        server = startServer();
+
+        try (FramedClient client = new FramedClient(server.getPort())) {
+            client.send(new Command(Command.CommandType.CONNECT, "ola", null, null));
+            client.receive(Response.ResponseType.USERS);
+            client.send(new Command(Command.CommandType.START_CONVERSATION, "ola", null, null));
+
+            assertReactorServesClients();
+        }
+    }
+
+    @Test
+    void requestsWithoutAddresseeAreRejected() throws Exception {
+        server = startServer();
+
+        try (FramedClient client = new FramedClient(server.getPort())) {
+            client.send(new Command(Command.CommandType.CONNECT, "ola", null, null));
+            client.receive(Response.ResponseType.USERS);
+
+            client.send(new Command(Command.CommandType.SEND_MESSAGE, "ola", null, "Cześć"));
+            assertEquals("Nie podano adresata", client.receive(Response.ResponseType.ERROR).getMessage());
+            client.send(new Command(Command.CommandType.START_CONVERSATION, "ola", null, null));
+            assertEquals("Nie podano adresata", client.receive(Response.ResponseType.ERROR).getMessage());
+            client.send(new Command(Command.CommandType.END_CONVERSATION, "ola", null, null));
+            assertEquals("Nie podano adresata", client.receive(Response.ResponseType.ERROR).getMessage());
+            client.send(new Command(Command.CommandType.HISTORY, "ola", null, null));
+            assertEquals("Nie podano rozmówcy", client.receive(Response.ResponseType.ERROR).getMessage());
+        }
+
+        assertReactorServesClients();
+    }
+
+    @Test
+    void endingMessageCarriesConnectionNick() throws Exception {
+        server = startServer();
+
+        try (FramedClient ola = new FramedClient(server.getPort());
+             FramedClient ala = new FramedClient(server.getPort())) {
+            ola.send(new Command(Command.CommandType.CONNECT, "ola", null, null));
+            ola.receive(Response.ResponseType.USERS);
+            ala.send(new Command(Command.CommandType.CONNECT, "ala", null, null));
+            ala.receive(Response.ResponseType.USERS);
+
+            ala.send(new Command(Command.CommandType.END_CONVERSATION, "ewa", "ola", "Koniec"));
+
+            assertEquals("ala", ola.receive(Response.ResponseType.END_CONVERSATION).getData());
+        }
+    }
+
+    /**
+     * Sprawdza, że reaktor nadal obsługuje nowych klientów.
+     */
+    private void assertReactorServesClients() throws Exception {
+        try (FramedClient client = new FramedClient(server.getPort())) {
+            client.send(new Command(Command.CommandType.CONNECT, "ala", null, null));
+            client.receive(Response.ResponseType.USERS);
+        }
+    }
+
+    /**
+     * Uruchamia serwer NIO z jednym wątkiem reaktora na wolnym porcie bez zapisu historii i wiadomości na dysku.
+     *
+     * @return uruchomiony serwer
+     */
+    private static ChatServer startServer() {
+        ServerSettings settings = new ServerSettings();
+        settings.setServerMode(ServerMode.NIO);
+        settings.setReactorThreads(1);
+        settings.setHistoryDirectory(null);
+        settings.setOfflineStoreDirectory(null);
+
+        ChatServer chatServer = new ChatServer(settings);
+        chatServer.startServer(0);
+
+        return chatServer;
+    }
+
+    /**
+     * Klient wysyłający żądania w ramkach protokołu binarnego bez sprawdzania ich poprawności. Zgłasza wersję
+     * protokołu sprzed kompresji ramek, więc ramki koduje sam koder binarny.
+     */
+    private static class FramedClient implements AutoCloseable {
+        /** Koder żądań i odpowiedzi */
+        private final BinaryCodec codec;
+        /** Gniazdo połączenia z serwerem */
+        private final Socket socket;
+        /** Strumień wejściowy połączenia */
+        private final DataInputStream inputStream;
+        /** Strumień wyjściowy połączenia */
+        private final DataOutputStream outputStream;
+
+        FramedClient(int port) throws IOException {
+            codec = new BinaryCodec();
+            socket = new Socket("localhost", port);
+            socket.setSoTimeout(READ_TIMEOUT);
+            inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            outputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            MessageFrames.writeFrame(outputStream, ProtocolHandshake.hello(ProtocolHandshake.ROOMS_VERSION));
+            ProtocolHandshake.readServerHello(inputStream);
+        }
+
+        void send(Command cmd) throws IOException {
+            MessageFrames.writeFrame(outputStream, codec.encodeCommand(cmd));
+        }
+
+        /**
+         * Odczytuje odpowiedzi serwera do pierwszej odpowiedzi podanego typu.
+         *
+         * @param responseType oczekiwany typ odpowiedzi
+         * @return odczytana odpowiedź
+         */
+        Response receive(Response.ResponseType responseType) throws IOException {
+            while (true) {
+                Response response = codec.decodeResponse(MessageFrames.readFrame(inputStream));
+
+                if(response.getResponseType() == responseType) {
+                    return response;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package pl.edu.pw.s251957.server.chat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import pl.edu.pw.s251957.common.Command;
+import pl.edu.pw.s251957.common.Response;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Testy połączeń klientów sprzed wprowadzenia ramek, które przesyłają żądania strumieniem obiektowym bez ramek.
+ */
+class LegacyClientTest {
+    /** Czas oczekiwania na odpowiedź serwera w milisekundach */
+    private static final int READ_TIMEOUT = 5000;
+
+    /** Testowany serwer */
+    private ChatServer server;
+
+    @AfterEach
+    void stopServer() {
+        if(server != null) {
+            server.stopServer();
+        }
+    }
+
+    @Test
+    void legacyClientsLogInAndExchangeMessage() throws Exception {
+        server = startServer(ServerMode.THREADS);
+
+        try (LegacyClient ala = new LegacyClient(server.getPort());
+             LegacyClient ola = new LegacyClient(server.getPort())) {
+            ala.send(new Command(Command.CommandType.CONNECT, "ala", null, null));
+            ala.receive(Response.ResponseType.USERS);
+            ola.send(new Command(Command.CommandType.CONNECT, "ola", null, null));
+            ola.receive(Response.ResponseType.USERS);
+
+            ala.send(new Command(Command.CommandType.SEND_MESSAGE, "ala", "ola", "Cześć"));
+            Response message = ola.receive(Response.ResponseType.MESSAGE);
+
+            assertEquals("ala", message.getData());
+            assertEquals("Cześć", message.getMessage());
+
+            ola.send(new Command(Command.CommandType.SEND_MESSAGE, "ola", "ala", "Hej"));
+            assertEquals("Hej", ala.receive(Response.ResponseType.MESSAGE).getMessage());
+        }
+    }
+
+    @Test
+    void nioServerRejectsLegacyClient() throws Exception {
+        server = startServer(ServerMode.NIO);
+
+        try (LegacyClient client = new LegacyClient(server.getPort())) {
+            client.receive(Response.ResponseType.REJECT_CONNECTION);
+        }
+    }
+
+    /**
+     * Uruchamia serwer na wolnym porcie bez zapisu historii i wiadomości na dysku.
+     *
+     * @param serverMode tryb obsługi połączeń
+     * @return uruchomiony serwer
+     */
+    private static ChatServer startServer(ServerMode serverMode) {
+        ServerSettings settings = new ServerSettings();
+        settings.setServerMode(serverMode);
+        settings.setHistoryDirectory(null);
+        settings.setOfflineStoreDirectory(null);
+
+        ChatServer chatServer = new ChatServer(settings);
+        chatServer.startServer(0);
+
+        return chatServer;
+    }
+
+    /**
+     * Klient działający jak klient sprzed wprowadzenia ramek - najpierw czeka na nagłówek strumienia obiektowego
+     * serwera, a następnie wysyła żądania własnym strumieniem obiektowym.
+     */
+    private static class LegacyClient implements AutoCloseable {
+        /** Gniazdo połączenia z serwerem */
+        private final Socket socket;
+        /** Strumień wejściowy połączenia */
+        private final ObjectInputStream objectInputStream;
+        /** Strumień wyjściowy połączenia */
+        private final ObjectOutputStream objectOutputStream;
+
+        LegacyClient(int port) throws IOException {
+            socket = new Socket("localhost", port);
+            socket.setSoTimeout(READ_TIMEOUT);
+            objectInputStream = new ObjectInputStream(socket.getInputStream());
+            objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
+        }
+
+        void send(Command cmd) throws IOException {
+            objectOutputStream.writeObject(cmd);
+        }
+
+        /**
+         * Odczytuje odpowiedzi serwera do pierwszej odpowiedzi podanego typu.
+         *
+         * @param responseType oczekiwany typ odpowiedzi
+         * @return odczytana odpowiedź
+         */
+        Response receive(Response.ResponseType responseType) throws IOException, ClassNotFoundException {
+            while (true) {
+                Response response = (Response) objectInputStream.readObject();
+
+                if(response.getResponseType() == responseType) {
+                    return response;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package pl.edu.pw.s251957.server.chat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/** Warstwa transportowa testów, która zamiast wysyłać ramki zapisuje je razem z informacją o zamknięciu
+ * połączenia.
+ */
+class RecordingTransport implements ConnectionTransport {
+    /** Treści wysłanych ramek */
+    final List<byte[]> payloads = new CopyOnWriteArrayList<>();
+    /** Flaga czy połączenie zostało zamknięte */
+    volatile boolean closed;
+
+    @Override
+    public void send(byte[] payload) {
+        payloads.add(payload);
+    }
+
+    @Override
+    public void sendBatch(List<byte[]> payloads, Runnable onWritten) {
+        this.payloads.addAll(payloads);
+
+        if(onWritten != null) {
+            onWritten.run();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public void abort() {
+        closed = true;
+    }
+}
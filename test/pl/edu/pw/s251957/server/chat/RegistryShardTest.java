@@ -0,0 +1,48 @@
+package pl.edu.pw.s251957.server.chat;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/** Testy nadawania numerów sesji przez część rejestru. Testy wywołują metody części rejestru bezpośrednio, bez
+ * uruchamiania jej wątku.
+ */
+class RegistryShardTest {
+    /** Liczba części rejestru, przy której każda część ma tylko cztery numery sesji */
+    private static final int SHARD_COUNT = Integer.MAX_VALUE / 4;
+    /** Numer testowanej części rejestru */
+    private static final int INDEX = 1;
+
+    @Test
+    void sessionIdsWrapAroundSkippingOpenSessions() {
+        ChatServer server = new ChatServer(new ServerSettings());
+        RegistryShard shard = new RegistryShard(INDEX, SHARD_COUNT);
+        ClientConnection[] connections = new ClientConnection[4];
+
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = new ClientConnection(server, new RecordingTransport());
+            shard.putConnection("nick" + i, connections[i]);
+
+            assertEquals(sessionId(i + 1), shard.openSession(connections[i]));
+        }
+
+        shard.removeConnection("nick2", connections[2]);
+        ClientConnection reconnected = new ClientConnection(server, new RecordingTransport());
+
+        assertEquals(sessionId(3), shard.openSession(reconnected));
+        assertSame(reconnected, shard.getSession(sessionId(3)));
+        assertSame(connections[0], shard.getSession(sessionId(1)));
+        assertEquals(sessionId(3), reconnected.getSessionId());
+    }
+
+    /**
+     * Wyznacza numer sesji o podanym numerze kolejnym w testowanej części rejestru.
+     *
+     * @param counter numer kolejny sesji
+     * @return numer sesji
+     */
+    private static int sessionId(int counter) {
+        return counter * SHARD_COUNT + INDEX;
+    }
+}
@@ -0,0 +1,73 @@
+package pl.edu.pw.s251957.server.chat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Testy wiadra żetonów z podawaną chwilą pobrania żetonu.
+ */
+class TokenBucketTest {
+    /** Odstęp między żetonami limitu 10 żądań na sekundę w nanosekundach */
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void fullBucketAllowsBurst() {
+        TokenBucket bucket = new TokenBucket(new RateLimit(5, 10), 0);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(0));
+        }
+
+        assertFalse(bucket.tryAcquire(0));
+    }
+
+    @Test
+    void tokensRefillAtLimitRate() {
+        TokenBucket bucket = new TokenBucket(new RateLimit(5, 10), 0);
+
+        for (int i = 0; i < 5; i++) {
+            bucket.tryAcquire(0);
+        }
+
+        assertFalse(bucket.tryAcquire(INTERVAL - 1));
+        assertTrue(bucket.tryAcquire(INTERVAL));
+        assertFalse(bucket.tryAcquire(INTERVAL));
+        assertTrue(bucket.tryAcquire(3 * INTERVAL));
+        assertTrue(bucket.tryAcquire(3 * INTERVAL));
+        assertFalse(bucket.tryAcquire(3 * INTERVAL));
+    }
+
+    @Test
+    void idleBucketDoesNotExceedBurst() {
+        TokenBucket bucket = new TokenBucket(new RateLimit(5, 10), 0);
+        long later = TimeUnit.SECONDS.toNanos(60);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(later));
+        }
+
+        assertFalse(bucket.tryAcquire(later));
+    }
+
+    @Test
+    void rejectionDoesNotConsumeToken() {
+        TokenBucket bucket = new TokenBucket(new RateLimit(1, 10), 0);
+        bucket.tryAcquire(0);
+
+        for (int i = 0; i < 10; i++) {
+            assertFalse(bucket.tryAcquire(INTERVAL / 2));
+        }
+
+        assertTrue(bucket.tryAcquire(INTERVAL));
+    }
+
+    @Test
+    void intervalIsRoundedUpToMillis() {
+        assertEquals(100, new TokenBucket(new RateLimit(1, 10), 0).getIntervalMillis());
+        assertEquals(334, new TokenBucket(new RateLimit(1, 3), 0).getIntervalMillis());
+    }
+}
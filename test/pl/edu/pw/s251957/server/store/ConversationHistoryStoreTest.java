@@ -0,0 +1,49 @@
+package pl.edu.pw.s251957.server.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.edu.pw.s251957.common.HistoryPage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Testy magazynu historii konwersacji.
+ */
+class ConversationHistoryStoreTest {
+    /** Rozmiar segmentu historii używany w testach */
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readingUnknownConversationCreatesNoDirectory() throws Exception {
+        Path storeDirectory = directory.resolve("history");
+        ConversationHistoryStore store = new ConversationHistoryStore(storeDirectory, SEGMENT_SIZE, 4);
+
+        HistoryPage page = store.readPage("ala", "nieznany", HistoryPage.NO_CURSOR, 10);
+
+        assertTrue(page.getEntries().isEmpty());
+        assertFalse(page.hasPrevious());
+        assertFalse(Files.exists(storeDirectory));
+        store.close();
+    }
+
+    @Test
+    void pageContainsMessagesOfBothParticipants() throws Exception {
+        ConversationHistoryStore store = new ConversationHistoryStore(directory, SEGMENT_SIZE, 4);
+        store.append("ala", "ola", "Cześć");
+        store.append("ola", "ala", "Hej");
+
+        HistoryPage page = store.readPage("ola", "ala", HistoryPage.NO_CURSOR, 10);
+
+        assertEquals(2, page.getEntries().size());
+        assertEquals("ala", page.getEntries().get(0).getSenderNick());
+        assertEquals("Hej", page.getEntries().get(1).getMessage());
+        store.close();
+    }
+}
@@ -0,0 +1,131 @@
+package pl.edu.pw.s251957.server.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Testy magazynu wiadomości dla niepodłączonych użytkowników.
+ */
+class OfflineMessageStoreTest {
+    /** Rozmiar segmentu dziennika używany w testach */
+    private static final int SEGMENT_SIZE = 64 * 1024;
+    /** Rozmiar segmentu w testach kompaktowania, mieszczący kilkanaście wiadomości */
+    private static final int SMALL_SEGMENT_SIZE = 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void peekKeepsMessagesUntilMarkedDelivered() throws Exception {
+        OfflineMessageStore store = openStore();
+        store.store("ola", "ala", "pierwsza").get();
+        store.store("ola", "ala", "druga").get();
+
+        assertEquals(2, store.peek("ola").size());
+        assertEquals(2, store.peek("ola").size());
+
+        List<StoredMessage> messages = store.peek("ola");
+        store.markDelivered("ola", messages.get(1).getOffset()).get();
+
+        assertTrue(store.peek("ola").isEmpty());
+        assertEquals(0, store.getPendingMessageCount());
+        store.close();
+    }
+
+    @Test
+    void messagesStoredAfterPeekStayPending() throws Exception {
+        OfflineMessageStore store = openStore();
+        store.store("ola", "ala", "pierwsza").get();
+        List<StoredMessage> delivered = store.peek("ola");
+        store.store("ola", "ala", "druga").get();
+
+        store.markDelivered("ola", delivered.get(0).getOffset()).get();
+        store.close();
+
+        OfflineMessageStore reopened = openStore();
+        List<StoredMessage> pending = reopened.peek("ola");
+
+        assertEquals(1, pending.size());
+        assertEquals("druga", pending.get(0).getMessage());
+        reopened.close();
+    }
+
+    @Test
+    void undeliveredMessageDoesNotPinLaterSegments() throws Exception {
+        OfflineMessageStore store = openStore(SMALL_SEGMENT_SIZE);
+        store.store("zosia", "ala", "pierwsza").get();
+        long firstOffset = store.peek("zosia").get(0).getOffset();
+
+        for (int i = 0; i < 200; i++) {
+            if(i == 100) {
+                store.store("zosia", "ala", "druga").get();
+            }
+
+            store.store("ola", "ala", "wiadomość " + i).get();
+            List<StoredMessage> messages = store.peek("ola");
+            store.markDelivered("ola", messages.get(messages.size() - 1).getOffset()).get();
+            assertTrue(countSegmentFiles() <= 3, "Liczba segmentów: " + countSegmentFiles());
+        }
+
+        store.close();
+
+        OfflineMessageStore reopened = openStore(SMALL_SEGMENT_SIZE);
+        List<StoredMessage> pending = reopened.peek("zosia");
+
+        assertEquals(2, pending.size());
+        assertEquals("pierwsza", pending.get(0).getMessage());
+        assertEquals(firstOffset, pending.get(0).getOffset());
+        assertEquals("druga", pending.get(1).getMessage());
+        assertTrue(reopened.peek("ola").isEmpty());
+
+        reopened.markDelivered("zosia", firstOffset).get();
+        assertEquals(1, reopened.getPendingMessageCount());
+        reopened.close();
+    }
+
+    /**
+     * Otwiera magazyn w katalogu testu.
+     *
+     * @return otwarty magazyn
+     */
+    private OfflineMessageStore openStore() throws Exception {
+        return openStore(SEGMENT_SIZE);
+    }
+
+    /**
+     * Otwiera magazyn o podanym rozmiarze segmentu w katalogu testu.
+     *
+     * @param segmentSize rozmiar segmentu w bajtach
+     * @return otwarty magazyn
+     */
+    private OfflineMessageStore openStore(int segmentSize) throws Exception {
+        OfflineMessageStore store = new OfflineMessageStore(directory, segmentSize);
+        store.open();
+
+        return store;
+    }
+
+    /**
+     * Liczy pliki segmentów w katalogu testu.
+     *
+     * @return liczba plików segmentów
+     */
+    private int countSegmentFiles() throws Exception {
+        int count = 0;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.log")) {
+            for (Path ignored : files) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+}